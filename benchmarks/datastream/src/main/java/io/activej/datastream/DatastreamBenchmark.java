@@ -18,8 +18,10 @@ import io.activej.promise.Promise;
 import io.activej.reactor.Reactor;
 import io.activej.service.ServiceGraphModule;
 
-import java.util.function.Function;
+import java.util.ArrayList;
+import java.util.List;
 
+import static io.activej.config.converter.ConfigConverters.ofBoolean;
 import static io.activej.config.converter.ConfigConverters.ofInteger;
 
 @SuppressWarnings("WeakerAccess")
@@ -27,6 +29,8 @@ public class DatastreamBenchmark extends Launcher {
 	private static final int TOTAL_ELEMENTS = 100_000_000;
 	private static final int WARMUP_ROUNDS = 3;
 	private static final int BENCHMARK_ROUNDS = 10;
+	private static final int STAGES = 5;
+	private static final boolean FUSE = false;
 
 	static final class IntegerStreamSupplier extends AbstractStreamSupplier<Integer> {
 		private Integer integer;
@@ -56,7 +60,7 @@ public class DatastreamBenchmark extends Launcher {
 	InstanceProvider<StreamSupplier<Integer>> inputProvider;
 
 	@Inject
-	InstanceProvider<StreamTransformer<Integer, Integer>> mapperProvider;
+	InstanceProvider<List<StreamTransformer<Integer, Integer>>> stagesProvider;
 
 	@Inject
 	InstanceProvider<StreamConsumer<Integer>> outputProvider;
@@ -83,8 +87,18 @@ public class DatastreamBenchmark extends Launcher {
 
 	@Provides
 	@Transient
-	StreamTransformer<Integer, Integer> mapper() {
-		return StreamTransformers.mapper(Function.identity());
+	List<StreamTransformer<Integer, Integer>> stages(Config config) {
+		int stages = config.get(ofInteger(), "benchmark.stages", STAGES);
+		List<StreamTransformer<Integer, Integer>> transformers = new ArrayList<>(stages);
+		for (int i = 0; i < stages; i++) {
+			transformers.add(i % 2 == 0 ?
+				StreamTransformers.mapper(x -> x + 1) :
+				StreamTransformers.filter(x -> x != 0));
+		}
+		if (config.get(ofBoolean(), "benchmark.fuse", FUSE)) {
+			return List.of(StreamTransformers.fuse(transformers));
+		}
+		return transformers;
 	}
 
 	@Provides
@@ -153,11 +167,13 @@ public class DatastreamBenchmark extends Launcher {
 
 	private Promise<Long> roundCall() {
 		StreamSupplier<Integer> input = inputProvider.get();
-		StreamTransformer<Integer, Integer> mapper = mapperProvider.get();
+		List<StreamTransformer<Integer, Integer>> stages = stagesProvider.get();
 		StreamConsumer<Integer> output = outputProvider.get();
 		long start = System.currentTimeMillis();
+		for (StreamTransformer<Integer, Integer> stage : stages) {
+			input = input.transformWith(stage);
+		}
 		return input
-			.transformWith(mapper)
 			.streamTo(output)
 			.map($ -> System.currentTimeMillis() - start);
 	}
@@ -16,11 +16,15 @@
 
 package io.activej.fs.tcp;
 
+import io.activej.async.process.TokenBucket;
+import io.activej.bytebuf.ByteBuf;
 import io.activej.common.function.SupplierEx;
 import io.activej.csp.binary.codec.ByteBufsCodec;
 import io.activej.csp.binary.codec.ByteBufsCodecs;
 import io.activej.csp.net.IMessaging;
 import io.activej.csp.net.Messaging;
+import io.activej.csp.process.transformer.ChannelTransformers;
+import io.activej.csp.supplier.ChannelSupplier;
 import io.activej.fs.IFileSystem;
 import io.activej.fs.exception.FileNotFoundException;
 import io.activej.fs.exception.FileSystemException;
@@ -34,6 +38,7 @@ import io.activej.net.socket.tcp.ITcpSocket;
 import io.activej.promise.Promise;
 import io.activej.promise.jmx.PromiseStats;
 import io.activej.reactor.nio.NioReactor;
+import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
 import java.time.Duration;
@@ -64,6 +69,8 @@ public final class FileSystemServer extends AbstractReactiveServer {
 	private Function<FileSystemRequest.Handshake, FileSystemResponse.Handshake> handshakeHandler = $ ->
 		new FileSystemResponse.Handshake(null);
 
+	private @Nullable TokenBucket uploadTokenBucket;
+
 	// region JMX
 	private final PromiseStats handleRequestPromise = PromiseStats.create(Duration.ofMinutes(5));
 	private final PromiseStats handshakePromise = PromiseStats.create(Duration.ofMinutes(5));
@@ -102,6 +109,17 @@ public final class FileSystemServer extends AbstractReactiveServer {
 			FileSystemServer.this.handshakeHandler = handshakeHandler;
 			return this;
 		}
+
+		/**
+		 * Limits a total bandwidth of all uploads and appends with a given token bucket (1 token per byte).
+		 * Each upload acquires tokens through its own child bucket, so that concurrent uploads
+		 * share the bandwidth fairly.
+		 */
+		public Builder withUploadTokenBucket(TokenBucket uploadTokenBucket) {
+			checkNotBuilt(this);
+			FileSystemServer.this.uploadTokenBucket = uploadTokenBucket;
+			return this;
+		}
 	}
 
 	public IFileSystem getFileSystem() {
@@ -189,7 +207,7 @@ public final class FileSystemServer extends AbstractReactiveServer {
 		return (size == -1 ? fileSystem.upload(name) : fileSystem.upload(name, size))
 			.map(uploader -> size == -1 ? uploader : uploader.transformWith(ofFixedSize(size)))
 			.then(uploader -> messaging.send(new FileSystemResponse.UploadAck())
-				.then(() -> messaging.receiveBinaryStream()
+				.then(() -> receiveBinaryStream(messaging)
 					.streamTo(uploader.withAcknowledgement(
 						ack -> ack
 							.whenComplete(uploadFinishPromise.recordStats())
@@ -207,7 +225,7 @@ public final class FileSystemServer extends AbstractReactiveServer {
 		long offset = append.offset();
 		return fileSystem.append(name, offset)
 			.then(uploader -> messaging.send(new FileSystemResponse.AppendAck())
-				.then(() -> messaging.receiveBinaryStream().streamTo(uploader.withAcknowledgement(
+				.then(() -> receiveBinaryStream(messaging).streamTo(uploader.withAcknowledgement(
 					ack -> ack
 						.whenComplete(appendFinishPromise.recordStats())
 						.whenComplete(toLogger(logger, TRACE, "onAppendComplete", append, this))))))
@@ -219,6 +237,12 @@ public final class FileSystemServer extends AbstractReactiveServer {
 
 	}
 
+	private ChannelSupplier<ByteBuf> receiveBinaryStream(IMessaging<FileSystemRequest, FileSystemResponse> messaging) {
+		ChannelSupplier<ByteBuf> supplier = messaging.receiveBinaryStream();
+		if (uploadTokenBucket == null) return supplier;
+		return supplier.transformWith(ChannelTransformers.throttleBytes(uploadTokenBucket.createChild(1)));
+	}
+
 	private Promise<Void> handleDownload(IMessaging<FileSystemRequest, FileSystemResponse> messaging, FileSystemRequest.Download download) {
 		String name = download.name();
 		long offset = download.offset();
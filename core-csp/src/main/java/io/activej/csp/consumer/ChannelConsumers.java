@@ -24,6 +24,7 @@ import io.activej.common.function.ConsumerEx;
 import io.activej.common.recycle.Recyclable;
 import io.activej.csp.consumer.impl.*;
 import io.activej.csp.queue.ChannelQueue;
+import io.activej.csp.queue.ChannelReactorBridge;
 import io.activej.csp.queue.ChannelZeroBuffer;
 import io.activej.csp.supplier.ChannelSupplier;
 import io.activej.net.socket.tcp.ITcpSocket;
@@ -129,6 +130,23 @@ public class ChannelConsumers {
 		return new OfAnotherReactor<>(anotherReactor, anotherReactorConsumer);
 	}
 
+	/**
+	 * Returns a {@link ChannelConsumer} which passes items to a consumer that lives in another reactor.
+	 * Items are passed through a lock-free ring buffer of a given capacity (a power of 2),
+	 * without tasks being executed on reactors per item.
+	 *
+	 * @see ChannelReactorBridge
+	 */
+	public static <T> ChannelConsumer<T> ofAnotherReactor(Reactor anotherReactor, ChannelConsumer<T> anotherReactorConsumer, int bufferCapacity) {
+		Reactor reactor = getCurrentReactor();
+		if (reactor == anotherReactor) {
+			return anotherReactorConsumer;
+		}
+		ChannelReactorBridge<T> bridge = ChannelReactorBridge.create(reactor, anotherReactor, bufferCapacity);
+		anotherReactor.execute(() -> bridge.getSupplier().streamTo(anotherReactorConsumer));
+		return bridge.getConsumer();
+	}
+
 	/**
 	 * Returns a {@link ChannelConsumer} wrapped in {@link Supplier}
 	 * and calls its {@code accept()} when {@code accept()} method is called.
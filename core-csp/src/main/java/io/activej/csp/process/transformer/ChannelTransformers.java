@@ -1,11 +1,14 @@
 package io.activej.csp.process.transformer;
 
+import io.activej.async.process.TokenBucket;
 import io.activej.bytebuf.ByteBuf;
 import io.activej.common.MemSize;
 import io.activej.common.annotation.StaticFactories;
 import io.activej.csp.consumer.ChannelConsumer;
 import io.activej.csp.process.transformer.impl.ByteChunker;
 import io.activej.csp.process.transformer.impl.ByteRanger;
+import io.activej.csp.process.transformer.impl.RateLimiter;
+import io.activej.csp.process.transformer.impl.TokenBucketLimiter;
 import io.activej.csp.supplier.ChannelSupplier;
 
 import static io.activej.common.Checks.checkArgument;
@@ -48,4 +51,20 @@ public class ChannelTransformers {
 	public static ChannelTransformer<ByteBuf, ByteBuf> limitBytes(long limit) {
 		return rangeBytes(0, limit);
 	}
+
+	/**
+	 * Limits a rate of items passing through a channel by acquiring tokens from a given token bucket.
+	 * The bucket may be shared between many channels.
+	 */
+	public static <T> ChannelTransformer<T, T> throttle(TokenBucket bucket, RateLimiter.Tokenizer<T> tokenizer) {
+		return new TokenBucketLimiter<>(bucket, tokenizer);
+	}
+
+	/**
+	 * Limits a number of bytes per unit of time passing through a channel
+	 * by acquiring tokens from a given token bucket. The bucket may be shared between many channels.
+	 */
+	public static ChannelTransformer<ByteBuf, ByteBuf> throttleBytes(TokenBucket bucket) {
+		return throttle(bucket, RateLimiter.Tokenizer.forByteBufs());
+	}
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.csp.process.transformer.impl;
+
+import io.activej.async.process.TokenBucket;
+import io.activej.common.annotation.ExposedInternals;
+import io.activej.csp.process.transformer.AbstractChannelTransformer;
+import io.activej.promise.Promise;
+
+/**
+ * A channel transformer that acquires tokens for each item from a (possibly shared) {@link TokenBucket}
+ * before passing the item further
+ */
+@ExposedInternals
+public final class TokenBucketLimiter<T> extends AbstractChannelTransformer<TokenBucketLimiter<T>, T, T> {
+	public final TokenBucket bucket;
+	public final RateLimiter.Tokenizer<T> tokenizer;
+
+	public TokenBucketLimiter(TokenBucket bucket, RateLimiter.Tokenizer<T> tokenizer) {
+		this.bucket = bucket;
+		this.tokenizer = tokenizer;
+	}
+
+	@Override
+	protected Promise<Void> onItem(T item) {
+		double itemTokens = tokenizer.getTokens(item);
+		if (bucket.tryAcquire(itemTokens)) {
+			return send(item);
+		}
+		return bucket.acquire(itemTokens)
+			.then(() -> send(item));
+	}
+}
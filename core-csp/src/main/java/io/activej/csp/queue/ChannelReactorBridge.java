@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.csp.queue;
+
+import io.activej.common.concurrent.SpscRingBuffer;
+import io.activej.common.recycle.Recyclers;
+import io.activej.csp.consumer.AbstractChannelConsumer;
+import io.activej.csp.consumer.ChannelConsumer;
+import io.activej.csp.supplier.AbstractChannelSupplier;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.Reactor;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transfers items of a channel from one reactor to another through a single-producer/single-consumer ring buffer.
+ * <p>
+ * A consumer lives in an input reactor and a supplier lives in an output reactor.
+ * Unlike {@link io.activej.csp.supplier.ChannelSuppliers#ofAnotherReactor(Reactor, ChannelSupplier)},
+ * no tasks are executed on reactors per item:
+ * <ul>
+ *     <li>a supplier is woken up only when it waits for an item,
+ *     and only once per tick of an input reactor</li>
+ *     <li>a consumer waits only when a ring buffer is full, and it is woken up only after
+ *     a supplier has freed at least a half of the ring buffer (credits)</li>
+ * </ul>
+ *
+ * @param <T> type of items
+ */
+public final class ChannelReactorBridge<T> {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final SpscRingBuffer<T> ring;
+	private final int creditThreshold;
+
+	private final Input input;
+	private final Output output;
+
+	private final AtomicBoolean outputParked = new AtomicBoolean();
+	private final AtomicBoolean inputParked = new AtomicBoolean();
+	private volatile boolean endOfStream;
+
+	private ChannelReactorBridge(Reactor inputReactor, Reactor outputReactor, int capacity) {
+		this.ring = new SpscRingBuffer<>(capacity);
+		this.creditThreshold = Math.max(1, capacity / 2);
+		this.input = Reactor.executeWithReactor(inputReactor, () -> new Input());
+		this.output = Reactor.executeWithReactor(outputReactor, () -> new Output());
+	}
+
+	/**
+	 * Creates a new bridge
+	 *
+	 * @param inputReactor  a reactor of a consumer
+	 * @param outputReactor a reactor of a supplier
+	 * @param capacity      a capacity of a ring buffer, should be a power of 2
+	 */
+	public static <T> ChannelReactorBridge<T> create(Reactor inputReactor, Reactor outputReactor, int capacity) {
+		return new ChannelReactorBridge<>(inputReactor, outputReactor, capacity);
+	}
+
+	public static <T> ChannelReactorBridge<T> create(Reactor inputReactor, Reactor outputReactor) {
+		return new ChannelReactorBridge<>(inputReactor, outputReactor, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Returns a consumer, which should be used in an input reactor
+	 */
+	public ChannelConsumer<T> getConsumer() {
+		return input;
+	}
+
+	/**
+	 * Returns a supplier, which should be used in an output reactor
+	 */
+	public ChannelSupplier<T> getSupplier() {
+		return output;
+	}
+
+	private final class Input extends AbstractChannelConsumer<T> {
+		private @Nullable SettablePromise<Void> credit;
+		private @Nullable SettablePromise<Void> endOfStreamAcknowledgement;
+		private boolean publishPosted;
+
+		@Override
+		protected Promise<Void> doAccept(@Nullable T item) {
+			if (item == null) {
+				endOfStreamAcknowledgement = new SettablePromise<>();
+				reactor.startExternalTask();
+				endOfStream = true;
+				wakeUpOutput();
+				return endOfStreamAcknowledgement;
+			}
+			if (!ring.offer(item)) {
+				return park().then(() -> doAccept(item));
+			}
+			if (ring.size() == ring.capacity()) {
+				return park();
+			}
+			if (!publishPosted) {
+				publishPosted = true;
+				reactor.post(this::publish);
+			}
+			return Promise.complete();
+		}
+
+		private void publish() {
+			publishPosted = false;
+			wakeUpOutput();
+		}
+
+		private Promise<Void> park() {
+			SettablePromise<Void> credit = new SettablePromise<>();
+			this.credit = credit;
+			reactor.startExternalTask();
+			wakeUpOutput();
+			inputParked.set(true);
+			VarHandle.fullFence();
+			if (ring.capacity() - ring.size() >= creditThreshold && inputParked.compareAndSet(true, false)) {
+				onCredit();
+			}
+			return credit;
+		}
+
+		private void onCredit() {
+			SettablePromise<Void> credit = this.credit;
+			if (credit == null) return;
+			this.credit = null;
+			reactor.completeExternalTask();
+			credit.set(null);
+		}
+
+		private void onEndOfStreamDelivered() {
+			SettablePromise<Void> acknowledgement = this.endOfStreamAcknowledgement;
+			if (acknowledgement == null) return;
+			this.endOfStreamAcknowledgement = null;
+			reactor.completeExternalTask();
+			acknowledgement.set(null);
+		}
+
+		private void wakeUpOutput() {
+			VarHandle.fullFence();
+			if (outputParked.get() && outputParked.compareAndSet(true, false)) {
+				output.execute(output::onWakeUp);
+			}
+		}
+
+		@Override
+		protected void onClosed(Exception e) {
+			if (credit != null) {
+				reactor.completeExternalTask();
+				credit.setException(e);
+				credit = null;
+			}
+			if (endOfStreamAcknowledgement != null) {
+				reactor.completeExternalTask();
+				endOfStreamAcknowledgement.setException(e);
+				endOfStreamAcknowledgement = null;
+			}
+			output.execute(() -> output.closeEx(e));
+		}
+
+		void execute(Runnable runnable) {
+			reactor.execute(runnable);
+		}
+	}
+
+	private final class Output extends AbstractChannelSupplier<T> {
+		private @Nullable SettablePromise<T> take;
+		private boolean creditPosted;
+
+		@Override
+		protected Promise<T> doGet() {
+			boolean endOfStream = ChannelReactorBridge.this.endOfStream;
+			T item = ring.poll();
+			if (item != null) {
+				if (!creditPosted) {
+					creditPosted = true;
+					reactor.post(this::returnCredit);
+				}
+				return Promise.of(item);
+			}
+			if (endOfStream) {
+				input.execute(input::onEndOfStreamDelivered);
+				return Promise.of(null);
+			}
+			SettablePromise<T> take = new SettablePromise<>();
+			this.take = take;
+			reactor.startExternalTask();
+			park();
+			return take;
+		}
+
+		private void park() {
+			returnCredit();
+			outputParked.set(true);
+			VarHandle.fullFence();
+			if ((!ring.isEmpty() || endOfStream) && outputParked.compareAndSet(true, false)) {
+				onWakeUp();
+			}
+		}
+
+		private void onWakeUp() {
+			SettablePromise<T> take = this.take;
+			if (take == null) return;
+			boolean endOfStream = ChannelReactorBridge.this.endOfStream;
+			T item = ring.poll();
+			if (item == null && !endOfStream) {
+				park();
+				return;
+			}
+			this.take = null;
+			reactor.completeExternalTask();
+			if (item == null) {
+				input.execute(input::onEndOfStreamDelivered);
+			}
+			take.set(item);
+		}
+
+		private void returnCredit() {
+			creditPosted = false;
+			VarHandle.fullFence();
+			if (inputParked.get() && ring.capacity() - ring.size() >= creditThreshold && inputParked.compareAndSet(true, false)) {
+				input.execute(input::onCredit);
+			}
+		}
+
+		@Override
+		protected void onClosed(Exception e) {
+			if (take != null) {
+				reactor.completeExternalTask();
+				take.setException(e);
+				take = null;
+			}
+			input.execute(() -> input.closeEx(e));
+		}
+
+		@Override
+		protected void onCleanup() {
+			for (T item = ring.poll(); item != null; item = ring.poll()) {
+				Recyclers.recycle(item);
+			}
+		}
+
+		void execute(Runnable runnable) {
+			reactor.execute(runnable);
+		}
+	}
+}
@@ -25,6 +25,7 @@ import io.activej.common.function.SupplierEx;
 import io.activej.csp.consumer.ChannelConsumer;
 import io.activej.csp.queue.ChannelBuffer;
 import io.activej.csp.queue.ChannelQueue;
+import io.activej.csp.queue.ChannelReactorBridge;
 import io.activej.csp.queue.ChannelZeroBuffer;
 import io.activej.csp.supplier.impl.*;
 import io.activej.net.socket.tcp.ITcpSocket;
@@ -204,6 +205,24 @@ public class ChannelSuppliers {
 		return new OfAnotherReactor<>(anotherReactor, anotherReactorSupplier);
 	}
 
+	/**
+	 * Returns a {@link ChannelSupplier} of items of a supplier which lives in another reactor.
+	 * Items are passed through a lock-free ring buffer of a given capacity (a power of 2),
+	 * without tasks being executed on reactors per item. Items are prefetched from
+	 * another reactor's supplier as soon as this method is called.
+	 *
+	 * @see ChannelReactorBridge
+	 */
+	public static <T> ChannelSupplier<T> ofAnotherReactor(Reactor anotherReactor, ChannelSupplier<T> anotherReactorSupplier, int bufferCapacity) {
+		Reactor reactor = getCurrentReactor();
+		if (reactor == anotherReactor) {
+			return anotherReactorSupplier;
+		}
+		ChannelReactorBridge<T> bridge = ChannelReactorBridge.create(anotherReactor, reactor, bufferCapacity);
+		anotherReactor.execute(() -> anotherReactorSupplier.streamTo(bridge.getConsumer()));
+		return bridge.getSupplier();
+	}
+
 	/**
 	 * Creates a {@code ChannelSupplier} wrapped in {@link Supplier}
 	 * and calls its {@code get()} when {@code get()} method is called.
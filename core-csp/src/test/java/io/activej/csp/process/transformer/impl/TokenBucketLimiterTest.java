@@ -0,0 +1,60 @@
+package io.activej.csp.process.transformer.impl;
+
+import io.activej.async.process.TokenBucket;
+import io.activej.csp.consumer.ChannelConsumers;
+import io.activej.csp.process.transformer.ChannelTransformers;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.eventloop.Eventloop;
+import io.activej.promise.Promises;
+import io.activej.test.rules.EventloopRule;
+import io.activej.test.time.TestCurrentTimeProvider;
+import io.activej.test.time.TestCurrentTimeProvider.TimeSequenceCurrentTimeProvider;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static io.activej.common.exception.FatalErrorHandlers.rethrow;
+import static io.activej.promise.TestUtils.await;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketLimiterTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@Test
+	public void testSharedBucket() {
+		TimeSequenceCurrentTimeProvider timeSequence = TestCurrentTimeProvider.ofTimeSequence(0, 10);
+		Eventloop eventloop = Eventloop.builder()
+			.withTimeProvider(timeSequence)
+			.withCurrentThread()
+			.withFatalErrorHandler(rethrow())
+			.build();
+
+		TokenBucket bucket = TokenBucket.create(eventloop, 100, ChronoUnit.SECONDS);
+
+		List<Integer> expected = IntStream.range(0, 100)
+			.boxed().collect(toList());
+		List<Integer> first = new ArrayList<>();
+		List<Integer> second = new ArrayList<>();
+
+		await(Promises.all(
+			ChannelSuppliers.ofList(expected)
+				.transformWith(ChannelTransformers.throttle(bucket.createChild(1), $ -> 1))
+				.streamTo(ChannelConsumers.ofConsumer(first::add)),
+			ChannelSuppliers.ofList(expected)
+				.transformWith(ChannelTransformers.throttle(bucket.createChild(1), $ -> 1))
+				.streamTo(ChannelConsumers.ofConsumer(second::add))
+		));
+
+		assertEquals(expected, first);
+		assertEquals(expected, second);
+		assertTrue(timeSequence.getTime() > 2_000);
+	}
+}
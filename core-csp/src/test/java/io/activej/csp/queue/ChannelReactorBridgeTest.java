@@ -0,0 +1,102 @@
+package io.activej.csp.queue;
+
+import io.activej.csp.consumer.ChannelConsumer;
+import io.activej.csp.consumer.ChannelConsumers;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.eventloop.Eventloop;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static io.activej.common.exception.FatalErrorHandlers.rethrow;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static io.activej.reactor.Reactor.executeWithReactor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ChannelReactorBridgeTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	private Eventloop anotherEventloop;
+
+	@Before
+	public void setUp() {
+		anotherEventloop = Eventloop.builder()
+			.withFatalErrorHandler(rethrow())
+			.build();
+		anotherEventloop.keepAlive(true);
+		new Thread(anotherEventloop, "another").start();
+	}
+
+	@After
+	public void tearDown() {
+		anotherEventloop.execute(() -> anotherEventloop.keepAlive(false));
+	}
+
+	@Test
+	public void testSupplierOfAnotherReactor() {
+		List<Integer> expected = IntStream.range(0, 100_000).boxed().toList();
+		ChannelSupplier<Integer> anotherEventloopSupplier = executeWithReactor(anotherEventloop, () -> ChannelSuppliers.ofList(expected));
+		ChannelSupplier<Integer> supplier = ChannelSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 16);
+
+		assertEquals(expected, await(supplier.toList()));
+	}
+
+	@Test
+	public void testConsumerOfAnotherReactor() {
+		List<Integer> expected = IntStream.range(0, 100_000).boxed().toList();
+		List<Integer> actual = Collections.synchronizedList(new ArrayList<>());
+		ChannelConsumer<Integer> anotherEventloopConsumer = executeWithReactor(anotherEventloop, () -> ChannelConsumers.ofConsumer(actual::add));
+		ChannelConsumer<Integer> consumer = ChannelConsumers.ofAnotherReactor(anotherEventloop, anotherEventloopConsumer, 8);
+
+		await(ChannelSuppliers.ofList(expected).streamTo(consumer));
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testEmpty() {
+		ChannelSupplier<Integer> anotherEventloopSupplier = executeWithReactor(anotherEventloop, () -> ChannelSuppliers.empty());
+		ChannelSupplier<Integer> supplier = ChannelSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 4);
+
+		assertEquals(List.of(), await(supplier.toList()));
+	}
+
+	@Test
+	public void testSupplierException() {
+		ExpectedException expectedException = new ExpectedException();
+		ChannelSupplier<Integer> anotherEventloopSupplier = executeWithReactor(anotherEventloop, () ->
+			ChannelSuppliers.concat(ChannelSuppliers.ofValues(1, 2, 3), ChannelSuppliers.ofException(expectedException)));
+		ChannelSupplier<Integer> supplier = ChannelSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 2);
+
+		Exception exception = awaitException(supplier.toList());
+
+		assertSame(expectedException, exception);
+	}
+
+	@Test
+	public void testConsumerClosed() {
+		ExpectedException expectedException = new ExpectedException();
+		List<Integer> actual = Collections.synchronizedList(new ArrayList<>());
+		ChannelConsumer<Integer> anotherEventloopConsumer = executeWithReactor(anotherEventloop, () -> ChannelConsumers.ofConsumer(actual::add));
+		ChannelConsumer<Integer> consumer = ChannelConsumers.ofAnotherReactor(anotherEventloop, anotherEventloopConsumer, 2);
+
+		Exception exception = awaitException(consumer.accept(1)
+			.then(() -> consumer.accept(2))
+			.whenComplete(() -> consumer.closeEx(expectedException))
+			.then(() -> consumer.accept(3)));
+
+		assertSame(expectedException, exception);
+	}
+}
@@ -21,6 +21,7 @@ import io.activej.common.annotation.StaticFactories;
 import io.activej.common.function.ConsumerEx;
 import io.activej.csp.consumer.ChannelConsumer;
 import io.activej.datastream.consumer.impl.*;
+import io.activej.datastream.processor.StreamReactorBridge;
 import io.activej.datastream.processor.transformer.StreamTransformer;
 import io.activej.datastream.processor.transformer.StreamTransformers;
 import io.activej.datastream.supplier.StreamSupplier;
@@ -105,4 +106,21 @@ public class StreamConsumers {
 		}
 		return new OfAnotherReactor<>(anotherReactor, anotherReactorConsumer);
 	}
+
+	/**
+	 * Creates a consumer which passes items to a consumer that lives in another reactor.
+	 * Items are passed through a lock-free ring buffer of a given capacity (a power of 2),
+	 * without tasks being executed on reactors per each batch of items.
+	 *
+	 * @see StreamReactorBridge
+	 */
+	public static <T> StreamConsumer<T> ofAnotherReactor(Reactor anotherReactor, StreamConsumer<T> anotherReactorConsumer, int bufferCapacity) {
+		Reactor reactor = Reactor.getCurrentReactor();
+		if (reactor == anotherReactor) {
+			return anotherReactorConsumer;
+		}
+		StreamReactorBridge<T> bridge = StreamReactorBridge.create(reactor, anotherReactor, bufferCapacity);
+		anotherReactor.execute(() -> bridge.getOutput().streamTo(anotherReactorConsumer));
+		return bridge.getInput();
+	}
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor;
+
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.HashUtils.murmur3hash;
+
+/**
+ * An acceptor factory for {@link StreamSplitter} which shards items by a hash of their keys.
+ * <p>
+ * Optionally, it detects hot keys on a sample of items (with a Misra-Gries heavy hitters summary)
+ * and sprays items of hot keys across several consecutive outputs (replicas), so that a single
+ * heavy key does not overload one output. Spraying should only be enabled if downstream
+ * consumers do not rely on all items of a key being sent to the same output,
+ * for example, if they do a partial pre-aggregation.
+ *
+ * @param <T> type of items
+ * @param <K> type of keys
+ */
+public final class HotKeySharder<T, K> implements Function<StreamDataAcceptor<T>[], StreamDataAcceptor<T>> {
+	public static final int DEFAULT_SAMPLE_RATE = 16;
+	public static final int DEFAULT_SAMPLE_WINDOW = 4096;
+	public static final int DEFAULT_MAX_TRACKED_KEYS = 64;
+	public static final double DEFAULT_HOT_KEY_THRESHOLD = 0.05;
+
+	private final Function<T, K> keyFunction;
+
+	private int replicas = 1;
+	private int sampleRate = DEFAULT_SAMPLE_RATE;
+	private int sampleWindow = DEFAULT_SAMPLE_WINDOW;
+	private int maxTrackedKeys = DEFAULT_MAX_TRACKED_KEYS;
+	private double hotKeyThreshold = DEFAULT_HOT_KEY_THRESHOLD;
+
+	private final Map<K, int[]> counters = new HashMap<>();
+	private Set<K> hotKeys = Set.of();
+	private int sampleCountdown = 1;
+	private int sampledItems;
+	private int sprayCounter;
+
+	// region stats
+	private long sprayedItems;
+	// endregion
+
+	private HotKeySharder(Function<T, K> keyFunction) {
+		this.keyFunction = keyFunction;
+	}
+
+	public static <T, K> HotKeySharder<T, K> create(Function<T, K> keyFunction) {
+		return builder(keyFunction).build();
+	}
+
+	public static <T, K> HotKeySharder<T, K>.Builder builder(Function<T, K> keyFunction) {
+		return new HotKeySharder<>(keyFunction).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, HotKeySharder<T, K>> {
+		private Builder() {}
+
+		/**
+		 * Enables spraying of hot keys across a given number of outputs
+		 */
+		public Builder withHotKeyReplicas(int replicas) {
+			checkNotBuilt(this);
+			checkArgument(replicas > 0, "Number of replicas should be positive");
+			HotKeySharder.this.replicas = replicas;
+			return this;
+		}
+
+		/**
+		 * Sets a minimal share of sampled items that makes a key hot
+		 */
+		public Builder withHotKeyThreshold(double hotKeyThreshold) {
+			checkNotBuilt(this);
+			checkArgument(hotKeyThreshold > 0 && hotKeyThreshold < 1, "Hot key threshold should be in range (0, 1)");
+			HotKeySharder.this.hotKeyThreshold = hotKeyThreshold;
+			return this;
+		}
+
+		/**
+		 * Sets sampling of items: one of each {@code sampleRate} items is sampled,
+		 * and a set of hot keys is recalculated each {@code sampleWindow} sampled items
+		 */
+		public Builder withSampling(int sampleRate, int sampleWindow) {
+			checkNotBuilt(this);
+			checkArgument(sampleRate > 0 && sampleWindow > 0, "Sample rate and window should be positive");
+			HotKeySharder.this.sampleRate = sampleRate;
+			HotKeySharder.this.sampleWindow = sampleWindow;
+			return this;
+		}
+
+		public Builder withMaxTrackedKeys(int maxTrackedKeys) {
+			checkNotBuilt(this);
+			checkArgument(maxTrackedKeys > 0, "Number of tracked keys should be positive");
+			HotKeySharder.this.maxTrackedKeys = maxTrackedKeys;
+			return this;
+		}
+
+		@Override
+		protected HotKeySharder<T, K> doBuild() {
+			return HotKeySharder.this;
+		}
+	}
+
+	@Override
+	public StreamDataAcceptor<T> apply(StreamDataAcceptor<T>[] acceptors) {
+		if (replicas == 1) {
+			return item -> acceptors[shard(keyFunction.apply(item), acceptors.length)].accept(item);
+		}
+		return item -> {
+			K key = keyFunction.apply(item);
+			int shard = shard(key, acceptors.length);
+			if (--sampleCountdown == 0) {
+				sampleCountdown = sampleRate;
+				sample(key);
+			}
+			if (!hotKeys.isEmpty() && hotKeys.contains(key)) {
+				shard = (shard + sprayCounter) % acceptors.length;
+				sprayCounter = (sprayCounter + 1) % replicas;
+				sprayedItems++;
+			}
+			acceptors[shard].accept(item);
+		};
+	}
+
+	private static int shard(Object key, int shards) {
+		return (murmur3hash(Objects.hashCode(key)) & Integer.MAX_VALUE) % shards;
+	}
+
+	private void sample(K key) {
+		int[] counter = counters.get(key);
+		if (counter != null) {
+			counter[0]++;
+		} else if (counters.size() < maxTrackedKeys) {
+			counters.put(key, new int[]{1});
+		} else {
+			Iterator<int[]> iterator = counters.values().iterator();
+			while (iterator.hasNext()) {
+				if (--iterator.next()[0] == 0) {
+					iterator.remove();
+				}
+			}
+		}
+
+		if (++sampledItems < sampleWindow) return;
+
+		Set<K> newHotKeys = new HashSet<>();
+		for (Map.Entry<K, int[]> entry : counters.entrySet()) {
+			if (entry.getValue()[0] >= hotKeyThreshold * sampledItems) {
+				newHotKeys.add(entry.getKey());
+			}
+		}
+		hotKeys = newHotKeys;
+		counters.clear();
+		sampledItems = 0;
+	}
+
+	/**
+	 * Returns keys which are currently considered hot
+	 */
+	public Set<K> getHotKeys() {
+		return Collections.unmodifiableSet(hotKeys);
+	}
+
+	public long getSprayedItems() {
+		return sprayedItems;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table with linear probing, primitive {@code long} keys and non-null values.
+ * <p>
+ * Besides the usual map operations, the table exposes its slots, so that a value
+ * can be looked up and then replaced or inserted without probing the table twice.
+ * A slot stays valid until the next insertion or removal.
+ */
+public final class LongHashTable<V> {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final long seed;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private Object[] values = new Object[INITIAL_CAPACITY];
+	private int mask = INITIAL_CAPACITY - 1;
+	private int size;
+
+	private LongHashTable(long seed) {
+		this.seed = seed;
+	}
+
+	public static <V> LongHashTable<V> create() {
+		return new LongHashTable<>(0);
+	}
+
+	/**
+	 * Creates a table whose hash function is mixed with a given seed.
+	 * Tables with different seeds distribute the same keys differently.
+	 */
+	public static <V> LongHashTable<V> create(long seed) {
+		return new LongHashTable<>(seed);
+	}
+
+	public @Nullable V get(long key) {
+		return valueAt(slot(key));
+	}
+
+	public void put(long key, V value) {
+		int slot = slot(key);
+		if (values[slot] != null) {
+			values[slot] = value;
+		} else {
+			insertAt(slot, key, value);
+		}
+	}
+
+	public void remove(long key) {
+		int slot = slot(key);
+		if (values[slot] == null) return;
+		values[slot] = null;
+		size--;
+		// shifts following entries of the same probe sequence backwards
+		int hole = slot;
+		for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+			int home = (int) hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				values[next] = null;
+				hole = next;
+			}
+		}
+	}
+
+	/**
+	 * Returns a slot which holds a given key, or an empty slot where the key would be inserted
+	 */
+	public int slot(long key) {
+		int slot = (int) hash(key) & mask;
+		while (values[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Inserts a new entry into an empty slot returned by {@link #slot(long)} for the same key
+	 */
+	public void insertAt(int slot, long key, V value) {
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > (mask >>> 1) + (mask >>> 2)) {
+			resize(values.length << 1);
+		}
+	}
+
+	/**
+	 * Replaces a value of a non-empty slot
+	 */
+	public void setValueAt(int slot, V value) {
+		values[slot] = value;
+	}
+
+	public long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	/**
+	 * Returns a value at a given slot, or {@code null} if the slot is empty
+	 */
+	public @Nullable V valueAt(int slot) {
+		//noinspection unchecked
+		return (V) values[slot];
+	}
+
+	public long hashAt(int slot) {
+		return hash(keys[slot]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a number of slots, all slots are in range from {@code 0} to {@code capacity() - 1}
+	 */
+	public int capacity() {
+		return values.length;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			Object value = oldValues[i];
+			if (value == null) continue;
+			int slot = slot(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			values[slot] = value;
+		}
+	}
+
+	private long hash(long key) {
+		long h = key ^ seed * 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+}
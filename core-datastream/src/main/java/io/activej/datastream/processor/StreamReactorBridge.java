@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor;
+
+import io.activej.common.concurrent.SpscRingBuffer;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.Reactor;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transfers items of a stream from one reactor to another through a single-producer/single-consumer ring buffer.
+ * <p>
+ * An input lives in an input reactor and an output lives in an output reactor.
+ * Items are passed without tasks being executed on any reactor per item or per batch:
+ * <ul>
+ *     <li>an output is woken up only when it has run out of items and parked,
+ *     and only once per tick of an input reactor</li>
+ *     <li>an input is suspended when a ring buffer is full, and it is resumed only after
+ *     an output has freed at least a half of the ring buffer (credits)</li>
+ * </ul>
+ *
+ * @param <T> type of items
+ */
+public final class StreamReactorBridge<T> {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final SpscRingBuffer<T> ring;
+	private final int creditThreshold;
+
+	private final Input input;
+	private final Output output;
+
+	private final AtomicBoolean outputParked = new AtomicBoolean();
+	private final AtomicBoolean inputParked = new AtomicBoolean();
+	private volatile boolean endOfStream;
+
+	private StreamReactorBridge(Reactor inputReactor, Reactor outputReactor, int capacity) {
+		this.ring = new SpscRingBuffer<>(capacity);
+		this.creditThreshold = Math.max(1, capacity / 2);
+		this.input = Reactor.executeWithReactor(inputReactor, () -> new Input());
+		this.output = Reactor.executeWithReactor(outputReactor, () -> new Output());
+	}
+
+	/**
+	 * Creates a new bridge
+	 *
+	 * @param inputReactor  a reactor of an input
+	 * @param outputReactor a reactor of an output
+	 * @param capacity      a capacity of a ring buffer, should be a power of 2
+	 */
+	public static <T> StreamReactorBridge<T> create(Reactor inputReactor, Reactor outputReactor, int capacity) {
+		return new StreamReactorBridge<>(inputReactor, outputReactor, capacity);
+	}
+
+	public static <T> StreamReactorBridge<T> create(Reactor inputReactor, Reactor outputReactor) {
+		return new StreamReactorBridge<>(inputReactor, outputReactor, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Returns an input, which should be used in an input reactor
+	 */
+	public StreamConsumer<T> getInput() {
+		return input;
+	}
+
+	/**
+	 * Returns an output, which should be used in an output reactor
+	 */
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	public final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		// items which were sent after the input had been suspended
+		private final ArrayDeque<T> overflow = new ArrayDeque<>();
+		private boolean publishPosted;
+
+		@Override
+		protected void onInit() {
+			reactor.startExternalTask();
+		}
+
+		@Override
+		public void accept(T item) {
+			if (!overflow.isEmpty() || !ring.offer(item)) {
+				overflow.add(item);
+				return;
+			}
+			if (ring.size() == ring.capacity()) {
+				park();
+			} else if (!publishPosted) {
+				publishPosted = true;
+				reactor.post(this::publish);
+			}
+		}
+
+		private void publish() {
+			publishPosted = false;
+			wakeUpOutput();
+		}
+
+		private void park() {
+			suspend();
+			wakeUpOutput();
+			inputParked.set(true);
+			VarHandle.fullFence();
+			if (ring.capacity() - ring.size() >= creditThreshold && inputParked.compareAndSet(true, false)) {
+				onCredit();
+			}
+		}
+
+		/**
+		 * Called when an output has been started or has freed enough space in a ring buffer
+		 */
+		private void onCredit() {
+			if (isComplete()) return;
+			while (!overflow.isEmpty()) {
+				if (!ring.offer(overflow.peek())) {
+					park();
+					return;
+				}
+				overflow.poll();
+			}
+			if (isEndOfStream()) {
+				sendEndOfStream();
+			} else {
+				resume(this);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (overflow.isEmpty()) {
+				sendEndOfStream();
+			}
+		}
+
+		private void sendEndOfStream() {
+			endOfStream = true;
+			wakeUpOutput();
+		}
+
+		private void wakeUpOutput() {
+			VarHandle.fullFence();
+			if (outputParked.get() && outputParked.compareAndSet(true, false)) {
+				output.execute(output::drain);
+			}
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			output.execute(() -> output.closeEx(e));
+		}
+
+		@Override
+		protected void onComplete() {
+			reactor.completeExternalTask();
+		}
+
+		@Override
+		protected void onCleanup() {
+			overflow.clear();
+		}
+
+		void execute(Runnable runnable) {
+			reactor.execute(runnable);
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<T> {
+		@Override
+		protected void onInit() {
+			reactor.startExternalTask();
+		}
+
+		@Override
+		protected void onStarted() {
+			input.execute(input::onCredit);
+		}
+
+		@Override
+		protected void onResumed() {
+			drain();
+		}
+
+		private void drain() {
+			int budget = ring.capacity();
+			while (isReady()) {
+				boolean endOfStream = StreamReactorBridge.this.endOfStream;
+				T item = ring.poll();
+				if (item == null) {
+					if (endOfStream) {
+						sendEndOfStream();
+						return;
+					}
+					outputParked.set(true);
+					VarHandle.fullFence();
+					if (ring.isEmpty() && !StreamReactorBridge.this.endOfStream || !outputParked.compareAndSet(true, false)) {
+						break;
+					}
+					continue;
+				}
+				send(item);
+				if (--budget == 0) {
+					reactor.post(this::drain);
+					break;
+				}
+			}
+			returnCredit();
+		}
+
+		private void returnCredit() {
+			VarHandle.fullFence();
+			if (inputParked.get() && ring.capacity() - ring.size() >= creditThreshold && inputParked.compareAndSet(true, false)) {
+				input.execute(input::onCredit);
+			}
+		}
+
+		@Override
+		protected void onAcknowledge() {
+			input.execute(input::acknowledge);
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			input.execute(() -> input.closeEx(e));
+		}
+
+		@Override
+		protected void onComplete() {
+			reactor.completeExternalTask();
+		}
+
+		@Override
+		protected void onCleanup() {
+			//noinspection StatementWithEmptyBody
+			while (ring.poll() != null) {
+			}
+		}
+
+		void execute(Runnable runnable) {
+			reactor.execute(runnable);
+		}
+	}
+}
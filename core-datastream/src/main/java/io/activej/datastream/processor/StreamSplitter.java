@@ -17,6 +17,7 @@
 package io.activej.datastream.processor;
 
 import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
 import io.activej.datastream.consumer.AbstractStreamConsumer;
 import io.activej.datastream.consumer.StreamConsumer;
 import io.activej.datastream.dsl.HasStreamInput;
@@ -26,18 +27,24 @@ import io.activej.datastream.supplier.StreamDataAcceptor;
 import io.activej.datastream.supplier.StreamSupplier;
 import io.activej.reactor.ImplicitlyReactive;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+import static io.activej.common.Checks.checkArgument;
 import static io.activej.common.Checks.checkState;
 import static io.activej.reactor.Reactive.checkInReactorThread;
 
 /**
  * It is Stream Transformer which divides input stream  into groups with some key
  * function, and sends obtained streams to consumers.
+ * <p>
+ * By default, the input is suspended as soon as any of the outputs is suspended.
+ * If an output buffer size is set, items for a suspended output are buffered
+ * up to that size, so that other outputs keep receiving data while a slow output catches up.
  *
  * @param <I> type of input items
  * @param <O> type of output items
@@ -52,6 +59,8 @@ public final class StreamSplitter<I, O> extends ImplicitlyReactive implements Ha
 
 	private StreamDataAcceptor<O>[] dataAcceptors = new StreamDataAcceptor[8];
 
+	private int outputBufferSize;
+
 	private boolean started;
 	private int completed;
 
@@ -61,13 +70,40 @@ public final class StreamSplitter<I, O> extends ImplicitlyReactive implements Ha
 	}
 
 	public static <I, O> StreamSplitter<I, O> create(BiConsumer<I, StreamDataAcceptor<O>[]> action) {
-		return create(acceptors -> item -> action.accept(item, acceptors));
+		return StreamSplitter.<I, O>builder(action).build();
 	}
 
 	public static <I, O> StreamSplitter<I, O> create(Function<StreamDataAcceptor<O>[], StreamDataAcceptor<I>> acceptorFactory) {
-		StreamSplitter<I, O> streamSplitter = new StreamSplitter<>(acceptorFactory);
-		streamSplitter.getReactor().post(streamSplitter::start);
-		return streamSplitter;
+		return builder(acceptorFactory).build();
+	}
+
+	public static <I, O> StreamSplitter<I, O>.Builder builder(BiConsumer<I, StreamDataAcceptor<O>[]> action) {
+		return builder(acceptors -> item -> action.accept(item, acceptors));
+	}
+
+	public static <I, O> StreamSplitter<I, O>.Builder builder(Function<StreamDataAcceptor<O>[], StreamDataAcceptor<I>> acceptorFactory) {
+		return new StreamSplitter<>(acceptorFactory).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamSplitter<I, O>> {
+		private Builder() {}
+
+		/**
+		 * Sets a maximum number of items buffered for each suspended output.
+		 * The input is suspended only when a buffer of some output is full.
+		 */
+		public Builder withOutputBufferSize(int outputBufferSize) {
+			checkNotBuilt(this);
+			checkArgument(outputBufferSize >= 0, "Output buffer size should not be negative");
+			StreamSplitter.this.outputBufferSize = outputBufferSize;
+			return this;
+		}
+
+		@Override
+		protected StreamSplitter<I, O> doBuild() {
+			getReactor().post(StreamSplitter.this::start);
+			return StreamSplitter.this;
+		}
 	}
 
 	public StreamSupplier<O> newOutput() {
@@ -127,15 +163,31 @@ public final class StreamSplitter<I, O> extends ImplicitlyReactive implements Ha
 	public class Output extends AbstractStreamSupplier<O> {
 		final int index = outputs.size();
 
+		private int bufferedItems;
+		private int maxBufferedItems;
+		private int suspends;
+		private long suspendTimestamp = -1;
+		private long suspendedMillis;
+
+		private final StreamDataAcceptor<O> countingAcceptor = item -> {
+			getBufferedDataAcceptor().accept(item);
+			if (++bufferedItems == outputBufferSize) {
+				sync();
+			}
+		};
+
 		@Override
 		protected void onResumed() {
+			updateStats();
 			dataAcceptors[index] = getDataAcceptor();
 			sync();
 		}
 
 		@Override
 		protected void onSuspended() {
-			dataAcceptors[index] = getBufferedDataAcceptor();
+			suspends++;
+			suspendTimestamp = reactor.currentTimeMillis();
+			dataAcceptors[index] = outputBufferSize == 0 ? getBufferedDataAcceptor() : countingAcceptor;
 			sync();
 		}
 
@@ -149,6 +201,20 @@ public final class StreamSplitter<I, O> extends ImplicitlyReactive implements Ha
 			complete();
 		}
 
+		@Override
+		protected void onComplete() {
+			updateStats();
+		}
+
+		private void updateStats() {
+			if (suspendTimestamp != -1) {
+				suspendedMillis += reactor.currentTimeMillis() - suspendTimestamp;
+				suspendTimestamp = -1;
+			}
+			maxBufferedItems = Math.max(maxBufferedItems, bufferedItems);
+			bufferedItems = 0;
+		}
+
 		protected final void sync() {
 			StreamSplitter.this.sync();
 		}
@@ -160,7 +226,33 @@ public final class StreamSplitter<I, O> extends ImplicitlyReactive implements Ha
 		}
 
 		protected boolean canProceed() {
-			return isReady();
+			return isReady() || dataAcceptors[index] != null && bufferedItems < outputBufferSize;
+		}
+
+		/**
+		 * Returns a number of items buffered for this output while it is suspended
+		 */
+		public int getBufferedItems() {
+			return bufferedItems;
+		}
+
+		public int getMaxBufferedItems() {
+			return Math.max(maxBufferedItems, bufferedItems);
+		}
+
+		public int getSuspends() {
+			return suspends;
+		}
+
+		/**
+		 * Returns a total time this output has spent in a suspended state
+		 */
+		public Duration getSuspendedTime() {
+			long millis = suspendedMillis;
+			if (suspendTimestamp != -1) {
+				millis += reactor.currentTimeMillis() - suspendTimestamp;
+			}
+			return Duration.ofMillis(millis);
 		}
 	}
 
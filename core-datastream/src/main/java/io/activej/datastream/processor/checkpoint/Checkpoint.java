@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.checkpoint;
+
+import java.util.Map;
+
+/**
+ * A consistent checkpoint of a pipeline
+ *
+ * @param id       an id of a checkpoint, ids of subsequent checkpoints are increasing
+ * @param position a number of source items which have passed a barrier before the checkpoint was taken
+ * @param states   serialized states of registered stages by their names
+ */
+public record Checkpoint(long id, long position, Map<String, byte[]> states) {
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.checkpoint;
+
+import io.activej.async.function.AsyncSupplier;
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.reactor.ImplicitlyReactive;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Takes consistent checkpoints of a pipeline, so that it may be resumed after a failure
+ * instead of reprocessing a whole input.
+ * <p>
+ * A {@link #barrier() barrier} is placed right after a source of a pipeline.
+ * Each given number of items, before passing the next item, the barrier saves states of all
+ * {@link #register registered} stages along with a number of items that have passed it.
+ * <p>
+ * A checkpoint is consistent only if all the items that have passed the barrier are reflected
+ * in the saved states. So before taking a checkpoint, the barrier stops passing items and waits
+ * until every registered stage is {@link Checkpointable#whenDrained() drained}, and every
+ * {@link #registerDrainCheck drain check} completes. Any stage between the barrier and the last
+ * registered stage which may hold items, like a buffer or an asynchronous mapper, should have
+ * a drain check registered, otherwise the items it holds at the moment of a checkpoint are lost
+ * after a restore. Such stages should drain on their own, without receiving more items.
+ * A checkpoint is taken in a reactor thread, and then it is saved to {@link ICheckpointStorage} asynchronously.
+ * <p>
+ * To resume a pipeline, the same stages should be registered and {@link #restore()} should be called
+ * before the pipeline is started. Then a barrier skips as many items as have already been processed,
+ * so a source should supply the same items in the same order after a restart.
+ * Items which have been sent downstream after the last checkpoint are processed again,
+ * so consumers after the last registered stage should tolerate duplicates.
+ */
+public final class CheckpointCoordinator extends ImplicitlyReactive {
+	private static final Logger logger = getLogger(CheckpointCoordinator.class);
+	private static final boolean CHECKS = Checks.isEnabled(CheckpointCoordinator.class);
+
+	public static final long DEFAULT_CHECKPOINT_INTERVAL = 100_000;
+
+	private final ICheckpointStorage storage;
+	private final Map<String, Checkpointable> stages = new LinkedHashMap<>();
+	private final List<AsyncSupplier<Void>> drainChecks = new ArrayList<>();
+
+	private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	private @Nullable Barrier<?> barrier;
+	private boolean started;
+	private long lastCheckpointId;
+	private long restoredPosition;
+	private long position;
+	private long nextCheckpointPosition;
+	private @Nullable Promise<Void> savePromise;
+
+	// region stats
+	private long checkpoints;
+	private long failedCheckpoints;
+	private long lastCheckpointPosition;
+	// endregion
+
+	private CheckpointCoordinator(ICheckpointStorage storage) {
+		this.storage = storage;
+	}
+
+	public static CheckpointCoordinator create(ICheckpointStorage storage) {
+		return builder(storage).build();
+	}
+
+	public static CheckpointCoordinator.Builder builder(ICheckpointStorage storage) {
+		return new CheckpointCoordinator(storage).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, CheckpointCoordinator> {
+		private Builder() {}
+
+		/**
+		 * Sets a number of items passed by a barrier between two checkpoints
+		 */
+		public Builder withCheckpointInterval(long checkpointInterval) {
+			checkNotBuilt(this);
+			checkArgument(checkpointInterval > 0, "Checkpoint interval should be positive");
+			CheckpointCoordinator.this.checkpointInterval = checkpointInterval;
+			return this;
+		}
+
+		@Override
+		protected CheckpointCoordinator doBuild() {
+			nextCheckpointPosition = checkpointInterval;
+			return CheckpointCoordinator.this;
+		}
+	}
+
+	/**
+	 * Registers a stage whose state is saved in each checkpoint under a given name
+	 */
+	public CheckpointCoordinator register(String name, Checkpointable stage) {
+		if (CHECKS) checkInReactorThread(this);
+		checkState(!started, "Cannot register stages after a pipeline has been started");
+		checkState(!stages.containsKey(name), "Stage '" + name + "' is already registered");
+		stages.put(name, stage);
+		return this;
+	}
+
+	/**
+	 * Registers a check of a stateless stage which may hold items between a barrier
+	 * and registered stages. A checkpoint is postponed until a promise returned by the check completes.
+	 */
+	public CheckpointCoordinator registerDrainCheck(AsyncSupplier<Void> whenDrained) {
+		if (CHECKS) checkInReactorThread(this);
+		checkState(!started, "Cannot register drain checks after a pipeline has been started");
+		drainChecks.add(whenDrained);
+		return this;
+	}
+
+	/**
+	 * Creates a barrier which should be placed right after a source of a pipeline.
+	 * There may only be one barrier per coordinator.
+	 */
+	public <T> StreamTransformer<T, T> barrier() {
+		if (CHECKS) checkInReactorThread(this);
+		checkState(barrier == null, "Barrier has already been created");
+		Barrier<T> barrier = new Barrier<>();
+		this.barrier = barrier;
+		return barrier;
+	}
+
+	/**
+	 * Loads the last checkpoint from the storage and restores states of registered stages.
+	 * Should be called before a pipeline is started.
+	 *
+	 * @return a restored checkpoint, or {@code null} if there are no checkpoints
+	 */
+	public Promise<@Nullable Checkpoint> restore() {
+		if (CHECKS) checkInReactorThread(this);
+		return storage.loadLast()
+			.whenResult(checkpoint -> {
+				if (checkpoint == null) return;
+				checkState(!started, "Cannot restore a checkpoint after a pipeline has been started");
+				for (Map.Entry<String, Checkpointable> entry : stages.entrySet()) {
+					byte[] state = checkpoint.states().get(entry.getKey());
+					if (state == null) {
+						throw new IOException("Checkpoint " + checkpoint.id() + " has no state of stage '" + entry.getKey() + '\'');
+					}
+					try (StreamInput input = StreamInput.create(new ByteArrayInputStream(state))) {
+						entry.getValue().restoreState(input);
+					}
+				}
+				lastCheckpointId = checkpoint.id();
+				restoredPosition = checkpoint.position();
+				lastCheckpointPosition = checkpoint.position();
+				nextCheckpointPosition = restoredPosition + checkpointInterval;
+				logger.info("Restored checkpoint {} at position {}", checkpoint.id(), checkpoint.position());
+			});
+	}
+
+	/**
+	 * Requests a checkpoint to be taken before the next item passes a barrier
+	 */
+	public void requestCheckpoint() {
+		if (CHECKS) checkInReactorThread(this);
+		nextCheckpointPosition = Math.max(position, restoredPosition);
+	}
+
+	private Promise<Void> whenDrained() {
+		List<Promise<Void>> notDrained = null;
+		for (Checkpointable stage : stages.values()) {
+			notDrained = addNotDrained(notDrained, stage.whenDrained());
+		}
+		for (AsyncSupplier<Void> drainCheck : drainChecks) {
+			notDrained = addNotDrained(notDrained, drainCheck.get());
+		}
+		return notDrained == null ? Promise.complete() : Promises.all(notDrained);
+	}
+
+	private static @Nullable List<Promise<Void>> addNotDrained(@Nullable List<Promise<Void>> notDrained, Promise<Void> drained) {
+		if (drained.isResult()) return notDrained;
+		if (notDrained == null) notDrained = new ArrayList<>();
+		notDrained.add(drained);
+		return notDrained;
+	}
+
+	private void checkpoint() {
+		nextCheckpointPosition = position + checkpointInterval;
+		Map<String, byte[]> states = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<String, Checkpointable> entry : stages.entrySet()) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				try (StreamOutput output = StreamOutput.create(baos)) {
+					entry.getValue().saveState(output);
+				}
+				states.put(entry.getKey(), baos.toByteArray());
+			}
+		} catch (IOException e) {
+			logger.warn("Could not take a checkpoint at position {}", position, e);
+			failedCheckpoints++;
+			return;
+		}
+
+		Checkpoint checkpoint = new Checkpoint(lastCheckpointId + 1, position, states);
+		Promise<Void> savePromise = storage.save(checkpoint)
+			.whenResult(() -> {
+				lastCheckpointId = checkpoint.id();
+				lastCheckpointPosition = checkpoint.position();
+				checkpoints++;
+			})
+			.whenException(e -> {
+				logger.warn("Could not save checkpoint {}", checkpoint.id(), e);
+				failedCheckpoints++;
+			})
+			.whenComplete(() -> this.savePromise = null);
+		if (!savePromise.isComplete()) {
+			this.savePromise = savePromise;
+		}
+	}
+
+	private final class Barrier<T> extends ImplicitlyReactive implements StreamTransformer<T, T> {
+		private final Input input = new Input();
+		private final Output output = new Output();
+
+		// items received while the barrier waits for a pipeline to be drained, or for an output to be resumed
+		private final ArrayDeque<T> pending = new ArrayDeque<>();
+		private boolean drainAwaited;
+
+		Barrier() {
+			input.getAcknowledgement()
+				.whenException(output::closeEx);
+			output.getAcknowledgement()
+				.whenResult(input::acknowledge)
+				.whenException(input::closeEx);
+		}
+
+		@Override
+		public StreamConsumer<T> getInput() {
+			return input;
+		}
+
+		@Override
+		public StreamSupplier<T> getOutput() {
+			return output;
+		}
+
+		private final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+			@Override
+			protected void onStarted() {
+				started = true;
+				sync();
+			}
+
+			@Override
+			public void accept(T item) {
+				if (position < restoredPosition) {
+					position++;
+					return;
+				}
+				StreamDataAcceptor<T> acceptor = output.getDataAcceptor();
+				if (acceptor == null || !pending.isEmpty() || !isReadyToPass()) {
+					pending.addLast(item);
+					suspend();
+					return;
+				}
+				position++;
+				acceptor.accept(item);
+			}
+
+			@Override
+			protected void onEndOfStream() {
+				flush();
+			}
+		}
+
+		private final class Output extends AbstractStreamSupplier<T> {
+			@Override
+			protected void onResumed() {
+				flush();
+			}
+
+			@Override
+			protected void onSuspended() {
+				input.suspend();
+			}
+		}
+
+		/**
+		 * Takes a checkpoint if it is due and the pipeline is drained.
+		 * Returns {@code false} if the next item should wait for the pipeline to be drained.
+		 */
+		private boolean isReadyToPass() {
+			if (position < nextCheckpointPosition || savePromise != null) return true;
+			if (drainAwaited) return false;
+			Promise<Void> drained = whenDrained();
+			if (drained.isResult()) {
+				checkpoint();
+				return true;
+			}
+			drainAwaited = true;
+			drained
+				.whenResult(() -> {
+					drainAwaited = false;
+					flush();
+				})
+				.whenException(output::closeEx);
+			return false;
+		}
+
+		private void flush() {
+			while (!pending.isEmpty()) {
+				StreamDataAcceptor<T> acceptor = output.getDataAcceptor();
+				if (acceptor == null || !isReadyToPass()) return;
+				position++;
+				acceptor.accept(pending.removeFirst());
+			}
+			if (input.isEndOfStream()) {
+				output.sendEndOfStream();
+			} else {
+				sync();
+			}
+		}
+
+		private void sync() {
+			if (output.isReady()) {
+				input.resume(input);
+			} else {
+				input.suspend();
+			}
+		}
+	}
+
+	/**
+	 * Returns a number of items which have passed a barrier, including skipped ones
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long getLastCheckpointId() {
+		return lastCheckpointId;
+	}
+
+	public long getLastCheckpointPosition() {
+		return lastCheckpointPosition;
+	}
+
+	public long getCheckpoints() {
+		return checkpoints;
+	}
+
+	public long getFailedCheckpoints() {
+		return failedCheckpoints;
+	}
+}
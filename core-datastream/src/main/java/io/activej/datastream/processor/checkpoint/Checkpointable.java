@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.checkpoint;
+
+import io.activej.promise.Promise;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * A stateful stream stage whose state may be saved into a checkpoint
+ * and restored from it when a pipeline is resumed.
+ *
+ * @see CheckpointCoordinator
+ */
+public interface Checkpointable {
+	/**
+	 * Writes a current state of this stage.
+	 * It is called by a barrier between two items, in a reactor thread.
+	 *
+	 * @throws IOException if a state cannot be saved at the moment
+	 */
+	void saveState(StreamOutput output) throws IOException;
+
+	/**
+	 * Replaces a state of this stage with a previously saved one.
+	 * It is called before a stage starts receiving items.
+	 */
+	void restoreState(StreamInput input) throws IOException;
+
+	/**
+	 * Returns a promise which completes once every item accepted by this stage is reflected in its state,
+	 * and there are no results waiting to be sent downstream.
+	 * A checkpoint is postponed until every registered stage is drained.
+	 */
+	default Promise<Void> whenDrained() {
+		return Promise.complete();
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.checkpoint;
+
+import io.activej.common.annotation.ComponentInterface;
+import io.activej.promise.Promise;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A durable storage of pipeline checkpoints.
+ * A checkpoint should either be saved completely or not saved at all.
+ */
+@ComponentInterface
+public interface ICheckpointStorage {
+	/**
+	 * Saves a checkpoint, it may replace older checkpoints
+	 */
+	Promise<Void> save(Checkpoint checkpoint);
+
+	/**
+	 * Loads a checkpoint with the greatest id, or {@code null} if there are no checkpoints
+	 */
+	Promise<@Nullable Checkpoint> loadLast();
+}
@@ -0,0 +1,628 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.join;
+
+import io.activej.async.AsyncAccumulator;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.dsl.HasStreamInputs;
+import io.activej.datastream.dsl.HasStreamOutput;
+import io.activej.datastream.processor.transformer.sort.IStreamSorterStorage;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.promise.Promise;
+import io.activej.reactor.ImplicitlyReactive;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Represents an object which has left and right consumers and one supplier. Unlike {@link StreamLeftJoin},
+ * inputs do not need to be sorted.
+ * <p>
+ * The right input is a build side: it is fully consumed into a hash table first, so it should be
+ * the smaller of the two inputs. Only then the left input is consumed and each left item is probed
+ * against the table. Results are produced with a {@link LeftJoiner} according to a {@link JoinType}.
+ * <p>
+ * If spilling is enabled and the build side exceeds a maximum number of items in memory,
+ * a grace hash join is performed: both inputs are hash-partitioned into temporary storages,
+ * and then each pair of partitions is joined in memory. A build partition which still does not fit
+ * in memory (for example, because of skewed keys) is partitioned again with a different hash function.
+ */
+public final class StreamHashJoin<K, L, R, V> extends ImplicitlyReactive implements HasStreamInputs, HasStreamOutput<V> {
+	private static final Logger logger = getLogger(StreamHashJoin.class);
+
+	public static final int DEFAULT_SPILL_PARTITIONS = 16;
+	public static final int DEFAULT_MAX_SPILL_LEVELS = 4;
+
+	public enum JoinType {
+		/**
+		 * Calls {@link LeftJoiner#onInnerJoin} for each matching pair of items
+		 */
+		INNER,
+		/**
+		 * Calls {@link LeftJoiner#onInnerJoin} for each matching pair of items,
+		 * and {@link LeftJoiner#onOuterJoin} for each left item without a match
+		 */
+		LEFT,
+		/**
+		 * Calls {@link LeftJoiner#onInnerJoin} once for each left item which has a match
+		 */
+		SEMI,
+		/**
+		 * Calls {@link LeftJoiner#onOuterJoin} for each left item without a match
+		 */
+		ANTI
+	}
+
+	private final JoinType joinType;
+	private final Function<L, K> leftKeyFunction;
+	private final Function<R, K> rightKeyFunction;
+	private final LeftJoiner<K, L, R, V> leftJoiner;
+
+	private @Nullable IStreamSorterStorage<L> leftStorage;
+	private @Nullable IStreamSorterStorage<R> rightStorage;
+	private int maxBuildItemsInMemory = Integer.MAX_VALUE;
+	private int spillPartitions = DEFAULT_SPILL_PARTITIONS;
+	private int maxSpillLevels = DEFAULT_MAX_SPILL_LEVELS;
+
+	// values are either build items or lists of build items with duplicate keys
+	private final Map<K, Object> table = new HashMap<>();
+	private int tableItems;
+	private int peakTableItems;
+
+	private final LeftInput left;
+	private final RightInput right;
+	private final Output output;
+
+	private @Nullable Probe probe;
+
+	private @Nullable Spill<L> leftSpill;
+	private @Nullable Spill<R> rightSpill;
+	private final List<Spill<?>> spills = new ArrayList<>();
+
+	private StreamHashJoin(
+		JoinType joinType, Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+		LeftJoiner<K, L, R, V> leftJoiner
+	) {
+		this.joinType = joinType;
+		this.leftKeyFunction = leftKeyFunction;
+		this.rightKeyFunction = rightKeyFunction;
+		this.leftJoiner = leftJoiner;
+		this.left = new LeftInput();
+		this.right = new RightInput();
+		this.output = new Output();
+	}
+
+	/**
+	 * Creates a new instance of StreamHashJoin
+	 *
+	 * @param joinType         type of join
+	 * @param leftKeyFunction  function for counting keys of left stream
+	 * @param rightKeyFunction function for counting keys of right stream
+	 * @param leftJoiner       joiner which will join streams
+	 */
+	public static <K, L, R, V> StreamHashJoin<K, L, R, V> create(
+		JoinType joinType, Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+		LeftJoiner<K, L, R, V> leftJoiner
+	) {
+		return builder(joinType, leftKeyFunction, rightKeyFunction, leftJoiner).build();
+	}
+
+	/**
+	 * Creates a builder of StreamHashJoin
+	 *
+	 * @see #create(JoinType, Function, Function, LeftJoiner)
+	 */
+	public static <K, L, R, V> StreamHashJoin<K, L, R, V>.Builder builder(
+		JoinType joinType, Function<L, K> leftKeyFunction, Function<R, K> rightKeyFunction,
+		LeftJoiner<K, L, R, V> leftJoiner
+	) {
+		return new StreamHashJoin<>(joinType, leftKeyFunction, rightKeyFunction, leftJoiner).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamHashJoin<K, L, R, V>> {
+		private Builder() {}
+
+		/**
+		 * Enables a grace hash join once the right input exceeds a given number of items
+		 *
+		 * @param leftStorage           storage for partitions of the left input
+		 * @param rightStorage          storage for partitions of the right input
+		 * @param maxBuildItemsInMemory number of right items which can be held in memory
+		 */
+		public Builder withSpilling(
+			IStreamSorterStorage<L> leftStorage, IStreamSorterStorage<R> rightStorage, int maxBuildItemsInMemory
+		) {
+			checkNotBuilt(this);
+			checkArgument(maxBuildItemsInMemory > 0, "Maximum number of items in memory should be positive");
+			StreamHashJoin.this.leftStorage = leftStorage;
+			StreamHashJoin.this.rightStorage = rightStorage;
+			StreamHashJoin.this.maxBuildItemsInMemory = maxBuildItemsInMemory;
+			return this;
+		}
+
+		public Builder withSpillPartitions(int spillPartitions) {
+			checkNotBuilt(this);
+			checkArgument(spillPartitions > 1, "Number of spill partitions should be greater than 1");
+			StreamHashJoin.this.spillPartitions = spillPartitions;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum depth of recursive spilling. A build partition which does not fit in memory
+		 * on the last level is joined in memory regardless of the limit.
+		 */
+		public Builder withMaxSpillLevels(int maxSpillLevels) {
+			checkNotBuilt(this);
+			checkArgument(maxSpillLevels >= 0, "Maximum number of spill levels should not be negative");
+			StreamHashJoin.this.maxSpillLevels = maxSpillLevels;
+			return this;
+		}
+
+		@Override
+		protected StreamHashJoin<K, L, R, V> doBuild() {
+			return StreamHashJoin.this;
+		}
+	}
+
+	/**
+	 * Returns left (probe) stream
+	 */
+	public StreamConsumer<L> getLeft() {
+		return left;
+	}
+
+	/**
+	 * Returns right (build) stream
+	 */
+	public StreamConsumer<R> getRight() {
+		return right;
+	}
+
+	@Override
+	public List<? extends StreamConsumer<?>> getInputs() {
+		return List.of(left, right);
+	}
+
+	@Override
+	public StreamSupplier<V> getOutput() {
+		return output;
+	}
+
+	/**
+	 * Returns the largest number of build items which have been held in memory at once
+	 */
+	public int getPeakBuildItemsInMemory() {
+		return peakTableItems;
+	}
+
+	private abstract class Probe extends AbstractStreamConsumer<L> implements StreamDataAcceptor<L> {
+		@Override
+		public void accept(L item) {
+			K key = leftKeyFunction.apply(item);
+			Object match = table.get(key);
+			StreamDataAcceptor<V> acceptor = output.getBufferedDataAcceptor();
+			if (match == null) {
+				if (joinType == JoinType.LEFT || joinType == JoinType.ANTI) {
+					leftJoiner.onOuterJoin(key, item, acceptor);
+				}
+				return;
+			}
+			if (joinType == JoinType.ANTI) return;
+			if (!(match instanceof Matches matches)) {
+				//noinspection unchecked
+				leftJoiner.onInnerJoin(key, item, (R) match, acceptor);
+				return;
+			}
+			for (Object rightItem : matches) {
+				//noinspection unchecked
+				leftJoiner.onInnerJoin(key, item, (R) rightItem, acceptor);
+				if (joinType == JoinType.SEMI) return;
+			}
+		}
+	}
+
+	public final class LeftInput extends Probe {
+		@Override
+		protected void onStarted() {
+			output.getAcknowledgement()
+				.whenResult(this::acknowledge)
+				.whenException(this::closeEx);
+		}
+
+		@Override
+		public void accept(L item) {
+			if (leftSpill == null) {
+				super.accept(item);
+			} else {
+				leftSpill.add(item);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (right.isEndOfStream()) {
+				finish();
+			}
+		}
+
+		private void finish() {
+			if (leftSpill == null) {
+				probe = null;
+				output.sendEndOfStream();
+				return;
+			}
+			assert rightSpill != null;
+			Spill<L> leftSpill = StreamHashJoin.this.leftSpill;
+			rightSpill.finish()
+				.then(rightPartitions -> leftSpill.finish()
+					.then(leftPartitions -> joinPartitions(0, rightPartitions, leftPartitions)))
+				.whenResult(output::sendEndOfStream)
+				.whenException(output::closeEx);
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			output.closeEx(e);
+		}
+	}
+
+	public final class RightInput extends AbstractStreamConsumer<R> implements StreamDataAcceptor<R> {
+		@Override
+		protected void onStarted() {
+			output.getAcknowledgement()
+				.whenResult(this::acknowledge)
+				.whenException(this::closeEx);
+			resume(this);
+		}
+
+		@Override
+		public void accept(R item) {
+			if (rightSpill != null) {
+				rightSpill.add(item);
+				return;
+			}
+			build(item);
+			if (tableItems > maxBuildItemsInMemory && rightStorage != null) {
+				startSpilling();
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (rightSpill == null) {
+				probe = left;
+				if (output.isReady()) {
+					left.resume(left);
+				}
+			} else {
+				rightSpill.finish();
+				left.resume(left);
+			}
+			if (left.isEndOfStream()) {
+				left.finish();
+			}
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			output.closeEx(e);
+		}
+	}
+
+	/**
+	 * Builds a hash table of a spilled partition of the right input. Once the partition
+	 * exceeds a maximum number of items in memory, it is partitioned again on a next spill level.
+	 */
+	private final class PartitionBuild extends AbstractStreamConsumer<R> implements StreamDataAcceptor<R> {
+		final int level;
+		@Nullable Spill<R> spill;
+
+		PartitionBuild(int level) {
+			this.level = level;
+		}
+
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		public void accept(R item) {
+			if (spill != null) {
+				spill.add(item);
+				return;
+			}
+			build(item);
+			if (tableItems > maxBuildItemsInMemory && level < maxSpillLevels) {
+				logger.trace("Level {}: build partition exceeded {} items, spilling to {} partitions",
+					level, maxBuildItemsInMemory, spillPartitions);
+				spill = spillTable(level + 1, this);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			acknowledge();
+		}
+	}
+
+	/**
+	 * Partitions a spilled partition of the left input on a next spill level
+	 */
+	private final class PartitionSplit<T> extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		final Spill<T> spill;
+
+		PartitionSplit(IStreamSorterStorage<T> storage, Function<T, K> keyFunction, int level) {
+			this.spill = new Spill<>(storage, keyFunction, this, level);
+		}
+
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		public void accept(T item) {
+			spill.add(item);
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			acknowledge();
+		}
+	}
+
+	private final class PartitionProbe extends Probe {
+		@Override
+		protected void onStarted() {
+			if (output.isReady()) {
+				resume(this);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			acknowledge();
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<V> {
+		@Override
+		protected void onResumed() {
+			if (probe != null) {
+				probe.resume(probe);
+			}
+		}
+
+		@Override
+		protected void onSuspended() {
+			if (probe != null) {
+				probe.suspend();
+			}
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			left.closeEx(e);
+			right.closeEx(e);
+			if (probe != null) {
+				probe.closeEx(e);
+			}
+		}
+
+		@Override
+		protected void onCleanup() {
+			table.clear();
+			for (Spill<?> spill : spills) {
+				spill.cleanup();
+			}
+		}
+	}
+
+	private void build(R item) {
+		K key = rightKeyFunction.apply(item);
+		if (++tableItems > peakTableItems) {
+			peakTableItems = tableItems;
+		}
+		Object existing = table.putIfAbsent(key, item);
+		if (existing == null) return;
+		if (existing instanceof Matches matches) {
+			matches.add(item);
+			return;
+		}
+		Matches matches = new Matches();
+		matches.add(existing);
+		matches.add(item);
+		table.put(key, matches);
+	}
+
+	private void startSpilling() {
+		assert leftStorage != null;
+		logger.trace("Build side exceeded {} items, spilling to {} partitions", maxBuildItemsInMemory, spillPartitions);
+		rightSpill = spillTable(0, right);
+		leftSpill = new Spill<>(leftStorage, leftKeyFunction, left, 0);
+	}
+
+	/**
+	 * Moves build items of the table to a new spill of a given level
+	 */
+	private Spill<R> spillTable(int level, AbstractStreamConsumer<R> input) {
+		assert rightStorage != null;
+		Spill<R> spill = new Spill<>(rightStorage, rightKeyFunction, input, level);
+		for (Object value : table.values()) {
+			if (value instanceof Matches matches) {
+				for (Object item : matches) {
+					//noinspection unchecked
+					spill.add((R) item);
+				}
+			} else {
+				//noinspection unchecked
+				spill.add((R) value);
+			}
+		}
+		table.clear();
+		tableItems = 0;
+		return spill;
+	}
+
+	private Promise<Void> joinPartitions(int level, List<List<Integer>> rightPartitions, List<List<Integer>> leftPartitions) {
+		Promise<Void> result = Promise.complete();
+		for (int i = 0; i < spillPartitions; i++) {
+			List<Integer> rightFiles = rightPartitions.get(i);
+			List<Integer> leftFiles = leftPartitions.get(i);
+			result = result.then(() -> joinPartition(level, rightFiles, leftFiles));
+		}
+		return result;
+	}
+
+	private Promise<Void> joinPartition(int level, List<Integer> rightFiles, List<Integer> leftFiles) {
+		table.clear();
+		tableItems = 0;
+		if (leftFiles.isEmpty() || rightFiles.isEmpty() && (joinType == JoinType.INNER || joinType == JoinType.SEMI)) {
+			return Promise.complete();
+		}
+		assert leftStorage != null && rightStorage != null;
+		PartitionBuild partitionBuild = new PartitionBuild(level);
+		return StreamSuppliers.concat(rightFiles.stream().map(rightStorage::readStream).toList())
+			.streamTo(partitionBuild)
+			.then(() -> {
+				Spill<R> rightSplit = partitionBuild.spill;
+				if (rightSplit == null) {
+					PartitionProbe partitionProbe = new PartitionProbe();
+					probe = partitionProbe;
+					return StreamSuppliers.concat(leftFiles.stream().map(leftStorage::readStream).toList())
+						.streamTo(partitionProbe)
+						.whenResult(() -> probe = null);
+				}
+				PartitionSplit<L> leftSplit = new PartitionSplit<>(leftStorage, leftKeyFunction, level + 1);
+				return StreamSuppliers.concat(leftFiles.stream().map(leftStorage::readStream).toList())
+					.streamTo(leftSplit)
+					.then(rightSplit::finish)
+					.then(rightPartitions -> leftSplit.spill.finish()
+						.then(leftPartitions -> joinPartitions(level + 1, rightPartitions, leftPartitions)));
+			});
+	}
+
+	private static final class Matches extends ArrayList<Object> {
+	}
+
+	/**
+	 * Hash-partitions items of one of the inputs and writes partitions to a storage in chunks.
+	 * Each level of spilling uses a different hash function, so that keys of
+	 * a spilled partition are evenly distributed between subpartitions.
+	 */
+	private final class Spill<T> {
+		private final IStreamSorterStorage<T> storage;
+		private final Function<T, K> keyFunction;
+		private final AbstractStreamConsumer<T> input;
+		private final int level;
+
+		private final List<List<T>> buckets = new ArrayList<>();
+		private int bufferedItems;
+
+		private final List<Integer> partitionIds = new ArrayList<>();
+		private final AsyncAccumulator<List<List<Integer>>> writes;
+		private @Nullable Promise<List<List<Integer>>> finishPromise;
+
+		private Spill(IStreamSorterStorage<T> storage, Function<T, K> keyFunction, AbstractStreamConsumer<T> input, int level) {
+			this.storage = storage;
+			this.keyFunction = keyFunction;
+			this.input = input;
+			this.level = level;
+			spills.add(this);
+			List<List<Integer>> files = new ArrayList<>(spillPartitions);
+			for (int i = 0; i < spillPartitions; i++) {
+				buckets.add(new ArrayList<>());
+				files.add(new ArrayList<>());
+			}
+			this.writes = AsyncAccumulator.create(files);
+		}
+
+		void add(T item) {
+			buckets.get(partition(keyFunction.apply(item).hashCode())).add(item);
+			if (++bufferedItems >= maxBuildItemsInMemory) {
+				flush();
+			}
+		}
+
+		private void flush() {
+			for (int i = 0; i < spillPartitions; i++) {
+				List<T> bucket = buckets.get(i);
+				if (bucket.isEmpty()) continue;
+				buckets.set(i, new ArrayList<>());
+				int index = i;
+				writes.addPromise(
+					storage.newPartitionId()
+						.then(partitionId -> {
+							partitionIds.add(partitionId);
+							return storage.write(partitionId)
+								.then(consumer -> StreamSuppliers.ofIterable(bucket).streamTo(consumer))
+								.map($ -> partitionId);
+						})
+						.whenResult(this::suspendOrResume)
+						.whenException(output::closeEx),
+					(files, partitionId) -> files.get(index).add(partitionId));
+			}
+			bufferedItems = 0;
+			suspendOrResume();
+		}
+
+		private void suspendOrResume() {
+			if (writes.getActivePromises() > spillPartitions) {
+				input.suspend();
+			} else {
+				//noinspection unchecked
+				input.resume((StreamDataAcceptor<T>) input);
+			}
+		}
+
+		Promise<List<List<Integer>>> finish() {
+			if (finishPromise == null) {
+				flush();
+				finishPromise = writes.run();
+			}
+			return finishPromise;
+		}
+
+		private int partition(int hashCode) {
+			long h = hashCode ^ (level + 1) * 0x9E3779B97F4A7C15L;
+			h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+			h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+			h ^= h >>> 33;
+			return (int) (((h >>> 32) * spillPartitions) >>> 32);
+		}
+
+		void cleanup() {
+			if (!partitionIds.isEmpty()) {
+				storage.cleanup(partitionIds);
+			}
+		}
+	}
+}
@@ -0,0 +1,651 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.reducer;
+
+import io.activej.async.AsyncAccumulator;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.LongHashTable;
+import io.activej.datastream.processor.checkpoint.Checkpointable;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.processor.transformer.sort.IStreamSorterStorage;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.promise.Promise;
+import io.activej.reactor.ImplicitlyReactive;
+import io.activej.serializer.stream.StreamCodec;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static io.activej.datastream.processor.transformer.StreamTransformers.mapper;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Represents a {@link StreamTransformer} which groups unsorted items by key
+ * and reduces each group with a {@link ReducerToResult}.
+ * <p>
+ * Items are accumulated in an open-addressing hash table. Once the table holds
+ * the maximum number of keys, accumulators are hash-partitioned and written to
+ * {@link IStreamSorterStorage}. After the end of stream each partition is read back
+ * and combined with {@link ReducerToResult#combine}, spilling recursively
+ * (with a different hash function) if a partition still does not fit in memory.
+ * <p>
+ * Output order is not defined. Accumulators should be non-null and should
+ * provide a key they were created for, so that spilled accumulators may be combined.
+ * <p>
+ * If an accumulator codec is set, accumulators may be saved into checkpoints of a
+ * {@link io.activej.datastream.processor.checkpoint.CheckpointCoordinator}, as long as none of them have been spilled.
+ *
+ * @param <K> type of keys
+ * @param <I> type of input data
+ * @param <O> type of output data
+ * @param <A> type of accumulators
+ */
+public final class StreamHashAggregator<K, I, O, A> extends ImplicitlyReactive implements StreamTransformer<I, O>, Checkpointable {
+	private static final Logger logger = getLogger(StreamHashAggregator.class);
+
+	public static final int DEFAULT_SPILL_PARTITIONS = 16;
+	public static final int DEFAULT_MAX_SPILL_LEVELS = 4;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final TableFactory<K, I, A> tableFactory;
+	private final ReducerToResult<K, I, O, A> reducer;
+	private final IStreamSorterStorage<A> storage;
+	private final int maxKeysInMemory;
+
+	private int spillPartitions = DEFAULT_SPILL_PARTITIONS;
+	private int maxSpillLevels = DEFAULT_MAX_SPILL_LEVELS;
+	private @Nullable StreamCodec<A> accumulatorCodec;
+
+	private final List<Integer> partitionIds = new ArrayList<>();
+
+	private final Input input;
+	private final StreamSupplier<O> output;
+
+	private StreamHashAggregator(
+		TableFactory<K, I, A> tableFactory, ReducerToResult<K, I, O, A> reducer, IStreamSorterStorage<A> storage,
+		int maxKeysInMemory
+	) {
+		checkArgument(maxKeysInMemory > 0, "Maximum number of keys in memory should be positive");
+		this.tableFactory = tableFactory;
+		this.reducer = reducer;
+		this.storage = storage;
+		this.maxKeysInMemory = maxKeysInMemory;
+
+		this.input = new Input();
+		this.output = StreamSuppliers.ofPromise(input.getResult());
+	}
+
+	/**
+	 * Creates a new instance of StreamHashAggregator
+	 *
+	 * @param keyFunction            function for extracting a key of an input item
+	 * @param accumulatorKeyFunction function for extracting a key of an accumulator
+	 * @param reducer                reducer which accumulates items and combines spilled accumulators
+	 * @param storage                storage for accumulators which do not fit in memory
+	 * @param maxKeysInMemory        number of distinct keys which can be held in memory before spilling
+	 */
+	public static <K, I, O, A> StreamHashAggregator<K, I, O, A> create(
+		Function<I, K> keyFunction, Function<A, K> accumulatorKeyFunction, ReducerToResult<K, I, O, A> reducer,
+		IStreamSorterStorage<A> storage, int maxKeysInMemory
+	) {
+		return builder(keyFunction, accumulatorKeyFunction, reducer, storage, maxKeysInMemory).build();
+	}
+
+	/**
+	 * Creates a builder of StreamHashAggregator
+	 *
+	 * @see #create(Function, Function, ReducerToResult, IStreamSorterStorage, int)
+	 */
+	public static <K, I, O, A> StreamHashAggregator<K, I, O, A>.Builder builder(
+		Function<I, K> keyFunction, Function<A, K> accumulatorKeyFunction, ReducerToResult<K, I, O, A> reducer,
+		IStreamSorterStorage<A> storage, int maxKeysInMemory
+	) {
+		return new StreamHashAggregator<>(
+			level -> new ObjectTable<>(level, keyFunction, accumulatorKeyFunction, reducer),
+			reducer, storage, maxKeysInMemory
+		).new Builder();
+	}
+
+	/**
+	 * Creates a new instance of StreamHashAggregator for primitive {@code long} keys.
+	 * Keys are stored unboxed and are only boxed when a new accumulator is created.
+	 *
+	 * @see #create(Function, Function, ReducerToResult, IStreamSorterStorage, int)
+	 */
+	public static <I, O, A> StreamHashAggregator<Long, I, O, A> createForLongKeys(
+		ToLongFunction<I> keyFunction, ToLongFunction<A> accumulatorKeyFunction, ReducerToResult<Long, I, O, A> reducer,
+		IStreamSorterStorage<A> storage, int maxKeysInMemory
+	) {
+		return builderForLongKeys(keyFunction, accumulatorKeyFunction, reducer, storage, maxKeysInMemory).build();
+	}
+
+	/**
+	 * Creates a builder of StreamHashAggregator for primitive {@code long} keys
+	 *
+	 * @see #createForLongKeys(ToLongFunction, ToLongFunction, ReducerToResult, IStreamSorterStorage, int)
+	 */
+	public static <I, O, A> StreamHashAggregator<Long, I, O, A>.Builder builderForLongKeys(
+		ToLongFunction<I> keyFunction, ToLongFunction<A> accumulatorKeyFunction, ReducerToResult<Long, I, O, A> reducer,
+		IStreamSorterStorage<A> storage, int maxKeysInMemory
+	) {
+		return new StreamHashAggregator<>(
+			level -> new LongTable<>(level, keyFunction, accumulatorKeyFunction, reducer),
+			reducer, storage, maxKeysInMemory
+		).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamHashAggregator<K, I, O, A>> {
+		private Builder() {}
+
+		/**
+		 * Sets a number of partitions which accumulators are split into when spilled
+		 */
+		public Builder withSpillPartitions(int spillPartitions) {
+			checkNotBuilt(this);
+			checkArgument(spillPartitions > 1, "Number of spill partitions should be greater than 1");
+			StreamHashAggregator.this.spillPartitions = spillPartitions;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum depth of recursive spilling. A partition which does not fit in memory
+		 * on the last level is aggregated in memory regardless of the limit.
+		 */
+		public Builder withMaxSpillLevels(int maxSpillLevels) {
+			checkNotBuilt(this);
+			checkArgument(maxSpillLevels >= 0, "Maximum number of spill levels should not be negative");
+			StreamHashAggregator.this.maxSpillLevels = maxSpillLevels;
+			return this;
+		}
+
+		/**
+		 * Sets a codec of accumulators, which is required to save a state of this aggregator into checkpoints
+		 */
+		public Builder withAccumulatorCodec(StreamCodec<A> accumulatorCodec) {
+			checkNotBuilt(this);
+			StreamHashAggregator.this.accumulatorCodec = accumulatorCodec;
+			return this;
+		}
+
+		@Override
+		protected StreamHashAggregator<K, I, O, A> doBuild() {
+			return StreamHashAggregator.this;
+		}
+	}
+
+	@Override
+	public StreamConsumer<I> getInput() {
+		return input;
+	}
+
+	@Override
+	public StreamSupplier<O> getOutput() {
+		return output;
+	}
+
+	@Override
+	public void saveState(StreamOutput output) throws IOException {
+		checkState(accumulatorCodec != null, "Accumulator codec is not set");
+		if (!partitionIds.isEmpty()) {
+			throw new IOException("Cannot save a state with spilled accumulators");
+		}
+		output.writeVarInt(input.table.size());
+		for (Iterator<A> iterator = input.table.iterator(); iterator.hasNext(); ) {
+			accumulatorCodec.encode(output, iterator.next());
+		}
+	}
+
+	@Override
+	public void restoreState(StreamInput in) throws IOException {
+		checkState(accumulatorCodec != null, "Accumulator codec is not set");
+		checkState(input.table.size() == 0, "Cannot restore a state of a non-empty aggregator");
+		for (int count = in.readVarInt(); count > 0; count--) {
+			input.table.combine(accumulatorCodec.decode(in));
+		}
+	}
+
+	/**
+	 * A consumer which aggregates received items in a hash table of a given level
+	 * and spills the table to the storage once it is full
+	 */
+	private abstract class Pass<T> extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		final int level;
+		final Table<K, I, A> table;
+		final AsyncAccumulator<List<List<Integer>>> spills;
+
+		Pass(int level) {
+			this.level = level;
+			this.table = tableFactory.create(level);
+			List<List<Integer>> spilledPartitions = new ArrayList<>(spillPartitions);
+			for (int i = 0; i < spillPartitions; i++) {
+				spilledPartitions.add(new ArrayList<>());
+			}
+			this.spills = AsyncAccumulator.create(spilledPartitions);
+		}
+
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		final void afterAccumulate() {
+			if (table.size() < maxKeysInMemory || level >= maxSpillLevels) return;
+			List<List<A>> partitions = table.drain(spillPartitions);
+			for (int i = 0; i < partitions.size(); i++) {
+				List<A> partition = partitions.get(i);
+				if (partition.isEmpty()) continue;
+				int index = i;
+				spills.addPromise(
+					storage.newPartitionId()
+						.then(partitionId -> {
+							partitionIds.add(partitionId);
+							return storage.write(partitionId)
+								.then(consumer -> StreamSuppliers.ofIterable(partition).streamTo(consumer))
+								.map($ -> partitionId);
+						})
+						.whenResult(this::suspendOrResume)
+						.whenException(this::closeEx),
+					(spilledPartitions, partitionId) -> spilledPartitions.get(index).add(partitionId));
+			}
+			suspendOrResume();
+		}
+
+		private void suspendOrResume() {
+			if (spills.getActivePromises() > spillPartitions) {
+				suspend();
+			} else {
+				resume(this);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			spills.run();
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			spills.closeEx(e);
+		}
+
+		Promise<StreamSupplier<O>> getResult() {
+			return spills.get()
+				.map(spilledPartitions -> {
+					if (spilledPartitions.stream().allMatch(List::isEmpty)) {
+						return StreamSuppliers.ofIterator(table.iterator())
+							.transformWith(mapper(reducer::produceResult));
+					}
+					logger.trace("Level {}: spilled {} partitions, keys in memory: {}",
+						level, partitionIds.size(), table.size());
+					List<List<A>> inMemoryPartitions = table.drain(spillPartitions);
+					return StreamSuppliers.concat(new Iterator<>() {
+						int partition;
+
+						@Override
+						public boolean hasNext() {
+							return partition < spillPartitions;
+						}
+
+						@Override
+						public StreamSupplier<O> next() {
+							if (!hasNext()) throw new NoSuchElementException();
+							int index = partition++;
+							return mergePartition(level + 1, inMemoryPartitions.get(index), spilledPartitions.get(index));
+						}
+					});
+				});
+		}
+	}
+
+	private StreamSupplier<O> mergePartition(int level, List<A> inMemory, List<Integer> partitions) {
+		Combiner combiner = new Combiner(level);
+		for (A accumulator : inMemory) {
+			combiner.table.combine(accumulator);
+		}
+		StreamSuppliers.concat(partitions.stream().map(storage::readStream).toList())
+			.streamTo(combiner);
+		return StreamSuppliers.ofPromise(combiner.getResult());
+	}
+
+	public final class Input extends Pass<I> {
+		private Promise<Void> cleanupPromise;
+
+		private Input() {
+			super(0);
+		}
+
+		@Override
+		protected void onStarted() {
+			output.getAcknowledgement()
+				.then((ackRes, e) -> cleanup()
+					.then(($, e1) -> Promise.of(ackRes, e)))
+				.whenResult(this::acknowledge)
+				.whenException(this::closeEx);
+
+			super.onStarted();
+		}
+
+		@Override
+		public void accept(I item) {
+			table.accumulate(item);
+			afterAccumulate();
+		}
+
+		@Override
+		protected void onCleanup() {
+			cleanup();
+		}
+
+		private Promise<Void> cleanup() {
+			if (cleanupPromise != null) return cleanupPromise;
+			return cleanupPromise = partitionIds.isEmpty() ?
+				Promise.complete() :
+				storage.cleanup(partitionIds);
+		}
+	}
+
+	private final class Combiner extends Pass<A> {
+		private Combiner(int level) {
+			super(level);
+		}
+
+		@Override
+		public void accept(A accumulator) {
+			table.combine(accumulator);
+			afterAccumulate();
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			super.onEndOfStream();
+			spills.get()
+				.whenResult(this::acknowledge)
+				.whenException(this::closeEx);
+		}
+	}
+
+	@FunctionalInterface
+	private interface TableFactory<K, I, A> {
+		Table<K, I, A> create(int level);
+	}
+
+	/**
+	 * A hash table of accumulators.
+	 * Each level of spilling uses a different hash function, so that keys of
+	 * a spilled partition are evenly distributed between subpartitions.
+	 */
+	private abstract static class Table<K, I, A> {
+		final int level;
+		final ReducerToResult<K, I, ?, A> reducer;
+
+		Table(int level, ReducerToResult<K, I, ?, A> reducer) {
+			this.level = level;
+			this.reducer = reducer;
+		}
+
+		abstract void accumulate(I item);
+
+		abstract void combine(A accumulator);
+
+		abstract int size();
+
+		abstract int capacity();
+
+		abstract @Nullable A accumulatorAt(int slot);
+
+		abstract long hashAt(int slot);
+
+		abstract void clear();
+
+		/**
+		 * Distributes accumulators between partitions and clears the table
+		 */
+		final List<List<A>> drain(int partitions) {
+			List<List<A>> result = new ArrayList<>(partitions);
+			for (int i = 0; i < partitions; i++) {
+				result.add(new ArrayList<>());
+			}
+			for (int slot = 0; slot < capacity(); slot++) {
+				A accumulator = accumulatorAt(slot);
+				if (accumulator == null) continue;
+				result.get(partition(hashAt(slot), partitions)).add(accumulator);
+			}
+			clear();
+			return result;
+		}
+
+		final Iterator<A> iterator() {
+			return new Iterator<>() {
+				int slot = nextSlot(0);
+
+				@Override
+				public boolean hasNext() {
+					return slot < capacity();
+				}
+
+				@Override
+				public A next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					A accumulator = accumulatorAt(slot);
+					slot = nextSlot(slot + 1);
+					return accumulator;
+				}
+			};
+		}
+
+		private int nextSlot(int from) {
+			while (from < capacity() && accumulatorAt(from) == null) from++;
+			return from;
+		}
+
+		// slots are addressed by low bits of a hash, partitions by high bits
+		static int partition(long hash, int partitions) {
+			return (int) (((hash >>> 32) * partitions) >>> 32);
+		}
+	}
+
+	private static final class ObjectTable<K, I, A> extends Table<K, I, A> {
+		final Function<I, K> keyFunction;
+		final Function<A, K> accumulatorKeyFunction;
+
+		Object[] keys = new Object[INITIAL_CAPACITY];
+		Object[] accumulators = new Object[INITIAL_CAPACITY];
+		int mask = INITIAL_CAPACITY - 1;
+		int size;
+
+		ObjectTable(int level, Function<I, K> keyFunction, Function<A, K> accumulatorKeyFunction, ReducerToResult<K, I, ?, A> reducer) {
+			super(level, reducer);
+			this.keyFunction = keyFunction;
+			this.accumulatorKeyFunction = accumulatorKeyFunction;
+		}
+
+		@Override
+		void accumulate(I item) {
+			K key = keyFunction.apply(item);
+			int slot = slot(key);
+			//noinspection unchecked
+			A accumulator = (A) accumulators[slot];
+			if (accumulator != null) {
+				accumulators[slot] = reducer.accumulate(accumulator, item);
+				return;
+			}
+			keys[slot] = key;
+			accumulators[slot] = reducer.accumulate(reducer.createAccumulator(key), item);
+			afterInsert();
+		}
+
+		@Override
+		void combine(A accumulator) {
+			K key = accumulatorKeyFunction.apply(accumulator);
+			int slot = slot(key);
+			//noinspection unchecked
+			A existing = (A) accumulators[slot];
+			if (existing != null) {
+				accumulators[slot] = reducer.combine(existing, accumulator);
+				return;
+			}
+			keys[slot] = key;
+			accumulators[slot] = accumulator;
+			afterInsert();
+		}
+
+		private int slot(Object key) {
+			int slot = (int) hash(key.hashCode()) & mask;
+			while (true) {
+				Object slotKey = keys[slot];
+				if (slotKey == null || slotKey.equals(key)) return slot;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		private void afterInsert() {
+			if (++size > (mask >>> 1) + (mask >>> 2)) {
+				resize(accumulators.length << 1);
+			}
+		}
+
+		private void resize(int capacity) {
+			Object[] oldKeys = keys;
+			Object[] oldAccumulators = accumulators;
+			keys = new Object[capacity];
+			accumulators = new Object[capacity];
+			mask = capacity - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				Object key = oldKeys[i];
+				if (key == null) continue;
+				int slot = slot(key);
+				keys[slot] = key;
+				accumulators[slot] = oldAccumulators[i];
+			}
+		}
+
+		// the same hash function as LongHashTable seeded with level + 1
+		private long hash(long key) {
+			long h = key ^ (level + 1) * 0x9E3779B97F4A7C15L;
+			h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+			h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+			return h ^ (h >>> 33);
+		}
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		@Override
+		int capacity() {
+			return accumulators.length;
+		}
+
+		@Override
+		@Nullable A accumulatorAt(int slot) {
+			//noinspection unchecked
+			return (A) accumulators[slot];
+		}
+
+		@Override
+		long hashAt(int slot) {
+			return hash(keys[slot].hashCode());
+		}
+
+		@Override
+		void clear() {
+			Arrays.fill(keys, null);
+			Arrays.fill(accumulators, null);
+			size = 0;
+		}
+	}
+
+	private static final class LongTable<I, A> extends Table<Long, I, A> {
+		final ToLongFunction<I> keyFunction;
+		final ToLongFunction<A> accumulatorKeyFunction;
+		final LongHashTable<A> accumulators;
+
+		LongTable(int level, ToLongFunction<I> keyFunction, ToLongFunction<A> accumulatorKeyFunction, ReducerToResult<Long, I, ?, A> reducer) {
+			super(level, reducer);
+			this.keyFunction = keyFunction;
+			this.accumulatorKeyFunction = accumulatorKeyFunction;
+			this.accumulators = LongHashTable.create(level + 1);
+		}
+
+		@Override
+		void accumulate(I item) {
+			long key = keyFunction.applyAsLong(item);
+			int slot = accumulators.slot(key);
+			A accumulator = accumulators.valueAt(slot);
+			if (accumulator != null) {
+				accumulators.setValueAt(slot, reducer.accumulate(accumulator, item));
+			} else {
+				accumulators.insertAt(slot, key, reducer.accumulate(reducer.createAccumulator(key), item));
+			}
+		}
+
+		@Override
+		void combine(A accumulator) {
+			long key = accumulatorKeyFunction.applyAsLong(accumulator);
+			int slot = accumulators.slot(key);
+			A existing = accumulators.valueAt(slot);
+			if (existing != null) {
+				accumulators.setValueAt(slot, reducer.combine(existing, accumulator));
+			} else {
+				accumulators.insertAt(slot, key, accumulator);
+			}
+		}
+
+		@Override
+		int size() {
+			return accumulators.size();
+		}
+
+		@Override
+		int capacity() {
+			return accumulators.capacity();
+		}
+
+		@Override
+		@Nullable A accumulatorAt(int slot) {
+			return accumulators.valueAt(slot);
+		}
+
+		@Override
+		long hashAt(int slot) {
+			return accumulators.hashAt(slot);
+		}
+
+		@Override
+		void clear() {
+			accumulators.clear();
+		}
+	}
+}
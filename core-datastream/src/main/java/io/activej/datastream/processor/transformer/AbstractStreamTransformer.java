@@ -21,6 +21,7 @@ import io.activej.datastream.consumer.StreamConsumer;
 import io.activej.datastream.supplier.AbstractStreamSupplier;
 import io.activej.datastream.supplier.StreamDataAcceptor;
 import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.promise.Promise;
 import io.activej.reactor.ImplicitlyReactive;
 
 /**
@@ -87,6 +88,13 @@ public abstract class AbstractStreamTransformer<I, O> extends ImplicitlyReactive
 		}
 	}
 
+	/**
+	 * Returns a promise which completes once there are no output items waiting for the output to be resumed
+	 */
+	protected final Promise<Void> getOutputFlushPromise() {
+		return output.isBufferEmpty() ? Promise.complete() : output.getFlushPromise();
+	}
+
 	protected boolean isOneToMany() {
 		return false;
 	}
@@ -1,11 +1,17 @@
 package io.activej.datastream.processor.transformer;
 
+import io.activej.async.process.TokenBucket;
+import io.activej.bytebuf.ByteBuf;
+import io.activej.codegen.DefiningClassLoader;
 import io.activej.common.annotation.StaticFactories;
 import io.activej.datastream.processor.transformer.impl.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
+import static io.activej.common.Checks.checkArgument;
 import static io.activej.common.Checks.checkState;
 
 @StaticFactories(StreamTransformer.class)
@@ -46,4 +52,65 @@ public class StreamTransformers {
 		return new Buffer<>(bufferMinSize, bufferMaxSize);
 	}
 
+	/**
+	 * Limits a rate of items passing through a stream by acquiring tokens from a given token bucket.
+	 * The bucket may be shared between many streams.
+	 */
+	public static <T> StreamTransformer<T, T> throttle(TokenBucket bucket, RateLimiter.Tokenizer<T> tokenizer) {
+		return new TokenBucketLimiter<>(bucket, tokenizer);
+	}
+
+	/**
+	 * Limits a number of bytes per unit of time passing through a stream
+	 * by acquiring tokens from a given token bucket. The bucket may be shared between many streams.
+	 */
+	public static StreamTransformer<ByteBuf, ByteBuf> throttleBytes(TokenBucket bucket) {
+		return throttle(bucket, RateLimiter.Tokenizer.forByteBufs());
+	}
+
+	/**
+	 * Combines given transformers into a single transformer.
+	 * <p>
+	 * Consecutive stateless transformers (mappers and filters) are fused into a single stage
+	 * which processes each item within a single generated class, without intermediate
+	 * suspend/resume state machines and acceptor indirections.
+	 * Other transformers are left as is.
+	 */
+	public static <I, O> StreamTransformer<I, O> fuse(List<? extends StreamTransformer<?, ?>> transformers) {
+		return fuse(Fused.DEFAULT_CLASS_LOADER, transformers);
+	}
+
+	/**
+	 * @see #fuse(List)
+	 */
+	@SuppressWarnings("unchecked")
+	public static <I, O> StreamTransformer<I, O> fuse(DefiningClassLoader classLoader, List<? extends StreamTransformer<?, ?>> transformers) {
+		checkArgument(!transformers.isEmpty(), "No transformers to fuse");
+
+		List<StreamTransformer<?, ?>> result = new ArrayList<>();
+		List<Fused.Stage> stages = new ArrayList<>();
+		for (StreamTransformer<?, ?> transformer : transformers) {
+			if (transformer instanceof Mapper<?, ?> mapper) {
+				stages.add(Fused.Stage.map(mapper.mapFn));
+			} else if (transformer instanceof Filter<?> filter) {
+				stages.add(Fused.Stage.filter(filter.predicate));
+			} else if (transformer instanceof Fused<?, ?> fused) {
+				stages.addAll(fused.stages);
+			} else {
+				if (!stages.isEmpty()) {
+					result.add(new Fused<>(classLoader, stages));
+					stages = new ArrayList<>();
+				}
+				result.add(transformer);
+			}
+		}
+		if (!stages.isEmpty()) {
+			result.add(new Fused<>(classLoader, stages));
+		}
+
+		return result.size() == 1 ?
+			(StreamTransformer<I, O>) result.get(0) :
+			new Chain<>(result);
+	}
+
 }
@@ -0,0 +1,38 @@
+package io.activej.datastream.processor.transformer.impl;
+
+import io.activej.common.annotation.ExposedInternals;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.ImplicitlyReactive;
+
+import java.util.List;
+
+/**
+ * A transformer that consists of several consecutive transformers
+ */
+@ExposedInternals
+public final class Chain<I, O> extends ImplicitlyReactive implements StreamTransformer<I, O> {
+	public final List<StreamTransformer<?, ?>> transformers;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Chain(List<StreamTransformer<?, ?>> transformers) {
+		this.transformers = transformers;
+		for (int i = 1; i < transformers.size(); i++) {
+			StreamSupplier output = transformers.get(i - 1).getOutput();
+			output.streamTo(transformers.get(i).getInput());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public StreamConsumer<I> getInput() {
+		return (StreamConsumer<I>) transformers.get(0).getInput();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public StreamSupplier<O> getOutput() {
+		return (StreamSupplier<O>) transformers.get(transformers.size() - 1).getOutput();
+	}
+}
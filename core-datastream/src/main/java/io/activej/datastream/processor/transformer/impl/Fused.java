@@ -0,0 +1,116 @@
+package io.activej.datastream.processor.transformer.impl;
+
+import io.activej.codegen.ClassGenerator;
+import io.activej.codegen.ClassKey;
+import io.activej.codegen.DefiningClassLoader;
+import io.activej.codegen.expression.Expression;
+import io.activej.common.annotation.ExposedInternals;
+import io.activej.datastream.processor.transformer.AbstractStreamTransformer;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.activej.codegen.expression.Expressions.*;
+
+/**
+ * A stateless transformer which applies a sequence of mapping functions and predicates
+ * within a single generated {@link StreamDataAcceptor}.
+ * <p>
+ * A generated class is cached by the shape of the stage sequence and by the classes of stage functions,
+ * so each call site inside a generated acceptor stays monomorphic.
+ */
+@ExposedInternals
+public final class Fused<I, O> extends AbstractStreamTransformer<I, O> {
+	public static final DefiningClassLoader DEFAULT_CLASS_LOADER = DefiningClassLoader.create(Fused.class.getClassLoader());
+
+	public final List<Stage> stages;
+	public final Constructor<?> acceptorConstructor;
+
+	/**
+	 * Either a mapping {@link Function} or a filtering {@link Predicate}
+	 */
+	public record Stage(Object function, boolean isFilter) {
+		public static Stage map(Function<?, ?> mapFn) {
+			return new Stage(mapFn, false);
+		}
+
+		public static Stage filter(Predicate<?> predicate) {
+			return new Stage(predicate, true);
+		}
+
+		Class<?> type() {
+			return isFilter ? Predicate.class : Function.class;
+		}
+	}
+
+	public Fused(DefiningClassLoader classLoader, List<Stage> stages) {
+		this.stages = stages;
+		this.acceptorConstructor = ensureAcceptorClass(classLoader, stages).getConstructors()[0];
+	}
+
+	@Override
+	protected StreamDataAcceptor<I> onResumed(StreamDataAcceptor<O> output) {
+		Object[] arguments = new Object[stages.size() + 1];
+		arguments[0] = output;
+		for (int i = 0; i < stages.size(); i++) {
+			arguments[i + 1] = stages.get(i).function;
+		}
+		try {
+			//noinspection unchecked
+			return (StreamDataAcceptor<I>) acceptorConstructor.newInstance(arguments);
+		} catch (ReflectiveOperationException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Class<?> ensureAcceptorClass(DefiningClassLoader classLoader, List<Stage> stages) {
+		List<Object> keyParameters = new ArrayList<>(stages.size() * 2);
+		for (Stage stage : stages) {
+			keyParameters.add(stage.isFilter);
+			keyParameters.add(stage.function.getClass());
+		}
+		return classLoader.ensureClass(
+			ClassKey.<StreamDataAcceptor>of(StreamDataAcceptor.class, keyParameters),
+			() -> {
+				List<Class<?>> constructorArguments = new ArrayList<>(stages.size() + 1);
+				constructorArguments.add(StreamDataAcceptor.class);
+				List<Expression> constructorBody = new ArrayList<>(stages.size() + 2);
+				constructorBody.add(superConstructor());
+				constructorBody.add(set(property(self(), "output"), arg(0)));
+				for (int i = 0; i < stages.size(); i++) {
+					constructorArguments.add(stages.get(i).type());
+					constructorBody.add(set(property(self(), "stage" + i), arg(i + 1)));
+				}
+
+				return ClassGenerator.builder(StreamDataAcceptor.class)
+					.withField("output", StreamDataAcceptor.class)
+					.initialize(b -> {
+						for (int i = 0; i < stages.size(); i++) {
+							b.withField("stage" + i, stages.get(i).type());
+						}
+					})
+					.withConstructor(constructorArguments, sequence(constructorBody))
+					.withMethod("accept", acceptImpl(stages, 0, arg(0)))
+					.build();
+			});
+	}
+
+	private static Expression acceptImpl(List<Stage> stages, int index, Expression item) {
+		if (index == stages.size()) {
+			return call(property(self(), "output"), "accept", item);
+		}
+		Expression stage = property(self(), "stage" + index);
+		if (stages.get(index).isFilter) {
+			return ifElse(call(stage, "test", item),
+				acceptImpl(stages, index + 1, item),
+				voidExp());
+		}
+		return let(call(stage, "apply", item),
+			mapped -> acceptImpl(stages, index + 1, mapped));
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.impl;
+
+import io.activej.async.process.TokenBucket;
+import io.activej.common.annotation.ExposedInternals;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.ImplicitlyReactive;
+
+import java.util.ArrayDeque;
+
+/**
+ * A stream transformer that acquires tokens for each item from a (possibly shared) {@link TokenBucket}
+ * before passing the item further. While the bucket is empty, the input is suspended and items
+ * that are still received are kept in order until their tokens are acquired.
+ */
+@ExposedInternals
+public final class TokenBucketLimiter<T> extends ImplicitlyReactive implements StreamTransformer<T, T> {
+	public final TokenBucket bucket;
+	public final RateLimiter.Tokenizer<T> tokenizer;
+
+	public final ArrayDeque<T> throttled = new ArrayDeque<>();
+	public boolean acquiring;
+
+	public final Input input;
+	public final Output output;
+
+	public TokenBucketLimiter(TokenBucket bucket, RateLimiter.Tokenizer<T> tokenizer) {
+		this.bucket = bucket;
+		this.tokenizer = tokenizer;
+		this.input = new Input();
+		this.output = new Output();
+
+		input.getAcknowledgement()
+			.whenException(output::closeEx);
+		output.getAcknowledgement()
+			.whenResult(input::acknowledge)
+			.whenException(input::closeEx);
+	}
+
+	@Override
+	public StreamConsumer<T> getInput() {
+		return input;
+	}
+
+	@Override
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	public final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (throttled.isEmpty()) {
+				output.sendEndOfStream();
+			}
+		}
+
+		@Override
+		public void accept(T item) {
+			if (throttled.isEmpty() && bucket.tryAcquire(tokenizer.getTokens(item))) {
+				output.send(item);
+				return;
+			}
+
+			suspend();
+			throttled.addLast(item);
+			if (!acquiring) {
+				acquireNext();
+			}
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<T> {
+		@Override
+		protected void onResumed() {
+			if (!throttled.isEmpty()) return;
+			if (input.isEndOfStream()) {
+				sendEndOfStream();
+			} else {
+				input.resume(input);
+			}
+		}
+
+		@Override
+		protected void onSuspended() {
+			input.suspend();
+		}
+	}
+
+	private void acquireNext() {
+		T item = throttled.peekFirst();
+		assert item != null;
+		acquiring = true;
+		bucket.acquire(tokenizer.getTokens(item))
+			.whenResult(() -> {
+				acquiring = false;
+				if (output.getAcknowledgement().isComplete()) return;
+				throttled.pollFirst();
+				output.send(item);
+				if (!throttled.isEmpty()) {
+					acquireNext();
+				} else if (input.isEndOfStream()) {
+					output.sendEndOfStream();
+				} else if (output.isReady()) {
+					input.resume(input);
+				}
+			});
+	}
+}
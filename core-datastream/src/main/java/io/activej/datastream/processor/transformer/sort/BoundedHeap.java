@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static io.activej.common.Checks.checkArgument;
+
+/**
+ * A binary heap which retains at most {@code capacity} smallest items.
+ * The root of the heap is the greatest of the retained items,
+ * so that each new item is either rejected or replaces the root with one comparison
+ * and a single sift down.
+ * <p>
+ * Items which are equal according to the comparator are ordered by the order in which
+ * they were offered, so the retained items are the same as the first {@code capacity} items
+ * of the input sorted with a stable sort.
+ */
+public final class BoundedHeap<T> {
+	private final Comparator<T> comparator;
+	private final Object[] heap;
+	private final long[] sequences;
+	private long nextSequence;
+	private int size;
+
+	private BoundedHeap(Comparator<T> comparator, int capacity) {
+		this.comparator = comparator;
+		this.heap = new Object[capacity];
+		this.sequences = new long[capacity];
+	}
+
+	public static <T> BoundedHeap<T> create(Comparator<T> comparator, int capacity) {
+		checkArgument(capacity >= 0, "Capacity should not be negative");
+		return new BoundedHeap<>(comparator, capacity);
+	}
+
+	/**
+	 * Offers an item to this heap
+	 *
+	 * @return {@code false} if the heap is full and the item is not less than any of the retained items
+	 */
+	public boolean offer(T item) {
+		long sequence = nextSequence++;
+		if (size < heap.length) {
+			siftUp(size++, item, sequence);
+			return true;
+		}
+		// an offered item is never less than an equal retained item, as it has a greater sequence
+		if (heap.length == 0 || comparator.compare(item, get(0)) >= 0) {
+			return false;
+		}
+		siftDown(0, item, sequence);
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns retained items sorted in ascending order and clears the heap
+	 */
+	public List<T> drainSorted() {
+		Object[] items = new Object[size];
+		while (size != 0) {
+			int last = --size;
+			items[last] = heap[0];
+			T lastItem = get(last);
+			heap[last] = null;
+			if (last != 0) {
+				siftDown(0, lastItem, sequences[last]);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		List<T> result = (List<T>) Arrays.asList(items);
+		return result;
+	}
+
+	private void siftUp(int index, T item, long sequence) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compare(item, sequence, parent) < 0) break;
+			heap[index] = heap[parent];
+			sequences[index] = sequences[parent];
+			index = parent;
+		}
+		heap[index] = item;
+		sequences[index] = sequence;
+	}
+
+	private void siftDown(int index, T item, long sequence) {
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < size && compare(get(right), sequences[right], child) > 0) {
+				child = right;
+			}
+			if (compare(item, sequence, child) > 0) break;
+			heap[index] = heap[child];
+			sequences[index] = sequences[child];
+			index = child;
+		}
+		heap[index] = item;
+		sequences[index] = sequence;
+	}
+
+	private int compare(T item, long sequence, int index) {
+		int result = comparator.compare(item, get(index));
+		return result != 0 ? result : Long.compare(sequence, sequences[index]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T get(int index) {
+		return (T) heap[index];
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.dsl.HasStreamInputs;
+import io.activej.datastream.dsl.HasStreamOutput;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.ImplicitlyReactive;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * Merges several streams sorted by key into a single sorted stream.
+ * <p>
+ * Inputs are merged with a loser tree, so that each item costs about {@code log2(k)}
+ * key comparisons, a half of what a binary heap needs. Items with equal keys are
+ * streamed in the order of inputs, or only the first of them is streamed if merger is distinct.
+ *
+ * @param <K> type of keys
+ * @param <T> type of items
+ */
+public final class StreamMerger<K, T> extends ImplicitlyReactive implements HasStreamInputs, HasStreamOutput<T> {
+	private static final boolean CHECKS = Checks.isEnabled(StreamMerger.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 2000;
+
+	private final Function<T, K> keyFunction;
+	private final Comparator<K> keyComparator;
+	private final boolean distinct;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	private final List<Input> inputs = new ArrayList<>();
+	private final Output output;
+
+	// tree[0] is an index of a current winner, tree[1..k-1] are indices of losers
+	private int[] tree;
+	private int streamsAwaiting;
+
+	private K lastKey;
+	private boolean hasLastKey;
+
+	private StreamMerger(Function<T, K> keyFunction, Comparator<K> keyComparator, boolean distinct) {
+		this.keyFunction = keyFunction;
+		this.keyComparator = keyComparator;
+		this.distinct = distinct;
+		this.output = new Output();
+	}
+
+	public static <K, T> StreamMerger<K, T> create(Function<T, K> keyFunction, Comparator<K> keyComparator, boolean distinct) {
+		return builder(keyFunction, keyComparator, distinct).build();
+	}
+
+	public static <K, T> StreamMerger<K, T>.Builder builder(Function<T, K> keyFunction, Comparator<K> keyComparator, boolean distinct) {
+		return new StreamMerger<>(keyFunction, keyComparator, distinct).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamMerger<K, T>> {
+		private Builder() {}
+
+		public Builder withBufferSize(int bufferSize) {
+			checkNotBuilt(this);
+			checkArgument(bufferSize > 0, "bufferSize must be positive value, got %s", bufferSize);
+			StreamMerger.this.bufferSize = bufferSize;
+			return this;
+		}
+
+		@Override
+		protected StreamMerger<K, T> doBuild() {
+			return StreamMerger.this;
+		}
+	}
+
+	public StreamConsumer<T> newInput() {
+		if (CHECKS) checkInReactorThread(this);
+		checkState(tree == null, "Cannot add new inputs after StreamMerger has started merging");
+		Input input = new Input(inputs.size());
+		inputs.add(input);
+		streamsAwaiting++;
+		output.getAcknowledgement()
+			.whenResult(input::acknowledge)
+			.whenException(input::closeEx);
+		return input;
+	}
+
+	@Override
+	public List<? extends StreamConsumer<?>> getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	public final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		private final int index;
+		private final ArrayDeque<T> deque = new ArrayDeque<>();
+		private T headItem;
+		private K headKey;
+
+		private Input(int index) {
+			this.index = index;
+		}
+
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		public void accept(T item) {
+			if (headItem == null) {
+				setHead(item);
+				if (--streamsAwaiting == 0) {
+					if (tree != null) replay(index);
+					output.merge();
+				}
+			} else {
+				deque.add(item);
+				if (deque.size() >= bufferSize) {
+					suspend();
+					output.merge();
+				}
+			}
+		}
+
+		private void setHead(T item) {
+			headItem = item;
+			headKey = keyFunction.apply(item);
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (headItem == null) {
+				if (--streamsAwaiting == 0 && tree != null) replay(index);
+			}
+			output.merge();
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			output.closeEx(e);
+		}
+
+		@Override
+		protected void onCleanup() {
+			deque.clear();
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<T> {
+		void merge() {
+			resume();
+		}
+
+		@Override
+		protected void onResumed() {
+			if (streamsAwaiting != 0) return;
+			if (inputs.isEmpty()) {
+				sendEndOfStream();
+				return;
+			}
+			if (tree == null) {
+				tree = new int[inputs.size()];
+				tree[0] = inputs.size() == 1 ? 0 : build(1);
+			}
+
+			StreamDataAcceptor<T> acceptor = getBufferedDataAcceptor();
+			while (isReady()) {
+				int winner = tree[0];
+				Input input = inputs.get(winner);
+				if (input.headItem == null) {
+					sendEndOfStream();
+					return;
+				}
+				if (!distinct) {
+					acceptor.accept(input.headItem);
+				} else if (!hasLastKey || keyComparator.compare(lastKey, input.headKey) != 0) {
+					acceptor.accept(input.headItem);
+					lastKey = input.headKey;
+					hasLastKey = true;
+				}
+
+				T next = input.deque.poll();
+				if (next != null) {
+					input.setHead(next);
+				} else {
+					input.headItem = null;
+					input.headKey = null;
+					if (!input.isEndOfStream()) {
+						streamsAwaiting++;
+						input.resume(input);
+						return;
+					}
+				}
+				replay(winner);
+			}
+
+			for (Input input : inputs) {
+				if (input.deque.size() <= bufferSize / 2) {
+					input.resume(input);
+				}
+			}
+		}
+
+		@Override
+		protected void onError(Exception e) {
+			for (Input input : inputs) {
+				input.closeEx(e);
+			}
+		}
+
+		@Override
+		protected void onCleanup() {
+			for (Input input : inputs) {
+				input.deque.clear();
+			}
+		}
+	}
+
+	private int build(int node) {
+		int k = inputs.size();
+		if (node >= k) return node - k;
+		int left = build(node * 2);
+		int right = build(node * 2 + 1);
+		if (beats(left, right)) {
+			tree[node] = right;
+			return left;
+		}
+		tree[node] = left;
+		return right;
+	}
+
+	private void replay(int leaf) {
+		int winner = leaf;
+		for (int node = (leaf + inputs.size()) >>> 1; node > 0; node >>>= 1) {
+			int loser = tree[node];
+			if (beats(loser, winner)) {
+				tree[node] = winner;
+				winner = loser;
+			}
+		}
+		tree[0] = winner;
+	}
+
+	// exhausted inputs lose to any other input, equal keys are resolved by an order of inputs
+	private boolean beats(int index1, int index2) {
+		Input input1 = inputs.get(index1);
+		Input input2 = inputs.get(index2);
+		if (input1.headItem == null) return false;
+		if (input2.headItem == null) return true;
+		int compare = keyComparator.compare(input1.headKey, input2.headKey);
+		return compare < 0 || compare == 0 && index1 < index2;
+	}
+}
@@ -20,35 +20,39 @@ import io.activej.async.AsyncAccumulator;
 import io.activej.common.builder.AbstractBuilder;
 import io.activej.datastream.consumer.AbstractStreamConsumer;
 import io.activej.datastream.consumer.StreamConsumer;
-import io.activej.datastream.processor.reducer.StreamReducer;
 import io.activej.datastream.processor.transformer.StreamTransformer;
 import io.activej.datastream.supplier.StreamDataAcceptor;
 import io.activej.datastream.supplier.StreamSupplier;
 import io.activej.datastream.supplier.StreamSuppliers;
 import io.activej.promise.Promise;
+import io.activej.promise.Promises;
 import io.activej.reactor.ImplicitlyReactive;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 
-import static io.activej.datastream.processor.reducer.Reducers.deduplicateReducer;
-import static io.activej.datastream.processor.reducer.Reducers.mergeReducer;
+import static io.activej.common.Checks.checkArgument;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * Represent {@link StreamTransformer} which receives data and saves it in
  * collection, when it receives end of stream it sorts it and streams to destination.
+ * <p>
+ * Sorted runs which do not fit in memory are written to the storage and are merged
+ * with a {@link StreamMerger}. If there are more runs than a maximum merge fan-in,
+ * they are first merged in groups into new runs, as many passes as needed.
  *
  * @param <K> type of keys
  * @param <T> type of objects
  */
 public final class StreamSorter<K, T> extends ImplicitlyReactive implements StreamTransformer<T, T> {
 	private static final Logger logger = getLogger(StreamSorter.class);
+
+	public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
+
 	private final AsyncAccumulator<? extends List<Integer>> temporaryStreamsAccumulator;
 	private final IStreamSorterStorage<T> storage;
 	private final Function<T, K> keyFunction;
@@ -61,6 +65,9 @@ public final class StreamSorter<K, T> extends ImplicitlyReactive implements Stre
 	private final StreamSupplier<T> output;
 
 	private Executor sortingExecutor = Runnable::run;
+	private boolean parallelSort;
+	private int maxMergeFanIn = DEFAULT_MAX_MERGE_FAN_IN;
+	private @Nullable StreamSorterStats stats;
 
 	private StreamSorter(
 		IStreamSorterStorage<T> storage, Function<T, K> keyFunction, Comparator<K> keyComparator, boolean deduplicate,
@@ -82,10 +89,11 @@ public final class StreamSorter<K, T> extends ImplicitlyReactive implements Stre
 		this.output = StreamSuppliers.ofPromise(
 			(this.temporaryStreamsAccumulator = AsyncAccumulator.create(partitionIds))
 				.get()
+				.then(streamIds -> mergeRuns(new ArrayList<>(streamIds)))
 				.then(streamIds -> {
 					ArrayList<T> sortedList = input.list;
 					input.list = null;
-					return Promise.ofBlocking(sortingExecutor, () -> sortedList.sort(itemComparator))
+					return sortRunAsync(sortedList)
 						.map($ -> {
 							StreamSupplier<T> listSupplier = StreamSuppliers.ofIterator(deduplicate ?
 								new DistinctIterator<>(sortedList, keyFunction, keyComparator) :
@@ -94,17 +102,102 @@ public final class StreamSorter<K, T> extends ImplicitlyReactive implements Stre
 							if (streamIds.isEmpty()) {
 								return listSupplier;
 							}
-							StreamReducer<K, T, Void> streamMerger = StreamReducer.create(keyComparator);
-							listSupplier.streamTo(streamMerger.newInput(keyFunction, deduplicate ? deduplicateReducer() : mergeReducer()));
+							StreamMerger<K, T> streamMerger = StreamMerger.create(keyFunction, keyComparator, deduplicate);
+							listSupplier.streamTo(streamMerger.newInput());
 							for (Integer streamId : streamIds) {
-								StreamSuppliers.ofPromise(storage.read(streamId))
-									.streamTo(streamMerger.newInput(keyFunction, deduplicate ? deduplicateReducer() : mergeReducer()));
+								storage.readStream(streamId)
+									.streamTo(streamMerger.newInput());
 							}
+							long mergeStart = reactor.currentTimeMillis();
+							streamMerger.getOutput().getEndOfStream()
+								.whenResult(() -> {
+									if (stats != null) stats.recordFinalMerge(reactor.currentTimeMillis() - mergeStart);
+								});
 							return streamMerger.getOutput();
 						});
 				}));
 	}
 
+	/**
+	 * Merges runs in groups of a maximum fan-in until they can be merged
+	 * in a single pass together with items left in memory
+	 */
+	private Promise<List<Integer>> mergeRuns(List<Integer> runs) {
+		if (runs.size() < maxMergeFanIn) return Promise.of(runs);
+		logger.info("Merging {} files with fan-in {}", runs.size(), maxMergeFanIn);
+		List<Integer> mergedRuns = new ArrayList<>();
+		return Promises.sequence(
+				splitIntoGroups(runs).stream()
+					.map(group -> () -> mergeGroup(group).whenResult(mergedRuns::add).toVoid()))
+			.then(() -> mergeRuns(mergedRuns));
+	}
+
+	private List<List<Integer>> splitIntoGroups(List<Integer> runs) {
+		int groups = (runs.size() + maxMergeFanIn - 1) / maxMergeFanIn;
+		List<List<Integer>> result = new ArrayList<>(groups);
+		for (int i = 0; i < groups; i++) {
+			result.add(runs.subList(runs.size() * i / groups, runs.size() * (i + 1) / groups));
+		}
+		return result;
+	}
+
+	private Promise<Integer> mergeGroup(List<Integer> group) {
+		if (group.size() == 1) return Promise.of(group.get(0));
+		return storage.newPartitionId()
+			.then(partitionId -> {
+				input.partitionIds.add(partitionId);
+				StreamMerger<K, T> streamMerger = StreamMerger.create(keyFunction, keyComparator, distinct);
+				for (Integer streamId : group) {
+					storage.readStream(streamId)
+						.streamTo(streamMerger.newInput());
+				}
+				long mergeStart = reactor.currentTimeMillis();
+				return streamMerger.getOutput()
+					.streamTo(storage.writeStream(partitionId))
+					.whenResult(() -> {
+						if (stats != null) stats.recordIntermediateMerge(reactor.currentTimeMillis() - mergeStart);
+					})
+					.then(() -> storage.cleanup(group))
+					.whenResult(() -> input.partitionIds.removeAll(group))
+					.map($ -> partitionId);
+			});
+	}
+
+	private Promise<Void> sortRunAsync(ArrayList<T> list) {
+		return Promise.ofBlocking(sortingExecutor, () -> {
+				long sortStart = System.currentTimeMillis();
+				sortRun(list);
+				return System.currentTimeMillis() - sortStart;
+			})
+			.whenResult(millis -> {
+				if (stats != null) stats.recordSort(millis);
+			})
+			.toVoid();
+	}
+
+	/**
+	 * Sorts a run of items. In a parallel mode keys are extracted once per item,
+	 * and an array of keyed items is sorted with {@link Arrays#parallelSort}
+	 */
+	private void sortRun(ArrayList<T> list) {
+		if (!parallelSort) {
+			list.sort(itemComparator);
+			return;
+		}
+		//noinspection unchecked
+		KeyedItem<K, T>[] keyedItems = new KeyedItem[list.size()];
+		for (int i = 0; i < keyedItems.length; i++) {
+			T item = list.get(i);
+			keyedItems[i] = new KeyedItem<>(keyFunction.apply(item), item);
+		}
+		Arrays.parallelSort(keyedItems, (item1, item2) -> keyComparator.compare(item1.key, item2.key));
+		for (int i = 0; i < keyedItems.length; i++) {
+			list.set(i, keyedItems[i].item);
+		}
+	}
+
+	private record KeyedItem<K, T>(K key, T item) {}
+
 	/**
 	 * Creates a new instance of StreamSorter
 	 *
@@ -152,6 +245,36 @@ public final class StreamSorter<K, T> extends ImplicitlyReactive implements Stre
 			return this;
 		}
 
+		/**
+		 * Sorts in-memory runs with {@link Arrays#parallelSort} on an array of extracted keys.
+		 * Key comparator should be thread-safe.
+		 */
+		public Builder withParallelSort(boolean parallelSort) {
+			checkNotBuilt(this);
+			StreamSorter.this.parallelSort = parallelSort;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum number of runs which are merged at once. If there are more runs,
+		 * they are merged in several passes.
+		 */
+		public Builder withMaxMergeFanIn(int maxMergeFanIn) {
+			checkNotBuilt(this);
+			checkArgument(maxMergeFanIn > 1, "Maximum merge fan-in should be greater than 1");
+			StreamSorter.this.maxMergeFanIn = maxMergeFanIn;
+			return this;
+		}
+
+		/**
+		 * Records time spent on sorting, writing and merging runs to given stats
+		 */
+		public Builder withStats(StreamSorterStats stats) {
+			checkNotBuilt(this);
+			StreamSorter.this.stats = stats;
+			return this;
+		}
+
 		@Override
 		protected StreamSorter<K, T> doBuild() {
 			return StreamSorter.this;
@@ -189,14 +312,18 @@ public final class StreamSorter<K, T> extends ImplicitlyReactive implements Stre
 			list = new ArrayList<>(itemsInMemory);
 
 			temporaryStreamsAccumulator.addPromise(
-				Promise.ofBlocking(sortingExecutor, () -> sortedList.sort(itemComparator))
+				sortRunAsync(sortedList)
 					.then($ -> {
 						Iterator<T> iterator = distinct ?
 							new DistinctIterator<>(sortedList, keyFunction, keyComparator) :
 							sortedList.iterator();
+						long writeStart = reactor.currentTimeMillis();
 						return storage.newPartitionId()
 							.then(partitionId -> storage.write(partitionId)
 								.then(consumer -> StreamSuppliers.ofIterator(iterator).streamTo(consumer))
+								.whenResult(() -> {
+									if (stats != null) stats.recordWrite(reactor.currentTimeMillis() - writeStart);
+								})
 								.map($2 -> partitionId));
 					})
 					.whenResult(this::suspendOrResume)
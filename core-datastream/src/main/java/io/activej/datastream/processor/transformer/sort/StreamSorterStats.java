@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.jmx.stats.ValueStats;
+
+import java.time.Duration;
+
+/**
+ * A breakdown of time spent by {@link StreamSorter} on sorting runs in memory,
+ * writing them to a storage and merging them back.
+ * <p>
+ * A single instance may be shared by several sorters of the same reactor.
+ */
+public final class StreamSorterStats {
+	public static final Duration DEFAULT_SMOOTHING_WINDOW = Duration.ofMinutes(5);
+
+	private final ValueStats sortTime = ValueStats.builder(DEFAULT_SMOOTHING_WINDOW)
+		.withUnit("milliseconds")
+		.build();
+	private final ValueStats writeTime = ValueStats.builder(DEFAULT_SMOOTHING_WINDOW)
+		.withUnit("milliseconds")
+		.build();
+	private final ValueStats intermediateMergeTime = ValueStats.builder(DEFAULT_SMOOTHING_WINDOW)
+		.withUnit("milliseconds")
+		.build();
+	private final ValueStats finalMergeTime = ValueStats.builder(DEFAULT_SMOOTHING_WINDOW)
+		.withUnit("milliseconds")
+		.build();
+
+	private long runsWritten;
+
+	private StreamSorterStats() {
+	}
+
+	public static StreamSorterStats create() {
+		return new StreamSorterStats();
+	}
+
+	void recordSort(long millis) {
+		sortTime.recordValue(millis);
+	}
+
+	void recordWrite(long millis) {
+		writeTime.recordValue(millis);
+		runsWritten++;
+	}
+
+	void recordIntermediateMerge(long millis) {
+		intermediateMergeTime.recordValue(millis);
+	}
+
+	void recordFinalMerge(long millis) {
+		finalMergeTime.recordValue(millis);
+	}
+
+	/**
+	 * Time of sorting a single run in memory
+	 */
+	@JmxAttribute
+	public ValueStats getSortTime() {
+		return sortTime;
+	}
+
+	/**
+	 * Time of writing a single sorted run to a storage
+	 */
+	@JmxAttribute
+	public ValueStats getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 * Time of merging a group of runs into a new run, if there are more runs than a maximum merge fan-in
+	 */
+	@JmxAttribute
+	public ValueStats getIntermediateMergeTime() {
+		return intermediateMergeTime;
+	}
+
+	/**
+	 * Time of streaming the final merge of runs to an output
+	 */
+	@JmxAttribute
+	public ValueStats getFinalMergeTime() {
+		return finalMergeTime;
+	}
+
+	@JmxAttribute
+	public long getRunsWritten() {
+		return runsWritten;
+	}
+}
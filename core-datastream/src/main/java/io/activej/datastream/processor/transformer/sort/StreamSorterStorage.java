@@ -16,6 +16,7 @@
 
 package io.activej.datastream.processor.transformer.sort;
 
+import io.activej.bytebuf.ByteBuf;
 import io.activej.common.MemSize;
 import io.activej.common.builder.AbstractBuilder;
 import io.activej.csp.file.ChannelFileReader;
@@ -24,6 +25,8 @@ import io.activej.csp.process.frame.ChannelFrameDecoder;
 import io.activej.csp.process.frame.ChannelFrameEncoder;
 import io.activej.csp.process.frame.FrameFormat;
 import io.activej.csp.process.transformer.ChannelTransformers;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.csp.supplier.ChannelSuppliers;
 import io.activej.datastream.consumer.StreamConsumer;
 import io.activej.datastream.consumer.StreamConsumers;
 import io.activej.datastream.csp.ChannelDeserializer;
@@ -37,20 +40,30 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.activej.common.Checks.checkArgument;
 import static java.lang.String.format;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * This class uses for  splitting a single input stream into smaller partitions during merge sort,
  * for avoid overflow RAM, it write it to  external memory . You can write here data with index
  * of partition and then read it from here and merge.
+ * <p>
+ * By default, each partition (a sorted run) is written to its own file. If several runs per file are allowed,
+ * runs are appended to a few large, optionally preallocated, files instead, and their locations are kept in memory,
+ * so such partitions can only be read back by the same storage instance.
+ * <p>
+ * Runs are read with read-ahead buffers of a configurable size, and may be prefetched asynchronously,
+ * so that merging many runs does fewer and larger reads.
  *
  * @param <T> type of storing data
  */
@@ -60,6 +73,7 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 
 	public static final String DEFAULT_FILE_PATTERN = "%d";
 	public static final MemSize DEFAULT_SORTER_BLOCK_SIZE = MemSize.kilobytes(256);
+	public static final MemSize DEFAULT_READ_AHEAD_SIZE = ChannelFileReader.DEFAULT_BUFFER_SIZE;
 
 	private static final AtomicInteger PARTITION = new AtomicInteger();
 
@@ -71,6 +85,13 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 	private String filePattern = DEFAULT_FILE_PATTERN;
 	private MemSize readBlockSize = ChannelSerializer.DEFAULT_INITIAL_BUFFER_SIZE;
 	private MemSize writeBlockSize = DEFAULT_SORTER_BLOCK_SIZE;
+	private MemSize readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+	private int prefetchBuffers;
+	private int runsPerFile = 1;
+	private MemSize preallocatedFileSize = MemSize.ZERO;
+
+	private final Map<Integer, Run> runs = new HashMap<>();
+	private final ArrayDeque<RunFile> freeFiles = new ArrayDeque<>();
 
 	private StreamSorterStorage(
 		Reactor reactor, Executor executor, BinarySerializer<T> serializer, FrameFormat frameFormat, Path path
@@ -138,6 +159,46 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 			return this;
 		}
 
+		/**
+		 * Sets a size of a single read from a file of a partition
+		 */
+		public Builder withReadAheadSize(MemSize readAheadSize) {
+			checkNotBuilt(this);
+			checkArgument(readAheadSize.toLong() > 0, "Read-ahead size should be positive");
+			StreamSorterStorage.this.readAheadSize = readAheadSize;
+			return this;
+		}
+
+		/**
+		 * Sets a number of read-ahead buffers of each partition which are read asynchronously
+		 * before they are requested by a consumer
+		 */
+		public Builder withPrefetchBuffers(int prefetchBuffers) {
+			checkNotBuilt(this);
+			checkArgument(prefetchBuffers >= 0, "Number of prefetch buffers should not be negative");
+			StreamSorterStorage.this.prefetchBuffers = prefetchBuffers;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum number of partitions which are appended to a single file
+		 */
+		public Builder withRunsPerFile(int runsPerFile) {
+			checkNotBuilt(this);
+			checkArgument(runsPerFile > 0, "Number of runs per file should be positive");
+			StreamSorterStorage.this.runsPerFile = runsPerFile;
+			return this;
+		}
+
+		/**
+		 * Sets a size which is reserved for each new file if several runs per file are allowed
+		 */
+		public Builder withPreallocatedFileSize(MemSize preallocatedFileSize) {
+			checkNotBuilt(this);
+			StreamSorterStorage.this.preallocatedFileSize = preallocatedFileSize;
+			return this;
+		}
+
 		@Override
 		protected StreamSorterStorage<T> doBuild() {
 			return StreamSorterStorage.this;
@@ -159,18 +220,83 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 
 	@Override
 	public Promise<StreamConsumer<T>> write(int partition) {
+		if (runsPerFile != 1) {
+			return writeToRunFile(partition);
+		}
 		Path path = partitionPath(partition);
 		return Promise.of(StreamConsumers.ofSupplier(
-			supplier -> supplier
-				.transformWith(ChannelSerializer.builder(serializer)
-					.withInitialBufferSize(readBlockSize)
-					.build())
-				.transformWith(ChannelTransformers.chunkBytes(writeBlockSize.map(bytes -> bytes / 2), writeBlockSize))
-				.transformWith(ChannelFrameEncoder.create(frameFormat))
-				.transformWith(ChannelTransformers.chunkBytes(writeBlockSize.map(bytes -> bytes / 2), writeBlockSize))
+			supplier -> encode(supplier)
 				.streamTo(ChannelFileWriter.open(executor, path))));
 	}
 
+	private Promise<StreamConsumer<T>> writeToRunFile(int partition) {
+		RunFile file = freeFiles.poll();
+		if (file == null) {
+			file = new RunFile(partitionPath(PARTITION.incrementAndGet()));
+		}
+		RunFile runFile = file;
+		runFile.writing = true;
+		long offset = runFile.size;
+		return openRunFile(runFile)
+			.map(builder -> builder.withOffset(offset).build())
+			.then(
+				writer -> Promise.of(StreamConsumers.<T>ofSupplier(
+					supplier -> encode(supplier)
+						.streamTo(writer)
+						.then(($, e) -> {
+							if (e == null) {
+								long length = writer.getPosition() - offset;
+								runs.put(partition, new Run(runFile, offset, length));
+								runFile.size = offset + length;
+								runFile.runs++;
+								runFile.liveRuns++;
+							}
+							releaseRunFile(runFile);
+							return Promise.of($, e);
+						}))),
+				e -> {
+					releaseRunFile(runFile);
+					return Promise.ofException(e);
+				});
+	}
+
+	private Promise<ChannelFileWriter.Builder> openRunFile(RunFile runFile) {
+		if (runFile.runs != 0 || preallocatedFileSize.toLong() == 0) {
+			return ChannelFileWriter.builderOpen(executor, runFile.path, CREATE, WRITE);
+		}
+		return Promise.ofBlocking(executor, () -> {
+				try (RandomAccessFile file = new RandomAccessFile(runFile.path.toFile(), "rw")) {
+					file.setLength(preallocatedFileSize.toLong());
+				}
+			})
+			.then(() -> ChannelFileWriter.builderOpen(executor, runFile.path, WRITE));
+	}
+
+	private void releaseRunFile(RunFile runFile) {
+		runFile.writing = false;
+		if (runFile.liveRuns == 0) {
+			deleteRunFile(runFile);
+		} else if (runFile.runs < runsPerFile) {
+			freeFiles.add(runFile);
+		}
+	}
+
+	private void deleteRunFile(RunFile runFile) {
+		freeFiles.remove(runFile);
+		Promise.ofBlocking(executor, () -> Files.deleteIfExists(runFile.path))
+			.whenException(e -> logger.warn("Could not delete {}", runFile.path, e));
+	}
+
+	private ChannelSupplier<ByteBuf> encode(StreamSupplier<T> supplier) {
+		return supplier
+			.transformWith(ChannelSerializer.builder(serializer)
+				.withInitialBufferSize(readBlockSize)
+				.build())
+			.transformWith(ChannelTransformers.chunkBytes(writeBlockSize.map(bytes -> bytes / 2), writeBlockSize))
+			.transformWith(ChannelFrameEncoder.create(frameFormat))
+			.transformWith(ChannelTransformers.chunkBytes(writeBlockSize.map(bytes -> bytes / 2), writeBlockSize));
+	}
+
 	/**
 	 * Returns supplier for reading data from this storage. It read it from external memory,
 	 * decompresses and deserializes it
@@ -179,10 +305,21 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 	 */
 	@Override
 	public Promise<StreamSupplier<T>> read(int partition) {
-		Path path = partitionPath(partition);
+		Run run = runs.get(partition);
+		Promise<ChannelFileReader> readerPromise = run == null ?
+			ChannelFileReader.builderOpen(executor, partitionPath(partition))
+				.map(builder -> builder
+					.withBufferSize(readAheadSize)
+					.build()) :
+			ChannelFileReader.builderOpen(executor, run.file.path)
+				.map(builder -> builder
+					.withBufferSize(readAheadSize)
+					.withOffset(run.offset)
+					.withLimit(run.length)
+					.build());
 
-		return ChannelFileReader.open(executor, path)
-			.map(file -> file
+		return readerPromise
+			.map(file -> (prefetchBuffers == 0 ? file : ChannelSuppliers.prefetch(prefetchBuffers, file))
 				.transformWith(ChannelFrameDecoder.create(frameFormat))
 				.transformWith(ChannelDeserializer.create(serializer)));
 	}
@@ -192,9 +329,18 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 	 */
 	@Override
 	public Promise<Void> cleanup(List<Integer> partitionsToDelete) {
+		List<Path> paths = new ArrayList<>();
+		for (Integer partitionToDelete : partitionsToDelete) {
+			Run run = runs.remove(partitionToDelete);
+			if (run == null) {
+				paths.add(partitionPath(partitionToDelete));
+			} else if (--run.file.liveRuns == 0 && !run.file.writing) {
+				freeFiles.remove(run.file);
+				paths.add(run.file.path);
+			}
+		}
 		return Promise.ofBlocking(executor, () -> {
-			for (Integer partitionToDelete : partitionsToDelete) {
-				Path path = partitionPath(partitionToDelete);
+			for (Path path : paths) {
 				try {
 					Files.delete(path);
 				} catch (IOException e) {
@@ -203,4 +349,18 @@ public final class StreamSorterStorage<T> extends AbstractReactive
 			}
 		});
 	}
+
+	private static final class RunFile {
+		final Path path;
+		long size;
+		int runs;
+		int liveRuns;
+		boolean writing;
+
+		RunFile(Path path) {
+			this.path = path;
+		}
+	}
+
+	private record Run(RunFile file, long offset, long length) {}
 }
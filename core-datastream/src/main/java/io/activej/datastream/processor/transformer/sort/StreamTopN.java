@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.ImplicitlyReactive;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+
+/**
+ * Represents {@link StreamTransformer} which streams only first {@code limit} items
+ * of its input, as if the input was sorted by key.
+ * <p>
+ * Unlike a {@link StreamSorter} followed by a limit, it keeps only {@code limit} items
+ * in a bounded heap and never spills to disk. Items are streamed in ascending order
+ * of keys after the end of input. Items with equal keys keep their input order,
+ * unless the items are pre-aggregated.
+ * <p>
+ * Optionally, items may be pre-aggregated by some grouping key before being selected,
+ * in that case one aggregated item per group is kept in memory.
+ * <p>
+ * Partial results of several top-N transformers may be combined with a {@link StreamTopNMerger}.
+ *
+ * @param <K> type of keys
+ * @param <T> type of items
+ */
+public final class StreamTopN<K, T> extends ImplicitlyReactive implements StreamTransformer<T, T> {
+	private final BoundedHeap<T> heap;
+
+	private Function<T, ?> groupFunction;
+	private BinaryOperator<T> reducer;
+	private Map<Object, T> groups;
+
+	private final Input input;
+	private final Output output;
+
+	private StreamTopN(Function<T, K> keyFunction, Comparator<K> keyComparator, int limit) {
+		this.heap = BoundedHeap.create(Comparator.comparing(keyFunction, keyComparator), limit);
+		this.input = new Input();
+		this.output = new Output();
+
+		input.getAcknowledgement()
+			.whenException(output::closeEx);
+		output.getAcknowledgement()
+			.whenResult(input::acknowledge)
+			.whenException(input::closeEx);
+	}
+
+	public static <K, T> StreamTopN<K, T> create(Function<T, K> keyFunction, Comparator<K> keyComparator, int limit) {
+		return builder(keyFunction, keyComparator, limit).build();
+	}
+
+	public static <K, T> StreamTopN<K, T>.Builder builder(Function<T, K> keyFunction, Comparator<K> keyComparator, int limit) {
+		checkArgument(limit >= 0, "Limit should not be negative");
+		return new StreamTopN<>(keyFunction, keyComparator, limit).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamTopN<K, T>> {
+		private Builder() {}
+
+		/**
+		 * Aggregates items with equal group keys with a given reducer before selecting the top items
+		 */
+		public Builder withPreAggregation(Function<T, ?> groupFunction, BinaryOperator<T> reducer) {
+			checkNotBuilt(this);
+			StreamTopN.this.groupFunction = groupFunction;
+			StreamTopN.this.reducer = reducer;
+			StreamTopN.this.groups = new HashMap<>();
+			return this;
+		}
+
+		@Override
+		protected StreamTopN<K, T> doBuild() {
+			return StreamTopN.this;
+		}
+	}
+
+	@Override
+	public StreamConsumer<T> getInput() {
+		return input;
+	}
+
+	@Override
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	public final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		public void accept(T item) {
+			if (groups == null) {
+				heap.offer(item);
+			} else {
+				groups.merge(groupFunction.apply(item), item, reducer);
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			if (groups != null) {
+				for (T item : groups.values()) {
+					heap.offer(item);
+				}
+				groups.clear();
+			}
+			for (T item : heap.drainSorted()) {
+				output.send(item);
+			}
+			output.sendEndOfStream();
+		}
+
+		@Override
+		protected void onCleanup() {
+			if (groups != null) groups.clear();
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<T> {
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.common.Checks;
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.dsl.HasStreamInputs;
+import io.activej.datastream.dsl.HasStreamOutput;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.reactor.ImplicitlyReactive;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * Combines partial top-N results, for example, outputs of {@link StreamTopN} on several partitions,
+ * into a single stream of first {@code limit} items sorted by key.
+ * <p>
+ * Each input is expected to be sorted by key, so once an item of some input
+ * does not fit into the top, that input is acknowledged without reading the rest of it.
+ * <p>
+ * If partial results were pre-aggregated, partitions should be sharded by the grouping key,
+ * otherwise the same group may be present in several inputs and is not combined.
+ *
+ * @param <K> type of keys
+ * @param <T> type of items
+ */
+public final class StreamTopNMerger<K, T> extends ImplicitlyReactive implements HasStreamInputs, HasStreamOutput<T> {
+	private static final boolean CHECKS = Checks.isEnabled(StreamTopNMerger.class);
+
+	private final BoundedHeap<T> heap;
+
+	private final List<Input> inputs = new ArrayList<>();
+	private final Output output;
+
+	private boolean started;
+	private int inputsAwaiting;
+
+	private StreamTopNMerger(Function<T, K> keyFunction, Comparator<K> keyComparator, int limit) {
+		this.heap = BoundedHeap.create(Comparator.comparing(keyFunction, keyComparator), limit);
+		this.output = new Output();
+	}
+
+	public static <K, T> StreamTopNMerger<K, T> create(Function<T, K> keyFunction, Comparator<K> keyComparator, int limit) {
+		checkArgument(limit >= 0, "Limit should not be negative");
+		StreamTopNMerger<K, T> merger = new StreamTopNMerger<>(keyFunction, keyComparator, limit);
+		merger.getReactor().post(merger::start);
+		return merger;
+	}
+
+	public StreamConsumer<T> newInput() {
+		if (CHECKS) checkInReactorThread(this);
+		checkState(!started, "Cannot add new inputs after StreamTopNMerger has been started");
+		Input input = new Input();
+		inputs.add(input);
+		inputsAwaiting++;
+		input.getAcknowledgement()
+			.whenException(output::closeEx);
+		output.getAcknowledgement()
+			.whenResult(input::acknowledge)
+			.whenException(input::closeEx);
+		return input;
+	}
+
+	private void start() {
+		started = true;
+		if (inputsAwaiting == 0) {
+			output.flush();
+		}
+	}
+
+	@Override
+	public List<? extends StreamConsumer<?>> getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public StreamSupplier<T> getOutput() {
+		return output;
+	}
+
+	public final class Input extends AbstractStreamConsumer<T> implements StreamDataAcceptor<T> {
+		private boolean done;
+
+		@Override
+		protected void onStarted() {
+			resume(this);
+		}
+
+		@Override
+		public void accept(T item) {
+			if (done) return;
+			if (!heap.offer(item)) {
+				acknowledge();
+				complete();
+			}
+		}
+
+		@Override
+		protected void onEndOfStream() {
+			complete();
+		}
+
+		private void complete() {
+			if (done) return;
+			done = true;
+			if (--inputsAwaiting == 0 && started) {
+				output.flush();
+			}
+		}
+	}
+
+	public final class Output extends AbstractStreamSupplier<T> {
+		void flush() {
+			for (T item : heap.drainSorted()) {
+				send(item);
+			}
+			sendEndOfStream();
+		}
+	}
+}
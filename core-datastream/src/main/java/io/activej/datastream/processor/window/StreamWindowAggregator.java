@@ -0,0 +1,592 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.window;
+
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.datastream.processor.LongHashTable;
+import io.activej.datastream.processor.checkpoint.Checkpointable;
+import io.activej.datastream.processor.reducer.ReducerToResult;
+import io.activej.datastream.processor.transformer.AbstractStreamTransformer;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.promise.Promise;
+import io.activej.serializer.stream.StreamCodec;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static java.lang.Math.floorMod;
+
+/**
+ * Aggregates items by primitive {@code long} keys within event-time windows
+ * (see {@link WindowSpec}), using accumulators of a {@link ReducerToResult}.
+ * <p>
+ * Event time progress is tracked with a watermark, which is the greatest seen timestamp
+ * minus a maximum out-of-orderness. A result of a window is emitted once the watermark passes the end of the window.
+ * Windows are kept for an allowed lateness after that: late items update their accumulators,
+ * and an updated result is emitted immediately, superseding the previous one. Items which are later
+ * than that are dropped. All remaining windows are emitted at the end of stream.
+ * <p>
+ * Session windows of a key are merged when an item bridges them, so reducer should support
+ * {@link ReducerToResult#combine combining} of accumulators. Merging of already emitted sessions
+ * emits the merged session only, results of the original sessions are not retracted.
+ * <p>
+ * If an accumulator codec is set, windows and the watermark may be saved into checkpoints
+ * of a {@link io.activej.datastream.processor.checkpoint.CheckpointCoordinator}.
+ *
+ * @param <I> type of input items
+ * @param <O> type of output items
+ * @param <A> type of accumulators
+ */
+public final class StreamWindowAggregator<I, O, A> extends AbstractStreamTransformer<I, O> implements Checkpointable {
+	private final ToLongFunction<I> keyFunction;
+	private final ToLongFunction<I> timestampFunction;
+	private final ReducerToResult<Long, I, ?, A> reducer;
+	private final ResultFunction<A, O> resultFunction;
+	private final WindowState state;
+
+	private long maxOutOfOrderness;
+	private long allowedLateness;
+	private @Nullable StreamCodec<A> accumulatorCodec;
+
+	private long watermark = Long.MIN_VALUE;
+	private long purgeWatermark = Long.MIN_VALUE;
+	private long nextTimer = Long.MAX_VALUE;
+
+	// region stats
+	private long droppedItems;
+	private long emittedResults;
+	private long updatedResults;
+	// endregion
+
+	/**
+	 * Creates an output item from a final or an updated accumulator of a window
+	 */
+	@FunctionalInterface
+	public interface ResultFunction<A, O> {
+		O apply(long key, long windowStart, long windowEnd, A accumulator);
+	}
+
+	private StreamWindowAggregator(
+		WindowSpec windowSpec, ToLongFunction<I> keyFunction, ToLongFunction<I> timestampFunction,
+		ReducerToResult<Long, I, ?, A> reducer, ResultFunction<A, O> resultFunction
+	) {
+		this.keyFunction = keyFunction;
+		this.timestampFunction = timestampFunction;
+		this.reducer = reducer;
+		this.resultFunction = resultFunction;
+		this.state = windowSpec.type == WindowSpec.Type.SESSION ?
+			new SessionWindows(windowSpec.size) :
+			new FixedWindows(windowSpec.size, windowSpec.slide);
+	}
+
+	public static <I, O, A> StreamWindowAggregator<I, O, A> create(
+		WindowSpec windowSpec, ToLongFunction<I> keyFunction, ToLongFunction<I> timestampFunction,
+		ReducerToResult<Long, I, ?, A> reducer, ResultFunction<A, O> resultFunction
+	) {
+		return builder(windowSpec, keyFunction, timestampFunction, reducer, resultFunction).build();
+	}
+
+	public static <I, O, A> StreamWindowAggregator<I, O, A>.Builder builder(
+		WindowSpec windowSpec, ToLongFunction<I> keyFunction, ToLongFunction<I> timestampFunction,
+		ReducerToResult<Long, I, ?, A> reducer, ResultFunction<A, O> resultFunction
+	) {
+		return new StreamWindowAggregator<>(windowSpec, keyFunction, timestampFunction, reducer, resultFunction).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, StreamWindowAggregator<I, O, A>> {
+		private Builder() {}
+
+		/**
+		 * Sets how far behind the greatest seen timestamp the watermark is
+		 */
+		public Builder withMaxOutOfOrderness(long maxOutOfOrderness) {
+			checkNotBuilt(this);
+			checkArgument(maxOutOfOrderness >= 0, "Maximum out-of-orderness should not be negative");
+			StreamWindowAggregator.this.maxOutOfOrderness = maxOutOfOrderness;
+			return this;
+		}
+
+		/**
+		 * Sets how long windows are kept after they are emitted, so that late items may update them
+		 */
+		public Builder withAllowedLateness(long allowedLateness) {
+			checkNotBuilt(this);
+			checkArgument(allowedLateness >= 0, "Allowed lateness should not be negative");
+			StreamWindowAggregator.this.allowedLateness = allowedLateness;
+			return this;
+		}
+
+		/**
+		 * Sets a codec of accumulators, which is required to save a state of this aggregator into checkpoints
+		 */
+		public Builder withAccumulatorCodec(StreamCodec<A> accumulatorCodec) {
+			checkNotBuilt(this);
+			StreamWindowAggregator.this.accumulatorCodec = accumulatorCodec;
+			return this;
+		}
+
+		@Override
+		protected StreamWindowAggregator<I, O, A> doBuild() {
+			return StreamWindowAggregator.this;
+		}
+	}
+
+	@Override
+	protected boolean isOneToMany() {
+		return true;
+	}
+
+	@Override
+	protected StreamDataAcceptor<I> onResumed(StreamDataAcceptor<O> output) {
+		return item -> {
+			long timestamp = timestampFunction.applyAsLong(item);
+			state.add(keyFunction.applyAsLong(item), timestamp, item, output);
+			long newWatermark = timestamp - maxOutOfOrderness;
+			if (newWatermark > watermark) {
+				advanceWatermark(newWatermark, output);
+			}
+		};
+	}
+
+	@Override
+	protected void onEndOfStream(StreamDataAcceptor<O> output) {
+		advanceWatermark(Long.MAX_VALUE, output);
+	}
+
+	@Override
+	public void saveState(StreamOutput output) throws IOException {
+		checkState(accumulatorCodec != null, "Accumulator codec is not set");
+		output.writeLong(watermark);
+		output.writeLong(purgeWatermark);
+		state.save(output);
+	}
+
+	@Override
+	public void restoreState(StreamInput input) throws IOException {
+		checkState(accumulatorCodec != null, "Accumulator codec is not set");
+		watermark = input.readLong();
+		purgeWatermark = input.readLong();
+		nextTimer = Long.MAX_VALUE;
+		state.restore(input);
+	}
+
+	@Override
+	public Promise<Void> whenDrained() {
+		return getOutputFlushPromise();
+	}
+
+	private void advanceWatermark(long newWatermark, StreamDataAcceptor<O> output) {
+		watermark = newWatermark;
+		purgeWatermark = newWatermark == Long.MAX_VALUE ? Long.MAX_VALUE : newWatermark - allowedLateness;
+		if (watermark >= nextTimer) {
+			nextTimer = Long.MAX_VALUE;
+			state.onTimer(output);
+		}
+	}
+
+	private void schedule(long time) {
+		if (time < nextTimer) nextTimer = time;
+	}
+
+	private A accumulate(A accumulator, long key, I item) {
+		return reducer.accumulate(accumulator != null ? accumulator : reducer.createAccumulator(key), item);
+	}
+
+	private void emit(StreamDataAcceptor<O> output, long key, long start, long end, A accumulator) {
+		output.accept(resultFunction.apply(key, start, end, accumulator));
+		emittedResults++;
+	}
+
+	private abstract class WindowState {
+		abstract void add(long key, long timestamp, I item, StreamDataAcceptor<O> output);
+
+		abstract void onTimer(StreamDataAcceptor<O> output);
+
+		abstract void save(StreamOutput output) throws IOException;
+
+		abstract void restore(StreamInput input) throws IOException;
+	}
+
+	// region fixed windows
+	private final class Window {
+		final long start;
+		final long end;
+		final LongHashTable<A> accumulators = LongHashTable.create();
+		boolean emitted;
+
+		Window(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private final class FixedWindows extends WindowState {
+		final long size;
+		final long slide;
+		final TreeMap<Long, Window> windows = new TreeMap<>();
+
+		FixedWindows(long size, long slide) {
+			this.size = size;
+			this.slide = slide;
+		}
+
+		@Override
+		void add(long key, long timestamp, I item, StreamDataAcceptor<O> output) {
+			boolean accepted = false;
+			for (long start = timestamp - floorMod(timestamp, slide); start > timestamp - size; start -= slide) {
+				long end = start + size;
+				if (end <= purgeWatermark) break;
+				Window window = windows.get(start);
+				if (window == null) {
+					window = new Window(start, end);
+					windows.put(start, window);
+					schedule(end);
+				}
+				A accumulator = accumulate(window.accumulators.get(key), key, item);
+				window.accumulators.put(key, accumulator);
+				if (window.emitted) {
+					emit(output, key, start, end, accumulator);
+					updatedResults++;
+				}
+				accepted = true;
+			}
+			if (!accepted) droppedItems++;
+		}
+
+		@Override
+		void onTimer(StreamDataAcceptor<O> output) {
+			for (Iterator<Window> iterator = windows.values().iterator(); iterator.hasNext(); ) {
+				Window window = iterator.next();
+				if (window.end > watermark) {
+					schedule(window.end);
+					return;
+				}
+				if (!window.emitted) {
+					window.emitted = true;
+					LongHashTable<A> accumulators = window.accumulators;
+					for (int slot = 0; slot < accumulators.capacity(); slot++) {
+						A accumulator = accumulators.valueAt(slot);
+						if (accumulator == null) continue;
+						emit(output, accumulators.keyAt(slot), window.start, window.end, accumulator);
+					}
+				}
+				if (window.end <= purgeWatermark) {
+					iterator.remove();
+				} else {
+					schedule(window.end + allowedLateness);
+				}
+			}
+		}
+
+		@Override
+		void save(StreamOutput output) throws IOException {
+			output.writeVarInt(windows.size());
+			for (Window window : windows.values()) {
+				output.writeLong(window.start);
+				output.writeBoolean(window.emitted);
+				LongHashTable<A> accumulators = window.accumulators;
+				output.writeVarInt(accumulators.size());
+				for (int slot = 0; slot < accumulators.capacity(); slot++) {
+					A accumulator = accumulators.valueAt(slot);
+					if (accumulator == null) continue;
+					output.writeLong(accumulators.keyAt(slot));
+					accumulatorCodec.encode(output, accumulator);
+				}
+			}
+		}
+
+		@Override
+		void restore(StreamInput input) throws IOException {
+			windows.clear();
+			for (int count = input.readVarInt(); count > 0; count--) {
+				long start = input.readLong();
+				Window window = new Window(start, start + size);
+				window.emitted = input.readBoolean();
+				for (int keys = input.readVarInt(); keys > 0; keys--) {
+					long key = input.readLong();
+					window.accumulators.put(key, accumulatorCodec.decode(input));
+				}
+				windows.put(start, window);
+				schedule(window.emitted ? window.end + allowedLateness : window.end);
+			}
+		}
+	}
+	// endregion
+
+	// region session windows
+	private final class Session {
+		long start;
+		long end;
+		A accumulator;
+		boolean emitted;
+		Session next;
+
+		Session(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private final class SessionWindows extends WindowState {
+		final long gap;
+		// sessions of a key are linked in order of their start
+		final LongHashTable<Session> sessions = LongHashTable.create();
+		final TimerQueue timers = new TimerQueue();
+
+		SessionWindows(long gap) {
+			this.gap = gap;
+		}
+
+		@Override
+		void add(long key, long timestamp, I item, StreamDataAcceptor<O> output) {
+			long end = timestamp + gap;
+			Session head = sessions.get(key);
+			Session prev = null;
+			Session target = null;
+			boolean emitted = false;
+			for (Session session = head; session != null && session.start < end; session = session.next) {
+				if (session.end <= timestamp) {
+					prev = session;
+					continue;
+				}
+				emitted |= session.emitted;
+				if (target == null) {
+					target = session;
+					target.accumulator = accumulate(target.accumulator, key, item);
+					target.start = Math.min(target.start, timestamp);
+					target.end = Math.max(target.end, end);
+					prev = session;
+				} else {
+					target.accumulator = reducer.combine(target.accumulator, session.accumulator);
+					target.end = Math.max(target.end, session.end);
+					target.next = session.next;
+				}
+			}
+
+			if (target == null) {
+				if (end <= purgeWatermark) {
+					droppedItems++;
+					return;
+				}
+				target = new Session(timestamp, end);
+				target.accumulator = accumulate(null, key, item);
+				if (prev == null) {
+					target.next = head;
+					sessions.put(key, target);
+				} else {
+					target.next = prev.next;
+					prev.next = target;
+				}
+				timers.add(end, key);
+				schedule(end);
+				return;
+			}
+
+			if (target.end <= watermark) {
+				if (emitted) {
+					emit(output, key, target.start, target.end, target.accumulator);
+					updatedResults++;
+				}
+			} else {
+				target.emitted = false;
+			}
+		}
+
+		@Override
+		void onTimer(StreamDataAcceptor<O> output) {
+			while (!timers.isEmpty() && timers.peekTime() <= watermark) {
+				long key = timers.peekKey();
+				timers.poll();
+				process(key, output);
+			}
+			if (!timers.isEmpty()) {
+				schedule(timers.peekTime());
+			}
+		}
+
+		private void process(long key, StreamDataAcceptor<O> output) {
+			Session head = sessions.get(key);
+			Session prev = null;
+			long nextTime = Long.MAX_VALUE;
+			for (Session session = head; session != null; session = session.next) {
+				if (session.end > watermark) {
+					nextTime = Math.min(nextTime, session.end);
+					prev = session;
+					continue;
+				}
+				if (!session.emitted) {
+					session.emitted = true;
+					emit(output, key, session.start, session.end, session.accumulator);
+				}
+				if (session.end <= purgeWatermark) {
+					if (prev == null) {
+						head = session.next;
+					} else {
+						prev.next = session.next;
+					}
+				} else {
+					nextTime = Math.min(nextTime, session.end + allowedLateness);
+					prev = session;
+				}
+			}
+			if (head == null) {
+				sessions.remove(key);
+				return;
+			}
+			sessions.put(key, head);
+			if (nextTime != Long.MAX_VALUE) {
+				timers.add(nextTime, key);
+			}
+		}
+
+		@Override
+		void save(StreamOutput output) throws IOException {
+			output.writeVarInt(sessions.size());
+			for (int slot = 0; slot < sessions.capacity(); slot++) {
+				Session head = sessions.valueAt(slot);
+				if (head == null) continue;
+				output.writeLong(sessions.keyAt(slot));
+				int count = 0;
+				for (Session session = head; session != null; session = session.next) {
+					count++;
+				}
+				output.writeVarInt(count);
+				for (Session session = head; session != null; session = session.next) {
+					output.writeLong(session.start);
+					output.writeLong(session.end);
+					output.writeBoolean(session.emitted);
+					accumulatorCodec.encode(output, session.accumulator);
+				}
+			}
+		}
+
+		@Override
+		void restore(StreamInput input) throws IOException {
+			sessions.clear();
+			timers.clear();
+			for (int keys = input.readVarInt(); keys > 0; keys--) {
+				long key = input.readLong();
+				Session head = null;
+				Session tail = null;
+				for (int count = input.readVarInt(); count > 0; count--) {
+					Session session = new Session(input.readLong(), input.readLong());
+					session.emitted = input.readBoolean();
+					session.accumulator = accumulatorCodec.decode(input);
+					if (tail == null) {
+						head = session;
+					} else {
+						tail.next = session;
+					}
+					tail = session;
+					timers.add(session.emitted ? session.end + allowedLateness : session.end, key);
+				}
+				sessions.put(key, head);
+			}
+			if (!timers.isEmpty()) {
+				schedule(timers.peekTime());
+			}
+		}
+	}
+
+	/**
+	 * A binary min-heap of (time, key) pairs stored in primitive arrays.
+	 * Entries may be stale, a key is checked again when its entry is polled.
+	 */
+	private static final class TimerQueue {
+		long[] times = new long[16];
+		long[] keys = new long[16];
+		int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		long peekTime() {
+			return times[0];
+		}
+
+		long peekKey() {
+			return keys[0];
+		}
+
+		void add(long time, long key) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int index = size++;
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (times[parent] <= time) break;
+				times[index] = times[parent];
+				keys[index] = keys[parent];
+				index = parent;
+			}
+			times[index] = time;
+			keys[index] = key;
+		}
+
+		void poll() {
+			long time = times[--size];
+			long key = keys[size];
+			int index = 0;
+			int half = size >>> 1;
+			while (index < half) {
+				int child = 2 * index + 1;
+				if (child + 1 < size && times[child + 1] < times[child]) child++;
+				if (time <= times[child]) break;
+				times[index] = times[child];
+				keys[index] = keys[child];
+				index = child;
+			}
+			times[index] = time;
+			keys[index] = key;
+		}
+	}
+	// endregion
+
+	public long getWatermark() {
+		return watermark;
+	}
+
+	public long getDroppedItems() {
+		return droppedItems;
+	}
+
+	public long getEmittedResults() {
+		return emittedResults;
+	}
+
+	/**
+	 * Returns a number of results emitted again because of late items
+	 */
+	public long getUpdatedResults() {
+		return updatedResults;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.datastream.processor.window;
+
+import static io.activej.common.Checks.checkArgument;
+
+/**
+ * Describes how items are assigned to event-time windows.
+ * Sizes are expressed in the same units as timestamps of items.
+ */
+public final class WindowSpec {
+	enum Type {TUMBLING, SLIDING, SESSION}
+
+	final Type type;
+	final long size;
+	final long slide;
+
+	private WindowSpec(Type type, long size, long slide) {
+		this.type = type;
+		this.size = size;
+		this.slide = slide;
+	}
+
+	/**
+	 * Non-overlapping windows of a fixed size, aligned to multiples of the size
+	 */
+	public static WindowSpec tumbling(long size) {
+		checkArgument(size > 0, "Window size should be positive");
+		return new WindowSpec(Type.TUMBLING, size, size);
+	}
+
+	/**
+	 * Windows of a fixed size which start every {@code slide} units of time,
+	 * an item belongs to {@code size / slide} windows
+	 */
+	public static WindowSpec sliding(long size, long slide) {
+		checkArgument(size > 0 && slide > 0, "Window size and slide should be positive");
+		checkArgument(slide <= size, "Window slide should not be greater than window size");
+		return new WindowSpec(Type.SLIDING, size, slide);
+	}
+
+	/**
+	 * Per-key windows of activity, which are closed once there are no items
+	 * of a key for a {@code gap} units of time
+	 */
+	public static WindowSpec session(long gap) {
+		checkArgument(gap > 0, "Session gap should be positive");
+		return new WindowSpec(Type.SESSION, gap, 0);
+	}
+
+	@Override
+	public String toString() {
+		return switch (type) {
+			case TUMBLING -> "tumbling(" + size + ')';
+			case SLIDING -> "sliding(" + size + ", " + slide + ')';
+			case SESSION -> "session(" + size + ')';
+		};
+	}
+}
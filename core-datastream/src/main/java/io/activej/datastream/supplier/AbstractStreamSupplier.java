@@ -264,6 +264,14 @@ public abstract class AbstractStreamSupplier<T> extends ImplicitlyReactive imple
 		return dataAcceptorBuffered;
 	}
 
+	/**
+	 * Returns <code>true</code> if there are no items sent while this supplier
+	 * was suspended and waiting to be flushed
+	 */
+	public final boolean isBufferEmpty() {
+		return buffer.isEmpty();
+	}
+
 	/**
 	 * Returns <code>true</code> when this supplier is in normal state and
 	 * <cod>false</cod> when it is suspended or closed.
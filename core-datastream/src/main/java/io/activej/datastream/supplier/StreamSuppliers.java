@@ -21,6 +21,7 @@ import io.activej.common.function.SupplierEx;
 import io.activej.csp.supplier.ChannelSupplier;
 import io.activej.csp.supplier.ChannelSuppliers;
 import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.processor.StreamReactorBridge;
 import io.activej.datastream.processor.transformer.StreamTransformer;
 import io.activej.datastream.processor.transformer.StreamTransformers;
 import io.activej.datastream.supplier.impl.*;
@@ -147,6 +148,23 @@ public final class StreamSuppliers {
 		return new OfAnotherReactor<>(anotherReactor, anotherReactorSupplier);
 	}
 
+	/**
+	 * Creates a supplier of items of a supplier which lives in another reactor.
+	 * Items are passed through a lock-free ring buffer of a given capacity (a power of 2),
+	 * without tasks being executed on reactors per each batch of items.
+	 *
+	 * @see StreamReactorBridge
+	 */
+	public static <T> StreamSupplier<T> ofAnotherReactor(Reactor anotherReactor, StreamSupplier<T> anotherReactorSupplier, int bufferCapacity) {
+		Reactor reactor = Reactor.getCurrentReactor();
+		if (reactor == anotherReactor) {
+			return anotherReactorSupplier;
+		}
+		StreamReactorBridge<T> bridge = StreamReactorBridge.create(anotherReactor, reactor, bufferCapacity);
+		anotherReactor.execute(() -> anotherReactorSupplier.streamTo(bridge.getInput()));
+		return bridge.getOutput();
+	}
+
 	/**
 	 * Creates a supplier that supplies items from given suppliers consecutively and only then closes.
 	 */
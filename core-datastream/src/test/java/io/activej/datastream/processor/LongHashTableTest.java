@@ -0,0 +1,68 @@
+package io.activej.datastream.processor;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongHashTableTest {
+
+	@Test
+	public void testSameAsHashMap() {
+		Random random = new Random(0);
+		for (long seed = 0; seed < 3; seed++) {
+			LongHashTable<String> table = LongHashTable.create(seed);
+			Map<Long, String> expected = new HashMap<>();
+			for (int i = 0; i < 100_000; i++) {
+				long key = random.nextInt(1000) - 500;
+				switch (random.nextInt(3)) {
+					case 0 -> {
+						table.put(key, "v" + i);
+						expected.put(key, "v" + i);
+					}
+					case 1 -> {
+						table.remove(key);
+						expected.remove(key);
+					}
+					default -> assertEquals(expected.get(key), table.get(key));
+				}
+				assertEquals(expected.size(), table.size());
+			}
+
+			Map<Long, String> actual = new HashMap<>();
+			for (int slot = 0; slot < table.capacity(); slot++) {
+				String value = table.valueAt(slot);
+				if (value != null) {
+					assertNull(actual.put(table.keyAt(slot), value));
+				}
+			}
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testSlots() {
+		LongHashTable<String> table = LongHashTable.create();
+		for (long key = 0; key < 100; key++) {
+			int slot = table.slot(key);
+			assertNull(table.valueAt(slot));
+			table.insertAt(slot, key, "a");
+		}
+		for (long key = 0; key < 100; key++) {
+			int slot = table.slot(key);
+			assertEquals(key, table.keyAt(slot));
+			table.setValueAt(slot, table.valueAt(slot) + key);
+		}
+		for (long key = 0; key < 100; key++) {
+			assertEquals("a" + key, table.get(key));
+		}
+		assertEquals(100, table.size());
+
+		table.clear();
+		assertEquals(0, table.size());
+		assertNull(table.get(0));
+	}
+}
@@ -0,0 +1,126 @@
+package io.activej.datastream.processor;
+
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.consumer.StreamConsumers;
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.eventloop.Eventloop;
+import io.activej.promise.Promise;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static io.activej.common.exception.FatalErrorHandlers.rethrow;
+import static io.activej.datastream.TestStreamTransformers.decorate;
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.datastream.TestUtils.assertClosedWithError;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StreamReactorBridgeTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	private Eventloop anotherEventloop;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		anotherEventloop = Eventloop.builder()
+			.withFatalErrorHandler(rethrow())
+			.build();
+		anotherEventloop.keepAlive(true);
+		CountDownLatch latch = new CountDownLatch(1);
+		new Thread(() -> {
+			anotherEventloop.post(latch::countDown);
+			anotherEventloop.run();
+		}, "another").start();
+		latch.await();
+	}
+
+	@After
+	public void tearDown() {
+		anotherEventloop.execute(() -> anotherEventloop.keepAlive(false));
+	}
+
+	@Test
+	public void testSupplierOfAnotherReactor() throws ExecutionException, InterruptedException {
+		List<Integer> expected = IntStream.range(0, 100_000).boxed().toList();
+		StreamSupplier<Integer> anotherEventloopSupplier = fromAnotherEventloop(() -> StreamSuppliers.ofIterable(expected));
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 16);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(supplier.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEquals(expected, consumer.getList());
+		assertEndOfStream(supplier, consumer);
+		anotherEventloop.submit(() -> assertEndOfStream(anotherEventloopSupplier)).get();
+	}
+
+	@Test
+	public void testConsumerOfAnotherReactor() throws ExecutionException, InterruptedException {
+		List<Integer> expected = IntStream.range(0, 100_000).boxed().toList();
+		ToListStreamConsumer<Integer> anotherEventloopConsumer = fromAnotherEventloop(ToListStreamConsumer::create);
+		StreamConsumer<Integer> consumer = StreamConsumers.ofAnotherReactor(anotherEventloop,
+			fromAnotherEventloop(() -> anotherEventloopConsumer.transformWith(randomlySuspending())), 8);
+
+		await(StreamSuppliers.ofIterable(expected).streamTo(consumer));
+
+		assertEquals(expected, fromAnotherEventloop(anotherEventloopConsumer::getList));
+		assertEndOfStream(consumer);
+	}
+
+	@Test
+	public void testEmpty() throws ExecutionException, InterruptedException {
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofAnotherReactor(anotherEventloop, fromAnotherEventloop(StreamSuppliers::empty), 4);
+
+		assertEquals(List.of(), await(supplier.toList()));
+	}
+
+	@Test
+	public void testSupplierException() throws ExecutionException, InterruptedException {
+		ExpectedException expectedException = new ExpectedException();
+		StreamSupplier<Integer> anotherEventloopSupplier = fromAnotherEventloop(() ->
+			StreamSuppliers.concat(StreamSuppliers.ofValues(1, 2, 3), StreamSuppliers.closingWithError(expectedException)));
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 2);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		Exception exception = awaitException(supplier.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertSame(expectedException, exception);
+		assertClosedWithError(expectedException, supplier, consumer);
+		anotherEventloop.submit(() -> assertClosedWithError(expectedException, anotherEventloopSupplier)).get();
+	}
+
+	@Test
+	public void testConsumerException() throws ExecutionException, InterruptedException {
+		ExpectedException expectedException = new ExpectedException();
+		StreamSupplier<Integer> anotherEventloopSupplier = fromAnotherEventloop(() -> StreamSuppliers.ofValues(1, 2, 3, 4, 5));
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofAnotherReactor(anotherEventloop, anotherEventloopSupplier, 2);
+		StreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		Exception exception = awaitException(supplier.streamTo(consumer
+			.transformWith(decorate(promise -> promise
+				.then(item -> item == 4 ? Promise.ofException(expectedException) : Promise.of(item))))));
+
+		assertSame(expectedException, exception);
+		assertClosedWithError(expectedException, supplier, consumer);
+		anotherEventloop.submit(() -> assertClosedWithError(expectedException, anotherEventloopSupplier)).get();
+	}
+
+	private <T> T fromAnotherEventloop(Supplier<T> supplier) throws ExecutionException, InterruptedException {
+		return anotherEventloop.<T>submit(() -> cb -> cb.accept(supplier.get(), null)).get();
+	}
+}
@@ -6,6 +6,7 @@ import io.activej.datastream.supplier.StreamDataAcceptor;
 import io.activej.datastream.supplier.StreamSupplier;
 import io.activej.datastream.supplier.StreamSuppliers;
 import io.activej.promise.Promise;
+import io.activej.promise.Promises;
 import io.activej.test.ExpectedException;
 import io.activej.test.rules.EventloopRule;
 import org.junit.ClassRule;
@@ -13,7 +14,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 
 import static io.activej.datastream.TestStreamTransformers.*;
 import static io.activej.datastream.TestUtils.*;
@@ -21,6 +24,7 @@ import static io.activej.promise.TestUtils.await;
 import static io.activej.promise.TestUtils.awaitException;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class StreamSplitterTest {
 
@@ -304,4 +308,119 @@ public class StreamSplitterTest {
 		assertClosedWithError(consumer1);
 		assertClosedWithError(consumer2);
 	}
+	@Test
+	public void testOutputBuffering() {
+		StreamSplitter<Integer, Integer> splitter = StreamSplitter.<Integer, Integer>builder(
+				(item, acceptors) -> {
+					for (StreamDataAcceptor<Integer> acceptor : acceptors) {
+						acceptor.accept(item);
+					}
+				})
+			.withOutputBufferSize(100)
+			.build();
+
+		StreamSupplier<Integer> source = StreamSuppliers.ofValues(1, 2, 3, 4, 5);
+		ToListStreamConsumer<Integer> fastConsumer = ToListStreamConsumer.create();
+		List<Integer> slowList = new ArrayList<>();
+		AbstractStreamConsumer<Integer> slowConsumer = new AbstractStreamConsumer<>() {
+			@Override
+			protected void onStarted() {
+				resume(item -> {
+					slowList.add(item);
+					if (item == 1) {
+						suspend();
+						reactor.post(() -> resume(slowList::add));
+					}
+				});
+			}
+
+			@Override
+			protected void onEndOfStream() {
+				acknowledge();
+			}
+		};
+
+		await(
+			source.streamTo(splitter.getInput()),
+			splitter.newOutput().streamTo(fastConsumer),
+			splitter.newOutput().streamTo(slowConsumer)
+		);
+
+		assertEquals(List.of(1, 2, 3, 4, 5), fastConsumer.getList());
+		assertEquals(List.of(1, 2, 3, 4, 5), slowList);
+
+		StreamSplitter<Integer, Integer>.Output slowOutput = (StreamSplitter<Integer, Integer>.Output) splitter.getOutput(1);
+		assertEquals(1, slowOutput.getSuspends());
+		assertEquals(4, slowOutput.getMaxBufferedItems());
+		assertEquals(0, slowOutput.getBufferedItems());
+		assertEquals(0, ((StreamSplitter<Integer, Integer>.Output) splitter.getOutput(0)).getSuspends());
+
+		assertEndOfStream(source);
+		assertEndOfStream(splitter.getInput());
+		assertSuppliersEndOfStream(splitter.getOutputs());
+	}
+
+	@Test
+	public void testOutputBufferLimit() {
+		StreamSplitter<Integer, Integer> splitter = StreamSplitter.<Integer, Integer>builder(
+				(item, acceptors) -> {
+					for (StreamDataAcceptor<Integer> acceptor : acceptors) {
+						acceptor.accept(item);
+					}
+				})
+			.withOutputBufferSize(2)
+			.build();
+
+		StreamSupplier<Integer> source = StreamSuppliers.ofIterable(IntStream.range(0, 100).boxed().toList());
+		ToListStreamConsumer<Integer> consumer1 = ToListStreamConsumer.create();
+		ToListStreamConsumer<Integer> consumer2 = ToListStreamConsumer.create();
+
+		await(
+			source.streamTo(splitter.getInput()),
+			splitter.newOutput().streamTo(consumer1.transformWith(randomlySuspending())),
+			splitter.newOutput().streamTo(consumer2.transformWith(oneByOne()))
+		);
+
+		List<Integer> expected = IntStream.range(0, 100).boxed().toList();
+		assertEquals(expected, consumer1.getList());
+		assertEquals(expected, consumer2.getList());
+		for (StreamSupplier<Integer> output : splitter.getOutputs()) {
+			assertTrue(((StreamSplitter<Integer, Integer>.Output) output).getMaxBufferedItems() <= 2);
+		}
+	}
+
+	@Test
+	public void testHotKeySharder() {
+		HotKeySharder<Integer, Integer> sharder = HotKeySharder.<Integer, Integer>builder(item -> item % 2 == 0 ? 0 : item)
+			.withHotKeyReplicas(4)
+			.withSampling(1, 100)
+			.withHotKeyThreshold(0.2)
+			.build();
+		StreamSplitter<Integer, Integer> splitter = StreamSplitter.create(sharder);
+
+		List<Integer> items = IntStream.range(0, 1000).boxed().toList();
+		StreamSupplier<Integer> source = StreamSuppliers.ofIterable(items);
+		List<ToListStreamConsumer<Integer>> consumers = new ArrayList<>();
+		List<Promise<Void>> promises = new ArrayList<>();
+		promises.add(source.streamTo(splitter.getInput()));
+		for (int i = 0; i < 8; i++) {
+			ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+			consumers.add(consumer);
+			promises.add(splitter.newOutput().streamTo(consumer.transformWith(randomlySuspending())));
+		}
+		await(Promises.all(promises));
+
+		assertEquals(Set.of(0), sharder.getHotKeys());
+		assertEquals(450, sharder.getSprayedItems());
+
+		List<Integer> result = new ArrayList<>();
+		int outputsWithHotKey = 0;
+		for (ToListStreamConsumer<Integer> consumer : consumers) {
+			result.addAll(consumer.getList());
+			if (consumer.getList().stream().anyMatch(item -> item % 2 == 0)) outputsWithHotKey++;
+		}
+		result.sort(null);
+		assertEquals(items, result);
+		assertEquals(4, outputsWithHotKey);
+	}
 }
@@ -0,0 +1,388 @@
+package io.activej.datastream.processor.checkpoint;
+
+import io.activej.datastream.consumer.AbstractStreamConsumer;
+import io.activej.datastream.consumer.StreamConsumer;
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.reducer.ReducerToResult;
+import io.activej.datastream.processor.reducer.StreamHashAggregator;
+import io.activej.datastream.processor.transformer.AbstractStreamTransformer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.processor.transformer.sort.IStreamSorterStorage;
+import io.activej.datastream.processor.window.StreamWindowAggregator;
+import io.activej.datastream.processor.window.WindowSpec;
+import io.activej.datastream.supplier.AbstractStreamSupplier;
+import io.activej.datastream.supplier.StreamDataAcceptor;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.ImplicitlyReactive;
+import io.activej.serializer.stream.StreamCodecs;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.jetbrains.annotations.Nullable;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.*;
+
+public class CheckpointCoordinatorTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	public record Event(long key, long timestamp) {}
+
+	public record Result(long key, long start, long end, long count) {}
+
+	private static final List<Event> EVENTS = IntStream.range(0, 1000).mapToObj(i -> new Event(i % 5, i)).toList();
+
+	@Test
+	public void testResumeWindowAggregation() {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+
+		List<Result> expected = await(StreamSuppliers.ofIterable(EVENTS)
+			.transformWith(windowAggregator())
+			.toList());
+
+		CheckpointCoordinator coordinator1 = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(150)
+			.build();
+		StreamWindowAggregator<Event, Result, long[]> aggregator1 = windowAggregator();
+		coordinator1.register("windows", aggregator1);
+		ToListStreamConsumer<Result> consumer1 = ToListStreamConsumer.create();
+		ExpectedException exception = new ExpectedException();
+		Exception e = awaitException(StreamSuppliers.concat(StreamSuppliers.ofIterable(EVENTS.subList(0, 500)), StreamSuppliers.closingWithError(exception))
+			.transformWith(coordinator1.barrier())
+			.transformWith(aggregator1)
+			.streamTo(consumer1.transformWith(randomlySuspending())));
+		assertSame(exception, e);
+		assertEquals(3, coordinator1.getCheckpoints());
+		assertEquals(450, coordinator1.getLastCheckpointPosition());
+
+		CheckpointCoordinator coordinator2 = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(150)
+			.build();
+		StreamWindowAggregator<Event, Result, long[]> aggregator2 = windowAggregator();
+		coordinator2.register("windows", aggregator2);
+		Checkpoint checkpoint = await(coordinator2.restore());
+		assertNotNull(checkpoint);
+		assertEquals(3, checkpoint.id());
+		assertEquals(450, checkpoint.position());
+
+		ToListStreamConsumer<Result> consumer2 = ToListStreamConsumer.create();
+		await(StreamSuppliers.ofIterable(EVENTS)
+			.transformWith(coordinator2.barrier())
+			.transformWith(aggregator2)
+			.streamTo(consumer2.transformWith(randomlySuspending())));
+
+		assertEquals(1000, coordinator2.getPosition());
+		assertEquals(6, coordinator2.getLastCheckpointId());
+		assertTrue(consumer2.getList().stream().noneMatch(result -> result.end() <= 400));
+
+		Set<Result> resumed = new HashSet<>(consumer1.getList());
+		resumed.addAll(consumer2.getList());
+		assertEquals(new HashSet<>(expected), resumed);
+	}
+
+	@Test
+	public void testResumeHashAggregation() {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+		List<Integer> items = IntStream.range(0, 1000).boxed().toList();
+
+		CheckpointCoordinator coordinator1 = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(100)
+			.build();
+		StreamHashAggregator<Long, Integer, long[], long[]> aggregator1 = hashAggregator();
+		coordinator1.register("counts", aggregator1);
+		awaitException(StreamSuppliers.concat(StreamSuppliers.ofIterable(items.subList(0, 550)), StreamSuppliers.closingWithError(new ExpectedException()))
+			.transformWith(coordinator1.barrier())
+			.transformWith(aggregator1)
+			.streamTo(ToListStreamConsumer.create()));
+		assertEquals(500, coordinator1.getLastCheckpointPosition());
+
+		CheckpointCoordinator coordinator2 = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(100)
+			.build();
+		StreamHashAggregator<Long, Integer, long[], long[]> aggregator2 = hashAggregator();
+		coordinator2.register("counts", aggregator2);
+		await(coordinator2.restore());
+
+		List<long[]> result = await(StreamSuppliers.ofIterable(items)
+			.transformWith(coordinator2.barrier())
+			.transformWith(aggregator2)
+			.toList());
+
+		Map<Long, Long> counts = new TreeMap<>();
+		for (long[] accumulator : result) {
+			counts.put(accumulator[0], accumulator[1]);
+		}
+		Map<Long, Long> expected = new TreeMap<>();
+		for (long key = 0; key < 10; key++) {
+			expected.put(key, 100L);
+		}
+		assertEquals(expected, counts);
+	}
+
+	@Test
+	public void testCheckpointWaitsForBufferedItems() throws IOException {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+		CheckpointCoordinator coordinator = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(100)
+			.build();
+		Delayer<Integer> delayer = new Delayer<>();
+		Counter<Integer> counter = new Counter<>();
+		coordinator.register("counter", counter);
+		coordinator.registerDrainCheck(delayer::whenEmpty);
+
+		List<Integer> items = IntStream.range(0, 1000).boxed().toList();
+		List<Integer> result = await(StreamSuppliers.ofIterable(items)
+			.transformWith(coordinator.barrier())
+			.transformWith(delayer)
+			.transformWith(counter)
+			.toList());
+
+		assertEquals(items, result);
+		assertEquals(9, storage.checkpoints.size());
+		for (Checkpoint checkpoint : storage.checkpoints) {
+			try (StreamInput input = StreamInput.create(new ByteArrayInputStream(checkpoint.states().get("counter")))) {
+				assertEquals(checkpoint.position(), input.readLong());
+			}
+		}
+	}
+
+	@Test
+	public void testFailedSaveIsRetried() {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+		storage.failures = 1;
+
+		CheckpointCoordinator coordinator = CheckpointCoordinator.builder(storage)
+			.withCheckpointInterval(100)
+			.build();
+		coordinator.register("windows", windowAggregator());
+
+		await(StreamSuppliers.ofIterable(EVENTS.subList(0, 250))
+			.transformWith(coordinator.barrier())
+			.streamTo(ToListStreamConsumer.create()));
+
+		assertEquals(1, coordinator.getFailedCheckpoints());
+		assertEquals(1, coordinator.getCheckpoints());
+		assertEquals(200, coordinator.getLastCheckpointPosition());
+		assertEquals(1, storage.checkpoints.size());
+	}
+
+	@Test
+	public void testRequestCheckpoint() {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+		CheckpointCoordinator coordinator = CheckpointCoordinator.create(storage);
+
+		coordinator.requestCheckpoint();
+		await(StreamSuppliers.ofIterable(EVENTS.subList(0, 10))
+			.transformWith(coordinator.barrier())
+			.streamTo(ToListStreamConsumer.create()));
+		assertEquals(1, coordinator.getCheckpoints());
+		assertEquals(0, coordinator.getLastCheckpointPosition());
+		assertEquals(1, storage.checkpoints.size());
+	}
+
+	@Test
+	public void testRestoreWithMissingStage() {
+		InMemoryCheckpointStorage storage = new InMemoryCheckpointStorage();
+		storage.checkpoints.add(new Checkpoint(1, 100, Map.of()));
+
+		CheckpointCoordinator coordinator = CheckpointCoordinator.create(storage);
+		coordinator.register("windows", windowAggregator());
+
+		Exception e = awaitException(coordinator.restore());
+		assertTrue(e instanceof IOException);
+	}
+
+	private static StreamWindowAggregator<Event, Result, long[]> windowAggregator() {
+		return StreamWindowAggregator.<Event, Result, long[]>builder(
+				WindowSpec.tumbling(100), Event::key, Event::timestamp, new CountReducer<>(),
+				(key, start, end, accumulator) -> new Result(key, start, end, accumulator[1]))
+			.withAccumulatorCodec(StreamCodecs.ofLongArray())
+			.build();
+	}
+
+	private static StreamHashAggregator<Long, Integer, long[], long[]> hashAggregator() {
+		return StreamHashAggregator.<Integer, long[], long[]>builderForLongKeys(
+				item -> item % 10, accumulator -> accumulator[0], new CountReducer<>(), new UnusedSorterStorage(), 1000)
+			.withAccumulatorCodec(StreamCodecs.ofLongArray())
+			.build();
+	}
+
+	private static final class CountReducer<I> extends ReducerToResult<Long, I, long[], long[]> {
+		@Override
+		public long[] createAccumulator(Long key) {
+			return new long[]{key, 0};
+		}
+
+		@Override
+		public long[] accumulate(long[] accumulator, I value) {
+			accumulator[1]++;
+			return accumulator;
+		}
+
+		@Override
+		public long[] combine(long[] accumulator, long[] anotherAccumulator) {
+			accumulator[1] += anotherAccumulator[1];
+			return accumulator;
+		}
+
+		@Override
+		public long[] produceResult(long[] accumulator) {
+			return accumulator;
+		}
+	}
+
+	/**
+	 * Holds received items until the next reactor tick, like an asynchronous mapper
+	 */
+	private static final class Delayer<T> extends ImplicitlyReactive implements StreamTransformer<T, T> {
+		private final ArrayDeque<T> items = new ArrayDeque<>();
+		private boolean flushScheduled;
+		private @Nullable SettablePromise<Void> emptyPromise;
+
+		private final AbstractStreamConsumer<T> input = new AbstractStreamConsumer<>() {
+			@Override
+			protected void onStarted() {
+				resume(item -> {
+					items.addLast(item);
+					scheduleFlush();
+				});
+			}
+
+			@Override
+			protected void onEndOfStream() {
+				scheduleFlush();
+			}
+		};
+
+		private final AbstractStreamSupplier<T> output = new AbstractStreamSupplier<>() {
+			@Override
+			protected void onResumed() {
+				scheduleFlush();
+			}
+		};
+
+		Delayer() {
+			input.getAcknowledgement()
+				.whenException(output::closeEx);
+			output.getAcknowledgement()
+				.whenResult(input::acknowledge)
+				.whenException(input::closeEx);
+		}
+
+		Promise<Void> whenEmpty() {
+			if (items.isEmpty()) return Promise.complete();
+			if (emptyPromise == null) emptyPromise = new SettablePromise<>();
+			return emptyPromise;
+		}
+
+		@Override
+		public StreamConsumer<T> getInput() {
+			return input;
+		}
+
+		@Override
+		public StreamSupplier<T> getOutput() {
+			return output;
+		}
+
+		private void scheduleFlush() {
+			if (flushScheduled) return;
+			flushScheduled = true;
+			reactor.post(() -> {
+				flushScheduled = false;
+				while (!items.isEmpty()) {
+					StreamDataAcceptor<T> acceptor = output.getDataAcceptor();
+					if (acceptor == null) return;
+					acceptor.accept(items.removeFirst());
+				}
+				if (input.isEndOfStream()) {
+					output.sendEndOfStream();
+				}
+				if (emptyPromise != null) {
+					SettablePromise<Void> emptyPromise = this.emptyPromise;
+					this.emptyPromise = null;
+					emptyPromise.set(null);
+				}
+			});
+		}
+	}
+
+	private static final class Counter<T> extends AbstractStreamTransformer<T, T> implements Checkpointable {
+		private long count;
+
+		@Override
+		protected StreamDataAcceptor<T> onResumed(StreamDataAcceptor<T> output) {
+			return item -> {
+				count++;
+				output.accept(item);
+			};
+		}
+
+		@Override
+		public void saveState(StreamOutput output) throws IOException {
+			output.writeLong(count);
+		}
+
+		@Override
+		public void restoreState(StreamInput input) throws IOException {
+			count = input.readLong();
+		}
+	}
+
+	private static final class InMemoryCheckpointStorage implements ICheckpointStorage {
+		final List<Checkpoint> checkpoints = new ArrayList<>();
+		int failures;
+
+		@Override
+		public Promise<Void> save(Checkpoint checkpoint) {
+			if (failures > 0) {
+				failures--;
+				return Promise.ofException(new IOException("Save failed"));
+			}
+			checkpoints.add(checkpoint);
+			return Promise.complete();
+		}
+
+		@Override
+		public Promise<@Nullable Checkpoint> loadLast() {
+			return Promise.of(checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1));
+		}
+	}
+
+	private static final class UnusedSorterStorage implements IStreamSorterStorage<long[]> {
+		@Override
+		public Promise<Integer> newPartitionId() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Promise<StreamConsumer<long[]>> write(int partition) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Promise<StreamSupplier<long[]>> read(int partition) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Promise<Void> cleanup(List<Integer> partitionsToDelete) {
+			return Promise.complete();
+		}
+	}
+}
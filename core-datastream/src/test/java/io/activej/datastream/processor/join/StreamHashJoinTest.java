@@ -0,0 +1,274 @@
+package io.activej.datastream.processor.join;
+
+import io.activej.csp.process.frame.FrameFormats;
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.join.StreamHashJoin.JoinType;
+import io.activej.datastream.processor.transformer.sort.IStreamSorterStorage;
+import io.activej.datastream.processor.transformer.sort.StreamSorterStorage;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.reactor.Reactor;
+import io.activej.serializer.SerializerFactory;
+import io.activej.serializer.annotations.SerializeRecord;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.datastream.TestUtils.assertClosedWithError;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.*;
+
+public class StreamHashJoinTest {
+	@Rule
+	public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufPool = new ByteBufRule();
+
+	private static final List<Fact> FACTS = List.of(
+		new Fact(1, 20), new Fact(2, 10), new Fact(3, 15), new Fact(4, 20), new Fact(5, 10));
+
+	private static final List<Dimension> DIMENSIONS = List.of(
+		new Dimension(10, "X"), new Dimension(20, "Y"), new Dimension(20, "Z"), new Dimension(30, "W"));
+
+	@Test
+	public void testInnerJoin() {
+		List<String> result = join(JoinType.INNER, FACTS, DIMENSIONS);
+
+		assertEquals(Set.of("1:Y", "1:Z", "2:X", "4:Y", "4:Z", "5:X"), new HashSet<>(result));
+		assertEquals(6, result.size());
+	}
+
+	@Test
+	public void testLeftJoin() {
+		List<String> result = join(JoinType.LEFT, FACTS, DIMENSIONS);
+
+		assertEquals(Set.of("1:Y", "1:Z", "2:X", "3:null", "4:Y", "4:Z", "5:X"), new HashSet<>(result));
+		assertEquals(7, result.size());
+	}
+
+	@Test
+	public void testSemiJoin() {
+		List<String> result = join(JoinType.SEMI, FACTS, DIMENSIONS);
+
+		assertEquals(List.of(1, 2, 4, 5), result.stream().map(s -> Integer.parseInt(s.split(":")[0])).sorted().toList());
+	}
+
+	@Test
+	public void testAntiJoin() {
+		assertEquals(List.of("3:null"), join(JoinType.ANTI, FACTS, DIMENSIONS));
+	}
+
+	@Test
+	public void testEmptyBuildSide() {
+		assertEquals(List.of(), join(JoinType.INNER, FACTS, List.of()));
+		assertEquals(5, join(JoinType.LEFT, FACTS, List.of()).size());
+	}
+
+	@Test
+	public void testGraceHashJoin() throws IOException {
+		Random random = new Random(0);
+		List<Fact> facts = IntStream.range(0, 5_000).mapToObj(i -> new Fact(i, random.nextInt(1_200))).toList();
+		List<Dimension> dimensions = IntStream.range(0, 1_000).mapToObj(i -> new Dimension(i, "d" + i)).toList();
+
+		Path leftPath = tempFolder.newFolder().toPath();
+		Path rightPath = tempFolder.newFolder().toPath();
+		IStreamSorterStorage<Fact> leftStorage = StreamSorterStorage.create(Reactor.getCurrentReactor(), Executors.newSingleThreadExecutor(),
+			SerializerFactory.defaultInstance().create(Fact.class), FrameFormats.sizePrefixed(), leftPath);
+		IStreamSorterStorage<Dimension> rightStorage = StreamSorterStorage.create(Reactor.getCurrentReactor(), Executors.newSingleThreadExecutor(),
+			SerializerFactory.defaultInstance().create(Dimension.class), FrameFormats.sizePrefixed(), rightPath);
+
+		StreamHashJoin<Integer, Fact, Dimension, String> join = StreamHashJoin.builder(JoinType.LEFT,
+				Fact::dimensionId, Dimension::id, new Joiner())
+			.withSpilling(leftStorage, rightStorage, 200)
+			.withSpillPartitions(8)
+			.build();
+
+		StreamSupplier<Fact> left = StreamSuppliers.ofIterable(facts);
+		StreamSupplier<Dimension> right = StreamSuppliers.ofIterable(dimensions);
+		ToListStreamConsumer<String> consumer = ToListStreamConsumer.create();
+		await(
+			left.streamTo(join.getLeft()),
+			right.streamTo(join.getRight()),
+			join.getOutput().streamTo(consumer.transformWith(randomlySuspending()))
+		);
+
+		List<String> expected = facts.stream()
+			.map(fact -> fact.id + ":" + (fact.dimensionId < 1_000 ? "d" + fact.dimensionId : null))
+			.sorted()
+			.toList();
+		assertEquals(expected, consumer.getList().stream().sorted().toList());
+		assertEndOfStream(left);
+		assertEndOfStream(right);
+		assertEndOfStream(join.getOutput());
+		for (Path path : List.of(leftPath, rightPath)) {
+			try (Stream<Path> files = Files.list(path)) {
+				assertFalse(files.findAny().isPresent());
+			}
+		}
+	}
+
+	@Test
+	public void testGraceHashJoinWithSkewedBuildSide() throws IOException {
+		Random random = new Random(0);
+		List<Dimension> dimensions = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			// a few hot keys account for a half of the build side
+			int id = i % 2 == 0 ? i % 20 : i;
+			dimensions.add(new Dimension(id, "d" + i));
+		}
+		Collections.shuffle(dimensions, random);
+		List<Fact> facts = IntStream.range(0, 2_000).mapToObj(i -> new Fact(i, random.nextInt(700))).toList();
+
+		StreamHashJoin<Integer, Fact, Dimension, String> join = StreamHashJoin.builder(JoinType.LEFT,
+				Fact::dimensionId, Dimension::id, new Joiner())
+			.withSpilling(createStorage(Fact.class), createStorage(Dimension.class), 100)
+			.withSpillPartitions(4)
+			.build();
+
+		assertEquals(expectedJoin(facts, dimensions), spillingJoin(join, facts, dimensions));
+		assertTrue(join.getPeakBuildItemsInMemory() <= 101);
+	}
+
+	@Test
+	public void testGraceHashJoinWithKeyExceedingMemory() throws IOException {
+		List<Dimension> dimensions = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			dimensions.add(new Dimension(i < 150 ? 7 : i, "d" + i));
+		}
+		List<Fact> facts = IntStream.range(0, 400).mapToObj(i -> new Fact(i, i % 310)).toList();
+
+		StreamHashJoin<Integer, Fact, Dimension, String> join = StreamHashJoin.builder(JoinType.LEFT,
+				Fact::dimensionId, Dimension::id, new Joiner())
+			.withSpilling(createStorage(Fact.class), createStorage(Dimension.class), 100)
+			.withSpillPartitions(4)
+			.withMaxSpillLevels(2)
+			.build();
+
+		assertEquals(expectedJoin(facts, dimensions), spillingJoin(join, facts, dimensions));
+		assertTrue(join.getPeakBuildItemsInMemory() >= 150);
+	}
+
+	@Test
+	public void testErrorOnBuildSide() {
+		ExpectedException exception = new ExpectedException();
+		StreamHashJoin<Integer, Fact, Dimension, String> join = StreamHashJoin.create(JoinType.INNER,
+			Fact::dimensionId, Dimension::id, new Joiner());
+
+		StreamSupplier<Fact> left = StreamSuppliers.ofIterable(FACTS);
+		StreamSupplier<Dimension> right = StreamSuppliers.concat(
+			StreamSuppliers.ofIterable(DIMENSIONS),
+			StreamSuppliers.closingWithError(exception));
+		ToListStreamConsumer<String> consumer = ToListStreamConsumer.create();
+
+		Exception e = awaitException(
+			left.streamTo(join.getLeft()),
+			right.streamTo(join.getRight()),
+			join.getOutput().streamTo(consumer)
+		);
+
+		assertSame(exception, e);
+		assertTrue(consumer.getList().isEmpty());
+		assertClosedWithError(exception, consumer);
+		assertClosedWithError(left);
+	}
+
+	private <T> IStreamSorterStorage<T> createStorage(Class<T> type) throws IOException {
+		return StreamSorterStorage.create(Reactor.getCurrentReactor(), Executors.newSingleThreadExecutor(),
+			SerializerFactory.defaultInstance().create(type), FrameFormats.sizePrefixed(), tempFolder.newFolder().toPath());
+	}
+
+	private List<String> spillingJoin(StreamHashJoin<Integer, Fact, Dimension, String> join, List<Fact> facts, List<Dimension> dimensions) throws IOException {
+		StreamSupplier<Fact> left = StreamSuppliers.ofIterable(facts);
+		StreamSupplier<Dimension> right = StreamSuppliers.ofIterable(dimensions);
+		ToListStreamConsumer<String> consumer = ToListStreamConsumer.create();
+		await(
+			left.streamTo(join.getLeft()),
+			right.streamTo(join.getRight()),
+			join.getOutput().streamTo(consumer.transformWith(randomlySuspending()))
+		);
+
+		assertEndOfStream(left);
+		assertEndOfStream(right);
+		assertEndOfStream(join.getOutput());
+		try (Stream<Path> folders = Files.list(tempFolder.getRoot().toPath())) {
+			for (Path folder : folders.toList()) {
+				try (Stream<Path> files = Files.list(folder)) {
+					assertFalse(files.findAny().isPresent());
+				}
+			}
+		}
+		return consumer.getList().stream().sorted().toList();
+	}
+
+	private static List<String> expectedJoin(List<Fact> facts, List<Dimension> dimensions) {
+		List<String> expected = new ArrayList<>();
+		for (Fact fact : facts) {
+			boolean matched = false;
+			for (Dimension dimension : dimensions) {
+				if (dimension.id == fact.dimensionId) {
+					expected.add(fact.id + ":" + dimension.name);
+					matched = true;
+				}
+			}
+			if (!matched) {
+				expected.add(fact.id + ":" + null);
+			}
+		}
+		return expected.stream().sorted().toList();
+	}
+
+	private static List<String> join(JoinType joinType, List<Fact> facts, List<Dimension> dimensions) {
+		StreamHashJoin<Integer, Fact, Dimension, String> join = StreamHashJoin.create(joinType,
+			Fact::dimensionId, Dimension::id, new Joiner());
+
+		StreamSupplier<Fact> left = StreamSuppliers.ofIterable(facts);
+		StreamSupplier<Dimension> right = StreamSuppliers.ofIterable(dimensions);
+		ToListStreamConsumer<String> consumer = ToListStreamConsumer.create();
+		await(
+			left.streamTo(join.getLeft()),
+			right.streamTo(join.getRight()),
+			join.getOutput().streamTo(consumer.transformWith(randomlySuspending()))
+		);
+
+		assertEndOfStream(left);
+		assertEndOfStream(right);
+		return consumer.getList();
+	}
+
+	private static final class Joiner extends ValueLeftJoiner<Integer, Fact, Dimension, String> {
+		@Override
+		public String doInnerJoin(Integer key, Fact left, Dimension right) {
+			return left.id + ":" + right.name;
+		}
+
+		@Override
+		public String doOuterJoin(Integer key, Fact left) {
+			return left.id + ":" + null;
+		}
+	}
+
+	@SerializeRecord
+	public record Fact(int id, int dimensionId) {}
+
+	@SerializeRecord
+	public record Dimension(int id, String name) {}
+}
@@ -0,0 +1,184 @@
+package io.activej.datastream.processor.reducer;
+
+import io.activej.csp.process.frame.FrameFormats;
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.transformer.sort.IStreamSorterStorage;
+import io.activej.datastream.processor.transformer.sort.StreamSorterStorage;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.reactor.Reactor;
+import io.activej.serializer.SerializerFactory;
+import io.activej.serializer.annotations.SerializeRecord;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.promise.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamHashAggregatorTest {
+	@Rule
+	public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufPool = new ByteBufRule();
+
+	@SerializeRecord
+	public record KeyCount(int key, long count) {}
+
+	private static final ReducerToResult<Integer, Integer, KeyCount, KeyCount> COUNT_REDUCER = new CountReducer<>();
+	private static final ReducerToResult<Long, Integer, KeyCount, KeyCount> LONG_COUNT_REDUCER = new CountReducer<>();
+
+	@Test
+	public void testInMemory() throws IOException {
+		List<Integer> items = List.of(3, 1, 3, 2, 5, 1, 4, 3, 2);
+		IStreamSorterStorage<KeyCount> storage = createStorage();
+
+		StreamHashAggregator<Integer, Integer, KeyCount, KeyCount> aggregator = StreamHashAggregator.create(
+			item -> item, KeyCount::key, COUNT_REDUCER, storage, 100);
+
+		List<KeyCount> result = aggregate(StreamSuppliers.ofIterable(items), aggregator);
+
+		assertEquals(expected(items), toMap(result));
+		assertEquals(5, result.size());
+	}
+
+	@Test
+	public void testSpilling() throws IOException {
+		List<Integer> items = randomItems(3_000, 300);
+		Path storagePath = tempFolder.newFolder().toPath();
+		IStreamSorterStorage<KeyCount> storage = createStorage(storagePath);
+
+		StreamHashAggregator<Integer, Integer, KeyCount, KeyCount> aggregator = StreamHashAggregator.builder(
+				item -> item, KeyCount::key, COUNT_REDUCER, storage, 50)
+			.withSpillPartitions(4)
+			.build();
+
+		StreamSupplier<Integer> source = StreamSuppliers.ofIterable(items);
+		List<KeyCount> result = aggregate(source, aggregator);
+
+		assertEquals(expected(items), toMap(result));
+		assertEquals(300, result.size());
+		assertEndOfStream(source);
+		assertEndOfStream(aggregator);
+		try (var files = Files.list(storagePath)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void testSpillingWithoutRecursion() throws IOException {
+		List<Integer> items = randomItems(3_000, 300);
+		IStreamSorterStorage<KeyCount> storage = createStorage();
+
+		StreamHashAggregator<Integer, Integer, KeyCount, KeyCount> aggregator = StreamHashAggregator.builder(
+				item -> item, KeyCount::key, COUNT_REDUCER, storage, 50)
+			.withSpillPartitions(4)
+			.withMaxSpillLevels(1)
+			.build();
+
+		List<KeyCount> result = aggregate(StreamSuppliers.ofIterable(items), aggregator);
+
+		assertEquals(expected(items), toMap(result));
+		assertEquals(300, result.size());
+	}
+
+	@Test
+	public void testLongKeys() throws IOException {
+		List<Integer> items = randomItems(3_000, 300);
+		IStreamSorterStorage<KeyCount> storage = createStorage();
+
+		StreamHashAggregator<Long, Integer, KeyCount, KeyCount> aggregator = StreamHashAggregator.builderForLongKeys(
+				item -> item, KeyCount::key, LONG_COUNT_REDUCER, storage, 50)
+			.withSpillPartitions(4)
+			.build();
+
+		List<KeyCount> result = aggregate(StreamSuppliers.ofIterable(items), aggregator);
+
+		assertEquals(expected(items), toMap(result));
+		assertEquals(300, result.size());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		StreamHashAggregator<Integer, Integer, KeyCount, KeyCount> aggregator = StreamHashAggregator.create(
+			item -> item, KeyCount::key, COUNT_REDUCER, createStorage(), 10);
+
+		List<KeyCount> result = aggregate(StreamSuppliers.empty(), aggregator);
+
+		assertTrue(result.isEmpty());
+	}
+
+	private static List<KeyCount> aggregate(StreamSupplier<Integer> source, StreamHashAggregator<?, Integer, KeyCount, KeyCount> aggregator) {
+		ToListStreamConsumer<KeyCount> consumer = ToListStreamConsumer.create();
+		await(source.transformWith(aggregator)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+		return consumer.getList();
+	}
+
+	private IStreamSorterStorage<KeyCount> createStorage() throws IOException {
+		return createStorage(tempFolder.newFolder().toPath());
+	}
+
+	private static IStreamSorterStorage<KeyCount> createStorage(Path path) {
+		return StreamSorterStorage.create(Reactor.getCurrentReactor(), Executors.newSingleThreadExecutor(),
+			SerializerFactory.defaultInstance().create(KeyCount.class), FrameFormats.sizePrefixed(), path);
+	}
+
+	private static List<Integer> randomItems(int count, int keys) {
+		Random random = new Random(0);
+		List<Integer> items = new ArrayList<>(IntStream.range(0, keys).boxed().toList());
+		for (int i = keys; i < count; i++) {
+			items.add(random.nextInt(keys));
+		}
+		Collections.shuffle(items, random);
+		return items;
+	}
+
+	private static Map<Integer, Long> expected(List<Integer> items) {
+		return items.stream().collect(Collectors.groupingBy(item -> item, Collectors.counting()));
+	}
+
+	private static Map<Integer, Long> toMap(List<KeyCount> result) {
+		return result.stream().collect(Collectors.toMap(KeyCount::key, KeyCount::count));
+	}
+
+	private static final class CountReducer<K extends Number> extends ReducerToResult<K, Integer, KeyCount, KeyCount> {
+		@Override
+		public KeyCount createAccumulator(K key) {
+			return new KeyCount(key.intValue(), 0);
+		}
+
+		@Override
+		public KeyCount accumulate(KeyCount accumulator, Integer value) {
+			return new KeyCount(accumulator.key(), accumulator.count() + 1);
+		}
+
+		@Override
+		public KeyCount combine(KeyCount accumulator, KeyCount anotherAccumulator) {
+			return new KeyCount(accumulator.key(), accumulator.count() + anotherAccumulator.count());
+		}
+
+		@Override
+		public KeyCount produceResult(KeyCount accumulator) {
+			return accumulator;
+		}
+	}
+}
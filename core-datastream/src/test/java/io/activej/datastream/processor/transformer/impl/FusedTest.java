@@ -0,0 +1,108 @@
+package io.activej.datastream.processor.transformer.impl;
+
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformer;
+import io.activej.datastream.processor.transformer.StreamTransformers;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.datastream.TestUtils.assertClosedWithError;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.datastream.supplier.StreamSuppliers.concat;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.*;
+
+public class FusedTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@Test
+	public void testFuseMappersAndFilters() {
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofValues(1, 2, 3, 4, 5, 6);
+		ToListStreamConsumer<String> consumer = ToListStreamConsumer.create();
+		StreamTransformer<Integer, String> fused = StreamTransformers.fuse(List.of(
+			StreamTransformers.<Integer, Integer>mapper(x -> x * 10),
+			StreamTransformers.<Integer>filter(x -> x % 20 == 0),
+			StreamTransformers.<Integer, String>mapper(x -> "#" + x)
+		));
+
+		assertTrue(fused instanceof Fused);
+
+		await(supplier.transformWith(fused)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEquals(List.of("#20", "#40", "#60"), consumer.getList());
+		assertEndOfStream(supplier);
+		assertEndOfStream(fused);
+		assertEndOfStream(consumer);
+	}
+
+	@Test
+	public void testFuseWithStatefulTransformer() {
+		StreamSupplier<Integer> supplier = StreamSuppliers.ofValues(1, 2, 3, 4, 5, 6);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+		StreamTransformer<Integer, Integer> fused = StreamTransformers.fuse(List.of(
+			StreamTransformers.<Integer, Integer>mapper(x -> x + 1),
+			StreamTransformers.<Integer>filter(x -> x % 2 == 0),
+			StreamTransformers.<Integer>limit(2),
+			StreamTransformers.<Integer, Integer>mapper(x -> x * x)
+		));
+
+		assertTrue(fused instanceof Chain);
+		assertEquals(3, ((Chain<?, ?>) fused).transformers.size());
+
+		await(supplier.transformWith(fused)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEquals(List.of(4, 16), consumer.getList());
+		assertEndOfStream(consumer);
+	}
+
+	@Test
+	public void testGeneratedClassIsReused() {
+		Function<Integer, Integer> mapFn = x -> x + 1;
+		Predicate<Integer> predicate = x -> x > 0;
+
+		Fused<?, ?> first = (Fused<?, ?>) StreamTransformers.fuse(List.of(
+			StreamTransformers.mapper(mapFn), StreamTransformers.filter(predicate)));
+		Fused<?, ?> second = (Fused<?, ?>) StreamTransformers.fuse(List.of(
+			StreamTransformers.mapper(mapFn), StreamTransformers.filter(predicate)));
+		Fused<?, ?> third = (Fused<?, ?>) StreamTransformers.fuse(List.of(
+			StreamTransformers.filter(predicate), StreamTransformers.mapper(mapFn)));
+
+		assertSame(first.acceptorConstructor.getDeclaringClass(), second.acceptorConstructor.getDeclaringClass());
+		assertNotSame(first.acceptorConstructor.getDeclaringClass(), third.acceptorConstructor.getDeclaringClass());
+	}
+
+	@Test
+	public void testSupplierError() {
+		ExpectedException exception = new ExpectedException("Test Exception");
+		StreamSupplier<Integer> supplier = concat(
+			StreamSuppliers.ofValues(1, 2, 3),
+			StreamSuppliers.closingWithError(exception)
+		);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+		StreamTransformer<Integer, Integer> fused = StreamTransformers.fuse(List.of(
+			StreamTransformers.<Integer, Integer>mapper(x -> x * x),
+			StreamTransformers.<Integer>filter(x -> x != 4)
+		));
+
+		Exception e = awaitException(supplier.transformWith(fused)
+			.streamTo(consumer));
+
+		assertSame(exception, e);
+		assertEquals(List.of(1, 9), consumer.getList());
+		assertClosedWithError(consumer);
+		assertClosedWithError(fused);
+	}
+}
@@ -0,0 +1,86 @@
+package io.activej.datastream.processor.transformer.impl;
+
+import io.activej.async.process.TokenBucket;
+import io.activej.datastream.consumer.StreamConsumers;
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.transformer.StreamTransformers;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.eventloop.Eventloop;
+import io.activej.promise.Promises;
+import io.activej.test.rules.EventloopRule;
+import io.activej.test.time.TestCurrentTimeProvider;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static io.activej.common.exception.FatalErrorHandlers.rethrow;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.promise.TestUtils.await;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketLimiterTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@Test
+	public void testSingleStream() {
+		TestCurrentTimeProvider.TimeSequenceCurrentTimeProvider timeSequence = TestCurrentTimeProvider.ofTimeSequence(0, 10);
+		Eventloop eventloop = Eventloop.builder()
+			.withTimeProvider(timeSequence)
+			.withCurrentThread()
+			.withFatalErrorHandler(rethrow())
+			.build();
+
+		TokenBucket bucket = TokenBucket.create(eventloop, 100, ChronoUnit.SECONDS);
+
+		List<Integer> expected = IntStream.range(0, 200)
+			.boxed().collect(toList());
+		List<Integer> actual = new ArrayList<>();
+
+		await(StreamSuppliers.ofIterable(expected)
+			.transformWith(StreamTransformers.throttle(bucket, $ -> 1))
+			.streamTo(StreamConsumers.ofConsumer(actual::add)));
+
+		assertEquals(expected, actual);
+		assertTrue(timeSequence.getTime() > 2_000);
+	}
+
+	@Test
+	public void testSharedBucket() {
+		TestCurrentTimeProvider.TimeSequenceCurrentTimeProvider timeSequence = TestCurrentTimeProvider.ofTimeSequence(0, 10);
+		Eventloop eventloop = Eventloop.builder()
+			.withTimeProvider(timeSequence)
+			.withCurrentThread()
+			.withFatalErrorHandler(rethrow())
+			.build();
+
+		TokenBucket bucket = TokenBucket.create(eventloop, 100, ChronoUnit.SECONDS);
+
+		List<Integer> expected = IntStream.range(0, 100)
+			.boxed().collect(toList());
+		ToListStreamConsumer<Integer> first = ToListStreamConsumer.create();
+		ToListStreamConsumer<Integer> second = ToListStreamConsumer.create();
+
+		await(Promises.all(
+			StreamSuppliers.ofIterable(expected)
+				.transformWith(StreamTransformers.throttle(bucket.createChild(1), $ -> 1))
+				.streamTo(first),
+			StreamSuppliers.ofIterable(expected)
+				.transformWith(StreamTransformers.throttle(bucket.createChild(1), $ -> 1))
+				.streamTo(second)
+		));
+
+		assertEquals(expected, first.getList());
+		assertEquals(expected, second.getList());
+		assertEndOfStream(first);
+		assertEndOfStream(second);
+		assertTrue(timeSequence.getTime() > 2_000);
+	}
+}
@@ -0,0 +1,122 @@
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static io.activej.datastream.TestStreamTransformers.*;
+import static io.activej.datastream.TestUtils.*;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StreamMergerTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@Test
+	public void testMerge() {
+		StreamMerger<Integer, Integer> merger = StreamMerger.<Integer, Integer>builder(Function.identity(), Integer::compareTo, false)
+			.withBufferSize(1)
+			.build();
+
+		StreamSupplier<Integer> source0 = StreamSuppliers.empty();
+		StreamSupplier<Integer> source1 = StreamSuppliers.ofValues(3, 4, 6);
+		StreamSupplier<Integer> source2 = StreamSuppliers.ofValues(2, 3, 5);
+		StreamSupplier<Integer> source3 = StreamSuppliers.ofValues(1, 3, 7);
+		StreamSupplier<Integer> source4 = StreamSuppliers.ofValue(7);
+
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(
+			source0.streamTo(merger.newInput()),
+			source1.streamTo(merger.newInput()),
+			source2.streamTo(merger.newInput()),
+			source3.streamTo(merger.newInput()),
+			source4.streamTo(merger.newInput()),
+			merger.getOutput().streamTo(consumer.transformWith(randomlySuspending()))
+		);
+
+		assertEquals(List.of(1, 2, 3, 3, 3, 4, 5, 6, 7, 7), consumer.getList());
+		assertSuppliersEndOfStream(List.of(source0, source1, source2, source3, source4));
+		assertEndOfStream(merger.getOutput());
+		assertConsumersEndOfStream(merger.getInputs());
+	}
+
+	@Test
+	public void testDistinctKeepsFirstInput() {
+		StreamMerger<Integer, int[]> merger = StreamMerger.create(pair -> pair[0], Integer::compareTo, true);
+
+		StreamSupplier<int[]> source0 = StreamSuppliers.ofValues(new int[]{1, 0}, new int[]{3, 0});
+		StreamSupplier<int[]> source1 = StreamSuppliers.ofValues(new int[]{1, 1}, new int[]{2, 1}, new int[]{3, 1});
+
+		ToListStreamConsumer<int[]> consumer = ToListStreamConsumer.create();
+
+		await(
+			source0.streamTo(merger.newInput()),
+			source1.streamTo(merger.newInput()),
+			merger.getOutput().streamTo(consumer.transformWith(oneByOne()))
+		);
+
+		List<List<Integer>> result = consumer.getList().stream().map(pair -> List.of(pair[0], pair[1])).toList();
+		assertEquals(List.of(List.of(1, 0), List.of(2, 1), List.of(3, 0)), result);
+	}
+
+	@Test
+	public void testManyInputs() {
+		Random random = new Random(0);
+		StreamMerger<Integer, Integer> merger = StreamMerger.<Integer, Integer>builder(Function.identity(), Integer::compareTo, false)
+			.withBufferSize(4)
+			.build();
+
+		List<Integer> expected = new ArrayList<>();
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 37; i++) {
+			List<Integer> values = IntStream.range(0, random.nextInt(50)).map($ -> random.nextInt(1000)).sorted().boxed().toList();
+			expected.addAll(values);
+			promises.add(StreamSuppliers.ofIterable(values).streamTo(merger.newInput().transformWith(randomlySuspending())));
+		}
+		expected.sort(Integer::compareTo);
+
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+		promises.add(merger.getOutput().streamTo(consumer.transformWith(randomlySuspending())));
+		await(Promises.all(promises));
+
+		assertEquals(expected, consumer.getList());
+	}
+
+	@Test
+	public void testError() {
+		StreamMerger<Integer, Integer> merger = StreamMerger.create(Function.identity(), Integer::compareTo, false);
+		ExpectedException exception = new ExpectedException();
+
+		StreamSupplier<Integer> source1 = StreamSuppliers.ofValues(1, 3, 5);
+		StreamSupplier<Integer> source2 = StreamSuppliers.concat(StreamSuppliers.ofValues(2, 4), StreamSuppliers.closingWithError(exception));
+
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		Exception e = awaitException(
+			source1.streamTo(merger.newInput()),
+			source2.streamTo(merger.newInput()),
+			merger.getOutput().streamTo(consumer)
+		);
+
+		assertSame(exception, e);
+		assertClosedWithError(exception, consumer);
+		assertClosedWithError(merger.getOutput());
+	}
+}
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static io.activej.datastream.TestStreamTransformers.*;
@@ -100,6 +101,82 @@ public final class StreamSorterTest {
 		assertEndOfStream(sorter);
 	}
 
+	@Test
+	public void testParallelSort() throws IOException {
+		List<Integer> items = IntStream.range(0, 10_000).map(i -> (i * 7919) % 10_000).boxed().toList();
+
+		Executor executor = Executors.newSingleThreadExecutor();
+		IStreamSorterStorage<Integer> storage = StreamSorterStorage.create(Reactor.getCurrentReactor(), executor, INT_SERIALIZER, FRAME_FORMAT, tempFolder.newFolder().toPath());
+		StreamSorter<Integer, Integer> sorter = StreamSorter.builder(storage, Function.identity(), Integer::compareTo, false, 3_000)
+			.withParallelSort(true)
+			.build();
+
+		ToListStreamConsumer<Integer> consumerToList = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofIterable(items).transformWith(sorter)
+			.streamTo(consumerToList.transformWith(randomlySuspending())));
+
+		assertEquals(IntStream.range(0, 10_000).boxed().toList(), consumerToList.getList());
+	}
+
+	@Test
+	public void testMultiPassMerge() throws IOException {
+		List<Integer> items = IntStream.range(0, 1_000).map(i -> (i * 37) % 100).boxed().toList();
+
+		Executor executor = Executors.newSingleThreadExecutor();
+		Path storagePath = tempFolder.newFolder().toPath();
+		IStreamSorterStorage<Integer> storage = StreamSorterStorage.create(Reactor.getCurrentReactor(), executor, INT_SERIALIZER, FRAME_FORMAT, storagePath);
+		StreamSorter<Integer, Integer> sorter = StreamSorter.builder(storage, Function.identity(), Integer::compareTo, true, 10)
+			.withMaxMergeFanIn(3)
+			.build();
+
+		ToListStreamConsumer<Integer> consumerToList = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofIterable(items).transformWith(sorter)
+			.streamTo(consumerToList.transformWith(randomlySuspending())));
+
+		assertEquals(IntStream.range(0, 100).boxed().toList(), consumerToList.getList());
+		assertEndOfStream(sorter);
+		try (Stream<Path> contents = Files.list(storagePath)) {
+			assertFalse(contents.findAny().isPresent());
+		}
+	}
+
+	@Test
+	public void testRunsInSharedFiles() throws IOException {
+		List<Integer> items = IntStream.range(0, 1_000).map(i -> (i * 37) % 1_000).boxed().toList();
+
+		Executor executor = Executors.newSingleThreadExecutor();
+		Path storagePath = tempFolder.newFolder().toPath();
+		IStreamSorterStorage<Integer> storage = StreamSorterStorage.builder(Reactor.getCurrentReactor(), executor, INT_SERIALIZER, FRAME_FORMAT, storagePath)
+			.withRunsPerFile(8)
+			.withPreallocatedFileSize(MemSize.kilobytes(64))
+			.withReadAheadSize(MemSize.kilobytes(1))
+			.withPrefetchBuffers(2)
+			.build();
+		StreamSorterStats stats = StreamSorterStats.create();
+		StreamSorter<Integer, Integer> sorter = StreamSorter.builder(storage, Function.identity(), Integer::compareTo, false, 50)
+			.withMaxMergeFanIn(4)
+			.withStats(stats)
+			.build();
+
+		ToListStreamConsumer<Integer> consumerToList = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofIterable(items).transformWith(sorter)
+			.streamTo(consumerToList.transformWith(randomlySuspending())));
+
+		assertEquals(IntStream.range(0, 1_000).boxed().toList(), consumerToList.getList());
+		assertEndOfStream(sorter);
+		assertEquals(20, stats.getRunsWritten());
+		assertEquals(20, stats.getWriteTime().getCount());
+		assertEquals(21, stats.getSortTime().getCount());
+		assertEquals(1, stats.getFinalMergeTime().getCount());
+		assertTrue(stats.getIntermediateMergeTime().getCount() > 0);
+		try (Stream<Path> contents = Files.list(storagePath)) {
+			assertFalse(contents.findAny().isPresent());
+		}
+	}
+
 	@Test
 	public void testErrorOnConsumer() throws IOException {
 		StreamSupplier<Integer> source = StreamSuppliers.ofValues(3, 1, 3, 2, 5, 1, 4, 3, 2);
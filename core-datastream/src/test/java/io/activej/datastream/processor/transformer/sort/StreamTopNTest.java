@@ -0,0 +1,179 @@
+package io.activej.datastream.processor.transformer.sort;
+
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.test.ExpectedException;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.activej.datastream.TestStreamTransformers.*;
+import static io.activej.datastream.TestUtils.*;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamTopNTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	public record Metric(String name, int value) {}
+
+	@Test
+	public void testTopN() {
+		List<Integer> items = randomItems(10_000, new Random(0));
+		StreamSupplier<Integer> source = StreamSuppliers.ofIterable(items);
+		StreamTopN<Integer, Integer> topN = StreamTopN.create(Function.identity(), Comparator.<Integer>reverseOrder(), 100);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(source.transformWith(topN)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEquals(items.stream().sorted(Comparator.reverseOrder()).limit(100).toList(), consumer.getList());
+		assertEndOfStream(source);
+		assertEndOfStream(topN);
+		assertEndOfStream(consumer);
+	}
+
+	@Test
+	public void testLessItemsThanLimit() {
+		StreamTopN<Integer, Integer> topN = StreamTopN.create(Function.identity(), Integer::compareTo, 10);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofValues(5, 1, 4, 2, 3).transformWith(topN)
+			.streamTo(consumer.transformWith(oneByOne())));
+
+		assertEquals(List.of(1, 2, 3, 4, 5), consumer.getList());
+	}
+
+	@Test
+	public void testZeroLimit() {
+		StreamTopN<Integer, Integer> topN = StreamTopN.create(Function.identity(), Integer::compareTo, 0);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofValues(5, 1, 4).transformWith(topN).streamTo(consumer));
+
+		assertTrue(consumer.getList().isEmpty());
+	}
+
+	@Test
+	public void testTiesKeepInputOrder() {
+		Random random = new Random(2);
+		List<Metric> items = IntStream.range(0, 1_000)
+			.mapToObj(i -> new Metric("m" + i, random.nextInt(10)))
+			.toList();
+		StreamTopN<Integer, Metric> topN = StreamTopN.create(Metric::value, Integer::compareTo, 150);
+		ToListStreamConsumer<Metric> consumer = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofIterable(items).transformWith(topN).streamTo(consumer));
+
+		assertEquals(items.stream().sorted(Comparator.comparing(Metric::value)).limit(150).toList(), consumer.getList());
+	}
+
+	@Test
+	public void testPreAggregation() {
+		StreamTopN<Integer, Metric> topN = StreamTopN.<Integer, Metric>builder(Metric::value, Comparator.reverseOrder(), 2)
+			.withPreAggregation(Metric::name, (a, b) -> new Metric(a.name(), a.value() + b.value()))
+			.build();
+		ToListStreamConsumer<Metric> consumer = ToListStreamConsumer.create();
+
+		await(StreamSuppliers.ofValues(
+				new Metric("a", 5),
+				new Metric("b", 7),
+				new Metric("c", 3),
+				new Metric("a", 4),
+				new Metric("c", 8),
+				new Metric("d", 10))
+			.transformWith(topN)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEquals(List.of(new Metric("c", 11), new Metric("d", 10)), consumer.getList());
+	}
+
+	@Test
+	public void testWithError() {
+		ExpectedException exception = new ExpectedException("Test Exception");
+		StreamSupplier<Integer> source = StreamSuppliers.concat(
+			StreamSuppliers.ofValues(1, 2, 3),
+			StreamSuppliers.closingWithError(exception)
+		);
+		StreamTopN<Integer, Integer> topN = StreamTopN.create(Function.identity(), Integer::compareTo, 2);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		Exception e = awaitException(source.transformWith(topN).streamTo(consumer));
+
+		assertSame(exception, e);
+		assertClosedWithError(topN);
+		assertClosedWithError(consumer);
+	}
+
+	@Test
+	public void testMergePartialResults() {
+		Random random = new Random(1);
+		List<Integer> all = new ArrayList<>();
+		StreamTopNMerger<Integer, Integer> merger = StreamTopNMerger.create(Function.identity(), Integer::compareTo, 50);
+		List<StreamSupplier<Integer>> sources = new ArrayList<>();
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			List<Integer> items = randomItems(1_000, random);
+			all.addAll(items);
+			StreamSupplier<Integer> source = StreamSuppliers.ofIterable(items);
+			sources.add(source);
+			promises.add(source
+				.transformWith(StreamTopN.create(Function.identity(), Integer::compareTo, 50))
+				.streamTo(merger.newInput()));
+		}
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+		promises.add(merger.getOutput().streamTo(consumer.transformWith(randomlySuspending())));
+
+		await(Promises.all(promises));
+
+		assertEquals(all.stream().sorted().limit(50).toList(), consumer.getList());
+		assertSuppliersEndOfStream(sources);
+		assertEndOfStream(merger.getOutput());
+	}
+
+	@Test
+	public void testMergeStopsReadingInputs() {
+		StreamTopNMerger<Integer, Integer> merger = StreamTopNMerger.create(Function.identity(), Integer::compareTo, 3);
+		StreamSupplier<Integer> source1 = StreamSuppliers.ofValues(1, 2, 3, 4, 5);
+		StreamSupplier<Integer> source2 = StreamSuppliers.ofValues(0, 6, 7);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(
+			source1.streamTo(merger.newInput()),
+			source2.streamTo(merger.newInput()),
+			merger.getOutput().streamTo(consumer)
+		);
+
+		assertEquals(List.of(0, 1, 2), consumer.getList());
+	}
+
+	@Test
+	public void testMergeNoInputs() {
+		StreamTopNMerger<Integer, Integer> merger = StreamTopNMerger.create(Function.identity(), Integer::compareTo, 3);
+		ToListStreamConsumer<Integer> consumer = ToListStreamConsumer.create();
+
+		await(merger.getOutput().streamTo(consumer));
+
+		assertTrue(consumer.getList().isEmpty());
+	}
+
+	private static List<Integer> randomItems(int count, Random random) {
+		return IntStream.range(0, count)
+			.map(i -> random.nextInt(1_000_000))
+			.boxed()
+			.collect(Collectors.toList());
+	}
+}
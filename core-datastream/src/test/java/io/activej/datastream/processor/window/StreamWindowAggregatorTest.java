@@ -0,0 +1,169 @@
+package io.activej.datastream.processor.window;
+
+import io.activej.datastream.consumer.ToListStreamConsumer;
+import io.activej.datastream.processor.reducer.ReducerToResult;
+import io.activej.datastream.supplier.StreamSupplier;
+import io.activej.datastream.supplier.StreamSuppliers;
+import io.activej.test.rules.EventloopRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.activej.datastream.TestStreamTransformers.randomlySuspending;
+import static io.activej.datastream.TestUtils.assertEndOfStream;
+import static io.activej.promise.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+
+public class StreamWindowAggregatorTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	public record Event(long key, long timestamp) {}
+
+	public record Result(long key, long start, long end, long count) {}
+
+	private static final ReducerToResult<Long, Event, Void, long[]> COUNT_REDUCER = new ReducerToResult<>() {
+		@Override
+		public long[] createAccumulator(Long key) {
+			return new long[1];
+		}
+
+		@Override
+		public long[] accumulate(long[] accumulator, Event value) {
+			accumulator[0]++;
+			return accumulator;
+		}
+
+		@Override
+		public long[] combine(long[] accumulator, long[] anotherAccumulator) {
+			accumulator[0] += anotherAccumulator[0];
+			return accumulator;
+		}
+
+		@Override
+		public Void produceResult(long[] accumulator) {
+			throw new UnsupportedOperationException();
+		}
+	};
+
+	@Test
+	public void testTumbling() {
+		StreamWindowAggregator<Event, Result, long[]> aggregator = StreamWindowAggregator.<Event, Result, long[]>builder(
+				WindowSpec.tumbling(10), Event::key, Event::timestamp, COUNT_REDUCER, StreamWindowAggregatorTest::toResult)
+			.withMaxOutOfOrderness(5)
+			.build();
+
+		List<Result> results = aggregate(aggregator,
+			new Event(1, 1), new Event(2, 5), new Event(1, 12), new Event(1, 3), new Event(2, 14), new Event(1, 25));
+
+		assertEquals(List.of(
+			new Result(1, 0, 10, 2),
+			new Result(2, 0, 10, 1),
+			new Result(1, 10, 20, 1),
+			new Result(2, 10, 20, 1),
+			new Result(1, 20, 30, 1)
+		), sortWithinWindows(results));
+		assertEquals(0, aggregator.getDroppedItems());
+	}
+
+	@Test
+	public void testSliding() {
+		StreamWindowAggregator<Event, Result, long[]> aggregator = StreamWindowAggregator.create(
+			WindowSpec.sliding(10, 5), Event::key, Event::timestamp, COUNT_REDUCER, StreamWindowAggregatorTest::toResult);
+
+		List<Result> results = aggregate(aggregator, new Event(1, 3), new Event(1, 7), new Event(1, 12));
+
+		assertEquals(List.of(
+			new Result(1, -5, 5, 1),
+			new Result(1, 0, 10, 2),
+			new Result(1, 5, 15, 2),
+			new Result(1, 10, 20, 1)
+		), results);
+	}
+
+	@Test
+	public void testAllowedLateness() {
+		StreamWindowAggregator<Event, Result, long[]> aggregator = StreamWindowAggregator.<Event, Result, long[]>builder(
+				WindowSpec.tumbling(10), Event::key, Event::timestamp, COUNT_REDUCER, StreamWindowAggregatorTest::toResult)
+			.withAllowedLateness(10)
+			.build();
+
+		List<Result> results = aggregate(aggregator,
+			new Event(1, 2), new Event(1, 11), new Event(1, 5), new Event(1, 25), new Event(1, 8), new Event(1, 13));
+
+		assertEquals(List.of(
+			new Result(1, 0, 10, 1),
+			new Result(1, 0, 10, 2),
+			new Result(1, 10, 20, 1),
+			new Result(1, 10, 20, 2),
+			new Result(1, 20, 30, 1)
+		), results);
+		assertEquals(1, aggregator.getDroppedItems());
+		assertEquals(2, aggregator.getUpdatedResults());
+	}
+
+	@Test
+	public void testSessions() {
+		StreamWindowAggregator<Event, Result, long[]> aggregator = StreamWindowAggregator.<Event, Result, long[]>builder(
+				WindowSpec.session(5), Event::key, Event::timestamp, COUNT_REDUCER, StreamWindowAggregatorTest::toResult)
+			.withMaxOutOfOrderness(10)
+			.build();
+
+		List<Result> results = aggregate(aggregator,
+			new Event(1, 0), new Event(2, 1), new Event(1, 7), new Event(1, 3), new Event(2, 20), new Event(1, 30));
+
+		assertEquals(List.of(
+			new Result(2, 1, 6, 1),
+			new Result(1, 0, 12, 3),
+			new Result(2, 20, 25, 1),
+			new Result(1, 30, 35, 1)
+		), results);
+	}
+
+	@Test
+	public void testManyKeys() {
+		Random random = new Random(0);
+		List<Event> events = IntStream.range(0, 20_000)
+			.mapToObj(i -> new Event(random.nextInt(1_000), i / 10 + random.nextInt(20)))
+			.toList();
+		StreamWindowAggregator<Event, Result, long[]> aggregator = StreamWindowAggregator.<Event, Result, long[]>builder(
+				WindowSpec.tumbling(100), Event::key, Event::timestamp, COUNT_REDUCER, StreamWindowAggregatorTest::toResult)
+			.withMaxOutOfOrderness(20)
+			.build();
+
+		List<Result> results = aggregate(aggregator, events.toArray(new Event[0]));
+
+		Map<List<Long>, Long> expected = events.stream()
+			.collect(Collectors.groupingBy(event -> List.of(event.key(), event.timestamp() / 100), Collectors.counting()));
+		Map<List<Long>, Long> actual = results.stream()
+			.collect(Collectors.toMap(result -> List.of(result.key(), result.start() / 100), Result::count));
+		assertEquals(expected, actual);
+		assertEquals(0, aggregator.getDroppedItems());
+	}
+
+	private static List<Result> aggregate(StreamWindowAggregator<Event, Result, long[]> aggregator, Event... events) {
+		StreamSupplier<Event> supplier = StreamSuppliers.ofValues(events);
+		ToListStreamConsumer<Result> consumer = ToListStreamConsumer.create();
+
+		await(supplier.transformWith(aggregator)
+			.streamTo(consumer.transformWith(randomlySuspending())));
+
+		assertEndOfStream(supplier);
+		assertEndOfStream(consumer);
+		return consumer.getList();
+	}
+
+	private static List<Result> sortWithinWindows(List<Result> results) {
+		List<Result> sorted = new ArrayList<>(results);
+		sorted.sort(Comparator.comparingLong(Result::start).thenComparingLong(Result::key));
+		return sorted;
+	}
+
+	private static Result toResult(long key, long start, long end, long[] accumulator) {
+		return new Result(key, start, end, accumulator[0]);
+	}
+}
@@ -33,8 +33,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static io.activej.reactor.Reactive.checkInReactorThread;
 import static io.activej.reactor.Reactor.checkInReactorThread;
@@ -42,6 +43,10 @@ import static io.activej.reactor.Reactor.checkInReactorThread;
 /**
  * Implementation of {@link IDnsClient} that asynchronously
  * connects to some DNS server and gets the response from it.
+ * <p>
+ * Several cached clients of different reactors may share a single {@link DnsCache},
+ * so that a domain resolved by one of them is available to all others,
+ * while each reactor still sends its cache misses to its own underlying client.
  */
 public final class CachedDnsClient extends AbstractReactive
 	implements IDnsClient, ReactiveJmxBean {
@@ -52,7 +57,6 @@ public final class CachedDnsClient extends AbstractReactive
 	private final DnsCache cache;
 
 	private final Map<DnsQuery, Promise<DnsResponse>> pending = new HashMap<>();
-	private final Set<DnsQuery> refreshingNow = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
 	private CachedDnsClient(Reactor reactor, IDnsClient client, DnsCache cache) {
 		super(reactor);
@@ -114,7 +118,7 @@ public final class CachedDnsClient extends AbstractReactive
 
 				DnsQueryCacheResult cacheResult = cache.tryToResolve(query);
 				if (cacheResult != null) {
-					if (cacheResult.doesNeedRefreshing() && !refreshingNow.add(query)) {
+					if (cacheResult.doesNeedRefreshing()) {
 						reactor.execute(() -> refresh(query));
 					}
 					return cacheResult.getResponseAsPromise();
@@ -147,7 +151,7 @@ public final class CachedDnsClient extends AbstractReactive
 	}
 
 	private void refresh(DnsQuery query) {
-		if (!refreshingNow.add(query)) {
+		if (!cache.startRefreshing(query)) {
 			logger.trace("{} needs refreshing, but it does so right now", query);
 			return;
 		}
@@ -155,7 +159,7 @@ public final class CachedDnsClient extends AbstractReactive
 		client.resolve(query)
 			.subscribe((response, e) -> {
 				addToCache(query, response, e);
-				refreshingNow.remove(query);
+				cache.finishRefreshing(query);
 			});
 	}
 
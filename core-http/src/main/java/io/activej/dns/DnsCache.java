@@ -16,7 +16,6 @@
 
 package io.activej.dns;
 
-import io.activej.common.Checks;
 import io.activej.common.StringFormatUtils;
 import io.activej.common.builder.AbstractBuilder;
 import io.activej.common.time.CurrentTimeProvider;
@@ -39,23 +38,34 @@ import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static io.activej.reactor.Reactive.checkInReactorThread;
+import static io.activej.common.Checks.checkArgument;
 
 /**
  * Represents a cache for storing resolved domains during it's time to live.
+ * <p>
+ * A cache is thread-safe, so a single instance may be shared between
+ * {@link CachedDnsClient}s of several reactors. Lookups do not take any locks.
+ * A shared cache should be given a time provider that does not depend on a single reactor,
+ * see {@link Builder#withCurrentTimeProvider}.
+ * <p>
+ * Optionally, popular entries may be refreshed ahead of their expiration (prefetched),
+ * so that frequently resolved domains never expire from the cache, see {@link Builder#withPrefetch}.
  */
 public final class DnsCache extends AbstractReactive {
 	private static final Logger logger = LoggerFactory.getLogger(DnsCache.class);
-	private static final boolean CHECKS = Checks.isEnabled(DnsCache.class);
 
 	public static final Duration DEFAULT_ERROR_CACHE_EXPIRATION = Duration.ofMinutes(1);
 	public static final Duration DEFAULT_TIMED_OUT_EXPIRATION = Duration.ofSeconds(1);
 	public static final Duration DEFAULT_HARD_EXPIRATION_DELTA = Duration.ofMinutes(1);
 	public static final Duration DEFAULT_MAX_TTL = null;
+	public static final double DEFAULT_PREFETCH_THRESHOLD = 0;
+	public static final int DEFAULT_PREFETCH_MIN_HITS = 1;
 
 	private final Map<DnsQuery, CachedDnsQueryResult> cache = new ConcurrentHashMap<>();
 
@@ -63,11 +73,14 @@ public final class DnsCache extends AbstractReactive {
 	private long timedOutExpiration = DEFAULT_TIMED_OUT_EXPIRATION.toMillis();
 	private long hardExpirationDelta = DEFAULT_HARD_EXPIRATION_DELTA.toMillis();
 	private long maxTtl = Long.MAX_VALUE;
+	private double prefetchThreshold = DEFAULT_PREFETCH_THRESHOLD;
+	private int prefetchMinHits = DEFAULT_PREFETCH_MIN_HITS;
 
 	private final AtomicBoolean cleaningUpNow = new AtomicBoolean(false);
-	private final PriorityQueue<CachedDnsQueryResult> expirations = new PriorityQueue<>();
+	private final PriorityBlockingQueue<CachedDnsQueryResult> expirations = new PriorityBlockingQueue<>();
+	private final Set<DnsQuery> refreshingNow = ConcurrentHashMap.newKeySet();
 
-	final CurrentTimeProvider now;
+	CurrentTimeProvider now;
 
 	/**
 	 * Creates a new DNS cache.
@@ -123,6 +136,32 @@ public final class DnsCache extends AbstractReactive {
 			return this;
 		}
 
+		/**
+		 * Enables prefetching of popular entries: an entry that has been hit at least {@code minHits} times
+		 * is refreshed as soon as less than {@code threshold} of its time to live remains
+		 *
+		 * @param threshold a part of time to live, in range [0, 1), zero disables prefetching
+		 * @param minHits   a number of cache hits that makes an entry popular
+		 */
+		public Builder withPrefetch(double threshold, int minHits) {
+			checkNotBuilt(this);
+			checkArgument(threshold >= 0 && threshold < 1, "Prefetch threshold should be in range [0, 1)");
+			checkArgument(minHits > 0, "Minimal number of hits should be positive");
+			DnsCache.this.prefetchThreshold = threshold;
+			DnsCache.this.prefetchMinHits = minHits;
+			return this;
+		}
+
+		/**
+		 * Sets a provider of current time. A cache shared between several reactors should use
+		 * a reactor-independent provider, like {@link CurrentTimeProvider#ofSystem()}
+		 */
+		public Builder withCurrentTimeProvider(CurrentTimeProvider now) {
+			checkNotBuilt(this);
+			DnsCache.this.now = now;
+			return this;
+		}
+
 		@Override
 		protected DnsCache doBuild() {
 			return DnsCache.this;
@@ -144,29 +183,40 @@ public final class DnsCache extends AbstractReactive {
 		}
 
 		DnsResponse result = cachedResult.response;
-		assert result != null; // results with null responses should never be in cache map
 		if (result.isSuccessful()) {
 			logger.trace("{} cache hit", query);
 		} else {
 			logger.trace("{} error cache hit", query);
 		}
 
-		if (isExpired(cachedResult)) {
+		long currentTime = now.currentTimeMillis();
+		if (currentTime >= cachedResult.expirationTime + hardExpirationDelta) {
 			logger.trace("{} hard TTL expired", query);
 			return null;
-		} else if (isSoftExpired(cachedResult)) {
+		} else if (currentTime >= cachedResult.expirationTime) {
 			logger.trace("{} soft TTL expired", query);
 			return new DnsQueryCacheResult(result, true);
+		} else if (cachedResult.prefetchTime != Long.MAX_VALUE &&
+				   CachedDnsQueryResult.HITS.incrementAndGet(cachedResult) >= prefetchMinHits &&
+				   currentTime >= cachedResult.prefetchTime) {
+			logger.trace("{} is about to expire, prefetching", query);
+			return new DnsQueryCacheResult(result, true);
 		}
 		return new DnsQueryCacheResult(result, false);
 	}
 
-	private boolean isExpired(CachedDnsQueryResult cachedResult) {
-		return now.currentTimeMillis() >= cachedResult.expirationTime + hardExpirationDelta;
+	/**
+	 * Marks a query as being refreshed, so that concurrent refreshes
+	 * of the same query (possibly, from other reactors) are skipped
+	 *
+	 * @return {@code false} if the query is already being refreshed
+	 */
+	boolean startRefreshing(DnsQuery query) {
+		return refreshingNow.add(query);
 	}
 
-	private boolean isSoftExpired(CachedDnsQueryResult cachedResult) {
-		return now.currentTimeMillis() >= cachedResult.expirationTime;
+	void finishRefreshing(DnsQuery query) {
+		refreshingNow.remove(query);
 	}
 
 	/**
@@ -175,26 +225,29 @@ public final class DnsCache extends AbstractReactive {
 	 * @param response response to add
 	 */
 	public void add(DnsQuery query, DnsResponse response) {
-		if (CHECKS) checkInReactorThread(this);
 		long expirationTime = now.currentTimeMillis();
+		long prefetchTime = Long.MAX_VALUE;
 		if (response.isSuccessful()) {
 			assert response.getRecord() != null; // where are my advanced contracts so that the IDE would know it's true here without an assertion?
 			long minTtl = response.getRecord().getMinTtl() * 1000L;
 			if (minTtl == 0) {
 				return;
 			}
-			expirationTime += Math.min(minTtl, maxTtl);
+			long ttl = Math.min(minTtl, maxTtl);
+			expirationTime += ttl;
+			if (prefetchThreshold != 0) {
+				prefetchTime = expirationTime - (long) (ttl * prefetchThreshold);
+			}
 		} else {
 			expirationTime += response.getErrorCode() == ResponseErrorCode.TIMED_OUT ?
 				timedOutExpiration :
 				errorCacheExpiration;
 		}
-		CachedDnsQueryResult cachedResult = new CachedDnsQueryResult(response, expirationTime);
+		CachedDnsQueryResult cachedResult = new CachedDnsQueryResult(query, response, expirationTime, prefetchTime);
 		CachedDnsQueryResult old = cache.put(query, cachedResult);
 		expirations.add(cachedResult);
 
 		if (old != null) {
-			old.response = null; // mark old cache response as refreshed (see performCleanup)
 			logger.trace("Refreshed cache entry for {}", query);
 		} else {
 			logger.trace("Added cache entry for {}", query);
@@ -207,15 +260,16 @@ public final class DnsCache extends AbstractReactive {
 		}
 		long currentTime = now.currentTimeMillis();
 
-		CachedDnsQueryResult peeked;
-		while ((peeked = expirations.peek()) != null && peeked.expirationTime <= currentTime) {
-			DnsResponse response = peeked.response;
-			if (response != null) { // if it was not refreshed(so there is a newer response in the queue)
-				DnsQuery query = response.getTransaction().getQuery();
-				cache.remove(query); // we drop it from cache
-				logger.trace("Cache entry expired for {}", query);
+		CachedDnsQueryResult polled;
+		while ((polled = expirations.poll()) != null) {
+			if (polled.expirationTime > currentTime) {
+				expirations.add(polled);
+				break;
+			}
+			// we drop it from cache, unless it has been refreshed (so there is a newer response in the queue)
+			if (cache.remove(polled.query, polled)) {
+				logger.trace("Cache entry expired for {}", polled.query);
 			}
-			expirations.poll();
 		}
 		cleaningUpNow.set(false);
 	}
@@ -264,6 +318,28 @@ public final class DnsCache extends AbstractReactive {
 		}
 	}
 
+	@JmxAttribute
+	public double getPrefetchThreshold() {
+		return prefetchThreshold;
+	}
+
+	@JmxAttribute
+	public void setPrefetchThreshold(double prefetchThreshold) {
+		checkArgument(prefetchThreshold >= 0 && prefetchThreshold < 1, "Prefetch threshold should be in range [0, 1)");
+		this.prefetchThreshold = prefetchThreshold;
+	}
+
+	@JmxAttribute
+	public int getPrefetchMinHits() {
+		return prefetchMinHits;
+	}
+
+	@JmxAttribute
+	public void setPrefetchMinHits(int prefetchMinHits) {
+		checkArgument(prefetchMinHits > 0, "Minimal number of hits should be positive");
+		this.prefetchMinHits = prefetchMinHits;
+	}
+
 	@JmxAttribute(reducer = JmxReducerSum.class)
 	public int getDomainsCount() {
 		return cache.size();
@@ -272,10 +348,7 @@ public final class DnsCache extends AbstractReactive {
 	@JmxAttribute(reducer = JmxReducerSum.class)
 	public int getFailedDomainsCount() {
 		return (int) cache.values().stream()
-			.filter(cachedResult -> {
-				assert cachedResult.response != null;
-				return !cachedResult.response.isSuccessful();
-			})
+			.filter(cachedResult -> !cachedResult.response.isSuccessful())
 			.count();
 	}
 
@@ -308,19 +381,17 @@ public final class DnsCache extends AbstractReactive {
 		}
 
 		ResponseErrorCode getStatus() {
-			if (result.response == null)
-				return ResponseErrorCode.UNKNOWN;
 			return result.response.getErrorCode();
 		}
 
 		Collection<InetAddress> getIps() {
-			if (result.response == null || result.response.getRecord() == null)
+			if (result.response.getRecord() == null)
 				return List.of();
 			return List.of(result.response.getRecord().getIps());
 		}
 
 		int getMinTtlSeconds() {
-			if (result.response == null || result.response.getRecord() == null)
+			if (result.response.getRecord() == null)
 				return 0;
 			return result.response.getRecord().getMinTtl();
 		}
@@ -391,7 +462,7 @@ public final class DnsCache extends AbstractReactive {
 	@JmxOperation
 	public void clear() {
 		cache.clear();
-		reactor.submit(expirations::clear);
+		expirations.clear();
 	}
 
 	public static final class DnsQueryCacheResult {
@@ -421,12 +492,20 @@ public final class DnsCache extends AbstractReactive {
 	}
 
 	public static final class CachedDnsQueryResult implements Comparable<CachedDnsQueryResult> {
-		@Nullable DnsResponse response;
+		static final AtomicIntegerFieldUpdater<CachedDnsQueryResult> HITS =
+			AtomicIntegerFieldUpdater.newUpdater(CachedDnsQueryResult.class, "hits");
+
+		final DnsQuery query;
+		final DnsResponse response;
 		final long expirationTime;
+		final long prefetchTime;
+		volatile int hits;
 
-		CachedDnsQueryResult(@Nullable DnsResponse response, long expirationTime) {
+		CachedDnsQueryResult(DnsQuery query, DnsResponse response, long expirationTime, long prefetchTime) {
+			this.query = query;
 			this.response = response;
 			this.expirationTime = expirationTime;
+			this.prefetchTime = prefetchTime;
 		}
 
 		@Override
@@ -19,14 +19,20 @@ package io.activej.dns;
 import io.activej.async.exception.AsyncCloseException;
 import io.activej.async.exception.AsyncTimeoutException;
 import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
 import io.activej.common.Checks;
 import io.activej.common.builder.AbstractBuilder;
 import io.activej.common.exception.MalformedDataException;
 import io.activej.common.inspector.AbstractInspector;
 import io.activej.common.inspector.BaseInspector;
+import io.activej.csp.binary.BinaryChannelSupplier;
+import io.activej.csp.supplier.ChannelSuppliers;
 import io.activej.dns.protocol.*;
+import io.activej.dns.protocol.DnsProtocol.ResponseErrorCode;
 import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.jmx.api.attribute.JmxOperation;
 import io.activej.jmx.stats.EventStats;
+import io.activej.net.socket.tcp.TcpSocket;
 import io.activej.net.socket.udp.IUdpSocket;
 import io.activej.net.socket.udp.UdpPacket;
 import io.activej.net.socket.udp.UdpSocket;
@@ -46,14 +52,24 @@ import java.net.InetSocketAddress;
 import java.nio.channels.DatagramChannel;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.csp.binary.decoder.ByteBufsDecoders.ofShortSizePrefixedBytes;
 import static io.activej.promise.Promises.timeout;
 import static io.activej.reactor.Reactive.checkInReactorThread;
 
 /**
  * Implementation of {@link IDnsClient} that asynchronously
  * connects to some <i>real</i> DNS server and gets the response from it.
+ * <p>
+ * If several DNS servers are given, each query is sent to the server with the lowest
+ * smoothed round-trip time, while round-trip times of other servers slowly decay,
+ * so that a server which was slow (or timed out) once is eventually retried.
+ * <p>
+ * Responses that do not fit into a UDP datagram (with a TC flag set)
+ * are re-requested from the same server over TCP.
  */
 public final class DnsClient extends AbstractNioReactive
 	implements IDnsClient, ReactiveJmxBeanWithStats {
@@ -63,21 +79,20 @@ public final class DnsClient extends AbstractNioReactive
 	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(3);
 	private static final int DNS_SERVER_PORT = 53;
 
-	private final Map<DnsTransaction, SettablePromise<DnsResponse>> transactions = new HashMap<>();
+	private static final double RTT_SMOOTHING = 0.3;
+	private static final double RTT_DECAY = 0.98;
 
-	private final InetSocketAddress dnsServerAddress;
+	private final List<Upstream> upstreams;
 
 	private DatagramSocketSettings datagramSocketSettings = DatagramSocketSettings.create();
 	private Duration timeout = DEFAULT_TIMEOUT;
 
-	private @Nullable IUdpSocket socket;
-
 	private @Nullable UdpSocket.Inspector socketInspector;
 	private @Nullable Inspector inspector;
 
-	private DnsClient(NioReactor reactor, InetSocketAddress dnsServerAddress) {
+	private DnsClient(NioReactor reactor, List<InetSocketAddress> dnsServerAddresses) {
 		super(reactor);
-		this.dnsServerAddress = dnsServerAddress;
+		this.upstreams = dnsServerAddresses.stream().map(Upstream::new).toList();
 	}
 
 	public static DnsClient create(NioReactor reactor, InetSocketAddress dnsServerAddress) {
@@ -88,13 +103,22 @@ public final class DnsClient extends AbstractNioReactive
 		return builder(reactor, dnsServerAddress).build();
 	}
 
+	public static DnsClient create(NioReactor reactor, List<InetSocketAddress> dnsServerAddresses) {
+		return builder(reactor, dnsServerAddresses).build();
+	}
+
 	public static Builder builder(NioReactor reactor, InetSocketAddress dnsServerAddress) {
-		return new DnsClient(reactor, dnsServerAddress).new Builder();
+		return builder(reactor, List.of(dnsServerAddress));
 	}
 
 	public static Builder builder(NioReactor reactor, InetAddress dnsServerAddress) {
 		InetSocketAddress address = new InetSocketAddress(dnsServerAddress, DNS_SERVER_PORT);
-		return new DnsClient(reactor, address).new Builder();
+		return builder(reactor, List.of(address));
+	}
+
+	public static Builder builder(NioReactor reactor, List<InetSocketAddress> dnsServerAddresses) {
+		checkArgument(!dnsServerAddresses.isEmpty(), "At least one DNS server address should be specified");
+		return new DnsClient(reactor, dnsServerAddresses).new Builder();
 	}
 
 	public final class Builder extends AbstractBuilder<Builder, DnsClient> {
@@ -133,34 +157,8 @@ public final class DnsClient extends AbstractNioReactive
 	@Override
 	public void close() {
 		checkInReactorThread(this);
-		if (socket == null) {
-			return;
-		}
-		socket.close();
-		socket = null;
-		AsyncCloseException closeException = new AsyncCloseException();
-		transactions.values().forEach(s -> s.setException(closeException));
-	}
-
-	private Promise<IUdpSocket> getSocket() {
-		IUdpSocket socket = this.socket;
-		if (socket != null) {
-			return Promise.of(socket);
-		}
-		try {
-			logger.trace("Incoming query, opening UDP socket");
-			DatagramChannel channel = NioReactor.createDatagramChannel(datagramSocketSettings, null, dnsServerAddress);
-			return UdpSocket.connect(reactor, channel)
-				.map(s -> {
-					if (socketInspector != null) {
-						socketInspector.onCreate(s);
-						s.setInspector(socketInspector);
-					}
-					return this.socket = s;
-				});
-		} catch (IOException e) {
-			logger.error("UDP socket creation failed.", e);
-			return Promise.ofException(e);
+		for (Upstream upstream : upstreams) {
+			upstream.close();
 		}
 	}
 
@@ -185,16 +183,19 @@ public final class DnsClient extends AbstractNioReactive
 			}
 		}
 
+		Upstream upstream = selectUpstream();
+
 		// ignore the result because sooner or later it will be sent and just completed
 		// here we use that transactions map because it easily could go completely out of order, and we should be ok with that
-		return getSocket()
+		return upstream.getSocket()
 			.then(socket -> {
-				logger.trace("Resolving {} with DNS server {}", query, dnsServerAddress);
+				logger.trace("Resolving {} with DNS server {}", query, upstream.address);
 
 				DnsTransaction transaction = DnsTransaction.of(DnsProtocol.generateTransactionId(), query);
 				SettablePromise<DnsResponse> promise = new SettablePromise<>();
+				long sentTimestamp = reactor.currentTimeMillis();
 
-				transactions.put(transaction, promise);
+				upstream.transactions.put(transaction, promise);
 
 				ByteBuf payload = DnsProtocol.createDnsQueryPayload(transaction);
 				if (inspector != null) {
@@ -202,24 +203,32 @@ public final class DnsClient extends AbstractNioReactive
 				}
 
 				// ignore the result because soon, or later it will be sent and just completed
-				socket.send(UdpPacket.of(payload, dnsServerAddress));
+				socket.send(UdpPacket.of(payload, upstream.address));
 
 				// here we use that transactions map because it easily could go completely out of order, and we should be ok with that
 				socket.receive()
 					.whenResult(packet -> {
 						try {
 							DnsResponse queryResult = DnsProtocol.readDnsResponse(packet.getBuf());
-							SettablePromise<DnsResponse> cb = transactions.remove(queryResult.getTransaction());
+							SettablePromise<DnsResponse> cb = upstream.transactions.remove(queryResult.getTransaction());
 							if (cb == null) {
 								logger.warn("Received a DNS response that had no listener (most likely because it timed out) : {}", queryResult);
 								return;
 							}
-							if (queryResult.isSuccessful()) {
-								cb.set(queryResult);
+							if (queryResult.getErrorCode() == ResponseErrorCode.TRUNCATED) {
+								logger.trace("Response to {} is truncated, repeating the query over TCP", query);
+								resolveOverTcp(upstream.address, queryResult.getTransaction())
+									.subscribe((tcpResult, e) -> {
+										if (e == null) {
+											complete(cb, tcpResult);
+										} else {
+											cb.trySetException(e);
+										}
+									});
 							} else {
-								cb.setException(new DnsQueryException(queryResult));
+								complete(cb, queryResult);
 							}
-							closeIfDone();
+							upstream.closeIfDone();
 						} catch (MalformedDataException e) {
 							logger.warn("Received a UDP packet than cannot be decoded as a DNS server response.", e);
 						} finally {
@@ -230,6 +239,7 @@ public final class DnsClient extends AbstractNioReactive
 				return timeout(timeout, promise)
 					.thenCallback(
 						(queryResult, cb) -> {
+							upstream.updateRtt(reactor.currentTimeMillis() - sentTimestamp);
 							if (inspector != null) {
 								inspector.onDnsQueryResult(query, queryResult);
 							}
@@ -238,27 +248,141 @@ public final class DnsClient extends AbstractNioReactive
 						},
 						(e, cb) -> {
 							if (e instanceof AsyncTimeoutException) {
+								upstream.updateRtt(timeout.toMillis());
 								if (inspector != null) {
 									inspector.onDnsQueryExpiration(query);
 								}
 								logger.trace("{} timed out", query);
 								e = new DnsQueryException(DnsResponse.ofFailure(transaction, DnsProtocol.ResponseErrorCode.TIMED_OUT));
-								transactions.remove(transaction);
-								closeIfDone();
-							} else if (inspector != null) {
-								inspector.onDnsQueryError(query, e);
+								upstream.transactions.remove(transaction);
+								upstream.closeIfDone();
+							} else {
+								if (e instanceof DnsQueryException) {
+									upstream.updateRtt(reactor.currentTimeMillis() - sentTimestamp);
+								}
+								if (inspector != null) {
+									inspector.onDnsQueryError(query, e);
+								}
 							}
 							cb.setException(e);
 						});
 			});
 	}
 
-	private void closeIfDone() {
-		if (!transactions.isEmpty()) {
-			return;
+	private static void complete(SettablePromise<DnsResponse> cb, DnsResponse queryResult) {
+		if (queryResult.isSuccessful()) {
+			cb.trySet(queryResult);
+		} else {
+			cb.trySetException(new DnsQueryException(queryResult));
+		}
+	}
+
+	private Upstream selectUpstream() {
+		if (upstreams.size() == 1) {
+			return upstreams.get(0);
+		}
+		Upstream selected = upstreams.get(0);
+		for (Upstream upstream : upstreams) {
+			if (upstream.smoothedRtt < selected.smoothedRtt) {
+				selected = upstream;
+			}
+		}
+		for (Upstream upstream : upstreams) {
+			if (upstream != selected) {
+				upstream.smoothedRtt *= RTT_DECAY;
+			}
+		}
+		return selected;
+	}
+
+	private Promise<DnsResponse> resolveOverTcp(InetSocketAddress address, DnsTransaction transaction) {
+		return TcpSocket.connect(reactor, address, timeout, null)
+			.then(socket -> {
+				ByteBuf payload = DnsProtocol.createDnsQueryPayload(transaction);
+				// DNS over TCP messages are prefixed with a two byte length field (RFC 1035 section 4.2.2)
+				ByteBuf message = ByteBufPool.allocate(2 + payload.readRemaining());
+				message.writeShort((short) payload.readRemaining());
+				message.put(payload);
+				payload.recycle();
+
+				BinaryChannelSupplier supplier = BinaryChannelSupplier.of(ChannelSuppliers.ofSocket(socket));
+				// the connect timeout does not cover a server which accepts a connection and never answers
+				return timeout(timeout, socket.write(message)
+						.then(() -> supplier.decode(ofShortSizePrefixedBytes())))
+					.map(buf -> {
+						try {
+							return DnsProtocol.readDnsResponse(buf);
+						} finally {
+							buf.recycle();
+						}
+					})
+					.whenComplete(() -> {
+						supplier.close();
+						socket.close();
+					});
+			});
+	}
+
+	private final class Upstream {
+		final InetSocketAddress address;
+		final Map<DnsTransaction, SettablePromise<DnsResponse>> transactions = new HashMap<>();
+
+		@Nullable IUdpSocket socket;
+
+		double smoothedRtt;
+
+		Upstream(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		Promise<IUdpSocket> getSocket() {
+			IUdpSocket socket = this.socket;
+			if (socket != null) {
+				return Promise.of(socket);
+			}
+			try {
+				logger.trace("Incoming query, opening UDP socket");
+				DatagramChannel channel = NioReactor.createDatagramChannel(datagramSocketSettings, null, address);
+				return UdpSocket.connect(reactor, channel)
+					.map(s -> {
+						if (socketInspector != null) {
+							socketInspector.onCreate(s);
+							s.setInspector(socketInspector);
+						}
+						return this.socket = s;
+					});
+			} catch (IOException e) {
+				logger.error("UDP socket creation failed.", e);
+				return Promise.ofException(e);
+			}
+		}
+
+		void updateRtt(long rtt) {
+			smoothedRtt += (rtt - smoothedRtt) * RTT_SMOOTHING;
+		}
+
+		void closeIfDone() {
+			if (!transactions.isEmpty()) {
+				return;
+			}
+			logger.trace("All queries are completed, closing UDP socket");
+			close(); // transactions are empty so no loops here
+		}
+
+		void close() {
+			if (socket == null) {
+				return;
+			}
+			socket.close();
+			socket = null;
+			AsyncCloseException closeException = new AsyncCloseException();
+			transactions.values().forEach(s -> s.setException(closeException));
+		}
+
+		@Override
+		public String toString() {
+			return address + " (smoothed RTT: " + Math.round(smoothedRtt) + "ms)";
 		}
-		logger.trace("All queries are completed, closing UDP socket");
-		close(); // transactions are empty so no loops here
 	}
 
 	// region JMX
@@ -318,6 +442,13 @@ public final class DnsClient extends AbstractNioReactive
 	}
 	// endregion
 
+	@JmxOperation
+	public List<String> getUpstreams() {
+		return upstreams.stream()
+			.map(Upstream::toString)
+			.toList();
+	}
+
 	@JmxAttribute
 	public @Nullable UdpSocket.JmxInspector getSocketStats() {
 		return BaseInspector.lookup(socketInspector, UdpSocket.JmxInspector.class);
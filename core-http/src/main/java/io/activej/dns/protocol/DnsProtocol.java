@@ -109,7 +109,7 @@ public final class DnsProtocol {
 	public static DnsResponse readDnsResponse(ByteBuf payload) throws MalformedDataException {
 		try {
 			short transactionId = payload.readShort();
-			payload.moveHead(1); // skip first flags byte
+			boolean truncated = (payload.readByte() & 0b00000010) != 0; // TC flag, response did not fit into a UDP datagram
 
 			//                                                                    last 4 flag bits are error code
 			ResponseErrorCode errorCode = ResponseErrorCode.fromBits(payload.readByte() & 0b00001111);
@@ -163,6 +163,10 @@ public final class DnsProtocol {
 			if (errorCode != ResponseErrorCode.NO_ERROR) {
 				return DnsResponse.ofFailure(transaction, errorCode);
 			}
+			if (truncated) {
+				// answers of a truncated response are incomplete, the query should be repeated over TCP
+				return DnsResponse.ofFailure(transaction, ResponseErrorCode.TRUNCATED);
+			}
 
 			List<InetAddress> ips = new ArrayList<>();
 			int minTtl = Integer.MAX_VALUE;
@@ -296,6 +300,7 @@ public final class DnsProtocol {
 		// custom error codes
 		NO_DATA,
 		TIMED_OUT,
+		TRUNCATED,
 		UNKNOWN;
 
 		static ResponseErrorCode fromBits(int rcodeBits) {
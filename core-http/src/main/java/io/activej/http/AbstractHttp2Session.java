@@ -0,0 +1,1061 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.async.process.AsyncCloseable;
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.bytebuf.ByteBufs;
+import io.activej.common.ApplicationSettings;
+import io.activej.common.MemSize;
+import io.activej.csp.supplier.AbstractChannelSupplier;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.http.stream.BufsConsumerGzipDeflater;
+import io.activej.net.socket.tcp.ITcpSocket;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.Reactor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static io.activej.bytebuf.ByteBufStrings.equalsLowerCaseAscii;
+import static io.activej.common.Utils.nullify;
+import static io.activej.http.AbstractHttpConnection.CONTENT_ENCODING_GZIP;
+import static io.activej.http.AbstractHttpConnection.CONTENT_ENCODING_GZIP_HEADER;
+import static io.activej.http.AbstractHttpConnection.MAX_HEADERS;
+import static io.activej.http.AbstractHttpConnection.ZERO_HEADER;
+import static io.activej.http.Http2Constants.*;
+import static io.activej.http.HttpHeaderValue.ofDecimal;
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.http.HttpUtils.hashCodeCI;
+import static io.activej.http.HttpUtils.translateToHttpException;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A base of HTTP/2 sessions, as defined in RFC 9113.
+ * <p>
+ * A session takes over a socket of an HTTP connection and multiplexes streams over it.
+ * Frames to be sent are accumulated in a write buffer which is flushed once per reactor tick.
+ * Bodies of received messages are supplied as zero-copy slices of read buffers, received data
+ * is credited back to a peer as it is consumed, so that a slow consumer of one stream
+ * does not block other streams.
+ * <p>
+ * Stream priorities are ignored and server push is not supported.
+ */
+abstract class AbstractHttp2Session<C extends AbstractHttpConnection> {
+	static final int MAX_HEADER_LIST_SIZE = ApplicationSettings.getMemSize(AbstractHttp2Session.class, "maxHeaderListSize", MemSize.kilobytes(64)).toInt();
+	static final int WRITE_BUFFER_HIGH_WATERMARK = ApplicationSettings.getMemSize(AbstractHttp2Session.class, "writeBufferHighWatermark", MemSize.kilobytes(64)).toInt();
+
+	protected final Reactor reactor;
+	protected final C connection;
+	protected final ITcpSocket socket;
+
+	final HpackEncoder encoder = new HpackEncoder();
+	private final HpackDecoder decoder = new HpackDecoder(HpackEncoder.MAX_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+	private final List<byte[]> headerFields = new ArrayList<>();
+	private final HpackDecoder.HeaderConsumer headerConsumer = (name, value) -> {
+		headerFields.add(name);
+		headerFields.add(value);
+	};
+
+	final HashMap<Integer, Stream> streams = new HashMap<>();
+	private final ArrayDeque<Stream> blockedStreams = new ArrayDeque<>();
+
+	final int initialWindowSize;
+	private final int connectionWindowSize;
+
+	int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+	int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+	private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+	private int connectionSendWindow = DEFAULT_WINDOW_SIZE;
+	private int connectionRecvWindow = DEFAULT_WINDOW_SIZE;
+	private int connectionRecvConsumed;
+
+	int lastPeerStreamId;
+	boolean goingAway;
+
+	private @Nullable ByteBuf readBuf;
+	private boolean prefaceExpected;
+
+	private @Nullable ByteBuf headerBlock;
+	private int headerBlockStreamId;
+	private boolean headerBlockEndStream;
+
+	private @Nullable ByteBuf writeBuf;
+	private boolean writing;
+	private boolean flushPosted;
+
+	private boolean closing;
+	private boolean connectionClosed;
+	private @Nullable Exception closingException;
+
+	private byte[] scratch = new byte[64];
+
+	AbstractHttp2Session(C connection, int initialWindowSize) {
+		this.reactor = connection.getReactor();
+		this.connection = connection;
+		this.socket = connection.socket;
+		this.initialWindowSize = initialWindowSize;
+		this.connectionWindowSize = (int) min(MAX_WINDOW_SIZE, 4L * initialWindowSize);
+	}
+
+	final class Stream {
+		int id;
+		int sendWindow;
+		int recvWindow;
+		int recvConsumed;
+
+		// inbound
+		final ByteBufs inbound = new ByteBufs();
+		@Nullable BodySupplier bodySupplier;
+		@Nullable SettablePromise<ByteBuf> take;
+		boolean endReceived;
+		boolean inputDone;
+
+		// outbound
+		@Nullable ByteBuf outBuf;
+		@Nullable ChannelSupplier<ByteBuf> outSupplier;
+		boolean outEnd;
+		boolean endSent;
+		boolean pulling;
+		boolean blocked;
+
+		boolean closed;
+
+		// server side
+		boolean dispatched;
+
+		// client side
+		@Nullable HttpRequest request;
+		@Nullable SettablePromise<HttpResponse> promise;
+		@Nullable HttpResponse response;
+	}
+
+	final class BodySupplier extends AbstractChannelSupplier<ByteBuf> {
+		private final Stream stream;
+
+		BodySupplier(Stream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		protected Promise<ByteBuf> doGet() {
+			Stream stream = this.stream;
+			if (!stream.inbound.isEmpty()) {
+				ByteBuf buf = stream.inbound.take();
+				onConsumed(stream, buf.readRemaining());
+				return Promise.of(buf);
+			}
+			if (stream.endReceived) {
+				if (!stream.inputDone) completeInput(stream);
+				return Promise.of(null);
+			}
+			SettablePromise<ByteBuf> take = new SettablePromise<>();
+			stream.take = take;
+			return take;
+		}
+
+		@Override
+		protected void onClosed(Exception e) {
+			Stream stream = this.stream;
+			SettablePromise<ByteBuf> take = stream.take;
+			stream.take = null;
+			if (take != null) take.setException(e);
+			discardInbound(stream);
+			if (stream.closed || connection.isClosed()) return;
+			if (!stream.endReceived) {
+				resetStream(stream, CANCEL, e);
+			} else if (!stream.inputDone) {
+				completeInput(stream);
+			}
+		}
+	}
+
+	// region hooks
+	abstract void onHeaders(int streamId, boolean endStream, List<byte[]> fields);
+
+	abstract void onStreamClosed(Stream stream, @Nullable Exception e);
+
+	abstract void onGoAwayReceived(int lastStreamId, int errorCode);
+
+	/**
+	 * Checks whether a stream with a given identifier has not been opened yet
+	 */
+	abstract boolean isIdleStream(int streamId);
+
+	void onSettingsReceived() {
+	}
+
+	void onOutputComplete(Stream stream) {
+		tryCloseStream(stream);
+	}
+	// endregion
+
+	void start(@Nullable ByteBuf readBuf, boolean prefaceExpected) {
+		this.readBuf = readBuf;
+		this.prefaceExpected = prefaceExpected;
+		if (connectionWindowSize > DEFAULT_WINDOW_SIZE) {
+			writeWindowUpdate(0, connectionWindowSize - DEFAULT_WINDOW_SIZE);
+			connectionRecvWindow = connectionWindowSize;
+		}
+		processFrames();
+		if (!connection.isClosed()) read();
+	}
+
+	/**
+	 * Fails all the streams of a closed connection and recycles buffers
+	 */
+	void onConnectionClosed(Exception e) {
+		if (connectionClosed) return;
+		connectionClosed = true;
+		for (Stream stream : new ArrayList<>(streams.values())) {
+			closeStream(stream, e);
+		}
+		readBuf = nullify(readBuf, ByteBuf::recycle);
+		writeBuf = nullify(writeBuf, ByteBuf::recycle);
+		headerBlock = nullify(headerBlock, ByteBuf::recycle);
+	}
+
+	// region reading
+	private void read() {
+		socket.read()
+			.subscribe((buf, e) -> {
+				if (connection.isClosed()) {
+					if (buf != null) buf.recycle();
+					return;
+				}
+				if (e != null) {
+					connection.closeEx(translateToHttpException(e));
+					return;
+				}
+				if (buf == null) {
+					if (streams.isEmpty()) {
+						connection.close();
+					} else {
+						connection.closeEx(new MalformedHttpException("Unexpected end of data"));
+					}
+					return;
+				}
+				readBuf = readBuf == null ? buf : ByteBufPool.append(readBuf, buf);
+				processFrames();
+				if (!connection.isClosed()) read();
+			});
+	}
+
+	private void processFrames() {
+		while (readBuf != null && !connection.isClosed() && closingException == null) {
+			ByteBuf buf = readBuf;
+			byte[] array = buf.array();
+			int head = buf.head();
+			if (prefaceExpected) {
+				int n = min(buf.readRemaining(), CONNECTION_PREFACE.length);
+				for (int i = 0; i < n; i++) {
+					if (array[head + i] != CONNECTION_PREFACE[i]) {
+						connectionError(PROTOCOL_ERROR, "Invalid connection preface");
+						return;
+					}
+				}
+				if (n < CONNECTION_PREFACE.length) break;
+				buf.moveHead(CONNECTION_PREFACE.length);
+				prefaceExpected = false;
+				continue;
+			}
+			if (buf.readRemaining() < FRAME_HEADER_SIZE) break;
+			int length = (array[head] & 0xFF) << 16 | (array[head + 1] & 0xFF) << 8 | (array[head + 2] & 0xFF);
+			if (length > DEFAULT_MAX_FRAME_SIZE) {
+				connectionError(FRAME_SIZE_ERROR, "Frame size exceeds the limit");
+				return;
+			}
+			if (buf.readRemaining() < FRAME_HEADER_SIZE + length) break;
+			int type = array[head + 3] & 0xFF;
+			int flags = array[head + 4] & 0xFF;
+			int streamId = readInt(array, head + 5) & 0x7FFFFFFF;
+			buf.moveHead(FRAME_HEADER_SIZE);
+			if (headerBlock != null && (type != CONTINUATION || streamId != headerBlockStreamId)) {
+				connectionError(PROTOCOL_ERROR, "CONTINUATION frame expected");
+				return;
+			}
+			onFrame(type, flags, streamId, buf, length);
+			if (connection.isClosed()) return;
+			buf.moveHead(length);
+		}
+		if (readBuf != null && !readBuf.canRead()) {
+			readBuf = nullify(readBuf, ByteBuf::recycle);
+		}
+	}
+
+	private void onFrame(int type, int flags, int streamId, ByteBuf buf, int length) {
+		switch (type) {
+			case DATA -> onData(flags, streamId, buf, length);
+			case HEADERS -> onHeadersFrame(flags, streamId, buf, length);
+			case PRIORITY -> {
+				if (streamId == 0) connectionError(PROTOCOL_ERROR, "PRIORITY frame for a connection");
+			}
+			case RST_STREAM -> onRstStream(streamId, buf, length);
+			case SETTINGS -> onSettings(flags, streamId, buf, length);
+			case PUSH_PROMISE -> connectionError(PROTOCOL_ERROR, "Server push is not enabled");
+			case PING -> onPing(flags, streamId, buf, length);
+			case GOAWAY -> onGoAway(streamId, buf, length);
+			case WINDOW_UPDATE -> onWindowUpdate(streamId, buf, length);
+			case CONTINUATION -> onContinuation(flags, streamId, buf, length);
+			default -> {
+				// unknown frame types are ignored
+			}
+		}
+	}
+
+	private void onData(int flags, int streamId, ByteBuf buf, int length) {
+		if (streamId == 0) {
+			connectionError(PROTOCOL_ERROR, "DATA frame for a connection");
+			return;
+		}
+		connectionRecvWindow -= length;
+		if (connectionRecvWindow < 0) {
+			connectionError(FLOW_CONTROL_ERROR, "Connection flow control window exceeded");
+			return;
+		}
+		int dataOffset = 0;
+		int dataLength = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			int padLength = length == 0 ? -1 : buf.array()[buf.head()] & 0xFF;
+			dataOffset = 1;
+			dataLength = length - 1 - padLength;
+			if (padLength < 0 || dataLength < 0) {
+				connectionError(PROTOCOL_ERROR, "Invalid padding");
+				return;
+			}
+		}
+
+		Stream stream = streams.get(streamId);
+		if (stream == null || stream.endReceived) {
+			if (stream == null && isIdleStream(streamId)) {
+				connectionError(PROTOCOL_ERROR, "DATA frame for an idle stream");
+				return;
+			}
+			creditConnection(length);
+			if (stream != null) resetStream(stream, STREAM_CLOSED, new MalformedHttpException("DATA frame after end of stream"));
+			return;
+		}
+		stream.recvWindow -= length;
+		if (stream.recvWindow < 0) {
+			creditConnection(length);
+			resetStream(stream, FLOW_CONTROL_ERROR, new MalformedHttpException("Stream flow control window exceeded"));
+			return;
+		}
+		if (length != dataLength) {
+			onConsumed(stream, length - dataLength);
+		}
+		if (dataLength != 0) {
+			if (stream.bodySupplier == null || stream.bodySupplier.isClosed()) {
+				onConsumed(stream, dataLength);
+			} else {
+				ByteBuf data = buf.slice(buf.head() + dataOffset, dataLength);
+				SettablePromise<ByteBuf> take = stream.take;
+				if (take != null) {
+					stream.take = null;
+					onConsumed(stream, dataLength);
+					take.set(data);
+				} else {
+					stream.inbound.add(data);
+				}
+			}
+		}
+		if ((flags & FLAG_END_STREAM) != 0 && !stream.closed) {
+			endInput(stream);
+		}
+	}
+
+	private void onHeadersFrame(int flags, int streamId, ByteBuf buf, int length) {
+		if (streamId == 0) {
+			connectionError(PROTOCOL_ERROR, "HEADERS frame for a connection");
+			return;
+		}
+		byte[] array = buf.array();
+		int pos = buf.head();
+		int end = pos + length;
+		if ((flags & FLAG_PADDED) != 0) {
+			if (length == 0) {
+				connectionError(PROTOCOL_ERROR, "Invalid padding");
+				return;
+			}
+			end -= array[pos++] & 0xFF;
+		}
+		if ((flags & FLAG_PRIORITY) != 0) {
+			pos += 5;
+		}
+		if (pos > end) {
+			connectionError(PROTOCOL_ERROR, "Invalid padding");
+			return;
+		}
+		boolean endStream = (flags & FLAG_END_STREAM) != 0;
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			onHeaderBlock(streamId, ByteBuf.wrap(array, pos, end), endStream);
+		} else {
+			headerBlock = ByteBufPool.allocate(max(end - pos, 1024));
+			headerBlock.put(array, pos, end - pos);
+			headerBlockStreamId = streamId;
+			headerBlockEndStream = endStream;
+		}
+	}
+
+	private void onContinuation(int flags, int streamId, ByteBuf buf, int length) {
+		if (headerBlock == null) {
+			connectionError(PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+			return;
+		}
+		if (headerBlock.readRemaining() + length > 2 * MAX_HEADER_LIST_SIZE) {
+			connectionError(PROTOCOL_ERROR, "Header block is too large");
+			return;
+		}
+		headerBlock = ByteBufPool.ensureWriteRemaining(headerBlock, length);
+		headerBlock.put(buf.array(), buf.head(), length);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			ByteBuf block = headerBlock;
+			headerBlock = null;
+			onHeaderBlock(streamId, block, headerBlockEndStream);
+			block.recycle();
+		}
+	}
+
+	private void onHeaderBlock(int streamId, ByteBuf block, boolean endStream) {
+		headerFields.clear();
+		try {
+			decoder.decode(block, headerConsumer);
+		} catch (MalformedHttpException e) {
+			connectionError(COMPRESSION_ERROR, e.getMessage());
+			return;
+		}
+		onHeaders(streamId, endStream, headerFields);
+	}
+
+	private void onRstStream(int streamId, ByteBuf buf, int length) {
+		if (length != 4) {
+			connectionError(FRAME_SIZE_ERROR, "Invalid RST_STREAM frame size");
+			return;
+		}
+		if (streamId == 0) {
+			connectionError(PROTOCOL_ERROR, "RST_STREAM frame for a connection");
+			return;
+		}
+		Stream stream = streams.get(streamId);
+		if (stream == null) return;
+		int errorCode = readInt(buf.array(), buf.head());
+		if (errorCode == NO_ERROR && stream.endReceived) {
+			// a peer has sent a complete message and is not interested in the rest of ours
+			stopOutput(stream);
+			return;
+		}
+		closeStream(stream, new HttpException("Stream has been reset by peer, error code: " + errorCode));
+	}
+
+	private void stopOutput(Stream stream) {
+		if (stream.blocked) {
+			blockedStreams.remove(stream);
+			stream.blocked = false;
+		}
+		stream.outBuf = nullify(stream.outBuf, ByteBuf::recycle);
+		stream.outSupplier = nullify(stream.outSupplier, AsyncCloseable::close);
+		stream.endSent = true;
+		tryCloseStream(stream);
+	}
+
+	private void onSettings(int flags, int streamId, ByteBuf buf, int length) {
+		if (streamId != 0) {
+			connectionError(PROTOCOL_ERROR, "SETTINGS frame for a stream");
+			return;
+		}
+		if ((flags & FLAG_ACK) != 0) {
+			if (length != 0) connectionError(FRAME_SIZE_ERROR, "Invalid SETTINGS acknowledgement size");
+			return;
+		}
+		if (length % 6 != 0) {
+			connectionError(FRAME_SIZE_ERROR, "Invalid SETTINGS frame size");
+			return;
+		}
+		byte[] array = buf.array();
+		for (int pos = buf.head(), end = pos + length; pos < end; pos += 6) {
+			int id = (array[pos] & 0xFF) << 8 | (array[pos + 1] & 0xFF);
+			int value = readInt(array, pos + 2);
+			switch (id) {
+				case SETTINGS_HEADER_TABLE_SIZE -> encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+				case SETTINGS_ENABLE_PUSH -> {
+					if (value != 0 && value != 1) {
+						connectionError(PROTOCOL_ERROR, "Invalid ENABLE_PUSH setting");
+						return;
+					}
+				}
+				case SETTINGS_MAX_CONCURRENT_STREAMS -> peerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+				case SETTINGS_INITIAL_WINDOW_SIZE -> {
+					if (value < 0) {
+						connectionError(FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE setting");
+						return;
+					}
+					int delta = value - peerInitialWindowSize;
+					peerInitialWindowSize = value;
+					for (Stream stream : streams.values()) {
+						if ((long) stream.sendWindow + delta > MAX_WINDOW_SIZE) {
+							connectionError(FLOW_CONTROL_ERROR, "Stream flow control window overflow");
+							return;
+						}
+						stream.sendWindow += delta;
+					}
+				}
+				case SETTINGS_MAX_FRAME_SIZE -> {
+					if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE) {
+						connectionError(PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE setting");
+						return;
+					}
+					peerMaxFrameSize = value;
+				}
+				default -> {
+					// unknown and advisory settings are ignored
+				}
+			}
+		}
+		writeFrameHeader(ensureWriteBuf(FRAME_HEADER_SIZE), 0, SETTINGS, FLAG_ACK, 0);
+		onSettingsReceived();
+		resumeBlockedStreams();
+	}
+
+	private void onPing(int flags, int streamId, ByteBuf buf, int length) {
+		if (length != 8) {
+			connectionError(FRAME_SIZE_ERROR, "Invalid PING frame size");
+			return;
+		}
+		if (streamId != 0) {
+			connectionError(PROTOCOL_ERROR, "PING frame for a stream");
+			return;
+		}
+		if ((flags & FLAG_ACK) != 0) return;
+		ByteBuf writeBuf = ensureWriteBuf(FRAME_HEADER_SIZE + 8);
+		writeFrameHeader(writeBuf, 8, PING, FLAG_ACK, 0);
+		writeBuf.put(buf.array(), buf.head(), 8);
+	}
+
+	private void onGoAway(int streamId, ByteBuf buf, int length) {
+		if (length < 8) {
+			connectionError(FRAME_SIZE_ERROR, "Invalid GOAWAY frame size");
+			return;
+		}
+		if (streamId != 0) {
+			connectionError(PROTOCOL_ERROR, "GOAWAY frame for a stream");
+			return;
+		}
+		goingAway = true;
+		int lastStreamId = readInt(buf.array(), buf.head()) & 0x7FFFFFFF;
+		int errorCode = readInt(buf.array(), buf.head() + 4);
+		onGoAwayReceived(lastStreamId, errorCode);
+	}
+
+	private void onWindowUpdate(int streamId, ByteBuf buf, int length) {
+		if (length != 4) {
+			connectionError(FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame size");
+			return;
+		}
+		int increment = readInt(buf.array(), buf.head()) & 0x7FFFFFFF;
+		if (streamId == 0) {
+			if (increment == 0) {
+				connectionError(PROTOCOL_ERROR, "Zero window increment");
+				return;
+			}
+			if ((long) connectionSendWindow + increment > MAX_WINDOW_SIZE) {
+				connectionError(FLOW_CONTROL_ERROR, "Connection flow control window overflow");
+				return;
+			}
+			connectionSendWindow += increment;
+			resumeBlockedStreams();
+			return;
+		}
+		Stream stream = streams.get(streamId);
+		if (stream == null) return;
+		if (increment == 0) {
+			resetStream(stream, PROTOCOL_ERROR, new MalformedHttpException("Zero window increment"));
+			return;
+		}
+		if ((long) stream.sendWindow + increment > MAX_WINDOW_SIZE) {
+			resetStream(stream, FLOW_CONTROL_ERROR, new MalformedHttpException("Stream flow control window overflow"));
+			return;
+		}
+		stream.sendWindow += increment;
+		if (stream.blocked) {
+			blockedStreams.remove(stream);
+			stream.blocked = false;
+		}
+		pump(stream);
+	}
+
+	// endregion
+
+	// region inbound streams
+	final BodySupplier createBodySupplier(Stream stream) {
+		BodySupplier bodySupplier = new BodySupplier(stream);
+		stream.bodySupplier = bodySupplier;
+		return bodySupplier;
+	}
+
+	final void onTrailers(Stream stream, boolean endStream) {
+		if (stream.endReceived) {
+			resetStream(stream, STREAM_CLOSED, new MalformedHttpException("HEADERS frame after end of stream"));
+		} else if (!endStream) {
+			resetStream(stream, PROTOCOL_ERROR, new MalformedHttpException("Trailers without end of stream"));
+		} else {
+			endInput(stream);
+		}
+	}
+
+	private void endInput(Stream stream) {
+		stream.endReceived = true;
+		SettablePromise<ByteBuf> take = stream.take;
+		if (take != null) {
+			stream.take = null;
+			completeInput(stream);
+			take.set(null);
+		}
+	}
+
+	final void completeInput(Stream stream) {
+		stream.inputDone = true;
+		reactor.post(() -> tryCloseStream(stream));
+	}
+
+	private void onConsumed(Stream stream, int size) {
+		creditConnection(size);
+		if (stream.endReceived || stream.closed) return;
+		stream.recvConsumed += size;
+		if (stream.recvConsumed >= initialWindowSize >>> 1) {
+			writeWindowUpdate(stream.id, stream.recvConsumed);
+			stream.recvWindow += stream.recvConsumed;
+			stream.recvConsumed = 0;
+		}
+	}
+
+	private void creditConnection(int size) {
+		if (connection.isClosed() || closing) return;
+		connectionRecvConsumed += size;
+		if (connectionRecvConsumed >= connectionWindowSize >>> 1) {
+			writeWindowUpdate(0, connectionRecvConsumed);
+			connectionRecvWindow += connectionRecvConsumed;
+			connectionRecvConsumed = 0;
+		}
+	}
+
+	private void discardInbound(Stream stream) {
+		int size = stream.inbound.remainingBytes();
+		if (size == 0) return;
+		stream.inbound.recycle();
+		creditConnection(size);
+	}
+	// endregion
+
+	// region outbound streams
+	final void openStream(Stream stream, int id) {
+		stream.id = id;
+		stream.sendWindow = peerInitialWindowSize;
+		stream.recvWindow = initialWindowSize;
+		streams.put(id, stream);
+	}
+
+	/**
+	 * Sends headers of a message, followed by its body
+	 *
+	 * @param block a header block with pseudo-header fields already encoded
+	 */
+	final void writeMessage(Stream stream, HttpMessage message, ByteBuf block) {
+		ByteBuf body = message.body;
+		message.body = null;
+		ChannelSupplier<ByteBuf> bodyStream = message.bodyStream;
+		message.bodyStream = null;
+
+		if ((message.flags & HttpMessage.USE_GZIP) != 0 && (body != null || bodyStream != null)) {
+			message.headers.addIfAbsent(CONTENT_ENCODING, CONTENT_ENCODING_GZIP_HEADER);
+			if (body != null) {
+				body = GzipProcessorUtils.toGzip(body);
+			} else {
+				BufsConsumerGzipDeflater deflater = BufsConsumerGzipDeflater.create();
+				bodyStream.bindTo(deflater.getInput());
+				bodyStream = deflater.getOutput().getSupplier();
+			}
+		}
+		if (body != null) {
+			int length = body.readRemaining();
+			message.headers.addIfAbsent(CONTENT_LENGTH, () -> ofDecimal(length));
+			if (length == 0) body = nullify(body, ByteBuf::recycle);
+		} else if (bodyStream == null && message.isContentLengthExpected()) {
+			message.headers.addIfAbsent(CONTENT_LENGTH, ZERO_HEADER);
+		}
+
+		block = encodeHeaders(block, message);
+		boolean endStream = body == null && bodyStream == null;
+		writeHeaders(stream.id, block, endStream);
+		if (endStream) {
+			stream.endSent = true;
+			onOutputComplete(stream);
+			return;
+		}
+		stream.outBuf = body;
+		stream.outSupplier = bodyStream;
+		stream.outEnd = bodyStream == null;
+		pump(stream);
+	}
+
+	private void pump(Stream stream) {
+		while (!stream.closed && !stream.endSent) {
+			if (writeBuf != null && writeBuf.readRemaining() >= WRITE_BUFFER_HIGH_WATERMARK) {
+				block(stream);
+				return;
+			}
+			ByteBuf buf = stream.outBuf;
+			if (buf != null) {
+				int size = min(buf.readRemaining(), min(min(stream.sendWindow, connectionSendWindow), peerMaxFrameSize));
+				if (size <= 0) {
+					block(stream);
+					return;
+				}
+				boolean end = stream.outEnd && size == buf.readRemaining();
+				writeData(stream.id, buf, size, end);
+				stream.sendWindow -= size;
+				connectionSendWindow -= size;
+				if (!buf.canRead()) {
+					stream.outBuf = nullify(buf, ByteBuf::recycle);
+				}
+				if (end) {
+					stream.endSent = true;
+					onOutputComplete(stream);
+					return;
+				}
+				continue;
+			}
+			if (stream.outEnd) {
+				writeData(stream.id, null, 0, true);
+				stream.endSent = true;
+				onOutputComplete(stream);
+				return;
+			}
+			if (stream.pulling) return;
+
+			//noinspection ConstantConditions
+			Promise<ByteBuf> promise = stream.outSupplier.get();
+			if (promise.isResult()) {
+				acceptOutbound(stream, promise.getResult());
+				continue;
+			}
+			if (promise.isException()) {
+				resetStream(stream, INTERNAL_ERROR, translateToHttpException(promise.getException()));
+				return;
+			}
+			stream.pulling = true;
+			promise.subscribe((buf1, e) -> {
+				stream.pulling = false;
+				if (stream.closed || stream.endSent || connection.isClosed()) {
+					if (buf1 != null) buf1.recycle();
+					return;
+				}
+				if (e != null) {
+					resetStream(stream, INTERNAL_ERROR, translateToHttpException(e));
+					return;
+				}
+				acceptOutbound(stream, buf1);
+				pump(stream);
+			});
+			return;
+		}
+	}
+
+	private static void acceptOutbound(AbstractHttp2Session<?>.Stream stream, @Nullable ByteBuf buf) {
+		if (buf == null) {
+			stream.outEnd = true;
+			stream.outSupplier = null;
+		} else if (buf.canRead()) {
+			stream.outBuf = buf;
+		} else {
+			buf.recycle();
+		}
+	}
+
+	private void block(Stream stream) {
+		if (stream.blocked) return;
+		stream.blocked = true;
+		blockedStreams.add(stream);
+	}
+
+	private void resumeBlockedStreams() {
+		for (int i = blockedStreams.size(); i > 0; i--) {
+			if (writeBuf != null && writeBuf.readRemaining() >= WRITE_BUFFER_HIGH_WATERMARK) return;
+			Stream stream = blockedStreams.poll();
+			//noinspection ConstantConditions
+			stream.blocked = false;
+			pump(stream);
+		}
+	}
+	// endregion
+
+	// region closing
+	final void tryCloseStream(Stream stream) {
+		if (stream.closed || !stream.endSent || !stream.inputDone || connection.isClosed()) return;
+		stream.closed = true;
+		streams.remove(stream.id);
+		onStreamClosed(stream, null);
+	}
+
+	final void resetStream(Stream stream, int errorCode, Exception e) {
+		if (stream.closed) return;
+		writeRstStream(stream.id, errorCode);
+		closeStream(stream, e);
+	}
+
+	final void closeStream(Stream stream, Exception e) {
+		if (stream.closed) return;
+		stream.closed = true;
+		streams.remove(stream.id);
+		if (stream.blocked) {
+			blockedStreams.remove(stream);
+			stream.blocked = false;
+		}
+		if (stream.bodySupplier != null) {
+			stream.bodySupplier.closeEx(e);
+		}
+		discardInbound(stream);
+		stream.outBuf = nullify(stream.outBuf, ByteBuf::recycle);
+		stream.outSupplier = nullify(stream.outSupplier, supplier -> supplier.closeEx(e));
+		onStreamClosed(stream, e);
+	}
+
+	/**
+	 * Sends GOAWAY frame, so that no new streams are accepted, without closing a connection
+	 */
+	final void drain() {
+		if (goingAway) return;
+		goingAway = true;
+		writeGoAway(NO_ERROR);
+	}
+
+	/**
+	 * Sends GOAWAY frame and closes a connection once all the pending frames are written
+	 */
+	final void goAway(int errorCode, @Nullable Exception e) {
+		if (closing || connection.isClosed()) return;
+		closing = true;
+		closingException = e;
+		goingAway = true;
+		writeGoAway(errorCode);
+	}
+
+	final void connectionError(int errorCode, String message) {
+		goAway(errorCode, new MalformedHttpException("HTTP/2 connection error: " + message));
+	}
+	// endregion
+
+	// region writing
+	final void writeSettings(int... settings) {
+		ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + settings.length * 3);
+		writeFrameHeader(buf, settings.length * 3, SETTINGS, 0, 0);
+		for (int i = 0; i < settings.length; i += 2) {
+			buf.writeShort((short) settings[i]);
+			buf.writeInt(settings[i + 1]);
+		}
+	}
+
+	final void writeBytes(byte[] bytes) {
+		ensureWriteBuf(bytes.length).put(bytes);
+	}
+
+	final void writeRstStream(int streamId, int errorCode) {
+		ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + 4);
+		writeFrameHeader(buf, 4, RST_STREAM, 0, streamId);
+		buf.writeInt(errorCode);
+	}
+
+	private void writeWindowUpdate(int streamId, int increment) {
+		ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + 4);
+		writeFrameHeader(buf, 4, WINDOW_UPDATE, 0, streamId);
+		buf.writeInt(increment);
+	}
+
+	private void writeGoAway(int errorCode) {
+		ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + 8);
+		writeFrameHeader(buf, 8, GOAWAY, 0, 0);
+		buf.writeInt(lastPeerStreamId);
+		buf.writeInt(errorCode);
+	}
+
+	private void writeHeaders(int streamId, ByteBuf block, boolean endStream) {
+		int type = HEADERS;
+		int flags = endStream ? FLAG_END_STREAM : 0;
+		do {
+			int size = min(block.readRemaining(), peerMaxFrameSize);
+			boolean last = size == block.readRemaining();
+			ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + size);
+			writeFrameHeader(buf, size, type, last ? flags | FLAG_END_HEADERS : flags, streamId);
+			buf.put(block.array(), block.head(), size);
+			block.moveHead(size);
+			type = CONTINUATION;
+			flags = 0;
+		} while (block.canRead());
+		block.recycle();
+	}
+
+	private void writeData(int streamId, @Nullable ByteBuf data, int size, boolean endStream) {
+		ByteBuf buf = ensureWriteBuf(FRAME_HEADER_SIZE + size);
+		writeFrameHeader(buf, size, DATA, endStream ? FLAG_END_STREAM : 0, streamId);
+		if (size != 0) {
+			//noinspection ConstantConditions
+			buf.put(data.array(), data.head(), size);
+			data.moveHead(size);
+		}
+	}
+
+	private static void writeFrameHeader(ByteBuf buf, int length, int type, int flags, int streamId) {
+		buf.writeByte((byte) (length >>> 16));
+		buf.writeByte((byte) (length >>> 8));
+		buf.writeByte((byte) length);
+		buf.writeByte((byte) type);
+		buf.writeByte((byte) flags);
+		buf.writeInt(streamId);
+	}
+
+	private ByteBuf ensureWriteBuf(int size) {
+		writeBuf = writeBuf == null ?
+			ByteBufPool.allocate(max(size, DEFAULT_MAX_FRAME_SIZE)) :
+			ByteBufPool.ensureWriteRemaining(writeBuf, size);
+		if (!flushPosted && !writing) {
+			flushPosted = true;
+			reactor.post(this::flush);
+		}
+		return writeBuf;
+	}
+
+	private void flush() {
+		flushPosted = false;
+		if (writing || writeBuf == null || connection.isClosed()) return;
+		ByteBuf buf = writeBuf;
+		writeBuf = null;
+		writing = true;
+		socket.write(buf)
+			.subscribe(($, e) -> {
+				writing = false;
+				if (connection.isClosed()) return;
+				if (e != null) {
+					connection.closeEx(translateToHttpException(e));
+					return;
+				}
+				if (!closing) resumeBlockedStreams();
+				if (writeBuf != null) {
+					flush();
+				} else if (closing) {
+					if (closingException == null) {
+						connection.close();
+					} else {
+						connection.closeEx(closingException);
+					}
+				}
+			});
+	}
+	// endregion
+
+	// region headers
+	final ByteBuf encodeField(ByteBuf block, byte[] name, HttpHeaderValue value, boolean indexing, boolean sensitive) {
+		int size = value.estimateSize();
+		if (scratch.length < size) scratch = new byte[max(size, scratch.length * 2)];
+		int length = value.writeTo(scratch, 0);
+		return encoder.encode(block, name, scratch, 0, length, indexing, sensitive);
+	}
+
+	final ByteBuf encodeStatus(ByteBuf block, int code) {
+		scratch[0] = (byte) ('0' + code / 100);
+		scratch[1] = (byte) ('0' + code / 10 % 10);
+		scratch[2] = (byte) ('0' + code % 10);
+		return encoder.encode(block, PSEUDO_STATUS, scratch, 0, 3, true, false);
+	}
+
+	final ByteBuf encodePath(ByteBuf block, UrlParser url) {
+		int size = url.getPathAndQueryLength();
+		if (scratch.length < size) scratch = new byte[max(size, scratch.length * 2)];
+		ByteBuf buf = ByteBuf.wrapForWriting(scratch);
+		url.writePathAndQuery(buf);
+		return encoder.encode(block, PSEUDO_PATH, scratch, 0, buf.tail(), true, false);
+	}
+
+	private ByteBuf encodeHeaders(ByteBuf block, HttpMessage message) {
+		Object[] kvPairs = message.headers.kvPairs;
+		for (int i = 0; i < kvPairs.length - 1; i += 2) {
+			HttpHeader header = (HttpHeader) kvPairs[i];
+			if (header == null || isConnectionSpecific(header)) continue;
+			HttpHeaderValue value = message.headers.valueAt(i);
+			block = encodeField(block, lowerCaseName(header), value, isIndexable(header),
+				header == AUTHORIZATION || header == PROXY_AUTHORIZATION || header == COOKIE && value.estimateSize() < 20);
+		}
+		return block;
+	}
+
+	/**
+	 * Adds regular header fields to a received message
+	 *
+	 * @return whether a message body is gzipped
+	 */
+	static boolean addHeaders(HttpMessage message, List<byte[]> fields, int from) throws MalformedHttpException {
+		boolean gzipped = false;
+		for (int i = from; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			byte[] value = fields.get(i + 1);
+			if (name.length == 0 || name[0] == ':') {
+				throw new MalformedHttpException("Unexpected pseudo-header field");
+			}
+			if (message.headers.size() >= MAX_HEADERS) {
+				throw new MalformedHttpException("Too many headers");
+			}
+			HttpHeader header = HttpHeaders.of(hashCodeCI(name, 0, name.length), name, 0, name.length);
+			if (header == CONTENT_ENCODING && equalsLowerCaseAscii(CONTENT_ENCODING_GZIP, value, 0, value.length)) {
+				gzipped = true;
+			}
+			message.headers.add(header, HttpHeaderValue.ofBytes(value));
+		}
+		return gzipped;
+	}
+
+	private static byte[] lowerCaseName(HttpHeader header) {
+		if (header.lowerCase != null) return header.lowerCase;
+		byte[] name = new byte[header.length];
+		for (int i = 0; i < name.length; i++) {
+			byte b = header.bytes[header.offset + i];
+			name[i] = (b >= 'A' && b <= 'Z') ? (byte) (b + 'a' - 'A') : b;
+		}
+		return name;
+	}
+
+	private static boolean isConnectionSpecific(HttpHeader header) {
+		return header == CONNECTION || header == KEEP_ALIVE || header == TRANSFER_ENCODING ||
+			header == UPGRADE || header == HOST || header == TE;
+	}
+
+	private static boolean isIndexable(HttpHeader header) {
+		return header != CONTENT_LENGTH && header != DATE && header != ETAG && header != LOCATION &&
+			header != SET_COOKIE && header != LAST_MODIFIED && header != CONTENT_RANGE &&
+			header != IF_MODIFIED_SINCE && header != IF_NONE_MATCH && header != IF_MATCH &&
+			header != IF_UNMODIFIED_SINCE && header != IF_RANGE;
+	}
+	// endregion
+
+	private static int readInt(byte[] array, int pos) {
+		return (array[pos] & 0xFF) << 24 | (array[pos + 1] & 0xFF) << 16 | (array[pos + 2] & 0xFF) << 8 | (array[pos + 3] & 0xFF);
+	}
+}
@@ -594,8 +594,7 @@ public abstract class AbstractHttpConnection extends AbstractReactive {
 	}
 
 	protected void switchPool(ConnectionsLinkedList newPool) {
-		//noinspection ConstantConditions
-		pool.removeNode(this);
+		if (pool != null) pool.removeNode(this);
 		(pool = newPool).addLastNode(this);
 		poolTimestamp = reactor.currentTimeMillis();
 	}
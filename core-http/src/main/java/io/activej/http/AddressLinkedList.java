@@ -25,6 +25,7 @@ public final class AddressLinkedList {
 
 	private HttpClientConnection first;
 	private HttpClientConnection last;
+	private int size;
 
 	public boolean isEmpty() {
 		return first == null;
@@ -42,6 +43,15 @@ public final class AddressLinkedList {
 			first = node.addressNext;
 		}
 		node.addressNext = node.addressPrev = null;
+		size--;
+		return node;
+	}
+
+	public HttpClientConnection removeFirstNode() {
+		if (first == null)
+			return null;
+		HttpClientConnection node = first;
+		removeNode(node);
 		return node;
 	}
 
@@ -56,6 +66,7 @@ public final class AddressLinkedList {
 			first = node;
 		}
 		last = node;
+		size++;
 	}
 
 	public void removeNode(HttpClientConnection node) {
@@ -72,13 +83,10 @@ public final class AddressLinkedList {
 			last = node.addressPrev;
 		}
 		node.addressNext = node.addressPrev = null;
+		size--;
 	}
 
 	public int size() {
-		int count = 0;
-		for (HttpClientConnection connection = first; connection != null; connection = connection.addressNext) {
-			count++;
-		}
-		return count;
+		return size;
 	}
 }
@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.common.ApplicationSettings;
+import io.activej.common.Checks;
+import io.activej.common.MemSize;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.AbstractReactive;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.jmx.ReactiveJmxBean;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.http.HttpHeaderValue.ofDecimal;
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.http.HttpMethod.GET;
+import static io.activej.http.HttpMethod.HEAD;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * A servlet which caches full responses of a given servlet to {@code GET} and {@code HEAD} requests.
+ * <p>
+ * A freshness lifetime of a response is taken from {@code s-maxage} or {@code max-age} directives
+ * of its {@code Cache-Control} header, or a default TTL is used. Responses with {@code no-store},
+ * {@code no-cache} or {@code private} directives, responses which set cookies and responses with
+ * {@code Vary: *} are not cached. Cached variants are selected by values of request headers
+ * listed in a {@code Vary} header of a response.
+ * <p>
+ * Cached responses get an {@code ETag} and a {@code Last-Modified} header if they have none,
+ * and conditional requests are answered with {@code 304 Not Modified}.
+ * If a response {@link HttpMessage.Builder#withBodyGzipCompression() requests gzip compression},
+ * its body is compressed only once, and the compressed variant is served to clients which accept it.
+ * <p>
+ * The cache is bounded by a total size of cached bodies and uses W-TinyLFU eviction policy.
+ * Concurrent misses of the same key are coalesced into a single request to the underlying servlet.
+ */
+public final class CachingServlet extends AbstractReactive
+	implements AsyncServlet, ReactiveJmxBean {
+	private static final boolean CHECKS = Checks.isEnabled(CachingServlet.class);
+
+	public static final MemSize DEFAULT_MAX_SIZE = ApplicationSettings.getMemSize(CachingServlet.class, "maxSize", MemSize.megabytes(64));
+	public static final MemSize DEFAULT_MAX_ENTRY_SIZE = ApplicationSettings.getMemSize(CachingServlet.class, "maxEntrySize", MemSize.megabytes(1));
+
+	private static final int ENTRY_OVERHEAD = 256;
+	private static final int EXPECTED_ENTRY_SIZE = 4096;
+
+	private static final Set<Integer> CACHEABLE_CODES = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+	private static final Set<HttpHeader> SKIPPED_HEADERS = Set.of(CONNECTION, CONTENT_LENGTH, TRANSFER_ENCODING, AGE, ETAG, LAST_MODIFIED);
+	private static final Set<HttpHeader> NOT_MODIFIED_HEADERS = Set.of(CACHE_CONTROL, CONTENT_LOCATION, EXPIRES, VARY);
+
+	private static final HttpHeaderValue CONTENT_ENCODING_GZIP = HttpHeaderValue.of("gzip");
+
+	private final AsyncServlet next;
+
+	private Function<HttpRequest, String> keyFunction = HttpRequest::getPathAndQuery;
+	private MemSize maxSize = DEFAULT_MAX_SIZE;
+	private MemSize maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+	private Duration defaultTtl = Duration.ZERO;
+
+	private WTinyLfuCache<String, CachedResponse[]> cache;
+	private final Map<String, Promise<Void>> pendingLoads = new HashMap<>();
+
+	// region stats
+	private long hits;
+	private long misses;
+	private long coalescedMisses;
+	private long notModified;
+	private long uncacheable;
+	// endregion
+
+	private CachingServlet(Reactor reactor, AsyncServlet next) {
+		super(reactor);
+		this.next = next;
+	}
+
+	public static CachingServlet create(Reactor reactor, AsyncServlet next) {
+		return builder(reactor, next).build();
+	}
+
+	public static Builder builder(Reactor reactor, AsyncServlet next) {
+		return new CachingServlet(reactor, next).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, CachingServlet> {
+		private Builder() {}
+
+		/**
+		 * Sets a function which maps a request to a cache key, a path and a query of a request by default
+		 */
+		public Builder withKeyFunction(Function<HttpRequest, String> keyFunction) {
+			checkNotBuilt(this);
+			CachingServlet.this.keyFunction = keyFunction;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum total size of cached responses
+		 */
+		public Builder withMaxSize(MemSize maxSize) {
+			checkNotBuilt(this);
+			checkArgument(maxSize.toLong() > 0, "Max size should be positive");
+			CachingServlet.this.maxSize = maxSize;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum size of a body of a cached response, bigger responses are not cached
+		 */
+		public Builder withMaxEntrySize(MemSize maxEntrySize) {
+			checkNotBuilt(this);
+			checkArgument(maxEntrySize.toLong() > 0, "Max entry size should be positive");
+			CachingServlet.this.maxEntrySize = maxEntrySize;
+			return this;
+		}
+
+		/**
+		 * Sets a freshness lifetime of responses which do not specify it in a {@code Cache-Control} header.
+		 * By default, such responses are not cached.
+		 */
+		public Builder withDefaultTtl(Duration defaultTtl) {
+			checkNotBuilt(this);
+			checkArgument(!defaultTtl.isNegative(), "Default TTL should not be negative");
+			CachingServlet.this.defaultTtl = defaultTtl;
+			return this;
+		}
+
+		@Override
+		protected CachingServlet doBuild() {
+			long maxSize = CachingServlet.this.maxSize.toLong();
+			cache = new WTinyLfuCache<>(maxSize, (int) Math.min(1 << 20, maxSize / EXPECTED_ENTRY_SIZE));
+			return CachingServlet.this;
+		}
+	}
+
+	public static Function<AsyncServlet, AsyncServlet> decorator(Reactor reactor) {
+		return next -> create(reactor, next);
+	}
+
+	public static Function<AsyncServlet, AsyncServlet> decorator(Reactor reactor, Duration defaultTtl) {
+		return next -> builder(reactor, next)
+			.withDefaultTtl(defaultTtl)
+			.build();
+	}
+
+	@Override
+	public Promise<HttpResponse> serve(HttpRequest request) throws Exception {
+		if (CHECKS) checkInReactorThread(this);
+		HttpMethod method = request.getMethod();
+		if (method != GET && method != HEAD) {
+			return next.serve(request);
+		}
+		HttpHeaderValue cacheControl = request.getHeaderValue(CACHE_CONTROL);
+		if (cacheControl != null && cacheControl.containsTokenIgnoreCase("no-store")) {
+			return next.serve(request);
+		}
+
+		String key = keyFunction.apply(request);
+		if (cacheControl == null || !cacheControl.containsTokenIgnoreCase("no-cache")) {
+			CachedResponse cached = lookup(key, request);
+			if (cached != null) {
+				hits++;
+				return Promise.of(toResponse(request, cached));
+			}
+		}
+		misses++;
+		if (method == HEAD) {
+			return next.serve(request);
+		}
+
+		Promise<Void> pendingLoad = pendingLoads.get(key);
+		if (pendingLoad != null) {
+			coalescedMisses++;
+			return pendingLoad.then($ -> {
+				CachedResponse cached = lookup(key, request);
+				return cached != null ?
+					Promise.of(toResponse(request, cached)) :
+					next.serve(request);
+			});
+		}
+
+		SettablePromise<Void> load = new SettablePromise<>();
+		pendingLoads.put(key, load);
+		return Promise.complete()
+			.then(() -> next.serve(request))
+			.map(response -> store(key, request, response))
+			.whenComplete(() -> {
+				pendingLoads.remove(key);
+				load.set(null);
+			});
+	}
+
+	private @Nullable CachedResponse lookup(String key, HttpRequest request) {
+		CachedResponse[] variants = cache.get(key);
+		if (variants == null) return null;
+		long now = reactor.currentTimeMillis();
+		for (CachedResponse variant : variants) {
+			if (variant.matches(request)) {
+				if (variant.expiresAt > now) return variant;
+				removeVariant(key, variants, variant);
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private HttpResponse store(String key, HttpRequest request, HttpResponse response) {
+		long ttl = getTtlMillis(response);
+		if (ttl <= 0 || !response.hasBody() || response.getBody().readRemaining() > maxEntrySize.toLong()) {
+			uncacheable++;
+			return response;
+		}
+		HttpHeader[] varyHeaders = getVaryHeaders(response);
+		if (varyHeaders == null) {
+			uncacheable++;
+			return response;
+		}
+
+		long now = reactor.currentTimeMillis();
+		CachedResponse cached = new CachedResponse(request, response, varyHeaders, now, now + ttl);
+
+		// peek, so that a request is not counted twice by the frequency sketch
+		CachedResponse[] variants = cache.peek(key);
+		List<CachedResponse> newVariants = new ArrayList<>();
+		newVariants.add(cached);
+		if (variants != null) {
+			for (CachedResponse variant : variants) {
+				if (!Arrays.equals(variant.varyValues, cached.varyValues) && variant.expiresAt > now) {
+					newVariants.add(variant);
+				}
+			}
+		}
+		putVariants(key, newVariants.toArray(new CachedResponse[0]));
+		return toResponse(request, cached);
+	}
+
+	private void removeVariant(String key, CachedResponse[] variants, CachedResponse removed) {
+		if (variants.length == 1) {
+			cache.remove(key);
+			return;
+		}
+		putVariants(key, Arrays.stream(variants)
+			.filter(variant -> variant != removed)
+			.toArray(CachedResponse[]::new));
+	}
+
+	private void putVariants(String key, CachedResponse[] variants) {
+		long weight = 0;
+		for (CachedResponse variant : variants) {
+			weight += variant.weight();
+		}
+		cache.put(key, variants, weight);
+	}
+
+	private HttpResponse toResponse(HttpRequest request, CachedResponse cached) {
+		boolean gzip = cached.gzippedBody != null && acceptsGzip(request);
+		String etag = gzip ? cached.gzippedEtag : cached.etag;
+
+		HttpResponse.Builder builder;
+		if (isNotModified(request, etag, cached.lastModified)) {
+			notModified++;
+			builder = HttpResponse.ofCode(304);
+			for (int i = 0; i < cached.headers.length; i++) {
+				if (NOT_MODIFIED_HEADERS.contains(cached.headers[i])) {
+					builder.withHeader(cached.headers[i], cached.values[i]);
+				}
+			}
+		} else {
+			builder = HttpResponse.ofCode(cached.code);
+			for (int i = 0; i < cached.headers.length; i++) {
+				builder.withHeader(cached.headers[i], cached.values[i]);
+			}
+			byte[] body = gzip ? cached.gzippedBody : cached.body;
+			if (gzip) {
+				builder.withHeader(CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+			}
+			if (request.getMethod() == HEAD) {
+				builder.withHeader(CONTENT_LENGTH, ofDecimal(body.length));
+			} else {
+				builder.withBody(ByteBuf.wrapForReading(body));
+			}
+		}
+		return builder
+			.withHeader(ETAG, HttpHeaderValue.of(etag))
+			.withHeader(LAST_MODIFIED, HttpHeaderValue.ofTimestamp(cached.lastModified * 1000))
+			.withHeader(AGE, ofDecimal((int) ((reactor.currentTimeMillis() - cached.storedAt) / 1000)))
+			.build();
+	}
+
+	private long getTtlMillis(HttpResponse response) {
+		if (!CACHEABLE_CODES.contains(response.getCode()) || response.hasHeader(SET_COOKIE)) {
+			return 0;
+		}
+		String cacheControl = response.getHeader(CACHE_CONTROL);
+		if (cacheControl == null) {
+			return defaultTtl.toMillis();
+		}
+		long maxAge = -1;
+		long sharedMaxAge = -1;
+		try {
+			for (String directive : cacheControl.split(",")) {
+				directive = directive.trim().toLowerCase();
+				if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+					return 0;
+				}
+				if (directive.startsWith("s-maxage=")) {
+					sharedMaxAge = Long.parseLong(directive.substring(9));
+				} else if (directive.startsWith("max-age=")) {
+					maxAge = Long.parseLong(directive.substring(8));
+				}
+			}
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+		return sharedMaxAge != -1 ? sharedMaxAge * 1000 : maxAge != -1 ? maxAge * 1000 : defaultTtl.toMillis();
+	}
+
+	private static HttpHeader @Nullable [] getVaryHeaders(HttpResponse response) {
+		List<HttpHeader> varyHeaders = new ArrayList<>();
+		boolean gzip = (response.flags & HttpMessage.USE_GZIP) != 0;
+		for (Map.Entry<HttpHeader, HttpHeaderValue> entry : response.getHeaders()) {
+			if (entry.getKey() != VARY) continue;
+			for (String name : entry.getValue().toString().split(",")) {
+				name = name.trim();
+				if (name.equals("*")) return null;
+				HttpHeader header = HttpHeaders.of(name);
+				// both identity and gzipped bodies are cached, a variant is chosen when a response is served
+				if (name.isEmpty() || gzip && header.equals(ACCEPT_ENCODING)) continue;
+				varyHeaders.add(header);
+			}
+		}
+		return varyHeaders.toArray(new HttpHeader[0]);
+	}
+
+	private static boolean acceptsGzip(HttpRequest request) {
+		HttpHeaderValue acceptEncoding = request.getHeaderValue(ACCEPT_ENCODING);
+		return acceptEncoding != null && acceptEncoding.containsTokenIgnoreCase("gzip");
+	}
+
+	private static boolean isNotModified(HttpRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return HttpUtils.isEtagMatched(ifNoneMatch, etag);
+		}
+		Instant ifModifiedSince = request.getHeader(IF_MODIFIED_SINCE, HttpHeaderValue::toInstant);
+		return ifModifiedSince != null && lastModified <= ifModifiedSince.getEpochSecond();
+	}
+
+	private static final class CachedResponse {
+		final int code;
+		final HttpHeader[] headers;
+		final HttpHeaderValue[] values;
+		final HttpHeader[] varyHeaders;
+		final @Nullable String[] varyValues;
+		final byte[] body;
+		final byte @Nullable [] gzippedBody;
+		final String etag;
+		final @Nullable String gzippedEtag;
+		final long lastModified;
+		final long storedAt;
+		final long expiresAt;
+
+		CachedResponse(HttpRequest request, HttpResponse response, HttpHeader[] varyHeaders, long storedAt, long expiresAt) {
+			this.code = response.getCode();
+			this.varyHeaders = varyHeaders;
+			this.varyValues = new String[varyHeaders.length];
+			for (int i = 0; i < varyHeaders.length; i++) {
+				varyValues[i] = request.getHeader(varyHeaders[i]);
+			}
+			this.storedAt = storedAt;
+			this.expiresAt = expiresAt;
+
+			boolean gzip = (response.flags & HttpMessage.USE_GZIP) != 0 && !response.hasHeader(CONTENT_ENCODING);
+			List<HttpHeader> headers = new ArrayList<>();
+			List<HttpHeaderValue> values = new ArrayList<>();
+			StringJoiner vary = new StringJoiner(", ");
+			boolean varyAcceptEncoding = false;
+			for (Map.Entry<HttpHeader, HttpHeaderValue> entry : response.getHeaders()) {
+				if (SKIPPED_HEADERS.contains(entry.getKey())) continue;
+				if (gzip && entry.getKey() == VARY) {
+					vary.add(entry.getValue().toString());
+					varyAcceptEncoding |= entry.getValue().containsTokenIgnoreCase("Accept-Encoding");
+					continue;
+				}
+				headers.add(entry.getKey());
+				values.add(HttpHeaderValue.ofBytes(entry.getValue().getBuf().getArray()));
+			}
+			if (gzip) {
+				// a single Vary header, as a choice between identity and gzipped bodies also depends on Accept-Encoding
+				if (!varyAcceptEncoding) vary.add("Accept-Encoding");
+				headers.add(VARY);
+				values.add(HttpHeaderValue.of(vary.toString()));
+			}
+			this.headers = headers.toArray(new HttpHeader[0]);
+			this.values = values.toArray(new HttpHeaderValue[0]);
+
+			this.body = response.takeBody().asArray();
+			String etag = response.getHeader(ETAG);
+			this.etag = etag != null ? etag : HttpUtils.generateEtag(body, 0, body.length);
+			if (gzip) {
+				this.gzippedBody = GzipProcessorUtils.toGzip(ByteBuf.wrapForReading(body)).asArray();
+				this.gzippedEtag = HttpUtils.getEncodedEtag(this.etag, "gzip");
+			} else {
+				this.gzippedBody = null;
+				this.gzippedEtag = null;
+			}
+			Instant lastModified = response.getHeader(LAST_MODIFIED, HttpHeaderValue::toInstant);
+			this.lastModified = lastModified != null ? lastModified.getEpochSecond() : storedAt / 1000;
+		}
+
+		boolean matches(HttpRequest request) {
+			for (int i = 0; i < varyHeaders.length; i++) {
+				if (!Objects.equals(varyValues[i], request.getHeader(varyHeaders[i]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		long weight() {
+			return ENTRY_OVERHEAD + body.length + (gzippedBody != null ? gzippedBody.length : 0);
+		}
+	}
+
+	// region JMX
+	@JmxAttribute
+	public long getHits() {
+		return hits;
+	}
+
+	@JmxAttribute
+	public long getMisses() {
+		return misses;
+	}
+
+	@JmxAttribute
+	public long getCoalescedMisses() {
+		return coalescedMisses;
+	}
+
+	@JmxAttribute
+	public long getNotModified() {
+		return notModified;
+	}
+
+	@JmxAttribute
+	public long getUncacheable() {
+		return uncacheable;
+	}
+
+	@JmxAttribute
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+	@JmxAttribute
+	public int getCachedKeys() {
+		return cache.size();
+	}
+
+	@JmxAttribute
+	public MemSize getCachedSize() {
+		return MemSize.of(cache.weight());
+	}
+	// endregion
+}
@@ -29,6 +29,7 @@ public final class ContentTypes {
 	public static final ContentType JSON_UTF_8 = register(JSON, UTF_8);
 	public static final ContentType HTML_UTF_8 = register(HTML, UTF_8);
 	public static final ContentType CSS_UTF_8 = register(CSS, UTF_8);
+	public static final ContentType EVENT_STREAM_UTF_8 = register(EVENT_STREAM, UTF_8);
 	public static final ContentType PLAIN_TEXT_ASCII = register(PLAIN_TEXT, US_ASCII);
 
 	static ContentType lookup(MediaType mime, HttpCharset charset) {
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+
+import java.util.Arrays;
+
+/**
+ * A decoder of HPACK header blocks, as defined in RFC 7541.
+ * <p>
+ * An instance keeps a dynamic table, so it should be used for all header blocks of a single connection.
+ */
+final class HpackDecoder {
+	private final HpackTable table;
+	private final int maxTableSize;
+	private final int maxHeaderListSize;
+
+	@FunctionalInterface
+	interface HeaderConsumer {
+		void accept(byte[] name, byte[] value) throws MalformedHttpException;
+	}
+
+	HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+		this.table = new HpackTable(maxTableSize);
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+	}
+
+	void decode(ByteBuf block, HeaderConsumer consumer) throws MalformedHttpException {
+		byte[] array = block.array();
+		int pos = block.head();
+		int limit = block.tail();
+		int headerListSize = 0;
+		boolean headerSeen = false;
+		while (pos < limit) {
+			int b = array[pos] & 0xFF;
+			byte[] name;
+			byte[] value;
+			if ((b & 0x80) != 0) {
+				// indexed header field
+				int index = decodeInt(array, pos, limit, 7);
+				pos = nextPos;
+				name = table.getName(index);
+				value = table.getValue(index);
+			} else if ((b & 0xE0) == 0x20) {
+				// dynamic table size update
+				if (headerSeen) throw new MalformedHttpException("Dynamic table size update after a header field");
+				int size = decodeInt(array, pos, limit, 5);
+				pos = nextPos;
+				if (size > maxTableSize) throw new MalformedHttpException("Dynamic table size update exceeds the limit");
+				table.setMaxSize(size);
+				continue;
+			} else {
+				boolean indexing = (b & 0xC0) == 0x40;
+				int index = decodeInt(array, pos, limit, indexing ? 6 : 4);
+				pos = nextPos;
+				if (index != 0) {
+					name = table.getName(index);
+				} else {
+					name = decodeString(array, pos, limit);
+					pos = nextPos;
+				}
+				value = decodeString(array, pos, limit);
+				pos = nextPos;
+				if (indexing) {
+					table.add(name, value);
+				}
+			}
+			headerSeen = true;
+			headerListSize += name.length + value.length + HpackTable.ENTRY_OVERHEAD;
+			if (maxHeaderListSize != 0 && headerListSize > maxHeaderListSize) {
+				throw new MalformedHttpException("Header list size exceeds the limit");
+			}
+			consumer.accept(name, value);
+		}
+	}
+
+	// a position after the last decoded integer or string
+	private int nextPos;
+
+	private int decodeInt(byte[] array, int pos, int limit, int prefixBits) throws MalformedHttpException {
+		int mask = (1 << prefixBits) - 1;
+		int value = array[pos++] & mask;
+		if (value == mask) {
+			int shift = 0;
+			int b;
+			do {
+				if (pos == limit) throw new MalformedHttpException("Truncated HPACK integer");
+				if (shift > 21) throw new MalformedHttpException("HPACK integer overflow");
+				b = array[pos++];
+				value += (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			if (value < 0) throw new MalformedHttpException("HPACK integer overflow");
+		}
+		nextPos = pos;
+		return value;
+	}
+
+	private byte[] decodeString(byte[] array, int pos, int limit) throws MalformedHttpException {
+		if (pos == limit) throw new MalformedHttpException("Truncated HPACK string");
+		boolean huffman = (array[pos] & 0x80) != 0;
+		int length = decodeInt(array, pos, limit, 7);
+		pos = nextPos;
+		if (length > limit - pos) throw new MalformedHttpException("Truncated HPACK string");
+		nextPos = pos + length;
+		return huffman ?
+			HpackHuffman.decode(array, pos, length) :
+			Arrays.copyOfRange(array, pos, pos + length);
+	}
+}
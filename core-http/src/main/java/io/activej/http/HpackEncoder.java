@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+
+import java.util.Arrays;
+
+import static java.lang.Math.min;
+
+/**
+ * An encoder of HPACK header blocks, as defined in RFC 7541.
+ * <p>
+ * Header fields are added to a dynamic table unless they are likely to change from message
+ * to message, sensitive header fields are never indexed. String literals are Huffman encoded
+ * whenever it makes them shorter.
+ */
+final class HpackEncoder {
+	static final int MAX_TABLE_SIZE = 4096;
+	static final int MAX_INDEXED_ENTRY_SIZE = 1024;
+
+	private final HpackTable table = new HpackTable(MAX_TABLE_SIZE);
+	private int pendingTableSizeUpdate = -1;
+
+	void setMaxTableSize(int maxTableSize) {
+		maxTableSize = min(maxTableSize, MAX_TABLE_SIZE);
+		if (maxTableSize == table.getMaxSize()) return;
+		table.setMaxSize(maxTableSize);
+		pendingTableSizeUpdate = maxTableSize;
+	}
+
+	ByteBuf beginBlock(ByteBuf buf) {
+		if (pendingTableSizeUpdate != -1) {
+			buf = ByteBufPool.ensureWriteRemaining(buf, 8);
+			writeInt(buf, 0x20, 5, pendingTableSizeUpdate);
+			pendingTableSizeUpdate = -1;
+		}
+		return buf;
+	}
+
+	ByteBuf encodeIndexed(ByteBuf buf, int index) {
+		buf = ByteBufPool.ensureWriteRemaining(buf, 8);
+		writeInt(buf, 0x80, 7, index);
+		return buf;
+	}
+
+	/**
+	 * Encodes a header field with a lowercase name
+	 *
+	 * @param indexing  whether a field should be added to a dynamic table
+	 * @param sensitive whether a field should never be indexed by intermediaries
+	 */
+	ByteBuf encode(ByteBuf buf, byte[] name, byte[] value, int off, int len, boolean indexing, boolean sensitive) {
+		int index = table.find(name, value, off, len);
+		if (index > 0 && !sensitive) {
+			return encodeIndexed(buf, index);
+		}
+		buf = ByteBufPool.ensureWriteRemaining(buf, 16 + name.length + len);
+		indexing &= !sensitive && HpackTable.ENTRY_OVERHEAD + name.length + len <= min(MAX_INDEXED_ENTRY_SIZE, table.getMaxSize());
+		int nameIndex = -index;
+		if (indexing) {
+			writeInt(buf, 0x40, 6, nameIndex);
+		} else {
+			writeInt(buf, sensitive ? 0x10 : 0x00, 4, nameIndex);
+		}
+		if (nameIndex == 0) {
+			writeString(buf, name, 0, name.length);
+		}
+		writeString(buf, value, off, len);
+		if (indexing) {
+			table.add(name, Arrays.copyOfRange(value, off, off + len));
+		}
+		return buf;
+	}
+
+	private static void writeString(ByteBuf buf, byte[] array, int off, int len) {
+		int huffmanLength = HpackHuffman.encodedLength(array, off, len);
+		if (huffmanLength < len) {
+			writeInt(buf, 0x80, 7, huffmanLength);
+			HpackHuffman.encode(array, off, len, buf);
+		} else {
+			writeInt(buf, 0x00, 7, len);
+			buf.put(array, off, len);
+		}
+	}
+
+	private static void writeInt(ByteBuf buf, int mask, int prefixBits, int value) {
+		int max = (1 << prefixBits) - 1;
+		if (value < max) {
+			buf.writeByte((byte) (mask | value));
+			return;
+		}
+		buf.writeByte((byte) (mask | max));
+		value -= max;
+		while (value >= 0x80) {
+			buf.writeByte((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.writeByte((byte) value);
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import java.util.Arrays;
+
+import static io.activej.bytebuf.ByteBufStrings.encodeAscii;
+
+/**
+ * An HPACK header table, which consists of a static table and a dynamic table, as defined in RFC 7541.
+ * Indices start from 1, the static table is followed by the dynamic table, the newest entry goes first.
+ */
+final class HpackTable {
+	static final int ENTRY_OVERHEAD = 32;
+
+	static final byte[][] STATIC_NAMES;
+	static final byte[][] STATIC_VALUES;
+	static final int STATIC_TABLE_SIZE;
+
+	static {
+		String[] table = {
+			":authority", "",
+			":method", "GET",
+			":method", "POST",
+			":path", "/",
+			":path", "/index.html",
+			":scheme", "http",
+			":scheme", "https",
+			":status", "200",
+			":status", "204",
+			":status", "206",
+			":status", "304",
+			":status", "400",
+			":status", "404",
+			":status", "500",
+			"accept-charset", "",
+			"accept-encoding", "gzip, deflate",
+			"accept-language", "",
+			"accept-ranges", "",
+			"accept", "",
+			"access-control-allow-origin", "",
+			"age", "",
+			"allow", "",
+			"authorization", "",
+			"cache-control", "",
+			"content-disposition", "",
+			"content-encoding", "",
+			"content-language", "",
+			"content-length", "",
+			"content-location", "",
+			"content-range", "",
+			"content-type", "",
+			"cookie", "",
+			"date", "",
+			"etag", "",
+			"expect", "",
+			"expires", "",
+			"from", "",
+			"host", "",
+			"if-match", "",
+			"if-modified-since", "",
+			"if-none-match", "",
+			"if-range", "",
+			"if-unmodified-since", "",
+			"last-modified", "",
+			"link", "",
+			"location", "",
+			"max-forwards", "",
+			"proxy-authenticate", "",
+			"proxy-authorization", "",
+			"range", "",
+			"referer", "",
+			"refresh", "",
+			"retry-after", "",
+			"server", "",
+			"set-cookie", "",
+			"strict-transport-security", "",
+			"transfer-encoding", "",
+			"user-agent", "",
+			"vary", "",
+			"via", "",
+			"www-authenticate", "",
+		};
+		STATIC_TABLE_SIZE = table.length / 2;
+		STATIC_NAMES = new byte[STATIC_TABLE_SIZE + 1][];
+		STATIC_VALUES = new byte[STATIC_TABLE_SIZE + 1][];
+		for (int i = 0; i < STATIC_TABLE_SIZE; i++) {
+			STATIC_NAMES[i + 1] = encodeAscii(table[2 * i]);
+			STATIC_VALUES[i + 1] = encodeAscii(table[2 * i + 1]);
+		}
+	}
+
+	// a ring buffer of dynamic entries, the newest entry is at head
+	private byte[][] names = new byte[16][];
+	private byte[][] values = new byte[16][];
+	private int head;
+	private int count;
+
+	private int size;
+	private int maxSize;
+
+	HpackTable(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	int length() {
+		return STATIC_TABLE_SIZE + count;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	byte[] getName(int index) throws MalformedHttpException {
+		if (index <= 0 || index > STATIC_TABLE_SIZE + count) {
+			throw new MalformedHttpException("Invalid HPACK table index: " + index);
+		}
+		if (index <= STATIC_TABLE_SIZE) return STATIC_NAMES[index];
+		return names[slot(index)];
+	}
+
+	byte[] getValue(int index) throws MalformedHttpException {
+		if (index <= 0 || index > STATIC_TABLE_SIZE + count) {
+			throw new MalformedHttpException("Invalid HPACK table index: " + index);
+		}
+		if (index <= STATIC_TABLE_SIZE) return STATIC_VALUES[index];
+		return values[slot(index)];
+	}
+
+	private int slot(int index) {
+		return (head + index - STATIC_TABLE_SIZE - 1) & (names.length - 1);
+	}
+
+	void add(byte[] name, byte[] value) {
+		int entrySize = ENTRY_OVERHEAD + name.length + value.length;
+		if (entrySize > maxSize) {
+			clear();
+			return;
+		}
+		evict(maxSize - entrySize);
+		if (count == names.length) {
+			grow();
+		}
+		head = (head - 1) & (names.length - 1);
+		names[head] = name;
+		values[head] = value;
+		count++;
+		size += entrySize;
+	}
+
+	void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict(maxSize);
+	}
+
+	/**
+	 * Returns an index of an entry with a given name and value, or a negative index
+	 * of an entry with a given name only, or 0 if there are no such entries
+	 */
+	int find(byte[] name, byte[] value, int off, int len) {
+		int nameIndex = 0;
+		for (int i = 1; i <= STATIC_TABLE_SIZE; i++) {
+			if (Arrays.equals(STATIC_NAMES[i], name)) {
+				if (Arrays.equals(STATIC_VALUES[i], 0, STATIC_VALUES[i].length, value, off, off + len)) return i;
+				if (nameIndex == 0) nameIndex = -i;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			int slot = (head + i) & (names.length - 1);
+			if (Arrays.equals(names[slot], name)) {
+				if (Arrays.equals(values[slot], 0, values[slot].length, value, off, off + len)) return STATIC_TABLE_SIZE + 1 + i;
+				if (nameIndex == 0) nameIndex = -(STATIC_TABLE_SIZE + 1 + i);
+			}
+		}
+		return nameIndex;
+	}
+
+	private void evict(int targetSize) {
+		while (size > targetSize && count > 0) {
+			int tail = (head + count - 1) & (names.length - 1);
+			size -= ENTRY_OVERHEAD + names[tail].length + values[tail].length;
+			names[tail] = null;
+			values[tail] = null;
+			count--;
+		}
+	}
+
+	private void clear() {
+		Arrays.fill(names, null);
+		Arrays.fill(values, null);
+		head = 0;
+		count = 0;
+		size = 0;
+	}
+
+	private void grow() {
+		byte[][] newNames = new byte[names.length * 2][];
+		byte[][] newValues = new byte[values.length * 2][];
+		for (int i = 0; i < count; i++) {
+			int slot = (head + i) & (names.length - 1);
+			newNames[i] = names[slot];
+			newValues[i] = values[slot];
+		}
+		names = newNames;
+		values = newValues;
+		head = 0;
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.http.HttpClient.Inspector;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.activej.common.Utils.nullify;
+import static io.activej.http.Http2Constants.*;
+import static io.activej.http.HttpHeaders.HOST;
+import static io.activej.http.HttpMessage.MUST_LOAD_BODY;
+
+/**
+ * A client side of HTTP/2 session, each request is sent over a separate stream
+ * of a single connection
+ */
+final class Http2ClientSession extends AbstractHttp2Session<HttpClientConnection> {
+	private final HttpClient client;
+	private final @Nullable Inspector inspector;
+
+	private final ArrayDeque<Stream> pendingStreams = new ArrayDeque<>();
+	private int nextStreamId = 1;
+	private boolean draining;
+
+	Http2ClientSession(HttpClientConnection connection, HttpClient client) {
+		super(connection, client.http2InitialWindowSize);
+		this.client = client;
+		this.inspector = client.inspector;
+	}
+
+	void start() {
+		(connection.pool = client.poolKeepAlive).addLastNode(connection);
+		connection.poolTimestamp = reactor.currentTimeMillis();
+		writeBytes(CONNECTION_PREFACE);
+		writeSettings(
+			SETTINGS_ENABLE_PUSH, 0,
+			SETTINGS_INITIAL_WINDOW_SIZE, initialWindowSize,
+			SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+		start(null, false);
+	}
+
+	Promise<HttpResponse> send(HttpRequest request) {
+		SettablePromise<HttpResponse> promise = new SettablePromise<>();
+		Stream stream = new Stream();
+		stream.request = request;
+		stream.promise = promise;
+
+		connection.numberOfRequests++;
+		if (client.maxKeepAliveRequests != 0 && connection.numberOfRequests >= client.maxKeepAliveRequests) {
+			draining = true;
+			client.http2Connections.remove(connection.remoteAddress, connection);
+		}
+
+		if (streams.size() < peerMaxConcurrentStreams) {
+			startStream(stream);
+		} else {
+			pendingStreams.add(stream);
+		}
+		return promise;
+	}
+
+	private void startStream(Stream stream) {
+		HttpRequest request = stream.request;
+		assert request != null;
+		openStream(stream, nextStreamId);
+		nextStreamId += 2;
+		connection.switchPool(client.poolReadWrite);
+
+		ByteBuf block = encoder.beginBlock(ByteBufPool.allocate(256));
+		byte[] method = request.getMethod().bytes();
+		block = encoder.encode(block, PSEUDO_METHOD, method, 0, method.length, true, false);
+		byte[] scheme = request.getProtocol().isSecure() ? SCHEME_HTTPS : SCHEME_HTTP;
+		block = encoder.encode(block, PSEUDO_SCHEME, scheme, 0, scheme.length, true, false);
+		HttpHeaderValue host = request.headers.get(HOST);
+		if (host != null) {
+			block = encodeField(block, PSEUDO_AUTHORITY, host, true, false);
+		}
+		block = encodePath(block, request.getUrl());
+		writeMessage(stream, request, block);
+	}
+
+	@Override
+	boolean isIdleStream(int streamId) {
+		return (streamId & 1) == 0 || streamId >= nextStreamId;
+	}
+
+	@Override
+	void onHeaders(int streamId, boolean endStream, List<byte[]> fields) {
+		Stream stream = streams.get(streamId);
+		if (stream == null) {
+			if (isIdleStream(streamId)) {
+				connectionError(PROTOCOL_ERROR, "HEADERS frame for an idle stream");
+			}
+			return;
+		}
+		if (stream.response != null) {
+			onTrailers(stream, endStream);
+			return;
+		}
+
+		int code;
+		try {
+			code = getStatusCode(fields);
+		} catch (MalformedHttpException e) {
+			resetStream(stream, PROTOCOL_ERROR, e);
+			return;
+		}
+		if (code < 200) {
+			// informational responses are skipped
+			if (endStream) {
+				resetStream(stream, PROTOCOL_ERROR, new MalformedHttpException("Informational response ends a stream"));
+			}
+			return;
+		}
+
+		HttpResponse response = new HttpResponse(HttpVersion.HTTP_2_0, code, connection);
+		response.maxBodySize = client.maxBodySize;
+		try {
+			if (addHeaders(response, fields, 2)) {
+				response.flags |= HttpMessage.BODY_STREAM_GZIPPED;
+			}
+		} catch (MalformedHttpException e) {
+			response.recycle();
+			resetStream(stream, PROTOCOL_ERROR, e);
+			return;
+		}
+		stream.response = response;
+
+		response.flags |= MUST_LOAD_BODY;
+		if (endStream) {
+			stream.endReceived = true;
+			stream.inputDone = true;
+			response.body = ByteBuf.empty();
+		} else {
+			response.bodyStream = createBodySupplier(stream);
+		}
+		if (inspector != null) inspector.onHttpResponse(response);
+
+		SettablePromise<HttpResponse> promise = stream.promise;
+		stream.promise = null;
+		//noinspection ConstantConditions
+		promise.set(response);
+
+		if (endStream) {
+			tryCloseStream(stream);
+		}
+	}
+
+	private static int getStatusCode(List<byte[]> fields) throws MalformedHttpException {
+		if (fields.isEmpty() || !Arrays.equals(fields.get(0), PSEUDO_STATUS)) {
+			throw new MalformedHttpException("Status pseudo-header field is missing");
+		}
+		byte[] value = fields.get(1);
+		if (value.length != 3) {
+			throw new MalformedHttpException("Invalid HTTP Status Code");
+		}
+		int code = 0;
+		for (byte b : value) {
+			if (b < '0' || b > '9') throw new MalformedHttpException("Invalid HTTP Status Code");
+			code = code * 10 + (b - '0');
+		}
+		if (code < 100 || code >= 600) {
+			throw new MalformedHttpException("Invalid HTTP Status Code " + code);
+		}
+		return code;
+	}
+
+	@Override
+	void onStreamClosed(Stream stream, @Nullable Exception e) {
+		if (stream.promise != null) {
+			SettablePromise<HttpResponse> promise = stream.promise;
+			stream.promise = null;
+			Exception exception = e != null ? e : new HttpException("Stream has been closed without a response");
+			if (inspector != null) inspector.onHttpError(connection, exception);
+			promise.setException(exception);
+		}
+		if (stream.response != null) {
+			if (inspector != null) inspector.onRequestComplete(stream.response, connection);
+			stream.response = nullify(stream.response, HttpMessage::recycle);
+		}
+		if (connection.isClosed()) return;
+
+		while (!pendingStreams.isEmpty() && streams.size() < peerMaxConcurrentStreams && !goingAway) {
+			startStream(pendingStreams.poll());
+		}
+		if (!streams.isEmpty()) return;
+		if (goingAway || draining || client.keepAliveTimeoutMillis == 0) {
+			client.http2Connections.remove(connection.remoteAddress, connection);
+			goAway(NO_ERROR, null);
+		} else {
+			client.returnToKeepAlivePoolHttp2(connection);
+		}
+	}
+
+	@Override
+	void onSettingsReceived() {
+		while (!pendingStreams.isEmpty() && streams.size() < peerMaxConcurrentStreams && !goingAway) {
+			startStream(pendingStreams.poll());
+		}
+	}
+
+	@Override
+	void onGoAwayReceived(int lastStreamId, int errorCode) {
+		client.http2Connections.remove(connection.remoteAddress, connection);
+		HttpException e = new HttpException("Connection is going away, error code: " + errorCode);
+		for (Stream stream : new ArrayList<>(streams.values())) {
+			if (stream.id > lastStreamId) {
+				closeStream(stream, e);
+			}
+		}
+		failPendingStreams(e);
+		if (streams.isEmpty()) {
+			goAway(NO_ERROR, null);
+		}
+	}
+
+	@Override
+	void onConnectionClosed(Exception e) {
+		super.onConnectionClosed(e);
+		failPendingStreams(e);
+	}
+
+	private void failPendingStreams(Exception e) {
+		while (!pendingStreams.isEmpty()) {
+			Stream stream = pendingStreams.poll();
+			//noinspection ConstantConditions
+			stream.request.recycleBody();
+			//noinspection ConstantConditions
+			stream.promise.setException(e);
+		}
+	}
+}
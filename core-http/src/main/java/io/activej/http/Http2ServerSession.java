@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.http.HttpServer.Inspector;
+import io.activej.net.socket.tcp.SslTcpSocket;
+import io.activej.promise.Promise;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.activej.common.exception.FatalErrorHandler.handleError;
+import static io.activej.http.AbstractHttpConnection.EMPTY_BYTE_ARRAY;
+import static io.activej.http.Http2Constants.*;
+import static io.activej.http.HttpHeaders.HOST;
+import static io.activej.http.HttpMessage.MUST_LOAD_BODY;
+import static io.activej.http.Protocol.HTTP;
+import static io.activej.http.Protocol.HTTPS;
+
+/**
+ * A server side of HTTP/2 session, each client-initiated stream is served by a servlet
+ */
+final class Http2ServerSession extends AbstractHttp2Session<HttpServerConnection> {
+	private final HttpServer server;
+	private final AsyncServlet servlet;
+	private final InetAddress remoteAddress;
+	private final @Nullable Inspector inspector;
+
+	Http2ServerSession(HttpServerConnection connection, HttpServer server, AsyncServlet servlet, InetAddress remoteAddress) {
+		super(connection, server.http2InitialWindowSize);
+		this.server = server;
+		this.servlet = servlet;
+		this.remoteAddress = remoteAddress;
+		this.inspector = server.inspector;
+	}
+
+	void start(@Nullable ByteBuf readBuf) {
+		connection.switchPool(server.poolKeepAlive);
+		writeSettings(
+			SETTINGS_MAX_CONCURRENT_STREAMS, server.http2MaxConcurrentStreams,
+			SETTINGS_INITIAL_WINDOW_SIZE, initialWindowSize,
+			SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+		start(readBuf, true);
+	}
+
+	@Override
+	boolean isIdleStream(int streamId) {
+		return (streamId & 1) == 1 && streamId > lastPeerStreamId;
+	}
+
+	@Override
+	void onHeaders(int streamId, boolean endStream, List<byte[]> fields) {
+		Stream stream = streams.get(streamId);
+		if (stream != null) {
+			onTrailers(stream, endStream);
+			return;
+		}
+		if ((streamId & 1) == 0) {
+			connectionError(PROTOCOL_ERROR, "Invalid stream identifier");
+			return;
+		}
+		if (streamId <= lastPeerStreamId) {
+			writeRstStream(streamId, STREAM_CLOSED);
+			return;
+		}
+		lastPeerStreamId = streamId;
+		if (goingAway || streams.size() >= server.http2MaxConcurrentStreams) {
+			writeRstStream(streamId, REFUSED_STREAM);
+			return;
+		}
+
+		HttpRequest request;
+		try {
+			request = createRequest(fields);
+		} catch (MalformedHttpException e) {
+			if (inspector != null) inspector.onMalformedHttpRequest(connection, e, EMPTY_BYTE_ARRAY);
+			writeRstStream(streamId, PROTOCOL_ERROR);
+			return;
+		}
+
+		stream = new Stream();
+		openStream(stream, streamId);
+		if (endStream) {
+			stream.endReceived = true;
+			stream.inputDone = true;
+			request.body = ByteBuf.empty();
+		} else {
+			request.bodyStream = createBodySupplier(stream);
+		}
+		serve(stream, request);
+	}
+
+	private HttpRequest createRequest(List<byte[]> fields) throws MalformedHttpException {
+		HttpMethod method = null;
+		byte[] scheme = null;
+		byte[] authority = null;
+		byte[] path = null;
+		int i = 0;
+		for (; i < fields.size(); i += 2) {
+			byte[] name = fields.get(i);
+			if (name.length == 0 || name[0] != ':') break;
+			byte[] value = fields.get(i + 1);
+			if (Arrays.equals(name, PSEUDO_METHOD) && method == null) {
+				method = getMethod(value);
+			} else if (Arrays.equals(name, PSEUDO_SCHEME) && scheme == null) {
+				scheme = value;
+			} else if (Arrays.equals(name, PSEUDO_AUTHORITY) && authority == null) {
+				authority = value;
+			} else if (Arrays.equals(name, PSEUDO_PATH) && path == null) {
+				path = value;
+			} else {
+				throw new MalformedHttpException("Invalid pseudo-header field");
+			}
+		}
+		if (method == null || scheme == null || path == null || path.length == 0) {
+			throw new MalformedHttpException("Mandatory pseudo-header field is missing");
+		}
+
+		HttpRequest request = new HttpRequest(HttpVersion.HTTP_2_0, method, UrlParser.parse(path, 0, path.length), connection);
+		request.maxBodySize = server.maxBodySize;
+		try {
+			if (authority != null) {
+				request.headers.add(HOST, HttpHeaderValue.ofBytes(authority));
+			}
+			if (AbstractHttp2Session.addHeaders(request, fields, i)) {
+				request.flags |= HttpMessage.BODY_STREAM_GZIPPED;
+			}
+		} catch (MalformedHttpException e) {
+			request.recycle();
+			throw e;
+		}
+		return request;
+	}
+
+	private static HttpMethod getMethod(byte[] value) throws MalformedHttpException {
+		for (HttpMethod method : HttpMethod.values()) {
+			if (Arrays.equals(method.bytes(), value)) return method;
+		}
+		throw new MalformedHttpException("Unknown HTTP method");
+	}
+
+	private void serve(Stream stream, HttpRequest request) {
+		request.flags |= MUST_LOAD_BODY;
+		request.setProtocol(socket instanceof SslTcpSocket ? HTTPS : HTTP);
+		request.setRemoteAddress(remoteAddress);
+		stream.dispatched = true;
+
+		connection.numberOfRequests++;
+		if (server.maxKeepAliveRequests != 0 && connection.numberOfRequests >= server.maxKeepAliveRequests) {
+			drain();
+		}
+		if (inspector != null) inspector.onHttpRequest(request);
+
+		connection.switchPool(server.poolServing);
+
+		Promise<HttpResponse> servletResult;
+		try {
+			servletResult = servlet.serve(request);
+		} catch (Exception e) {
+			handleError(e, this);
+			servletResult = Promise.ofException(e);
+		}
+		servletResult.subscribe((response, e) -> {
+			if (connection.isClosed() || stream.closed) {
+				request.recycle();
+				if (response != null) {
+					response.recycleBody();
+				}
+				return;
+			}
+			if (e == null) {
+				if (inspector != null) inspector.onHttpResponse(request, response);
+				request.recycle();
+				writeResponse(stream, response);
+			} else {
+				if (inspector != null) inspector.onServletException(request, e);
+				request.recycle();
+				server.formatHttpError(e)
+					.whenComplete((errorResponse, e2) -> {
+						if (connection.isClosed() || stream.closed) {
+							if (errorResponse != null) errorResponse.recycleBody();
+							return;
+						}
+						if (e2 == null) {
+							writeResponse(stream, errorResponse);
+						} else {
+							resetStream(stream, INTERNAL_ERROR, e2);
+						}
+					});
+			}
+		});
+	}
+
+	private void writeResponse(Stream stream, HttpResponse response) {
+		ByteBuf block = encoder.beginBlock(ByteBufPool.allocate(256));
+		block = encodeStatus(block, response.getCode());
+		writeMessage(stream, response, block);
+	}
+
+	@Override
+	void onOutputComplete(Stream stream) {
+		if (!stream.inputDone) {
+			if (!stream.endReceived) {
+				// a response is complete before a request body has been received
+				writeRstStream(stream.id, NO_ERROR);
+				closeStream(stream, new HttpException("Response has been sent before a request body was received"));
+				return;
+			}
+			if (stream.bodySupplier != null) {
+				stream.bodySupplier.close();
+			}
+		}
+		tryCloseStream(stream);
+	}
+
+	@Override
+	void onStreamClosed(Stream stream, @Nullable Exception e) {
+		if (stream.dispatched && inspector != null) {
+			inspector.onHttpResponseComplete(connection);
+		}
+		if (!streams.isEmpty() || connection.isClosed()) return;
+		if (goingAway || server.keepAliveTimeoutMillis == 0) {
+			goAway(NO_ERROR, null);
+		} else {
+			connection.switchPool(server.poolKeepAlive);
+		}
+	}
+
+	@Override
+	void onGoAwayReceived(int lastStreamId, int errorCode) {
+		if (streams.isEmpty()) {
+			goAway(NO_ERROR, null);
+		}
+	}
+}
@@ -34,8 +34,10 @@ import io.activej.jmx.api.attribute.JmxReducers.JmxReducerSum;
 import io.activej.jmx.stats.EventStats;
 import io.activej.jmx.stats.ExceptionStats;
 import io.activej.net.socket.tcp.ITcpSocket;
+import io.activej.net.socket.tcp.SslTcpSocket;
 import io.activej.net.socket.tcp.TcpSocket;
 import io.activej.promise.Promise;
+import io.activej.promise.Promises;
 import io.activej.promise.SettablePromise;
 import io.activej.reactor.AbstractNioReactive;
 import io.activej.reactor.jmx.ReactiveJmxBeanWithStats;
@@ -46,12 +48,18 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.Executor;
@@ -89,6 +97,15 @@ public final class HttpClient extends AbstractNioReactive
 	public static final MemSize MAX_BODY_SIZE = ApplicationSettings.getMemSize(HttpClient.class, "maxBodySize", MemSize.ZERO);
 	public static final MemSize MAX_WEB_SOCKET_MESSAGE_SIZE = ApplicationSettings.getMemSize(HttpClient.class, "maxWebSocketMessageSize", MemSize.megabytes(1));
 	public static final int MAX_KEEP_ALIVE_REQUESTS = ApplicationSettings.getInt(HttpClient.class, "maxKeepAliveRequests", 0);
+	public static final MemSize HTTP2_INITIAL_WINDOW_SIZE = ApplicationSettings.getMemSize(HttpClient.class, "http2InitialWindowSize", MemSize.kilobytes(256));
+	public static final int MAX_CONNECTIONS_PER_HOST = ApplicationSettings.getInt(HttpClient.class, "maxConnectionsPerHost", 0);
+	public static final Duration CONNECTION_WAIT_TIMEOUT = ApplicationSettings.getDuration(HttpClient.class, "connectionWaitTimeout", Duration.ZERO);
+	public static final int PIPELINING_DEPTH = ApplicationSettings.getInt(HttpClient.class, "pipeliningDepth", 1);
+
+	// idempotent methods, responses to HEAD requests are not supported in pipelines, as they have no body
+	private static final EnumSet<HttpMethod> PIPELINED_METHODS = EnumSet.of(HttpMethod.GET, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.OPTIONS, HttpMethod.TRACE);
+
+	private static final String[] APPLICATION_PROTOCOLS = {Http2Constants.ALPN_H2, Http2Constants.ALPN_HTTP_1_1};
 
 	public static final HttpHeaderValue UPGRADE_HEADER = HttpHeaderValue.ofBytes(encodeAscii("Upgrade"));
 	public static final HttpHeaderValue WEBSOCKET_HEADER = HttpHeaderValue.ofBytes(encodeAscii("Websocket"));
@@ -104,8 +121,29 @@ public final class HttpClient extends AbstractNioReactive
 	private int poolKeepAliveExpired;
 	private int poolReadWriteExpired;
 
+	// HTTP/2 connections are shared by concurrent requests, at most one connection per address
+	final HashMap<InetSocketAddress, HttpClientConnection> http2Connections = new HashMap<>();
+	private final HashMap<InetSocketAddress, SettablePromise<Void>> http2Connects = new HashMap<>();
+	private final HashSet<InetSocketAddress> http1Addresses = new HashSet<>();
+
 	private @Nullable ScheduledRunnable expiredConnectionsCheck;
 
+	// connection pool policy
+	private final HashMap<InetSocketAddress, HostPool> hostPools = new HashMap<>();
+	private int maxConnectionsPerHost = MAX_CONNECTIONS_PER_HOST;
+	private int connectionWaitTimeoutMillis = (int) CONNECTION_WAIT_TIMEOUT.toMillis();
+	private int minIdleConnectionsPerHost;
+	private IdleConnectionReuse idleConnectionReuse = IdleConnectionReuse.LIFO;
+	private int waitingRequests;
+	private int connectionWaitTimeouts;
+	private int prewarmedConnections;
+
+	// HTTP/1.1 pipelining
+	int pipeliningDepth = PIPELINING_DEPTH;
+	private final HashSet<InetSocketAddress> nonPipelinedAddresses = new HashSet<>();
+	private int pipelinedRequests;
+	private int pipelineResends;
+
 	// timeouts
 	int connectTimeoutMillis = (int) CONNECT_TIMEOUT.toMillis();
 	int readWriteTimeoutMillis = (int) READ_WRITE_TIMEOUT.toMillis();
@@ -113,8 +151,13 @@ public final class HttpClient extends AbstractNioReactive
 	int keepAliveTimeoutMillis = (int) KEEP_ALIVE_TIMEOUT.toMillis();
 	int maxBodySize = MAX_BODY_SIZE.toInt();
 	int maxWebSocketMessageSize = MAX_WEB_SOCKET_MESSAGE_SIZE.toInt();
+	@Nullable PerMessageDeflate perMessageDeflate;
 	int maxKeepAliveRequests = MAX_KEEP_ALIVE_REQUESTS;
 
+	// HTTP/2
+	boolean http2Enabled;
+	int http2InitialWindowSize = HTTP2_INITIAL_WINDOW_SIZE.toInt();
+
 	// SSL
 	private SSLContext sslContext;
 	private Executor sslExecutor;
@@ -304,6 +347,22 @@ public final class HttpClient extends AbstractNioReactive
 		}
 	}
 
+	/**
+	 * An order in which idle keep-alive connections to the same address are reused
+	 */
+	public enum IdleConnectionReuse {
+		/**
+		 * The most recently used connection is reused first, so that excess idle connections
+		 * expire after a keep-alive timeout
+		 */
+		LIFO,
+		/**
+		 * The least recently used connection is reused first, so that requests are spread
+		 * evenly over idle connections
+		 */
+		FIFO
+	}
+
 	private int inetAddressIdx = 0;
 
 	private HttpClient(NioReactor reactor, IDnsClient dnsClient) {
@@ -372,6 +431,65 @@ public final class HttpClient extends AbstractNioReactive
 			return this;
 		}
 
+		/**
+		 * Sets a maximum number of HTTP/1.1 connections (including connecting ones) to a single address.
+		 * Requests which exceed the limit wait in a FIFO queue for a connection to become available.
+		 * Zero means that number of connections is unlimited, which is a default.
+		 */
+		public Builder withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+			checkNotBuilt(this);
+			checkArgument(maxConnectionsPerHost >= 0, "Maximum number of connections per host should not be less than zero");
+			HttpClient.this.maxConnectionsPerHost = maxConnectionsPerHost;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum time a request may wait for a connection if
+		 * {@link #withMaxConnectionsPerHost a limit of connections} has been reached.
+		 * Zero means that requests wait indefinitely, which is a default.
+		 */
+		public Builder withConnectionWaitTimeout(Duration connectionWaitTimeout) {
+			checkNotBuilt(this);
+			HttpClient.this.connectionWaitTimeoutMillis = (int) connectionWaitTimeout.toMillis();
+			return this;
+		}
+
+		/**
+		 * Sets a number of idle keep-alive connections which are kept open to each address
+		 * {@link #prewarm(String) pre-warmed} by a client
+		 */
+		public Builder withMinIdleConnectionsPerHost(int minIdleConnectionsPerHost) {
+			checkNotBuilt(this);
+			checkArgument(minIdleConnectionsPerHost >= 0, "Minimum number of idle connections per host should not be less than zero");
+			HttpClient.this.minIdleConnectionsPerHost = minIdleConnectionsPerHost;
+			return this;
+		}
+
+		public Builder withIdleConnectionReuse(IdleConnectionReuse idleConnectionReuse) {
+			checkNotBuilt(this);
+			HttpClient.this.idleConnectionReuse = idleConnectionReuse;
+			return this;
+		}
+
+		/**
+		 * Enables HTTP/1.1 pipelining of idempotent requests without a body.
+		 * <p>
+		 * If there is no idle keep-alive connection to an address, such a request may be sent
+		 * on a busy connection, which is already known to support keep-alive, without waiting
+		 * for responses to previous requests, unless a given number of requests are already
+		 * waiting for responses on this connection. Responses are received in order of requests.
+		 * <p>
+		 * If a server closes a connection before responding to pipelined requests, they are sent
+		 * again on another connection, and pipelining to this address is disabled afterwards.
+		 * A depth of 1 means that pipelining is disabled, which is a default.
+		 */
+		public Builder withPipeliningDepth(int pipeliningDepth) {
+			checkNotBuilt(this);
+			checkArgument(pipeliningDepth > 0, "Pipelining depth should be positive");
+			HttpClient.this.pipeliningDepth = pipeliningDepth;
+			return this;
+		}
+
 		public Builder withMaxBodySize(MemSize maxBodySize) {
 			checkNotBuilt(this);
 			return withMaxBodySize(maxBodySize.toInt());
@@ -389,6 +507,15 @@ public final class HttpClient extends AbstractNioReactive
 			return this;
 		}
 
+		/**
+		 * Offers a 'permessage-deflate' extension in web socket requests
+		 */
+		public Builder withPerMessageDeflate(PerMessageDeflate perMessageDeflate) {
+			checkNotBuilt(this);
+			HttpClient.this.perMessageDeflate = perMessageDeflate;
+			return this;
+		}
+
 		public Builder withInspector(Inspector inspector) {
 			checkNotBuilt(this);
 			HttpClient.this.inspector = inspector;
@@ -413,8 +540,37 @@ public final class HttpClient extends AbstractNioReactive
 			return this;
 		}
 
+		/**
+		 * Enables HTTP/2 support.
+		 * <p>
+		 * For HTTPS requests HTTP/2 is negotiated with ALPN, falling back to HTTP/1.1,
+		 * plain HTTP requests are sent over HTTP/2 without negotiation (prior knowledge),
+		 * so a server is expected to support HTTP/2.
+		 * All the requests to the same address share a single HTTP/2 connection.
+		 * Web socket requests are always sent over HTTP/1.1.
+		 */
+		public Builder withHttp2Enabled(boolean http2Enabled) {
+			checkNotBuilt(this);
+			HttpClient.this.http2Enabled = http2Enabled;
+			return this;
+		}
+
+		/**
+		 * Sets a flow control window of each HTTP/2 stream, a window of a connection
+		 * is 4 times larger
+		 */
+		public Builder withHttp2InitialWindowSize(MemSize initialWindowSize) {
+			checkNotBuilt(this);
+			checkArgument(initialWindowSize.toLong() >= 65535 && initialWindowSize.toLong() <= Integer.MAX_VALUE,
+				"Initial window size should be in range [65535, 2^31-1]");
+			HttpClient.this.http2InitialWindowSize = initialWindowSize.toInt();
+			return this;
+		}
+
 		@Override
 		protected HttpClient doBuild() {
+			checkState(maxConnectionsPerHost == 0 || minIdleConnectionsPerHost <= maxConnectionsPerHost,
+				"Minimum number of idle connections per host should not exceed maximum number of connections per host");
 			return HttpClient.this;
 		}
 	}
@@ -447,7 +603,9 @@ public final class HttpClient extends AbstractNioReactive
 		AddressLinkedList addresses = this.addresses.get(address);
 		if (addresses == null)
 			return null;
-		HttpClientConnection connection = addresses.removeLastNode();
+		HttpClientConnection connection = idleConnectionReuse == IdleConnectionReuse.LIFO ?
+			addresses.removeLastNode() :
+			addresses.removeFirstNode();
 		assert connection != null;
 		assert connection.pool == poolKeepAlive;
 		assert connection.remoteAddress.equals(address);
@@ -455,6 +613,10 @@ public final class HttpClient extends AbstractNioReactive
 		if (addresses.isEmpty()) {
 			this.addresses.remove(address);
 		}
+		if (minIdleConnectionsPerHost != 0) {
+			HostPool hostPool = hostPools.get(address);
+			if (hostPool != null) hostPool.prewarm();
+		}
 		return connection;
 	}
 
@@ -467,6 +629,77 @@ public final class HttpClient extends AbstractNioReactive
 		if (expiredConnectionsCheck == null) {
 			scheduleExpiredConnectionsCheck();
 		}
+
+		HostPool hostPool = hostPools.get(connection.remoteAddress);
+		if (hostPool != null && !hostPool.waiting.isEmpty()) {
+			reactor.post(hostPool::serveWaiting);
+		}
+	}
+
+	void onConnectionClosed(HttpClientConnection connection) {
+		HostPool hostPool = hostPools.get(connection.remoteAddress);
+		if (hostPool == null) return;
+		if (connection.pipelineCandidate) {
+			connection.pipelineCandidate = false;
+			hostPool.pipelined.remove(connection);
+		}
+		hostPool.connections--;
+		hostPool.onConnectionReleased();
+	}
+
+	boolean isPipelinable(HttpRequest request, InetSocketAddress address) {
+		return pipeliningDepth > 1 &&
+			PIPELINED_METHODS.contains(request.getMethod()) &&
+			request.body == null && request.bodyStream == null &&
+			request.getHeader(CONNECTION) == null &&
+			!nonPipelinedAddresses.contains(address);
+	}
+
+	void setPipelineCandidate(HttpClientConnection connection, boolean candidate) {
+		HostPool hostPool = hostPools.get(connection.remoteAddress);
+		if (hostPool == null) return;
+		connection.pipelineCandidate = candidate;
+		if (candidate) {
+			hostPool.pipelined.add(connection);
+			if (!hostPool.waiting.isEmpty()) {
+				reactor.post(hostPool::serveWaiting);
+			}
+		} else {
+			hostPool.pipelined.remove(connection);
+		}
+	}
+
+	void disablePipelining(InetSocketAddress address) {
+		if (nonPipelinedAddresses.add(address)) {
+			logger.warn("Server {} has closed a connection with pipelined requests, pipelining to it is disabled", address);
+		}
+	}
+
+	void resendPipelined(InetSocketAddress address, Collection<HttpClientConnection.PipelinedRequest> requests) {
+		for (HttpClientConnection.PipelinedRequest pipelined : requests) {
+			pipelineResends++;
+			if (shutdownPromise != null && forcedShutdown) {
+				pipelined.promise.setException(new AsyncCloseException("Client closed"));
+				continue;
+			}
+			doSend(pipelined.request, address, false)
+				.<HttpResponse>cast()
+				.subscribe(pipelined.promise::set);
+		}
+	}
+
+	private Promise<HttpResponse> sendPipelined(HttpClientConnection connection, HttpRequest request) {
+		pipelinedRequests++;
+		return connection.sendPipelined(request);
+	}
+
+	void returnToKeepAlivePoolHttp2(HttpClientConnection connection) {
+		assert !connection.isClosed() && connection.isHttp2();
+		connection.switchPool(poolKeepAlive);
+
+		if (expiredConnectionsCheck == null) {
+			scheduleExpiredConnectionsCheck();
+		}
 	}
 
 	@Override
@@ -503,6 +736,9 @@ public final class HttpClient extends AbstractNioReactive
 		request.headers.addIfAbsent(CONNECTION, UPGRADE_HEADER);
 		request.headers.addIfAbsent(UPGRADE, WEBSOCKET_HEADER);
 		request.headers.addIfAbsent(SEC_WEBSOCKET_VERSION, WEBSOCKET_VERSION_HEADER);
+		if (perMessageDeflate != null) {
+			request.headers.addIfAbsent(SEC_WEBSOCKET_EXTENSIONS, HttpHeaderValue.of(perMessageDeflate.getOffer()));
+		}
 
 		//noinspection unchecked
 		return (Promise<IWebSocket>) doRequest(request, true);
@@ -548,6 +784,27 @@ public final class HttpClient extends AbstractNioReactive
 	private Promise<?> doSend(HttpRequest request, InetAddress[] inetAddresses, boolean isWebSocket) {
 		InetAddress inetAddress = inetAddresses[(inetAddressIdx++ & Integer.MAX_VALUE) % inetAddresses.length];
 		InetSocketAddress address = new InetSocketAddress(inetAddress, request.getUrl().getPort());
+		return doSend(request, address, isWebSocket);
+	}
+
+	private Promise<?> doSend(HttpRequest request, InetSocketAddress address, boolean isWebSocket) {
+		if (!isWebSocket) {
+			HttpClientConnection http2Connection = http2Connections.get(address);
+			if (http2Connection != null) {
+				return http2Connection.send(request);
+			}
+			SettablePromise<Void> http2Connect = http2Connects.get(address);
+			if (http2Connect != null) {
+				return http2Connect
+					.then(
+						$ -> doSend(request, address, false).cast(),
+						e -> {
+							if (inspector != null) inspector.onConnectError(request, address, e);
+							request.recycleBody();
+							return Promise.ofException(translateToHttpException(e));
+						});
+			}
+		}
 
 		HttpClientConnection keepAliveConnection = takeKeepAliveConnection(address);
 		if (keepAliveConnection != null) {
@@ -558,14 +815,34 @@ public final class HttpClient extends AbstractNioReactive
 			}
 		}
 
+		HostPool hostPool = hostPools.computeIfAbsent(address, HostPool::new);
+		if (!isWebSocket) {
+			HttpClientConnection pipelineConnection = hostPool.findPipelineConnection(request);
+			if (pipelineConnection != null) {
+				return sendPipelined(pipelineConnection, request);
+			}
+		}
+		if (maxConnectionsPerHost != 0 && hostPool.getConnectionsCount() >= maxConnectionsPerHost) {
+			return hostPool.enqueue(request, isWebSocket);
+		}
+		return connect(request, address, hostPool, isWebSocket);
+	}
+
+	private Promise<?> connect(HttpRequest request, InetSocketAddress address, HostPool hostPool, boolean isWebSocket) {
 		boolean isSecure = request.getProtocol().isSecure();
 		if (isSecure && sslContext == null) {
 			request.recycleBody();
 			throw new IllegalArgumentException("Cannot send Secure Request without SSL enabled");
 		}
 
+		boolean http2 = http2Enabled && !isWebSocket && !http1Addresses.contains(address);
+		if (http2) {
+			http2Connects.put(address, new SettablePromise<>());
+		}
+
 		if (inspector != null) inspector.onConnecting(request, address);
 		++pendingConnects;
+		hostPool.connecting++;
 		return TcpSocket.connect(reactor, address, connectTimeoutMillis, socketSettings)
 			.then((v, e) -> handleShutdown(v, e, --pendingConnects))
 			.then(
@@ -579,32 +856,115 @@ public final class HttpClient extends AbstractNioReactive
 					String host = request.getUrl().getHost();
 					assert host != null;
 
-					ITcpSocket socket = isSecure ?
-						wrapClientSocket(reactor, tcpSocket,
+					if (!isSecure) {
+						return openConnection(request, address, hostPool, tcpSocket, isWebSocket, http2);
+					}
+					if (!http2) {
+						ITcpSocket socket = wrapClientSocket(reactor, tcpSocket,
 							host, request.getUrl().getPort(),
-							sslContext, sslExecutor) :
-						tcpSocket;
-
-					HttpClientConnection connection = new HttpClientConnection(reactor, this, socket, address);
-
-					if (inspector != null) inspector.onConnect(request, connection);
-
-					if (expiredConnectionsCheck == null)
-						scheduleExpiredConnectionsCheck();
-
-					if (isWebSocket) {
-						return connection.sendWebSocketRequest(request).cast();
-					} else {
-						return connection.send(request).cast();
+							sslContext, sslExecutor);
+						return openConnection(request, address, hostPool, socket, isWebSocket, false);
 					}
+
+					SSLEngine engine = sslContext.createSSLEngine(host, request.getUrl().getPort());
+					engine.setUseClientMode(true);
+					SSLParameters parameters = engine.getSSLParameters();
+					parameters.setApplicationProtocols(APPLICATION_PROTOCOLS);
+					engine.setSSLParameters(parameters);
+					SslTcpSocket socket = SslTcpSocket.create(reactor, tcpSocket, engine, sslExecutor);
+					return socket.getHandshakeCompletion()
+						.then(
+							$ -> {
+								boolean negotiated = Http2Constants.ALPN_H2.equals(socket.getApplicationProtocol());
+								if (!negotiated) http1Addresses.add(address);
+								return openConnection(request, address, hostPool, socket, false, negotiated);
+							},
+							e -> {
+								hostPool.onConnectFailed();
+								completeHttp2Connect(address, e);
+								if (inspector != null) inspector.onConnectError(request, address, e);
+								request.recycleBody();
+								return Promise.ofException(translateToHttpException(e));
+							});
 				},
 				e -> {
+					hostPool.onConnectFailed();
+					if (http2) completeHttp2Connect(address, e);
 					if (inspector != null) inspector.onConnectError(request, address, e);
 					request.recycleBody();
 					return Promise.ofException(translateToHttpException(e));
 				});
 	}
 
+	private <T> Promise<T> openConnection(HttpRequest request, InetSocketAddress address, HostPool hostPool, ITcpSocket socket, boolean isWebSocket, boolean http2) {
+		HttpClientConnection connection = new HttpClientConnection(reactor, this, socket, address);
+		hostPool.connecting--;
+		hostPool.connections++;
+
+		if (inspector != null) inspector.onConnect(request, connection);
+
+		if (expiredConnectionsCheck == null)
+			scheduleExpiredConnectionsCheck();
+
+		if (http2) {
+			connection.startHttp2();
+			http2Connections.put(address, connection);
+		}
+		Promise<T> result = isWebSocket ?
+			connection.sendWebSocketRequest(request).cast() :
+			connection.send(request).cast();
+		completeHttp2Connect(address, null);
+		return result;
+	}
+
+	private void completeHttp2Connect(InetSocketAddress address, @Nullable Exception e) {
+		SettablePromise<Void> http2Connect = http2Connects.remove(address);
+		if (http2Connect != null) {
+			http2Connect.set(null, e);
+		}
+	}
+
+	/**
+	 * Opens idle keep-alive connections to each address of a host of a given URL, so that each address has
+	 * {@link Builder#withMinIdleConnectionsPerHost a minimum number of idle connections}. Afterwards, the client
+	 * keeps opening new idle connections to these addresses as soon as idle connections are taken or closed.
+	 *
+	 * @param url an HTTP or HTTPS URL of a host
+	 * @return a promise which is completed when initial idle connections have been opened
+	 */
+	public Promise<Void> prewarm(String url) {
+		checkInReactorThread(this);
+		checkState(minIdleConnectionsPerHost != 0, "Minimum number of idle connections per host is not set");
+		checkState(keepAliveTimeoutMillis != 0, "Keep-alive connections are disabled");
+		UrlParser urlParser = UrlParser.of(url);
+		String host = urlParser.getHost();
+		checkArgument(host != null, "Host is missing");
+		checkArgument(urlParser.getProtocol() == HTTP || urlParser.getProtocol() == HTTPS, "Wrong protocol");
+		boolean isSecure = urlParser.getProtocol().isSecure();
+		checkArgument(!isSecure || sslContext != null, "Cannot pre-warm secure connections without SSL enabled");
+
+		++pendingResolves;
+		return dnsClient.resolve4(host)
+			.then((v, e) -> handleShutdown(v, e, --pendingResolves))
+			.then(
+				dnsResponse -> {
+					if (!dnsResponse.isSuccessful()) {
+						return Promise.ofException(new HttpException(new DnsQueryException(dnsResponse)));
+					}
+					List<Promise<Void>> connects = new ArrayList<>();
+					//noinspection ConstantConditions - dnsResponse is successful (not null)
+					for (InetAddress inetAddress : dnsResponse.getRecord().getIps()) {
+						InetSocketAddress address = new InetSocketAddress(inetAddress, urlParser.getPort());
+						HostPool hostPool = hostPools.computeIfAbsent(address, HostPool::new);
+						hostPool.prewarmHost = host;
+						hostPool.prewarmSecure = isSecure;
+						hostPool.prewarm(connects);
+					}
+					return Promises.all(connects);
+				},
+				e -> Promise.ofException(translateToHttpException(e)));
+	}
+
 	private <T> Promise<T> handleShutdown(T value, Exception e, int countdown) {
 		if (shutdownPromise != null) {
 			if (countdown == 0) handleShutdown();
@@ -616,13 +976,204 @@ public final class HttpClient extends AbstractNioReactive
 	}
 
 	void handleShutdown() {
-		if (shutdownPromise != null && pendingResolves == 0 && pendingConnects == 0 && getConnectionsCount() == 0) {
+		if (shutdownPromise != null && pendingResolves == 0 && pendingConnects == 0 && waitingRequests == 0 && getConnectionsCount() == 0) {
 			SettablePromise<Void> shutdownPromise = this.shutdownPromise;
 			reactor.post(() -> shutdownPromise.set(null));
 			this.shutdownPromise = null;
 		}
 	}
 
+	/**
+	 * Connections of a single address and requests waiting for them
+	 */
+	private final class HostPool {
+		final InetSocketAddress address;
+		final ArrayDeque<WaitingRequest> waiting = new ArrayDeque<>();
+		final ArrayList<HttpClientConnection> pipelined = new ArrayList<>();
+
+		int connecting;
+		int connections;
+
+		@Nullable String prewarmHost;
+		boolean prewarmSecure;
+		int prewarming;
+
+		HostPool(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		int getConnectionsCount() {
+			return connecting + connections;
+		}
+
+		int getIdleCount() {
+			AddressLinkedList idle = addresses.get(address);
+			return idle != null ? idle.size() : 0;
+		}
+
+		@Nullable HttpClientConnection findPipelineConnection(HttpRequest request) {
+			if (pipelined.isEmpty() || !isPipelinable(request, address)) return null;
+			HttpClientConnection result = null;
+			for (HttpClientConnection connection : pipelined) {
+				if (result == null || connection.getPipelinedRequests() < result.getPipelinedRequests()) {
+					result = connection;
+				}
+			}
+			return result;
+		}
+
+		Promise<?> enqueue(HttpRequest request, boolean isWebSocket) {
+			WaitingRequest waitingRequest = new WaitingRequest(request, isWebSocket);
+			waiting.add(waitingRequest);
+			waitingRequests++;
+			if (connectionWaitTimeoutMillis != 0) {
+				waitingRequest.timeout = reactor.delayBackground(connectionWaitTimeoutMillis, () -> {
+					waitingRequest.timeout = null;
+					waiting.remove(waitingRequest);
+					waitingRequests--;
+					connectionWaitTimeouts++;
+					request.recycleBody();
+					waitingRequest.promise.setException(new HttpException("Timed out waiting for a connection to " + address));
+					removeIfUnused();
+					handleShutdown();
+				});
+			}
+			return waitingRequest.promise;
+		}
+
+		void serveWaiting() {
+			while (!waiting.isEmpty()) {
+				HttpClientConnection connection = takeKeepAliveConnection(address);
+				HttpClientConnection pipelineConnection = null;
+				if (connection == null && maxConnectionsPerHost != 0 && getConnectionsCount() >= maxConnectionsPerHost) {
+					WaitingRequest first = waiting.peek();
+					if (first.isWebSocket || (pipelineConnection = findPipelineConnection(first.request)) == null) {
+						return;
+					}
+				}
+				WaitingRequest waitingRequest = waiting.poll();
+				waitingRequests--;
+				if (waitingRequest.timeout != null) {
+					waitingRequest.timeout.cancel();
+				}
+				HttpRequest request = waitingRequest.request;
+				Promise<?> result;
+				if (connection != null) {
+					result = waitingRequest.isWebSocket ?
+						connection.sendWebSocketRequest(request) :
+						connection.send(request);
+				} else if (pipelineConnection != null) {
+					result = sendPipelined(pipelineConnection, request);
+				} else {
+					result = connect(request, address, this, waitingRequest.isWebSocket);
+				}
+				result.subscribe((value, e) -> waitingRequest.promise.set(value, e));
+			}
+		}
+
+		void failWaiting(Exception e) {
+			while (!waiting.isEmpty()) {
+				WaitingRequest waitingRequest = waiting.poll();
+				waitingRequests--;
+				if (waitingRequest.timeout != null) {
+					waitingRequest.timeout.cancel();
+				}
+				waitingRequest.request.recycleBody();
+				waitingRequest.promise.setException(e);
+			}
+			removeIfUnused();
+		}
+
+		void onConnectFailed() {
+			connecting--;
+			onConnectionReleased();
+		}
+
+		void onConnectionReleased() {
+			if (!waiting.isEmpty()) {
+				reactor.post(this::serveWaiting);
+				return;
+			}
+			if (minIdleConnectionsPerHost != 0) {
+				prewarm();
+			}
+			removeIfUnused();
+		}
+
+		void prewarm() {
+			prewarm(null);
+		}
+
+		void prewarm(@Nullable List<Promise<Void>> connects) {
+			if (prewarmHost == null || keepAliveTimeoutMillis == 0) return;
+			while (getIdleCount() + prewarming < minIdleConnectionsPerHost &&
+				(maxConnectionsPerHost == 0 || getConnectionsCount() < maxConnectionsPerHost)) {
+				Promise<Void> connect = openIdleConnection();
+				if (connects != null) connects.add(connect);
+			}
+		}
+
+		private Promise<Void> openIdleConnection() {
+			assert prewarmHost != null;
+			prewarming++;
+			connecting++;
+			++pendingConnects;
+			return TcpSocket.connect(reactor, address, connectTimeoutMillis, socketSettings)
+				.then((v, e) -> handleShutdown(v, e, --pendingConnects))
+				.then(
+					tcpSocket -> {
+						prewarming--;
+						connecting--;
+						if (keepAliveTimeoutMillis == 0) {
+							tcpSocket.close();
+							removeIfUnused();
+							return Promise.ofException(new AsyncCloseException("Client closed"));
+						}
+						TcpSocket.Inspector socketInspector = prewarmSecure ? socketSslInspector : HttpClient.this.socketInspector;
+						if (socketInspector != null) {
+							socketInspector.onConnect(tcpSocket);
+							tcpSocket.setInspector(socketInspector);
+						}
+						ITcpSocket socket = prewarmSecure ?
+							wrapClientSocket(reactor, tcpSocket, prewarmHost, address.getPort(), sslContext, sslExecutor) :
+							tcpSocket;
+						HttpClientConnection connection = new HttpClientConnection(reactor, HttpClient.this, socket, address);
+						connections++;
+						prewarmedConnections++;
+						connection.keepAlive();
+						return Promise.complete();
+					},
+					e -> {
+						prewarming--;
+						connecting--;
+						if (!waiting.isEmpty()) {
+							reactor.post(this::serveWaiting);
+						}
+						removeIfUnused();
+						return Promise.ofException(translateToHttpException(e));
+					});
+		}
+
+		private void removeIfUnused() {
+			if (connecting == 0 && connections == 0 && waiting.isEmpty() &&
+				(prewarmHost == null || keepAliveTimeoutMillis == 0)) {
+				hostPools.remove(address, this);
+			}
+		}
+	}
+
+	private static final class WaitingRequest {
+		final HttpRequest request;
+		final boolean isWebSocket;
+		final SettablePromise<Object> promise = new SettablePromise<>();
+		@Nullable ScheduledRunnable timeout;
+
+		WaitingRequest(HttpRequest request, boolean isWebSocket) {
+			this.request = request;
+			this.isWebSocket = isWebSocket;
+		}
+	}
+
 	@Override
 	public Promise<?> start() {
 		checkInReactorThread(this);
@@ -634,13 +1185,16 @@ public final class HttpClient extends AbstractNioReactive
 		checkInReactorThread(this);
 		SettablePromise<Void> promise = new SettablePromise<>();
 
+		keepAliveTimeoutMillis = 0;
 		poolKeepAlive.closeAllConnections();
 		if (forcedShutdown) {
+			for (HostPool hostPool : new ArrayList<>(hostPools.values())) {
+				hostPool.failWaiting(new AsyncCloseException("Client closed"));
+			}
 			poolReadWrite.closeAllConnections();
 		}
 		assert addresses.isEmpty();
-		keepAliveTimeoutMillis = 0;
-		if (pendingResolves == 0 && pendingConnects == 0 && getConnectionsCount() == 0) {
+		if (pendingResolves == 0 && pendingConnects == 0 && waitingRequests == 0 && getConnectionsCount() == 0) {
 			assert poolReadWrite.isEmpty();
 			promise.set(null);
 		} else {
@@ -690,6 +1244,49 @@ public final class HttpClient extends AbstractNioReactive
 		return formatListAsMultilineString(result);
 	}
 
+	@JmxAttribute(description = "number of requests waiting for a connection", reducer = JmxReducerSum.class)
+	public int getWaitingRequests() {
+		return waitingRequests;
+	}
+
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getConnectionWaitTimeouts() {
+		return connectionWaitTimeouts;
+	}
+
+	@JmxAttribute(reducer = JmxReducerSum.class)
+	public int getPrewarmedConnections() {
+		return prewarmedConnections;
+	}
+
+	@JmxAttribute(description = "number of requests sent without waiting for responses to previous requests", reducer = JmxReducerSum.class)
+	public int getPipelinedRequests() {
+		return pipelinedRequests;
+	}
+
+	@JmxAttribute(description = "number of pipelined requests sent again after a server has closed a connection", reducer = JmxReducerSum.class)
+	public int getPipelineResends() {
+		return pipelineResends;
+	}
+
+	@JmxAttribute(description = "number of addresses to which pipelining is disabled", reducer = JmxReducerSum.class)
+	public int getNonPipelinedAddresses() {
+		return nonPipelinedAddresses.size();
+	}
+
+	@JmxOperation(description = "numbers of connections and waiting requests per address")
+	public String getHostPools() {
+		if (hostPools.isEmpty())
+			return "";
+		List<String> result = new ArrayList<>();
+		result.add("SocketAddress,Connections,Connecting,Idle,WaitingRequests");
+		for (HostPool hostPool : hostPools.values()) {
+			result.add(hostPool.address + ", " + hostPool.connections + ", " + hostPool.connecting + ", " +
+				hostPool.getIdleCount() + ", " + hostPool.waiting.size());
+		}
+		return formatListAsMultilineString(result);
+	}
+
 	@JmxAttribute
 	public @Nullable TcpSocket.JmxInspector getSocketStats() {
 		return BaseInspector.lookup(socketInspector, TcpSocket.JmxInspector.class);
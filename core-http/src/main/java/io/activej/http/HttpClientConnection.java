@@ -30,14 +30,14 @@ import io.activej.reactor.Reactor;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 
 import static io.activej.bytebuf.ByteBufStrings.SP;
 import static io.activej.bytebuf.ByteBufStrings.encodeAscii;
 import static io.activej.common.Utils.nullify;
 import static io.activej.csp.supplier.ChannelSuppliers.concat;
 import static io.activej.http.HttpHeaderValue.ofBytes;
-import static io.activej.http.HttpHeaders.CONNECTION;
-import static io.activej.http.HttpHeaders.SEC_WEBSOCKET_KEY;
+import static io.activej.http.HttpHeaders.*;
 import static io.activej.http.HttpMessage.MUST_LOAD_BODY;
 import static io.activej.http.HttpUtils.*;
 import static io.activej.http.WebSocketConstants.HANDSHAKE_FAILED;
@@ -78,6 +78,7 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
  *     "writing" -> "reading"
  *     "reading" -> "closed(null)" [label="received response\n(no keep-alive)"]
  *     "reading" -> "keep-alive" [label="received response"]
+ *     "reading" -> "reading" [label="received response\n(pipelined requests)"]
  *     "keep-alive" -> "taken(null)" [label="reuse connection"]
  *     "taken(null)" -> "writing" [label="send request"]
  *     "keep-alive" -> "closed(null)" [label="expiration"]
@@ -99,6 +100,19 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 	@Nullable HttpClientConnection addressPrev;
 	HttpClientConnection addressNext;
 
+	private @Nullable Http2ClientSession http2;
+
+	// HTTP/1.1 pipelining
+	private boolean keepAliveConfirmed;
+	private boolean pipelinable;
+	private boolean closeRequested;
+	boolean pipelineCandidate;
+	private final ArrayDeque<PipelinedRequest> pipeline = new ArrayDeque<>();
+	private @Nullable PipelinedRequest pipelinedCurrent;
+
+	private boolean headRequest;
+	private boolean bodyless;
+
 	HttpClientConnection(Reactor reactor, HttpClient client, ITcpSocket socket, InetSocketAddress remoteAddress) {
 		super(reactor, socket, client.maxBodySize);
 		this.client = client;
@@ -117,6 +131,19 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		return remoteAddress;
 	}
 
+	/**
+	 * Switches this connection to HTTP/2, after that it may be shared by concurrent requests
+	 */
+	void startHttp2() {
+		assert http2 == null && pool == null;
+		http2 = new Http2ClientSession(this, client);
+		http2.start();
+	}
+
+	boolean isHttp2() {
+		return http2 != null;
+	}
+
 	@Override
 	protected void readMessage() throws MalformedHttpException {
 		readStartLine();
@@ -124,6 +151,16 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 
 	@Override
 	protected void onClosedWithError(Exception e) {
+		if (!pipeline.isEmpty() || pipelinedCurrent != null) {
+			client.disablePipelining(remoteAddress);
+			if (pipelinedCurrent != null && response == null && readBuf == null) {
+				// no part of a response has been received yet, so the request can be safely sent again
+				pipeline.addFirst(pipelinedCurrent);
+				pipelinedCurrent = null;
+				promise = null;
+				return;
+			}
+		}
 		if (inspector != null) {
 			if (e instanceof MalformedHttpException malformed) {
 				inspector.onMalformedHttpResponse(this, malformed, readBuf == null ? EMPTY_BYTE_ARRAY : readBuf.getArray());
@@ -131,6 +168,9 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 				inspector.onHttpError(this, e);
 			}
 		}
+		if (http2 != null) {
+			http2.onConnectionClosed(e);
+		}
 		if (promise != null) {
 			SettablePromise<HttpResponse> promise = this.promise;
 			this.promise = null;
@@ -188,7 +228,8 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		  1.Any response message which "MUST NOT" include a message-body (such as the 1xx, 204, and 304 responses and any response to a HEAD request) is always
 		  terminated by the first empty line after the header fields, regardless of the entity-header fields present in the message.
 		 */
-		if (statusCode < 200 || statusCode == 204 || statusCode == 304) {
+		bodyless = statusCode < 200 || statusCode == 204 || statusCode == 304 || headRequest;
+		if (bodyless) {
 			// Reset Content-Length for the case keep-alive connection
 			contentLength = 0L;
 		}
@@ -198,7 +239,12 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 	protected void onHeader(HttpHeader header, byte[] array, int off, int len) throws MalformedHttpException {
 		assert response != null;
 		if (response.headers.size() >= MAX_HEADERS) throw new MalformedHttpException("Too many headers");
-		response.headers.add(header, ofBytes(array, off, len));
+		if (bodyless && (header == CONTENT_LENGTH || header == TRANSFER_ENCODING)) {
+			// the header describes a body that would have been sent, not this message
+			contentLength = 0L;
+			flags &= ~CHUNKED;
+		}
+		response.headers.addRaw(header, array, off, len);
 	}
 
 	@Override
@@ -300,14 +346,27 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 					cb.setException(HANDSHAKE_FAILED);
 					return;
 				}
+				PerMessageDeflate perMessageDeflate = client.perMessageDeflate;
+				PerMessageDeflate.Negotiated negotiated = null;
+				if (perMessageDeflate != null) {
+					try {
+						negotiated = perMessageDeflate.acceptResponse(res.getHeader(SEC_WEBSOCKET_EXTENSIONS));
+					} catch (MalformedHttpException e) {
+						closeEx(HANDSHAKE_FAILED);
+						cb.setException(HANDSHAKE_FAILED);
+						return;
+					}
+				}
 				int maxWebSocketMessageSize = client.maxWebSocketMessageSize;
 
-				WebSocketFramesToBufs encoder = WebSocketFramesToBufs.create(true);
+				WebSocketFramesToBufs encoder = WebSocketFramesToBufs.create(true,
+					negotiated != null ? perMessageDeflate.createCompressor(negotiated) : null);
 				WebSocketBufsToFrames decoder = WebSocketBufsToFrames.create(
 					maxWebSocketMessageSize,
 					encoder::sendPong,
 					ByteBuf::recycle,
-					false);
+					false,
+					negotiated != null ? perMessageDeflate.createDecompressor(negotiated) : null);
 
 				bindWebSocketTransformers(encoder, decoder);
 
@@ -317,7 +376,8 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 					res.takeBodyStream().transformWith(decoder),
 					buffer.getConsumer().transformWith(encoder),
 					decoder::onProtocolError,
-					maxWebSocketMessageSize
+					maxWebSocketMessageSize,
+					true
 				));
 			})
 			.whenException(e -> closeEx(translateToHttpException(e)));
@@ -363,6 +423,7 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		//noinspection ConstantConditions
 		response.recycle();
 		response = null;
+		pipelinedCurrent = null;
 		if (stashedBufs != null) {
 			stashedBufs.recycle();
 			stashedBufs = null;
@@ -373,28 +434,56 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		}
 
 		if ((flags & KEEP_ALIVE) != 0 &&
-			client.keepAliveTimeoutMillis != 0 &&
 			((flags & CHUNKED) != 0 || contentLength != UNSET_CONTENT_LENGTH)
 		) {
-			flags = 0;
-			socket.read()
-				.subscribe((buf, e) -> {
-					if (e == null) {
-						if (buf != null) {
-							buf.recycle();
-							closeEx(new HttpException("Unexpected read data"));
-						} else {
-							close();
-						}
+			keepAliveConfirmed = true;
+			if (!pipeline.isEmpty()) {
+				readPipelinedResponse();
+				return;
+			}
+			if (client.keepAliveTimeoutMillis != 0) {
+				flags = 0;
+				pipelinable = false;
+				updatePipelineCandidate();
+				keepAlive();
+				return;
+			}
+		}
+		close();
+	}
+
+	private void readPipelinedResponse() {
+		PipelinedRequest pipelined = pipeline.poll();
+		assert pipelined != null;
+		pipelinedCurrent = pipelined;
+		promise = pipelined.promise;
+		flags = pipelined.sent ? BODY_SENT : 0;
+		headRequest = pipelined.request.getMethod() == HttpMethod.HEAD;
+		poolTimestamp = reactor.currentTimeMillis();
+		updatePipelineCandidate();
+		readHttpResponse();
+	}
+
+	/**
+	 * Returns an idle connection to a keep-alive pool, the connection is closed if a server
+	 * sends any data or closes it while it is idle
+	 */
+	void keepAlive() {
+		socket.read()
+			.subscribe((buf, e) -> {
+				if (e == null) {
+					if (buf != null) {
+						buf.recycle();
+						closeEx(new HttpException("Unexpected read data"));
 					} else {
-						closeEx(translateToHttpException(e));
+						close();
 					}
-				});
-			if (isClosed()) return;
-			client.returnToKeepAlivePool(this);
-		} else {
-			close();
-		}
+				} else {
+					closeEx(translateToHttpException(e));
+				}
+			});
+		if (isClosed()) return;
+		client.returnToKeepAlivePool(this);
 	}
 
 	/**
@@ -404,18 +493,15 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 	 */
 	Promise<HttpResponse> send(HttpRequest request) {
 		assert !isClosed();
+		if (http2 != null) return http2.send(request);
 		SettablePromise<HttpResponse> promise = new SettablePromise<>();
 		this.promise = promise;
 		(pool = client.poolReadWrite).addLastNode(this);
 		poolTimestamp = reactor.currentTimeMillis();
+		pipelinable = keepAliveConfirmed && client.isPipelinable(request, remoteAddress);
+		headRequest = request.getMethod() == HttpMethod.HEAD;
 
-		request.headers.addIfAbsent(CONNECTION, () -> {
-			if (++numberOfRequests >= client.maxKeepAliveRequests &&
-				client.maxKeepAliveRequests != 0 || client.keepAliveTimeoutMillis == 0) {
-				return CONNECTION_CLOSE_HEADER;
-			}
-			return CONNECTION_KEEP_ALIVE_HEADER;
-		});
+		addConnectionHeader(request);
 
 		ByteBuf buf = renderHttpMessage(request);
 		if (buf != null) {
@@ -425,10 +511,69 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		}
 		if (!isClosed()) {
 			readHttpResponse();
+			updatePipelineCandidate();
 		}
 		return promise;
 	}
 
+	/**
+	 * Sends an idempotent request while responses to previous requests are still being received.
+	 * Responses are read in the order in which requests have been sent
+	 */
+	Promise<HttpResponse> sendPipelined(HttpRequest request) {
+		assert !isClosed() && pipelineCandidate;
+		PipelinedRequest pipelined = new PipelinedRequest(request);
+		pipeline.add(pipelined);
+
+		addConnectionHeader(request);
+
+		ByteBuf buf = renderHttpMessage(request);
+		assert buf != null;
+		socket.write(buf)
+			.subscribe(($, e) -> {
+				if (isClosed()) return;
+				if (e == null) {
+					pipelined.sent = true;
+					if (pipelinedCurrent == pipelined) {
+						onBodySent();
+					}
+				} else {
+					closeEx(translateToHttpException(e));
+				}
+			});
+		if (!isClosed()) {
+			updatePipelineCandidate();
+		}
+		return pipelined.promise;
+	}
+
+	private void addConnectionHeader(HttpRequest request) {
+		request.headers.addIfAbsent(CONNECTION, () -> {
+			if (++numberOfRequests >= client.maxKeepAliveRequests &&
+				client.maxKeepAliveRequests != 0 || client.keepAliveTimeoutMillis == 0) {
+				closeRequested = true;
+				return CONNECTION_CLOSE_HEADER;
+			}
+			return CONNECTION_KEEP_ALIVE_HEADER;
+		});
+	}
+
+	private void updatePipelineCandidate() {
+		boolean candidate = pipelinable && !closeRequested && pool == client.poolReadWrite &&
+			pipeline.size() + 1 < client.pipeliningDepth;
+		if (candidate != pipelineCandidate) {
+			client.setPipelineCandidate(this, candidate);
+		}
+	}
+
+	/**
+	 * Returns a number of requests which have been sent on this connection
+	 * and are waiting for a response to a previous request
+	 */
+	public int getPipelinedRequests() {
+		return pipeline.size();
+	}
+
 	/**
 	 * After closing this connection it removes it from its connections cache and recycles
 	 * Http response.
@@ -441,7 +586,10 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 			this.promise = null;
 			promise.setException(new AsyncCloseException("Connection closed"));
 		}
-		if (pool == client.poolKeepAlive) {
+		if (http2 != null) {
+			http2.onConnectionClosed(new AsyncCloseException("Connection closed"));
+			client.http2Connections.remove(remoteAddress, this);
+		} else if (pool == client.poolKeepAlive) {
 			AddressLinkedList addresses = client.addresses.get(remoteAddress);
 			addresses.removeNode(this);
 			if (addresses.isEmpty()) {
@@ -454,12 +602,27 @@ public final class HttpClientConnection extends AbstractHttpConnection {
 		//noinspection ConstantConditions
 		pool.removeNode(this);
 
+		client.onConnectionClosed(this);
+		if (!pipeline.isEmpty()) {
+			client.resendPipelined(remoteAddress, pipeline);
+			pipeline.clear();
+		}
 		client.handleShutdown();
 		response = nullify(response, HttpMessage::recycle);
 		readBuf = nullify(readBuf, ByteBuf::recycle);
 		stashedBufs = nullify(stashedBufs, Recyclable::recycle);
 	}
 
+	static final class PipelinedRequest {
+		final HttpRequest request;
+		final SettablePromise<HttpResponse> promise = new SettablePromise<>();
+		boolean sent;
+
+		PipelinedRequest(HttpRequest request) {
+			this.request = request;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return
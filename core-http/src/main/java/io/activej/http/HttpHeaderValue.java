@@ -35,6 +35,34 @@ public abstract class HttpHeaderValue {
 	@Override
 	public abstract String toString();
 
+	/**
+	 * Checks whether this value is equal to a given ASCII string
+	 * without decoding this value into a {@link String}
+	 */
+	public boolean equalsAscii(String value) {
+		ByteBuf buf = getBuf();
+		return regionMatches(buf.array(), buf.head(), buf.readRemaining(), value, false);
+	}
+
+	/**
+	 * Checks whether this value is equal to a given ASCII string, ignoring case,
+	 * without decoding this value into a {@link String}
+	 */
+	public boolean equalsIgnoreCaseAscii(String value) {
+		ByteBuf buf = getBuf();
+		return regionMatches(buf.array(), buf.head(), buf.readRemaining(), value, true);
+	}
+
+	/**
+	 * Checks whether this value is a comma-separated list which contains a given token, ignoring case.
+	 * Parameters of list elements (after {@code ';'}) are ignored, so that
+	 * {@code gzip;q=0.8, br} contains both {@code gzip} and {@code br}
+	 */
+	public boolean containsTokenIgnoreCase(String token) {
+		ByteBuf buf = getBuf();
+		return containsToken(buf.array(), buf.head(), buf.readRemaining(), token);
+	}
+
 	public static HttpHeaderValue of(String string) {
 		return new HttpHeaderValueOfString(string);
 	}
@@ -355,6 +383,16 @@ public abstract class HttpHeaderValue {
 			return offset + encodeAscii(array, offset, string);
 		}
 
+		@Override
+		public boolean equalsAscii(String value) {
+			return string.equals(value);
+		}
+
+		@Override
+		public boolean equalsIgnoreCaseAscii(String value) {
+			return string.equalsIgnoreCase(value);
+		}
+
 		@Override
 		public String toString() {
 			return string;
@@ -365,6 +403,7 @@ public abstract class HttpHeaderValue {
 		private final byte[] array;
 		private final int offset;
 		private final int size;
+		private String string;
 
 		HttpHeaderValueOfBytes(byte[] array, int offset, int size) {
 			this.array = array;
@@ -379,9 +418,9 @@ public abstract class HttpHeaderValue {
 
 		@Override
 		int writeTo(byte[] array, int offset) {
-			if (this.array.length < 10) {
-				for (byte b : this.array) {
-					array[offset++] = b;
+			if (size < 10) {
+				for (int i = this.offset; i < this.offset + size; i++) {
+					array[offset++] = this.array[i];
 				}
 				return offset;
 			} else {
@@ -395,10 +434,56 @@ public abstract class HttpHeaderValue {
 			return ByteBuf.wrap(array, offset, offset + size);
 		}
 
+		@Override
+		public boolean equalsAscii(String value) {
+			return regionMatches(array, offset, size, value, false);
+		}
+
+		@Override
+		public boolean equalsIgnoreCaseAscii(String value) {
+			return regionMatches(array, offset, size, value, true);
+		}
+
+		@Override
+		public boolean containsTokenIgnoreCase(String token) {
+			return containsToken(array, offset, size, token);
+		}
+
 		@Override
 		public String toString() {
-			return decodeAscii(array, offset, size);
+			if (string == null) {
+				string = decodeAscii(array, offset, size);
+			}
+			return string;
 		}
 	}
 
+
+	private static boolean regionMatches(byte[] array, int offset, int size, String value, boolean ignoreCase) {
+		if (size != value.length()) return false;
+		for (int i = 0; i < size; i++) {
+			int b = array[offset + i] & 0xFF;
+			char c = value.charAt(i);
+			if (b == c) continue;
+			if (!ignoreCase) return false;
+			int lowerCase = b | 0x20;
+			if (lowerCase < 'a' || lowerCase > 'z' || lowerCase != (c | 0x20)) return false;
+		}
+		return true;
+	}
+
+	private static boolean containsToken(byte[] array, int offset, int size, String token) {
+		int end = offset + size;
+		int i = offset;
+		while (i < end) {
+			while (i < end && (array[i] == ',' || array[i] == SP || array[i] == HT)) i++;
+			int start = i;
+			while (i < end && array[i] != ',' && array[i] != ';') i++;
+			int tokenEnd = i;
+			while (tokenEnd > start && (array[tokenEnd - 1] == SP || array[tokenEnd - 1] == HT)) tokenEnd--;
+			if (regionMatches(array, start, tokenEnd - start, token, true)) return true;
+			while (i < end && array[i] != ',') i++;
+		}
+		return false;
+	}
 }
@@ -101,6 +101,7 @@ public final class HttpHeaders {
 	public static final HttpHeader X_CONTENT_TYPE_OPTIONS = headers.register("X-Content-Type-Options");
 	public static final HttpHeader X_DO_NOT_TRACK = headers.register("X-Do-Not-Track");
 	public static final HttpHeader X_FORWARDED_FOR = headers.register("X-Forwarded-For");
+	public static final HttpHeader X_FORWARDED_HOST = headers.register("X-Forwarded-Host");
 	public static final HttpHeader X_FORWARDED_PROTO = headers.register("X-Forwarded-Proto");
 	public static final HttpHeader X_FRAME_OPTIONS = headers.register("X-Frame-Options");
 	public static final HttpHeader X_POWERED_BY = headers.register("X-Powered-By");
@@ -116,6 +117,7 @@ public final class HttpHeaders {
 	public static final HttpHeader SEC_WEBSOCKET_KEY = headers.register("Sec-WebSocket-Key");
 	public static final HttpHeader SEC_WEBSOCKET_ACCEPT = headers.register("Sec-WebSocket-Accept");
 	public static final HttpHeader SEC_WEBSOCKET_VERSION = headers.register("Sec-WebSocket-Version");
+	public static final HttpHeader SEC_WEBSOCKET_EXTENSIONS = headers.register("Sec-WebSocket-Extensions");
 
 	public static final HttpHeader ACCEPT_CH = headers.register("Accept-CH");
 	public static final HttpHeader ACCEPT_PATCH = headers.register("Accept-Patch");
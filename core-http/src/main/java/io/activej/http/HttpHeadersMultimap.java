@@ -29,7 +29,9 @@ import static java.lang.Integer.numberOfLeadingZeros;
 final class HttpHeadersMultimap {
 	static final int INITIAL_SIZE = ApplicationSettings.getInt(HttpHeadersMultimap.class, "initialSize", 4);
 
+	// values are either HttpHeaderValue or raw byte arrays with offsets and sizes stored in rawPositions
 	Object[] kvPairs;
+	private int[] rawPositions;
 
 	public HttpHeadersMultimap(int initialSize) {
 		this.kvPairs = new Object[1 << ((32 - numberOfLeadingZeros(initialSize - 1)) + 1)];
@@ -47,6 +49,25 @@ final class HttpHeadersMultimap {
 	}
 
 	public void add(HttpHeader key, HttpHeaderValue value) {
+		int i = slot(key);
+		kvPairs[i + 1] = value;
+	}
+
+	/**
+	 * Adds a header whose value is a slice of a raw message head.
+	 * No value object is created until the header is accessed.
+	 */
+	void addRaw(HttpHeader key, byte[] array, int offset, int size) {
+		int i = slot(key);
+		kvPairs[i + 1] = array;
+		if (rawPositions == null) {
+			rawPositions = new int[kvPairs.length];
+		}
+		rawPositions[i] = offset;
+		rawPositions[i + 1] = size;
+	}
+
+	private int slot(HttpHeader key) {
 		if (size++ > kvPairs.length / 4) {
 			resize();
 		}
@@ -56,12 +77,25 @@ final class HttpHeadersMultimap {
 		for (int i = key.hashCode() & (kvPairs.length - 2); ; i = (i + 2) & (kvPairs.length - 2)) {
 			if (kvPairs[i] == null) {
 				kvPairs[i] = key;
-				kvPairs[i + 1] = value;
-				return;
+				return i;
 			}
 		}
 	}
 
+	/**
+	 * Returns a value of a header at a given index of {@link #kvPairs},
+	 * a value of a raw header is created on first access
+	 */
+	HttpHeaderValue valueAt(int i) {
+		Object value = kvPairs[i + 1];
+		if (value instanceof byte[] array) {
+			HttpHeaderValue headerValue = new HttpHeaderValue.HttpHeaderValueOfBytes(array, rawPositions[i], rawPositions[i + 1]);
+			kvPairs[i + 1] = headerValue;
+			return headerValue;
+		}
+		return (HttpHeaderValue) value;
+	}
+
 	public void addIfAbsent(HttpHeader key, HttpHeaderValue value) {
 		HttpHeaderValue existing = get(key);
 		if (existing != null) return;
@@ -80,12 +114,18 @@ final class HttpHeadersMultimap {
 		int beforeResize = this.size;
 
 		Object[] oldKvPairs = this.kvPairs;
+		int[] oldRawPositions = this.rawPositions;
 		this.kvPairs = new Object[this.kvPairs.length * 4];
+		this.rawPositions = null;
 		for (int i = 0; i != oldKvPairs.length; i += 2) {
 			HttpHeader k = (HttpHeader) oldKvPairs[i];
 			if (k != null) {
-				HttpHeaderValue v = (HttpHeaderValue) oldKvPairs[i + 1];
-				add(k, v);
+				Object v = oldKvPairs[i + 1];
+				if (v instanceof byte[] array) {
+					addRaw(k, array, oldRawPositions[i], oldRawPositions[i + 1]);
+				} else {
+					add(k, (HttpHeaderValue) v);
+				}
 			}
 		}
 
@@ -101,7 +141,7 @@ final class HttpHeadersMultimap {
 				return null;
 			}
 			if (k.equals(key)) {
-				return (HttpHeaderValue) kvPairs[i + 1];
+				return valueAt(i);
 			}
 		}
 	}
@@ -127,7 +167,7 @@ final class HttpHeadersMultimap {
 							HttpHeader k = (HttpHeader) kvPairs[i];
 							if (k != null) {
 								this.k = k;
-								this.v = (HttpHeaderValue) kvPairs[i + 1];
+								this.v = valueAt(i);
 								i += 2;
 								return;
 							}
@@ -162,7 +202,7 @@ final class HttpHeadersMultimap {
 				continue;
 			}
 			try {
-				if (!predicate.test(k, (HttpHeaderValue) kvPairs[i + 1])) {
+				if (!predicate.test(k, valueAt(i))) {
 					break;
 				}
 			} catch (MalformedHttpException ignored) {
@@ -179,7 +219,7 @@ final class HttpHeadersMultimap {
 			}
 			if (k.equals(header)) {
 				try {
-					if (!predicate.test((HttpHeaderValue) kvPairs[i + 1])) {
+					if (!predicate.test(valueAt(i))) {
 						break;
 					}
 				} catch (MalformedHttpException ignored) {
@@ -229,6 +229,16 @@ public abstract class HttpMessage {
 		return headerValue != null ? headerValue.toString() : null;
 	}
 
+	/**
+	 * Returns a value of a given header, which can be compared with
+	 * {@link HttpHeaderValue#equalsIgnoreCaseAscii(String)} and similar methods
+	 * without decoding it into a {@link String}
+	 */
+	public @Nullable HttpHeaderValue getHeaderValue(HttpHeader header) {
+		if (CHECKS) checkState(!isRecycled());
+		return headers.get(header);
+	}
+
 	public @Nullable ByteBuf getHeaderBuf(HttpHeader header) {
 		if (CHECKS) checkState(!isRecycled());
 		HttpHeaderValue headerBuf = headers.get(header);
@@ -486,7 +496,7 @@ public abstract class HttpMessage {
 		for (int i = 0; i < headers.kvPairs.length - 1; i += 2) {
 			HttpHeader k = (HttpHeader) headers.kvPairs[i];
 			if (k != null) {
-				HttpHeaderValue v = (HttpHeaderValue) headers.kvPairs[i + 1];
+				HttpHeaderValue v = headers.valueAt(i);
 				array[offset++] = CR;
 				array[offset++] = LF;
 				offset = k.writeTo(array, offset);
@@ -509,7 +519,7 @@ public abstract class HttpMessage {
 		for (int i = 0; i < headers.kvPairs.length - 1; i += 2) {
 			HttpHeader k = (HttpHeader) headers.kvPairs[i];
 			if (k != null) {
-				HttpHeaderValue v = (HttpHeaderValue) headers.kvPairs[i + 1];
+				HttpHeaderValue v = headers.valueAt(i);
 				// CR,LF,header,": ",value
 				size += 2 + k.size() + 2 + v.estimateSize();
 			}
@@ -18,6 +18,7 @@ package io.activej.http;
 
 import io.activej.bytebuf.ByteBuf;
 import io.activej.common.Checks;
+import io.activej.common.MemSize;
 import io.activej.http.HttpHeaderValue.HttpHeaderValueOfSimpleCookies;
 import io.activej.http.MultipartByteBufsDecoder.AsyncMultipartDataHandler;
 import io.activej.promise.Promise;
@@ -26,6 +27,7 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -58,6 +60,9 @@ public final class HttpRequest extends HttpMessage implements ToPromise<HttpRequ
 	private final UrlParser url;
 	private final HttpServerConnection connection;
 	private InetAddress remoteAddress;
+	private String[] pathParameterNames;
+	private int[] pathParameterOffsets;
+	private int pathParametersSize;
 	private Map<String, String> pathParameters;
 	private Map<String, String> queryParameters;
 	private Map<String, String> postParameters;
@@ -205,6 +210,16 @@ public final class HttpRequest extends HttpMessage implements ToPromise<HttpRequ
 		return url.getQueryParameter(key);
 	}
 
+	public boolean hasQueryParameter(String key) {
+		if (CHECKS) checkState(!isRecycled());
+		return url.hasQueryParameter(key);
+	}
+
+	public boolean isQueryParameterEqualTo(String key, String value) {
+		if (CHECKS) checkState(!isRecycled());
+		return url.isQueryParameterEqualTo(key, value);
+	}
+
 	public List<String> getQueryParameters(String key) {
 		if (CHECKS) checkState(!isRecycled());
 		return url.getQueryParameters(key);
@@ -250,7 +265,14 @@ public final class HttpRequest extends HttpMessage implements ToPromise<HttpRequ
 
 	public Map<String, String> getPathParameters() {
 		if (CHECKS) checkState(!isRecycled());
-		return pathParameters != null ? pathParameters : Map.of();
+		if (pathParameters == null) {
+			if (pathParametersSize == 0) return Map.of();
+			pathParameters = new HashMap<>();
+			for (int i = 0; i < pathParametersSize; i++) {
+				pathParameters.put(pathParameterNames[i], decodePathParameter(i));
+			}
+		}
+		return pathParameters;
 	}
 
 	public String getPathParameter(String key) {
@@ -260,11 +282,31 @@ public final class HttpRequest extends HttpMessage implements ToPromise<HttpRequ
 			if (pathParameter != null) {
 				return pathParameter;
 			}
+		} else {
+			for (int i = pathParametersSize - 1; i >= 0; i--) {
+				if (pathParameterNames[i].equals(key)) {
+					return decodePathParameter(i);
+				}
+			}
 		}
 		throw new IllegalArgumentException("No path parameter '" + key + "' found");
 	}
 
+	private String decodePathParameter(int index) {
+		String value = url.decodeUrlPart(pathParameterOffsets[index * 2], pathParameterOffsets[index * 2 + 1]);
+		assert value != null : "Url part has been validated by a router";
+		return value;
+	}
+
 	public Promise<Void> handleMultipart(AsyncMultipartDataHandler multipartDataHandler) {
+		return handleMultipart(multipartDataHandler, MultipartByteBufsDecoder.MAX_FIELD_SIZE, MultipartByteBufsDecoder.MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Streams parts of a multipart body to consumers provided by a given handler,
+	 * failing if any field or file part exceeds a given maximum size (zero means unlimited)
+	 */
+	public Promise<Void> handleMultipart(AsyncMultipartDataHandler multipartDataHandler, MemSize maxFieldSize, MemSize maxFileSize) {
 		if (CHECKS) checkState(!isRecycled());
 		String contentType = getHeader(CONTENT_TYPE);
 		if (contentType == null || !contentType.startsWith("multipart/form-data; boundary=")) {
@@ -274,42 +316,45 @@ public final class HttpRequest extends HttpMessage implements ToPromise<HttpRequ
 		if (boundary.startsWith("\"") && boundary.endsWith("\"")) {
 			boundary = boundary.substring(1, boundary.length() - 1);
 		}
-		return MultipartByteBufsDecoder.create(boundary)
+		return MultipartByteBufsDecoder.builder(boundary)
+			.withMaxFieldSize(maxFieldSize)
+			.withMaxFileSize(maxFileSize)
+			.build()
 			.split(takeBodyStream(), multipartDataHandler);
 	}
 
-	int getPos() {
-		if (CHECKS) checkState(!isRecycled());
-		return url.pos;
-	}
-
-	void setPos(int pos) {
-		if (CHECKS) checkState(!isRecycled());
-		url.pos = (short) pos;
-	}
-
 	public String getRelativePath() {
 		if (CHECKS) checkState(!isRecycled());
 		String partialPath = url.getPartialPath();
 		return partialPath.startsWith("/") ? partialPath.substring(1) : partialPath; // strip first '/'
 	}
 
-	String pollUrlPart() {
+	/**
+	 * Adds a path parameter whose value is stored as offsets of a raw url part and is decoded lazily
+	 */
+	void putPathParameter(String key, int start, int end) {
 		if (CHECKS) checkState(!isRecycled());
-		return url.pollUrlPart();
-	}
-
-	void removePathParameter(String key) {
-		if (CHECKS) checkState(!isRecycled());
-		pathParameters.remove(key);
+		if (pathParameterNames == null) {
+			pathParameterNames = new String[4];
+			pathParameterOffsets = new int[8];
+		} else if (pathParametersSize == pathParameterNames.length) {
+			pathParameterNames = Arrays.copyOf(pathParameterNames, pathParametersSize * 2);
+			pathParameterOffsets = Arrays.copyOf(pathParameterOffsets, pathParametersSize * 4);
+		}
+		pathParameterNames[pathParametersSize] = key;
+		pathParameterOffsets[pathParametersSize * 2] = start;
+		pathParameterOffsets[pathParametersSize * 2 + 1] = end;
+		pathParametersSize++;
+		pathParameters = null;
 	}
 
-	void putPathParameter(String key, String value) {
+	/**
+	 * Removes the most recently added path parameter
+	 */
+	void removePathParameter() {
 		if (CHECKS) checkState(!isRecycled());
-		if (pathParameters == null) {
-			pathParameters = new HashMap<>();
-		}
-		pathParameters.put(key, value);
+		pathParameterNames[--pathParametersSize] = null;
+		pathParameters = null;
 	}
 
 	@Override
@@ -27,6 +27,7 @@ import io.activej.jmx.stats.EventStats;
 import io.activej.jmx.stats.ExceptionStats;
 import io.activej.net.AbstractReactiveServer;
 import io.activej.net.socket.tcp.ITcpSocket;
+import io.activej.net.socket.tcp.SslTcpSocket;
 import io.activej.promise.Promise;
 import io.activej.promise.SettableCallback;
 import io.activej.promise.SettablePromise;
@@ -34,10 +35,15 @@ import io.activej.reactor.nio.NioReactor;
 import io.activej.reactor.schedule.ScheduledRunnable;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Executor;
 
+import static io.activej.common.Checks.checkArgument;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 /**
@@ -53,6 +59,10 @@ public final class HttpServer extends AbstractReactiveServer {
 	public static final MemSize MAX_BODY_SIZE = ApplicationSettings.getMemSize(HttpServer.class, "maxBodySize", MemSize.ZERO);
 	public static final MemSize MAX_WEB_SOCKET_MESSAGE_SIZE = ApplicationSettings.getMemSize(HttpServer.class, "maxWebSocketMessageSize", MemSize.megabytes(1));
 	public static final int MAX_KEEP_ALIVE_REQUESTS = ApplicationSettings.getInt(HttpServer.class, "maxKeepAliveRequests", 0);
+	public static final int HTTP2_MAX_CONCURRENT_STREAMS = ApplicationSettings.getInt(HttpServer.class, "http2MaxConcurrentStreams", 100);
+	public static final MemSize HTTP2_INITIAL_WINDOW_SIZE = ApplicationSettings.getMemSize(HttpServer.class, "http2InitialWindowSize", MemSize.kilobytes(256));
+
+	private static final String[] APPLICATION_PROTOCOLS = {Http2Constants.ALPN_H2, Http2Constants.ALPN_HTTP_1_1};
 
 	private final AsyncServlet servlet;
 	private HttpExceptionFormatter errorFormatter = HttpExceptionFormatter.COMMON_FORMATTER;
@@ -65,6 +75,11 @@ public final class HttpServer extends AbstractReactiveServer {
 	int maxWebSocketMessageSize = MAX_WEB_SOCKET_MESSAGE_SIZE.toInt();
 	int maxKeepAliveRequests = MAX_KEEP_ALIVE_REQUESTS;
 
+	// HTTP/2
+	boolean http2Enabled;
+	int http2MaxConcurrentStreams = HTTP2_MAX_CONCURRENT_STREAMS;
+	int http2InitialWindowSize = HTTP2_INITIAL_WINDOW_SIZE.toInt();
+
 	final ConnectionsLinkedList poolNew = new ConnectionsLinkedList();
 	final ConnectionsLinkedList poolReadWrite = new ConnectionsLinkedList();
 	final ConnectionsLinkedList poolServing = new ConnectionsLinkedList();
@@ -301,6 +316,38 @@ public final class HttpServer extends AbstractReactiveServer {
 			HttpServer.this.inspector = inspector;
 			return this;
 		}
+
+		/**
+		 * Enables HTTP/2 support.
+		 * <p>
+		 * HTTP/2 is negotiated with ALPN on SSL listen addresses,
+		 * on plain listen addresses HTTP/2 is used if a client sends
+		 * an HTTP/2 connection preface (prior knowledge).
+		 */
+		public Builder withHttp2Enabled(boolean http2Enabled) {
+			checkNotBuilt(this);
+			HttpServer.this.http2Enabled = http2Enabled;
+			return this;
+		}
+
+		public Builder withHttp2MaxConcurrentStreams(int maxConcurrentStreams) {
+			checkNotBuilt(this);
+			checkArgument(maxConcurrentStreams > 0, "Maximum number of concurrent streams should be positive");
+			HttpServer.this.http2MaxConcurrentStreams = maxConcurrentStreams;
+			return this;
+		}
+
+		/**
+		 * Sets a flow control window of each HTTP/2 stream, a window of a connection
+		 * is 4 times larger
+		 */
+		public Builder withHttp2InitialWindowSize(MemSize initialWindowSize) {
+			checkNotBuilt(this);
+			checkArgument(initialWindowSize.toLong() >= 65535 && initialWindowSize.toLong() <= Integer.MAX_VALUE,
+				"Initial window size should be in range [65535, 2^31-1]");
+			HttpServer.this.http2InitialWindowSize = initialWindowSize.toInt();
+			return this;
+		}
 	}
 
 	public Duration getKeepAliveTimeout() {
@@ -342,6 +389,19 @@ public final class HttpServer extends AbstractReactiveServer {
 		});
 	}
 
+	@Override
+	protected ITcpSocket wrapSslSocket(ITcpSocket socket, SSLContext sslContext, Executor sslExecutor) {
+		if (!http2Enabled) {
+			return super.wrapSslSocket(socket, sslContext, sslExecutor);
+		}
+		SSLEngine engine = sslContext.createSSLEngine();
+		engine.setUseClientMode(false);
+		SSLParameters parameters = engine.getSSLParameters();
+		parameters.setApplicationProtocols(APPLICATION_PROTOCOLS);
+		engine.setSSLParameters(parameters);
+		return SslTcpSocket.create(reactor, socket, engine, sslExecutor);
+	}
+
 	@Override
 	protected void serve(ITcpSocket socket, InetAddress remoteAddress) {
 		if (expiredConnectionsCheck == null) {
@@ -16,6 +16,7 @@
 
 package io.activej.http;
 
+import io.activej.async.exception.AsyncCloseException;
 import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
 import io.activej.common.ApplicationSettings;
@@ -38,7 +39,7 @@ import static io.activej.bytebuf.ByteBufStrings.*;
 import static io.activej.common.Utils.nullify;
 import static io.activej.common.exception.FatalErrorHandler.handleError;
 import static io.activej.csp.supplier.ChannelSuppliers.concat;
-import static io.activej.http.HttpHeaderValue.ofBytes;
+import static io.activej.http.Http2Constants.CONNECTION_PREFACE;
 import static io.activej.http.HttpHeaderValue.ofDecimal;
 import static io.activej.http.HttpHeaders.*;
 import static io.activej.http.HttpMessage.MUST_LOAD_BODY;
@@ -86,6 +87,8 @@ public final class HttpServerConnection extends AbstractHttpConnection {
 
 	private @Nullable ByteBuf writeBuf;
 
+	private @Nullable Http2ServerSession http2;
+
 	private static final byte[] EXPECT_100_CONTINUE = encodeAscii("100-continue");
 	private static final byte[] EXPECT_RESPONSE_CONTINUE = encodeAscii("""
 		HTTP/1.1 100 Continue\r
@@ -142,6 +145,7 @@ public final class HttpServerConnection extends AbstractHttpConnection {
 
 	@Override
 	protected void readMessage() throws MalformedHttpException {
+		if (server.http2Enabled && pool == server.poolNew && tryStartHttp2()) return;
 		boolean continueReading;
 		do {
 			request = nullify(request, HttpMessage::recycle); // nullify any previous request
@@ -162,11 +166,37 @@ public final class HttpServerConnection extends AbstractHttpConnection {
 		}
 	}
 
+	/**
+	 * Checks whether a connection starts with an HTTP/2 connection preface,
+	 * either after ALPN negotiation or with a prior knowledge
+	 */
+	private boolean tryStartHttp2() {
+		byte[] array = readBuf.array();
+		int head = readBuf.head();
+		int size = min(readBuf.readRemaining(), CONNECTION_PREFACE.length);
+		for (int i = 0; i < size; i++) {
+			if (array[head + i] != CONNECTION_PREFACE[i]) return false;
+		}
+		if (size < CONNECTION_PREFACE.length) {
+			socket.read().subscribe(readMessageConsumer);
+			return true;
+		}
+		ByteBuf readBuf = this.readBuf;
+		this.readBuf = null;
+		stashedBufs = nullify(stashedBufs, Recyclable::recycle);
+		http2 = new Http2ServerSession(this, server, servlet, remoteAddress);
+		http2.start(readBuf);
+		return true;
+	}
+
 	@Override
 	protected void onClosedWithError(Exception e) {
 		if (inspector != null) {
 			inspector.onHttpError(this, e);
 		}
+		if (http2 != null) {
+			http2.onConnectionClosed(e);
+		}
 	}
 
 	@Override
@@ -308,7 +338,7 @@ public final class HttpServerConnection extends AbstractHttpConnection {
 		if (request.headers.size() >= MAX_HEADERS) {
 			throw new MalformedHttpException("Too many headers");
 		}
-		request.headers.add(header, ofBytes(array, off, len));
+		request.headers.addRaw(header, array, off, len);
 	}
 
 	private void writeHttpResponse(HttpResponse httpResponse) {
@@ -527,7 +557,10 @@ public final class HttpServerConnection extends AbstractHttpConnection {
 
 	@Override
 	protected void onClosed() {
-		if (pool != server.poolServing) {
+		if (http2 != null) {
+			http2.onConnectionClosed(new AsyncCloseException("Connection closed"));
+			stashedBufs = nullify(stashedBufs, Recyclable::recycle);
+		} else if (pool != server.poolServing) {
 			request = nullify(request, HttpMessage::recycle);
 			readBuf = nullify(readBuf, ByteBuf::recycle);
 			stashedBufs = nullify(stashedBufs, Recyclable::recycle);
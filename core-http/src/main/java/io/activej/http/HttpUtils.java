@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 import static io.activej.bytebuf.ByteBufStrings.*;
 import static io.activej.http.HttpHeaders.HOST;
@@ -388,6 +389,42 @@ public final class HttpUtils {
 		}
 	}
 
+	/**
+	 * Generates a strong entity tag from a length and a CRC32 checksum of a content
+	 */
+	static String generateEtag(byte[] array, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(array, offset, length);
+		return "\"" + Integer.toHexString(length) + '-' + Long.toHexString(crc.getValue()) + '"';
+	}
+
+	/**
+	 * Derives an entity tag of an encoded representation from an entity tag of an identity representation
+	 */
+	static String getEncodedEtag(String etag, String encoding) {
+		return etag.endsWith("\"") ?
+			etag.substring(0, etag.length() - 1) + '-' + encoding + '"' :
+			etag + '-' + encoding;
+	}
+
+	/**
+	 * Checks whether a value of {@code If-None-Match} header matches a given entity tag, using a weak comparison
+	 */
+	static boolean isEtagMatched(String ifNoneMatch, String etag) {
+		String opaqueTag = stripWeakPrefix(etag);
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || stripWeakPrefix(tag).equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeakPrefix(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
 	static String getWebSocketAnswer(String key) {
 		String answer;
 		try {
@@ -223,11 +223,25 @@ public interface IWebSocket extends AsyncCloseable {
 		private final FrameType type;
 		private final ByteBuf payload;
 		private final boolean isLastFrame;
+		private final boolean encoded;
 
 		Frame(FrameType type, ByteBuf payload, boolean isLastFrame) {
+			this(type, payload, isLastFrame, false);
+		}
+
+		private Frame(FrameType type, ByteBuf payload, boolean isLastFrame, boolean encoded) {
 			this.type = type;
 			this.payload = payload;
 			this.isLastFrame = isLastFrame;
+			this.encoded = encoded;
+		}
+
+		/**
+		 * A frame whose payload is a complete frame already encoded for the wire,
+		 * it is passed to the network as is
+		 */
+		static Frame encoded(ByteBuf encodedFrame) {
+			return new Frame(FrameType.BINARY, encodedFrame, true, true);
 		}
 
 		public static Frame text(ByteBuf buf) {
@@ -262,6 +276,10 @@ public interface IWebSocket extends AsyncCloseable {
 			return isLastFrame;
 		}
 
+		boolean isEncoded() {
+			return encoded;
+		}
+
 		@Override
 		public void recycle() {
 			payload.recycle();
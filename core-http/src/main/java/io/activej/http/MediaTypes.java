@@ -77,6 +77,7 @@ public final class MediaTypes {
 	public static final MediaType XML = register("text/xml", "xml");
 	public static final MediaType XHTML = register("text/xhtml+xml", "xhtml");
 	public static final MediaType GV = register("text/vnd.graphviz", "gv"); // https://www.iana.org/assignments/media-types/text/vnd.graphviz
+	public static final MediaType EVENT_STREAM = register("text/event-stream");
 
 	public static final MediaType BMP = register("image/bmp", "bmp");
 	public static final MediaType ICO = register("image/vnd.microsoft.icon", "ico");
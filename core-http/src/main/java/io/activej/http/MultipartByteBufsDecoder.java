@@ -20,52 +20,112 @@ import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
 import io.activej.bytebuf.ByteBufs;
 import io.activej.common.ApplicationSettings;
+import io.activej.common.MemSize;
+import io.activej.common.builder.AbstractBuilder;
 import io.activej.common.exception.InvalidSizeException;
 import io.activej.common.exception.MalformedDataException;
 import io.activej.common.recycle.Recyclable;
 import io.activej.common.ref.Ref;
+import io.activej.common.ref.RefLong;
 import io.activej.csp.binary.BinaryChannelSupplier;
 import io.activej.csp.binary.decoder.ByteBufsDecoder;
-import io.activej.csp.binary.decoder.ByteBufsDecoders;
 import io.activej.csp.consumer.ChannelConsumer;
 import io.activej.csp.consumer.ChannelConsumers;
+import io.activej.csp.file.ChannelFileWriter;
 import io.activej.csp.supplier.ChannelSupplier;
 import io.activej.http.MultipartByteBufsDecoder.MultipartFrame;
 import io.activej.promise.Promise;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static io.activej.bytebuf.ByteBufStrings.CR;
+import static io.activej.bytebuf.ByteBufStrings.LF;
+import static io.activej.common.Checks.checkArgument;
 import static io.activej.common.MemSize.kilobytes;
 import static io.activej.common.Utils.nullify;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.stream.Collectors.toMap;
 
 /**
  * Util class that allows to decode some binary channel (mainly, the request body stream) into a channel of multipart frames.
+ * <p>
+ * Parts are streamed, a body is read from a source only as fast as consumers of parts accept data,
+ * so a file part may be written directly to a file (see {@link AsyncMultipartDataHandler#tempFiles})
+ * without accumulating it in memory.
  */
 public final class MultipartByteBufsDecoder implements ByteBufsDecoder<MultipartFrame> {
 	private static final int MAX_META_SIZE = ApplicationSettings.getMemSize(MultipartByteBufsDecoder.class, "maxMetaBuffer", kilobytes(4)).toInt();
-	private static final ByteBufsDecoder<ByteBuf> OF_CRLF_DECODER = ByteBufsDecoders.ofCrlfTerminatedBytes();
+	public static final MemSize MAX_FIELD_SIZE = ApplicationSettings.getMemSize(MultipartByteBufsDecoder.class, "maxFieldSize", MemSize.ZERO);
+	public static final MemSize MAX_FILE_SIZE = ApplicationSettings.getMemSize(MultipartByteBufsDecoder.class, "maxFileSize", MemSize.ZERO);
+
+	private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long CR_BYTES = 0x0D0D0D0D0D0D0D0DL;
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
 
 	private @Nullable List<String> readingHeaders = null;
 
 	private final byte[] boundary;
 	private final byte[] lastBoundary;
 
+	private long maxFieldSize = MAX_FIELD_SIZE.toLong();
+	private long maxFileSize = MAX_FILE_SIZE.toLong();
+
 	private MultipartByteBufsDecoder(String boundary) {
 		this.boundary = ("--" + boundary).getBytes(UTF_8);
 		this.lastBoundary = ("--" + boundary + "--").getBytes(UTF_8);
 	}
 
 	public static MultipartByteBufsDecoder create(String boundary) {
-		return new MultipartByteBufsDecoder(boundary);
+		return builder(boundary).build();
+	}
+
+	public static Builder builder(String boundary) {
+		return new MultipartByteBufsDecoder(boundary).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, MultipartByteBufsDecoder> {
+		private Builder() {}
+
+		/**
+		 * Sets a maximum size of a single field part when it is {@link #split split}.
+		 * Zero means that size is unlimited, which is a default.
+		 */
+		public Builder withMaxFieldSize(MemSize maxFieldSize) {
+			checkNotBuilt(this);
+			checkArgument(maxFieldSize.toLong() >= 0, "Maximum field size should not be negative");
+			MultipartByteBufsDecoder.this.maxFieldSize = maxFieldSize.toLong();
+			return this;
+		}
+
+		/**
+		 * Sets a maximum size of a single file part when it is {@link #split split}.
+		 * Zero means that size is unlimited, which is a default.
+		 */
+		public Builder withMaxFileSize(MemSize maxFileSize) {
+			checkNotBuilt(this);
+			checkArgument(maxFileSize.toLong() >= 0, "Maximum file size should not be negative");
+			MultipartByteBufsDecoder.this.maxFileSize = maxFileSize.toLong();
+			return this;
+		}
+
+		@Override
+		protected MultipartByteBufsDecoder doBuild() {
+			return MultipartByteBufsDecoder.this;
+		}
 	}
 
 	/**
@@ -109,6 +169,8 @@ public final class MultipartByteBufsDecoder implements ByteBufsDecoder<Multipart
 			.then(contentDispositionFields -> {
 				String fieldName = contentDispositionFields.get("name");
 				String fileName = contentDispositionFields.get("filename");
+				long maxSize = fileName == null ? maxFieldSize : maxFileSize;
+				RefLong size = new RefLong(0);
 				Ref<MultipartFrame> lastRef = new Ref<>();
 				return frames
 					.until(f -> {
@@ -119,7 +181,15 @@ public final class MultipartByteBufsDecoder implements ByteBufsDecoder<Multipart
 						return false;
 					})
 					.filter(MultipartFrame::isData)
-					.map(MultipartFrame::getData)
+					.map(frame -> {
+						ByteBuf data = frame.getData();
+						if (maxSize != 0 && size.inc(data.readRemaining()) > maxSize) {
+							data.recycle();
+							throw new InvalidSizeException("Size of multipart " + (fileName == null ? "field" : "file") +
+								" '" + fieldName + "' exceeds " + maxSize + " bytes");
+						}
+						return data;
+					})
 					.streamTo(ChannelConsumers.ofPromise(fileName == null ?
 						dataHandler.handleField(fieldName) :
 						dataHandler.handleFile(fieldName, fileName)
@@ -160,7 +230,7 @@ public final class MultipartByteBufsDecoder implements ByteBufsDecoder<Multipart
 		}
 
 		while (true) {
-			ByteBuf buf = OF_CRLF_DECODER.tryDecode(bufs);
+			ByteBuf buf = takeCrlfTerminated(bufs);
 
 			if (buf == null) {
 				if (isLastBoundary(bufs)) {
@@ -223,6 +293,53 @@ public final class MultipartByteBufsDecoder implements ByteBufsDecoder<Multipart
 		return MultipartFrame.of(data);
 	}
 
+	/**
+	 * Takes bytes up to the first CRLF, searching for CR bytes a word (8 bytes) at a time
+	 */
+	private static @Nullable ByteBuf takeCrlfTerminated(ByteBufs bufs) {
+		int offset = 0;
+		boolean crAtEnd = false;
+		for (int n = 0; n < bufs.remainingBufs(); n++) {
+			ByteBuf buf = bufs.peekBuf(n);
+			byte[] array = buf.array();
+			int head = buf.head();
+			int tail = buf.tail();
+			if (head == tail) continue;
+			if (crAtEnd && array[head] == LF) {
+				return takeLine(bufs, offset - 1);
+			}
+			for (int i = indexOfCr(array, head, tail); i != -1; i = indexOfCr(array, i + 1, tail)) {
+				if (i + 1 < tail && array[i + 1] == LF) {
+					return takeLine(bufs, offset + i - head);
+				}
+			}
+			crAtEnd = array[tail - 1] == CR;
+			offset += tail - head;
+		}
+		return null;
+	}
+
+	private static ByteBuf takeLine(ByteBufs bufs, int length) {
+		ByteBuf buf = bufs.takeExactSize(length + 2);
+		buf.moveTail(-2);
+		return buf;
+	}
+
+	private static int indexOfCr(byte[] array, int from, int to) {
+		int i = from;
+		for (; i <= to - Long.BYTES; i += Long.BYTES) {
+			long word = (long) LONG_VIEW.get(array, i) ^ CR_BYTES;
+			long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < to; i++) {
+			if (array[i] == CR) return i;
+		}
+		return -1;
+	}
+
 	private MultipartFrame getFalseTermFrame(ByteBuf term) {
 		ByteBuf buf = ByteBufPool.allocate(term.readRemaining() + 2);
 		buf.writeByte((byte) '\r');
@@ -338,6 +455,27 @@ public final class MultipartByteBufsDecoder implements ByteBufsDecoder<Multipart
 			};
 		}
 
+		/**
+		 * Collects fields into a given map and writes each file part into a new temporary file in a given directory,
+		 * so that large files are not accumulated in memory. Paths of completely written files are put into
+		 * a given map by field names, these files should be deleted by a caller.
+		 * A file which has not been written completely is deleted.
+		 * <p>
+		 * Files may also be uploaded directly to a file system, e.g. with {@code file(fileSystem::upload)}
+		 */
+		static AsyncMultipartDataHandler tempFiles(
+			Map<String, String> fields, Map<String, Path> files, Executor executor, Path directory
+		) {
+			return fieldsToMap(fields, (fieldName, fileName) -> Promise.ofBlocking(executor,
+					() -> Files.createTempFile(directory, "multipart", ".tmp"))
+				.then(path -> ChannelFileWriter.open(executor, path, WRITE)
+					.whenException(() -> Promise.ofBlocking(executor, () -> Files.deleteIfExists(path)))
+					.map(writer -> writer
+						.withAcknowledgement(ack -> ack
+							.whenResult(() -> files.put(fieldName, path))
+							.whenException(() -> Promise.ofBlocking(executor, () -> Files.deleteIfExists(path)))))));
+		}
+
 		static AsyncMultipartDataHandler file(Function<String, Promise<? extends ChannelConsumer<ByteBuf>>> uploader) {
 			return files(($, fileName) -> uploader.apply(fileName));
 		}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.common.ApplicationSettings;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.jmx.api.ConcurrentJmxBean;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.http.WebSocketConstants.INVALID_COMPRESSED_DATA;
+import static io.activej.http.WebSocketConstants.MESSAGE_TOO_BIG;
+
+/**
+ * Settings of a 'permessage-deflate' web socket extension (RFC 7692).
+ * <p>
+ * If set on a {@link HttpClient} or a {@link WebSocketServlet}, the extension is negotiated
+ * during an opening handshake, and messages are transparently compressed and decompressed.
+ * <p>
+ * Compression contexts are taken over between messages unless {@code no_context_takeover} is negotiated.
+ * Without a context takeover, {@link Deflater}s and {@link Inflater}s are held only while a message
+ * is being processed and are pooled per reactor thread, so that a large number of mostly idle
+ * web sockets do not hold native compression buffers.
+ * <p>
+ * {@link Deflater} always uses a window of 15 bits, so the only window size that may be limited
+ * is a window size of a peer compressor. Offers which require a smaller window of a local compressor
+ * are declined.
+ */
+public final class PerMessageDeflate implements ConcurrentJmxBean {
+	public static final String EXTENSION_NAME = "permessage-deflate";
+
+	public static final int DEFAULT_MIN_MESSAGE_SIZE = ApplicationSettings.getInt(PerMessageDeflate.class, "minMessageSize", 64);
+	public static final int DEFAULT_POOL_SIZE = ApplicationSettings.getInt(PerMessageDeflate.class, "poolSize", 256);
+
+	private static final int MIN_WINDOW_BITS = 8;
+	private static final int MAX_WINDOW_BITS = 15;
+
+	// rfc 7692 section 7.2.1
+	private static final byte[] EMPTY_BLOCK_TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+	private static final ThreadLocal<ArrayDeque<Deflater>> DEFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+	private static final ThreadLocal<ArrayDeque<Inflater>> INFLATERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private int minMessageSize = DEFAULT_MIN_MESSAGE_SIZE;
+	private boolean noContextTakeover;
+	private boolean peerNoContextTakeover;
+	private int peerMaxWindowBits = MAX_WINDOW_BITS;
+
+	// region stats
+	private final LongAdder compressedMessages = new LongAdder();
+	private final LongAdder uncompressedMessages = new LongAdder();
+	private final LongAdder bytesBeforeCompression = new LongAdder();
+	private final LongAdder bytesAfterCompression = new LongAdder();
+	private final LongAdder bytesBeforeDecompression = new LongAdder();
+	private final LongAdder bytesAfterDecompression = new LongAdder();
+	// endregion
+
+	private PerMessageDeflate() {
+	}
+
+	public static PerMessageDeflate create() {
+		return builder().build();
+	}
+
+	public static Builder builder() {
+		return new PerMessageDeflate().new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, PerMessageDeflate> {
+		private Builder() {}
+
+		public Builder withCompressionLevel(int compressionLevel) {
+			checkNotBuilt(this);
+			checkArgument(compressionLevel == Deflater.DEFAULT_COMPRESSION || compressionLevel >= 0 && compressionLevel <= 9,
+				"Compression level should be in range [0, 9]");
+			PerMessageDeflate.this.compressionLevel = compressionLevel;
+			return this;
+		}
+
+		/**
+		 * Sets a minimal size of a message to be compressed, smaller messages are sent as is
+		 */
+		public Builder withMinMessageSize(int minMessageSize) {
+			checkNotBuilt(this);
+			checkArgument(minMessageSize >= 0, "Min message size should not be negative");
+			PerMessageDeflate.this.minMessageSize = minMessageSize;
+			return this;
+		}
+
+		/**
+		 * Resets a compression context after each sent message
+		 */
+		public Builder withNoContextTakeover() {
+			checkNotBuilt(this);
+			PerMessageDeflate.this.noContextTakeover = true;
+			return this;
+		}
+
+		/**
+		 * Requests a peer to reset its compression context after each message
+		 */
+		public Builder withPeerNoContextTakeover() {
+			checkNotBuilt(this);
+			PerMessageDeflate.this.peerNoContextTakeover = true;
+			return this;
+		}
+
+		/**
+		 * Requests a peer to limit a window size of its compressor
+		 */
+		public Builder withPeerMaxWindowBits(int peerMaxWindowBits) {
+			checkNotBuilt(this);
+			checkArgument(peerMaxWindowBits >= MIN_WINDOW_BITS && peerMaxWindowBits <= MAX_WINDOW_BITS,
+				"Window bits should be in range [8, 15]");
+			PerMessageDeflate.this.peerMaxWindowBits = peerMaxWindowBits;
+			return this;
+		}
+
+		@Override
+		protected PerMessageDeflate doBuild() {
+			return PerMessageDeflate.this;
+		}
+	}
+
+	record Negotiated(String extension, boolean noContextTakeover, boolean peerNoContextTakeover) {}
+
+	// region negotiation
+	/**
+	 * Accepts a first acceptable offer of a client, if any
+	 */
+	@Nullable Negotiated acceptOffer(@Nullable String extensions) {
+		if (extensions == null) return null;
+		for (String offer : extensions.split(",")) {
+			Negotiated negotiated = tryAcceptOffer(offer);
+			if (negotiated != null) return negotiated;
+		}
+		return null;
+	}
+
+	private @Nullable Negotiated tryAcceptOffer(String offer) {
+		String[] parts = offer.split(";");
+		if (!parts[0].trim().equalsIgnoreCase(EXTENSION_NAME)) return null;
+
+		boolean serverNoContextTakeover = noContextTakeover;
+		boolean clientNoContextTakeover = peerNoContextTakeover;
+		boolean serverMaxWindowBits = false;
+		int clientMaxWindowBits = -1;
+		Set<String> names = new HashSet<>();
+		for (int i = 1; i < parts.length; i++) {
+			String name = getParameterName(parts[i]);
+			String value = getParameterValue(parts[i]);
+			if (!names.add(name)) return null;
+			switch (name) {
+				case "server_no_context_takeover" -> {
+					if (value != null) return null;
+					serverNoContextTakeover = true;
+				}
+				case "client_no_context_takeover" -> {
+					if (value != null) return null;
+					clientNoContextTakeover = true;
+				}
+				case "server_max_window_bits" -> {
+					if (parseWindowBits(value) != MAX_WINDOW_BITS) return null;
+					serverMaxWindowBits = true;
+				}
+				case "client_max_window_bits" -> {
+					int bits = value == null ? MAX_WINDOW_BITS : parseWindowBits(value);
+					if (bits == -1) return null;
+					clientMaxWindowBits = Math.min(bits, peerMaxWindowBits);
+				}
+				default -> {
+					return null;
+				}
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(EXTENSION_NAME);
+		if (serverNoContextTakeover) sb.append("; server_no_context_takeover");
+		if (clientNoContextTakeover) sb.append("; client_no_context_takeover");
+		if (serverMaxWindowBits) sb.append("; server_max_window_bits=" + MAX_WINDOW_BITS);
+		if (clientMaxWindowBits != -1 && clientMaxWindowBits < MAX_WINDOW_BITS) {
+			sb.append("; client_max_window_bits=").append(clientMaxWindowBits);
+		}
+		return new Negotiated(sb.toString(), serverNoContextTakeover, clientNoContextTakeover);
+	}
+
+	/**
+	 * Returns an offer of a client
+	 */
+	String getOffer() {
+		StringBuilder sb = new StringBuilder(EXTENSION_NAME);
+		if (noContextTakeover) sb.append("; client_no_context_takeover");
+		if (peerNoContextTakeover) sb.append("; server_no_context_takeover");
+		if (peerMaxWindowBits < MAX_WINDOW_BITS) sb.append("; server_max_window_bits=").append(peerMaxWindowBits);
+		return sb.toString();
+	}
+
+	/**
+	 * Accepts a response of a server to an {@link #getOffer() offer}
+	 *
+	 * @return negotiated parameters or {@code null} if a server did not accept an offer
+	 * @throws MalformedHttpException if a response is not a valid response to an offer
+	 */
+	@Nullable Negotiated acceptResponse(@Nullable String extensions) throws MalformedHttpException {
+		if (extensions == null) return null;
+		String[] parts = extensions.split(";");
+		if (extensions.indexOf(',') != -1 || !parts[0].trim().equalsIgnoreCase(EXTENSION_NAME)) {
+			throw new MalformedHttpException("Unexpected web socket extensions: " + extensions);
+		}
+
+		boolean clientNoContextTakeover = noContextTakeover;
+		boolean serverNoContextTakeover = false;
+		Set<String> names = new HashSet<>();
+		for (int i = 1; i < parts.length; i++) {
+			String name = getParameterName(parts[i]);
+			String value = getParameterValue(parts[i]);
+			if (!names.add(name)) {
+				throw new MalformedHttpException("Duplicate extension parameter: " + name);
+			}
+			switch (name) {
+				case "server_no_context_takeover" -> serverNoContextTakeover = true;
+				case "client_no_context_takeover" -> clientNoContextTakeover = true;
+				case "server_max_window_bits" -> {
+					int bits = parseWindowBits(value);
+					if (bits == -1 || bits > peerMaxWindowBits) {
+						throw new MalformedHttpException("Invalid server_max_window_bits: " + value);
+					}
+				}
+				default -> throw new MalformedHttpException("Unexpected extension parameter: " + name);
+			}
+		}
+		return new Negotiated(extensions, clientNoContextTakeover, serverNoContextTakeover);
+	}
+
+	private static String getParameterName(String parameter) {
+		int eq = parameter.indexOf('=');
+		return (eq == -1 ? parameter : parameter.substring(0, eq)).trim().toLowerCase();
+	}
+
+	private static @Nullable String getParameterValue(String parameter) {
+		int eq = parameter.indexOf('=');
+		if (eq == -1) return null;
+		String value = parameter.substring(eq + 1).trim();
+		if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+			value = value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	private static int parseWindowBits(@Nullable String value) {
+		if (value == null || value.isEmpty() || value.length() > 2) return -1;
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) < '0' || value.charAt(i) > '9') return -1;
+		}
+		int bits = Integer.parseInt(value);
+		return bits >= MIN_WINDOW_BITS && bits <= MAX_WINDOW_BITS ? bits : -1;
+	}
+	// endregion
+
+	Compressor createCompressor(Negotiated negotiated) {
+		return new Compressor(negotiated.noContextTakeover());
+	}
+
+	Decompressor createDecompressor(Negotiated negotiated) {
+		return new Decompressor(negotiated.peerNoContextTakeover());
+	}
+
+	final class Compressor {
+		private final boolean noContextTakeover;
+		private @Nullable Deflater deflater;
+
+		private Compressor(boolean noContextTakeover) {
+			this.noContextTakeover = noContextTakeover;
+		}
+
+		/**
+		 * Decides whether a message which starts with a frame of a given size should be compressed
+		 */
+		boolean shouldCompress(int firstFrameSize, boolean isLastFrame) {
+			if (!isLastFrame || firstFrameSize >= minMessageSize) {
+				compressedMessages.increment();
+				return true;
+			}
+			uncompressedMessages.increment();
+			return false;
+		}
+
+		ByteBuf compress(ByteBuf payload, boolean isLastFrame) {
+			if (deflater == null) {
+				deflater = pollDeflater(compressionLevel);
+			}
+			int size = payload.readRemaining();
+			ByteBuf buf = ByteBufPool.allocate(size + (size >>> 3) + 64);
+			deflater.setInput(payload.array(), payload.head(), size);
+			while (true) {
+				buf.moveTail(deflater.deflate(buf.array(), buf.tail(), buf.writeRemaining(), Deflater.SYNC_FLUSH));
+				if (buf.canWrite()) break;
+				buf = ByteBufPool.ensureWriteRemaining(buf, Math.max(64, buf.readRemaining() >>> 1));
+			}
+			payload.recycle();
+
+			if (isLastFrame) {
+				// a sync flush always ends with an empty stored block, which is stripped from a message
+				buf.tail(buf.tail() - EMPTY_BLOCK_TAIL.length);
+				if (noContextTakeover) {
+					close();
+				}
+			}
+			bytesBeforeCompression.add(size);
+			bytesAfterCompression.add(buf.readRemaining());
+			return buf;
+		}
+
+		void close() {
+			if (deflater != null) {
+				recycleDeflater(deflater);
+				deflater = null;
+			}
+		}
+	}
+
+	final class Decompressor {
+		private final boolean peerNoContextTakeover;
+		private @Nullable Inflater inflater;
+
+		private Decompressor(boolean peerNoContextTakeover) {
+			this.peerNoContextTakeover = peerNoContextTakeover;
+		}
+
+		ByteBuf decompress(ByteBuf payload, boolean isLastFrame, int maxSize) throws WebSocketException {
+			if (inflater == null) {
+				inflater = pollInflater();
+			}
+			int size = payload.readRemaining();
+			ByteBuf buf = ByteBufPool.allocate(Math.max(64, Math.min(size * 4, maxSize)));
+			try {
+				inflater.setInput(payload.array(), payload.head(), size);
+				buf = inflate(inflater, buf, maxSize);
+				if (isLastFrame && !inflater.finished()) {
+					inflater.setInput(EMPTY_BLOCK_TAIL);
+					buf = inflate(inflater, buf, maxSize);
+				}
+			} finally {
+				payload.recycle();
+			}
+
+			if (isLastFrame && (peerNoContextTakeover || inflater.finished())) {
+				close();
+			}
+			bytesBeforeDecompression.add(size);
+			bytesAfterDecompression.add(buf.readRemaining());
+			return buf;
+		}
+
+		private static ByteBuf inflate(Inflater inflater, ByteBuf buf, int maxSize) throws WebSocketException {
+			WebSocketException exception;
+			try {
+				while (true) {
+					if (!buf.canWrite()) {
+						buf = ByteBufPool.ensureWriteRemaining(buf, Math.max(64, buf.readRemaining()));
+					}
+					int count = inflater.inflate(buf.array(), buf.tail(), buf.writeRemaining());
+					buf.moveTail(count);
+					if (buf.readRemaining() > maxSize) {
+						exception = MESSAGE_TOO_BIG;
+						break;
+					}
+					if (inflater.needsDictionary()) {
+						exception = INVALID_COMPRESSED_DATA;
+						break;
+					}
+					if (count == 0 && (inflater.needsInput() || inflater.finished())) return buf;
+				}
+			} catch (DataFormatException e) {
+				exception = INVALID_COMPRESSED_DATA;
+			}
+			buf.recycle();
+			throw exception;
+		}
+
+		void close() {
+			if (inflater != null) {
+				recycleInflater(inflater);
+				inflater = null;
+			}
+		}
+	}
+
+	// region pools
+	private static Deflater pollDeflater(int level) {
+		Deflater deflater = DEFLATERS.get().poll();
+		if (deflater == null) {
+			return new Deflater(level, true);
+		}
+		deflater.setLevel(level);
+		return deflater;
+	}
+
+	private static void recycleDeflater(Deflater deflater) {
+		ArrayDeque<Deflater> pool = DEFLATERS.get();
+		if (pool.size() < DEFAULT_POOL_SIZE) {
+			deflater.reset();
+			pool.push(deflater);
+		} else {
+			deflater.end();
+		}
+	}
+
+	private static Inflater pollInflater() {
+		Inflater inflater = INFLATERS.get().poll();
+		return inflater != null ? inflater : new Inflater(true);
+	}
+
+	private static void recycleInflater(Inflater inflater) {
+		ArrayDeque<Inflater> pool = INFLATERS.get();
+		if (pool.size() < DEFAULT_POOL_SIZE) {
+			inflater.reset();
+			pool.push(inflater);
+		} else {
+			inflater.end();
+		}
+	}
+	// endregion
+
+	// region JMX
+	@JmxAttribute
+	public long getCompressedMessages() {
+		return compressedMessages.sum();
+	}
+
+	@JmxAttribute
+	public long getUncompressedMessages() {
+		return uncompressedMessages.sum();
+	}
+
+	@JmxAttribute
+	public long getBytesBeforeCompression() {
+		return bytesBeforeCompression.sum();
+	}
+
+	@JmxAttribute
+	public long getBytesAfterCompression() {
+		return bytesAfterCompression.sum();
+	}
+
+	/**
+	 * Returns a ratio of a size of compressed data to a size of original data for sent messages
+	 */
+	@JmxAttribute
+	public double getCompressionRatio() {
+		long before = bytesBeforeCompression.sum();
+		return before == 0 ? 0 : (double) bytesAfterCompression.sum() / before;
+	}
+
+	@JmxAttribute
+	public long getBytesBeforeDecompression() {
+		return bytesBeforeDecompression.sum();
+	}
+
+	@JmxAttribute
+	public long getBytesAfterDecompression() {
+		return bytesAfterDecompression.sum();
+	}
+
+	/**
+	 * Returns a ratio of a size of compressed data to a size of decompressed data for received messages
+	 */
+	@JmxAttribute
+	public double getDecompressionRatio() {
+		long after = bytesAfterDecompression.sum();
+		return after == 0 ? 0 : (double) bytesBeforeDecompression.sum() / after;
+	}
+	// endregion
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.common.ApplicationSettings;
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.jmx.api.attribute.JmxOperation;
+import io.activej.jmx.stats.JmxHistogram;
+import io.activej.promise.Promise;
+import io.activej.promise.jmx.PromiseStats;
+import io.activej.reactor.AbstractReactive;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.jmx.ReactiveJmxBeanWithStats;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.http.HttpMethod.*;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * A reverse proxy servlet which forwards requests to one of the upstream servers.
+ * <p>
+ * Request and response bodies are streamed between the peers as they arrive, without being collected
+ * in memory. Hop-by-hop headers (RFC 7230 section 6.1) are not forwarded, while {@code X-Forwarded-*}
+ * headers are added to the upstream request.
+ * <p>
+ * Each request goes to the upstream with the least number of pending exchanges, or to the less loaded
+ * of two randomly chosen ones. An upstream which fails several times in a row (connection errors and
+ * {@code 5xx} responses) is ejected from balancing for some time. Requests with idempotent methods
+ * and no body are retried on another upstream if the upstream could not be reached.
+ */
+public final class ProxyServlet extends AbstractReactive
+	implements AsyncServlet, ReactiveJmxBeanWithStats {
+	private static final Logger logger = LoggerFactory.getLogger(ProxyServlet.class);
+	private static final boolean CHECKS = Checks.isEnabled(ProxyServlet.class);
+
+	public static final int DEFAULT_MAX_RETRIES = ApplicationSettings.getInt(ProxyServlet.class, "maxRetries", 1);
+	public static final int DEFAULT_EJECTION_THRESHOLD = ApplicationSettings.getInt(ProxyServlet.class, "ejectionThreshold", 5);
+	public static final Duration DEFAULT_EJECTION_DURATION = ApplicationSettings.getDuration(ProxyServlet.class, "ejectionDuration", Duration.ofSeconds(30));
+	public static final Duration DEFAULT_SMOOTHING_WINDOW = ApplicationSettings.getDuration(ProxyServlet.class, "smoothingWindow", Duration.ofMinutes(1));
+
+	private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(GET, HEAD, PUT, DELETE, OPTIONS, TRACE);
+	private static final Set<HttpHeader> HOP_BY_HOP_HEADERS = Set.of(CONNECTION, KEEP_ALIVE, PROXY_AUTHENTICATE,
+		PROXY_AUTHORIZATION, TE, TRAILER, TRANSFER_ENCODING, UPGRADE);
+
+	public enum BalancingPolicy {
+		LEAST_PENDING,
+		POWER_OF_TWO_CHOICES
+	}
+
+	private final IHttpClient client;
+	private final List<Upstream> upstreams;
+
+	private BalancingPolicy balancingPolicy = BalancingPolicy.LEAST_PENDING;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private int ejectionThreshold = DEFAULT_EJECTION_THRESHOLD;
+	private Duration ejectionDuration = DEFAULT_EJECTION_DURATION;
+	private Duration smoothingWindow = DEFAULT_SMOOTHING_WINDOW;
+	private long[] histogramLevels = JmxHistogram.POWERS_OF_TWO;
+	private @Nullable Function<HttpRequest, String> routeFunction;
+
+	private int nextUpstream;
+
+	// region JMX
+	private PromiseStats stats;
+	private final Map<String, PromiseStats> routeStats = new HashMap<>();
+	private long retries;
+	private long ejections;
+	// endregion
+
+	private ProxyServlet(Reactor reactor, IHttpClient client, List<String> upstreamUrls) {
+		super(reactor);
+		this.client = client;
+		this.upstreams = upstreamUrls.stream().map(Upstream::new).toList();
+	}
+
+	public static ProxyServlet create(Reactor reactor, IHttpClient client, List<String> upstreamUrls) {
+		return builder(reactor, client, upstreamUrls).build();
+	}
+
+	/**
+	 * @param upstreamUrls base URLs of upstream servers, like {@code http://10.0.0.1:8080},
+	 *                     a path and a query of a proxied request are appended to them
+	 */
+	public static Builder builder(Reactor reactor, IHttpClient client, List<String> upstreamUrls) {
+		checkArgument(!upstreamUrls.isEmpty(), "At least one upstream URL should be specified");
+		for (String url : upstreamUrls) {
+			checkArgument(url.startsWith("http://") || url.startsWith("https://"), "Upstream URL should start with http:// or https://");
+		}
+		return new ProxyServlet(reactor, client, upstreamUrls).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, ProxyServlet> {
+		private Builder() {}
+
+		public Builder withBalancingPolicy(BalancingPolicy balancingPolicy) {
+			checkNotBuilt(this);
+			ProxyServlet.this.balancingPolicy = balancingPolicy;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of times a request with an idempotent method
+		 * and no body is repeated on another upstream after a connection failure
+		 */
+		public Builder withMaxRetries(int maxRetries) {
+			checkNotBuilt(this);
+			checkArgument(maxRetries >= 0, "Max retries should not be negative");
+			ProxyServlet.this.maxRetries = maxRetries;
+			return this;
+		}
+
+		/**
+		 * Sets the number of consecutive failures after which an upstream is ejected
+		 * from balancing for the given duration
+		 */
+		public Builder withEjection(int threshold, Duration duration) {
+			checkNotBuilt(this);
+			checkArgument(threshold > 0, "Ejection threshold should be positive");
+			ProxyServlet.this.ejectionThreshold = threshold;
+			ProxyServlet.this.ejectionDuration = duration;
+			return this;
+		}
+
+		public Builder withSmoothingWindow(Duration smoothingWindow) {
+			checkNotBuilt(this);
+			ProxyServlet.this.smoothingWindow = smoothingWindow;
+			return this;
+		}
+
+		public Builder withHistogramLevels(long[] levels) {
+			checkNotBuilt(this);
+			ProxyServlet.this.histogramLevels = levels;
+			return this;
+		}
+
+		/**
+		 * Enables latency stats per route, a route is computed for each request by a given function.
+		 * The function should return a small fixed set of values, like a first path segment
+		 * of known API endpoints, as the stats are kept for every distinct route
+		 */
+		public Builder withRouteFunction(Function<HttpRequest, String> routeFunction) {
+			checkNotBuilt(this);
+			ProxyServlet.this.routeFunction = routeFunction;
+			return this;
+		}
+
+		@Override
+		protected ProxyServlet doBuild() {
+			stats = createStats();
+			return ProxyServlet.this;
+		}
+	}
+
+	@Override
+	public Promise<HttpResponse> serve(HttpRequest request) {
+		if (CHECKS) checkInReactorThread(this);
+		boolean retryable = IDEMPOTENT_METHODS.contains(request.getMethod()) && hasNoBody(request);
+		ChannelSupplier<ByteBuf> bodyStream = retryable ? null : takeRawBodyStream(request);
+		Promise<HttpResponse> responsePromise = proxy(request, bodyStream, retryable ? maxRetries : 0, new ArrayList<>(1))
+			.whenComplete(stats.recordStats());
+		if (routeFunction != null) {
+			String route = routeFunction.apply(request);
+			responsePromise = responsePromise
+				.whenComplete(routeStats.computeIfAbsent(route, $ -> createStats()).recordStats());
+		}
+		return responsePromise;
+	}
+
+	private Promise<HttpResponse> proxy(HttpRequest request, @Nullable ChannelSupplier<ByteBuf> bodyStream, int retriesLeft, List<Upstream> tried) {
+		Upstream upstream = selectUpstream(tried);
+		tried.add(upstream);
+		upstream.pending++;
+		upstream.requests++;
+		return client.request(toUpstreamRequest(request, upstream, bodyStream))
+			.then((response, e) -> {
+				if (e == null) {
+					if (response.getCode() >= 500) {
+						upstream.onFailure();
+					} else {
+						upstream.consecutiveFailures = 0;
+					}
+					return Promise.of(toDownstreamResponse(response, upstream));
+				}
+				upstream.pending--;
+				upstream.onFailure();
+				if (retriesLeft > 0 && tried.size() < upstreams.size()) {
+					logger.warn("Request to {} failed, retrying on another upstream", upstream.url, e);
+					retries++;
+					return proxy(request, null, retriesLeft - 1, tried);
+				}
+				return Promise.ofException(HttpError.ofCode(502, "Upstream " + upstream.url + " failed", e));
+			});
+	}
+
+	private Upstream selectUpstream(List<Upstream> tried) {
+		long now = reactor.currentTimeMillis();
+		List<Upstream> candidates = new ArrayList<>(upstreams.size());
+		for (Upstream upstream : upstreams) {
+			if (upstream.ejectedUntil <= now && !tried.contains(upstream)) {
+				candidates.add(upstream);
+			}
+		}
+		if (candidates.isEmpty()) {
+			// all the upstreams are ejected, it is better to try one of them than to fail right away
+			for (Upstream upstream : upstreams) {
+				if (!tried.contains(upstream)) {
+					candidates.add(upstream);
+				}
+			}
+		}
+		int size = candidates.size();
+		if (size == 1) {
+			return candidates.get(0);
+		}
+		if (balancingPolicy == BalancingPolicy.POWER_OF_TWO_CHOICES) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int first = random.nextInt(size);
+			int second = (first + 1 + random.nextInt(size - 1)) % size;
+			Upstream upstream1 = candidates.get(first);
+			Upstream upstream2 = candidates.get(second);
+			return upstream2.pending < upstream1.pending ? upstream2 : upstream1;
+		}
+		// ties are resolved in a round-robin fashion
+		int offset = nextUpstream++ % size;
+		Upstream selected = candidates.get(offset);
+		for (int i = 1; i < size; i++) {
+			Upstream upstream = candidates.get((offset + i) % size);
+			if (upstream.pending < selected.pending) {
+				selected = upstream;
+			}
+		}
+		return selected;
+	}
+
+	private static HttpRequest toUpstreamRequest(HttpRequest request, Upstream upstream, @Nullable ChannelSupplier<ByteBuf> bodyStream) {
+		HttpRequest.Builder builder = HttpRequest.builder(request.getMethod(), upstream.url + request.getPathAndQuery());
+		Set<HttpHeader> connectionHeaders = getConnectionHeaders(request);
+		StringBuilder forwardedFor = new StringBuilder();
+		for (Map.Entry<HttpHeader, HttpHeaderValue> entry : request.headers.getEntries()) {
+			HttpHeader header = entry.getKey();
+			if (header.equals(X_FORWARDED_FOR)) {
+				forwardedFor.append(entry.getValue()).append(", ");
+			} else if (!header.equals(HOST) && !isHopByHop(header, connectionHeaders)) {
+				// a copy is made, as header values may refer to a read buffer of a connection
+				builder.withHeader(header, entry.getValue().toString());
+			}
+		}
+		builder.withHeader(X_FORWARDED_FOR, forwardedFor.append(request.getRemoteAddress().getHostAddress()).toString());
+		builder.withHeader(X_FORWARDED_PROTO, request.getProtocol().isSecure() ? "https" : "http");
+		String host = request.getHeader(HOST);
+		if (host != null) {
+			builder.withHeader(X_FORWARDED_HOST, host);
+		}
+		if (bodyStream != null) {
+			builder.withBodyStream(bodyStream);
+		}
+		return builder.build();
+	}
+
+	private static HttpResponse toDownstreamResponse(HttpResponse response, Upstream upstream) {
+		HttpResponse.Builder builder = HttpResponse.ofCode(response.getCode());
+		Set<HttpHeader> connectionHeaders = getConnectionHeaders(response);
+		for (Map.Entry<HttpHeader, HttpHeaderValue> entry : response.headers.getEntries()) {
+			HttpHeader header = entry.getKey();
+			if (!isHopByHop(header, connectionHeaders)) {
+				builder.withHeader(header, entry.getValue().toString());
+			}
+		}
+		ByteBuf body = response.body;
+		if (body != null) {
+			// the whole body has already been received along with the headers
+			response.body = null;
+			upstream.pending--;
+			return builder.withBody(body).build();
+		}
+		return builder
+			.withBodyStream(takeRawBodyStream(response)
+				.withEndOfStream(endOfStream -> endOfStream
+					.whenComplete(() -> upstream.pending--)))
+			.build();
+	}
+
+	private static boolean hasNoBody(HttpRequest request) {
+		return request.bodyStream == null && (request.body == null || !request.body.canRead());
+	}
+
+	/**
+	 * Takes a body stream as it has been received, so that the compressed bodies
+	 * are passed through without being decompressed
+	 */
+	private static ChannelSupplier<ByteBuf> takeRawBodyStream(HttpMessage message) {
+		ChannelSupplier<ByteBuf> bodyStream = message.bodyStream;
+		if (bodyStream != null) {
+			message.bodyStream = null;
+			return bodyStream;
+		}
+		ByteBuf body = message.body;
+		if (body != null) {
+			message.body = null;
+			return ChannelSuppliers.ofValue(body);
+		}
+		return ChannelSuppliers.empty();
+	}
+
+	private static @Nullable Set<HttpHeader> getConnectionHeaders(HttpMessage message) {
+		String connection = message.getHeader(CONNECTION);
+		if (connection == null) return null;
+		Set<HttpHeader> headers = new HashSet<>();
+		for (String token : connection.split(",")) {
+			token = token.trim();
+			if (!token.isEmpty()) {
+				headers.add(HttpHeaders.of(token));
+			}
+		}
+		return headers;
+	}
+
+	private static boolean isHopByHop(HttpHeader header, @Nullable Set<HttpHeader> connectionHeaders) {
+		return HOP_BY_HOP_HEADERS.contains(header) || connectionHeaders != null && connectionHeaders.contains(header);
+	}
+
+	private PromiseStats createStats() {
+		return PromiseStats.builder(smoothingWindow)
+			.withHistogram(histogramLevels)
+			.build();
+	}
+
+	private final class Upstream {
+		final String url;
+
+		int pending;
+		int consecutiveFailures;
+		long ejectedUntil;
+
+		long requests;
+		long failures;
+
+		Upstream(String url) {
+			this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		}
+
+		void onFailure() {
+			failures++;
+			if (++consecutiveFailures < ejectionThreshold) return;
+			consecutiveFailures = 0;
+			ejectedUntil = reactor.currentTimeMillis() + ejectionDuration.toMillis();
+			ejections++;
+			logger.warn("Upstream {} is ejected for {}", url, ejectionDuration);
+		}
+
+		@Override
+		public String toString() {
+			return url +
+				"{pending=" + pending +
+				", requests=" + requests +
+				", failures=" + failures +
+				", ejected=" + (ejectedUntil > reactor.currentTimeMillis()) +
+				'}';
+		}
+	}
+
+	// region JMX
+	@JmxAttribute
+	public PromiseStats getStats() {
+		return stats;
+	}
+
+	@JmxAttribute
+	public Map<String, PromiseStats> getRouteStats() {
+		return routeStats;
+	}
+
+	@JmxAttribute
+	public long getRetries() {
+		return retries;
+	}
+
+	@JmxAttribute
+	public long getEjections() {
+		return ejections;
+	}
+
+	@JmxAttribute
+	public long getPending() {
+		long pending = 0;
+		for (Upstream upstream : upstreams) {
+			pending += upstream.pending;
+		}
+		return pending;
+	}
+
+	@JmxAttribute
+	public BalancingPolicy getBalancingPolicy() {
+		return balancingPolicy;
+	}
+
+	@JmxAttribute
+	public int getEjectionThreshold() {
+		return ejectionThreshold;
+	}
+
+	@JmxAttribute
+	public void setEjectionThreshold(int ejectionThreshold) {
+		checkArgument(ejectionThreshold > 0, "Ejection threshold should be positive");
+		this.ejectionThreshold = ejectionThreshold;
+	}
+
+	@JmxOperation
+	public List<String> getUpstreams() {
+		return upstreams.stream()
+			.map(Upstream::toString)
+			.toList();
+	}
+	// endregion
+}
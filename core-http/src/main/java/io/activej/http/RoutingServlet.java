@@ -28,9 +28,9 @@ import org.jetbrains.annotations.Nullable;
 import java.net.URLDecoder;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
@@ -52,24 +52,31 @@ public final class RoutingServlet extends AbstractReactive
 	private static final String STAR = "*";
 	private static final String WILDCARD = "/" + STAR;
 
-	private static final int WS_ORDINAL = HttpMethod.values().length;
-	private static final int ANY_HTTP_ORDINAL = WS_ORDINAL + 1;
+	static final int WS_ORDINAL = HttpMethod.values().length;
+	static final int ANY_HTTP_ORDINAL = WS_ORDINAL + 1;
 
-	private final AsyncServlet[] servlets = new AsyncServlet[ANY_HTTP_ORDINAL + 1];
-	private final AsyncServlet[] fallbackServlets = new AsyncServlet[ANY_HTTP_ORDINAL + 1];
+	private final Node root;
+	private final RoutingTrie trie;
 
-	private final Map<String, RoutingServlet> routes = new HashMap<>();
-	private final Map<String, RoutingServlet> parameters = new HashMap<>();
-
-	private RoutingServlet(Reactor reactor) {
+	private RoutingServlet(Reactor reactor, Node root) {
 		super(reactor);
+		this.root = root;
+		// a tree is compiled when a servlet is built, it is never changed afterwards
+		this.trie = root.compile();
 	}
 
 	public static RoutingServlet.Builder builder(Reactor reactor) {
-		return new RoutingServlet(reactor).new Builder();
+		return new Builder(reactor);
 	}
 
-	public class Builder extends AbstractBuilder<Builder, RoutingServlet> {
+	public static final class Builder extends AbstractBuilder<Builder, RoutingServlet> {
+		private final Reactor reactor;
+		private final Node root = new Node();
+
+		private Builder(Reactor reactor) {
+			this.reactor = reactor;
+		}
+
 		/**
 		 * Maps given servlet on some path. Fails when such path already has a servlet mapped to it.
 		 */
@@ -101,6 +108,21 @@ public final class RoutingServlet extends AbstractReactive
 			});
 		}
 
+		/**
+		 * Maps given consumer of a web socket as a web socket servlet on some path,
+		 * accepting a 'permessage-deflate' extension with given settings.
+		 * Fails if there is already a web socket servlet mapped on this path.
+		 */
+		@Contract("_, _, _ -> this")
+		public Builder withWebSocket(String path, PerMessageDeflate perMessageDeflate, Consumer<IWebSocket> webSocketConsumer) {
+			return withWebSocket(path, new WebSocketServlet(reactor, perMessageDeflate) {
+				@Override
+				protected void onWebSocket(IWebSocket webSocket) {
+					webSocketConsumer.accept(webSocket);
+				}
+			});
+		}
+
 		@Contract("_, _ -> this")
 		public Builder withWebSocket(String path, WebSocketServlet servlet) {
 			return doMap(WS_ORDINAL, path, servlet);
@@ -108,12 +130,13 @@ public final class RoutingServlet extends AbstractReactive
 
 		@Contract("_, _, _ -> this")
 		private Builder doMap(int ordinal, String path, AsyncServlet servlet) {
+			checkNotBuilt(this);
 			checkArgument(path.startsWith(ROOT) && (path.endsWith(WILDCARD) || !path.contains(STAR)), "Invalid path: " + path);
 			if (path.endsWith(WILDCARD)) {
-				RoutingServlet routingServlet = ensureChild(path.substring(0, path.length() - 2));
-				RoutingServlet.set(routingServlet.fallbackServlets, ordinal, servlet);
+				Node node = root.ensureChild(path.substring(0, path.length() - 2));
+				RoutingServlet.set(node.fallbackServlets, ordinal, servlet);
 			} else {
-				RoutingServlet.set(ensureChild(path).servlets, ordinal, servlet);
+				RoutingServlet.set(root.ensureChild(path).servlets, ordinal, servlet);
 			}
 			return this;
 		}
@@ -125,13 +148,14 @@ public final class RoutingServlet extends AbstractReactive
 
 		@Contract("_, _ -> new")
 		public Builder merge(String path, RoutingServlet servlet) {
-			mergeInto(ensureChild(path), servlet);
+			checkNotBuilt(this);
+			mergeInto(root.ensureChild(path), servlet.root);
 			return this;
 		}
 
 		@Override
 		protected RoutingServlet doBuild() {
-			return RoutingServlet.this;
+			return new RoutingServlet(reactor, root);
 		}
 	}
 
@@ -146,107 +170,35 @@ public final class RoutingServlet extends AbstractReactive
 			checkArgument(reactor == routingServlet.reactor, "Different reactors");
 		}
 
-		RoutingServlet merged = new RoutingServlet(reactor);
+		Node merged = new Node();
 		for (RoutingServlet servlet : servlets) {
-			mergeInto(merged, servlet);
+			mergeInto(merged, servlet.root);
 		}
-		return merged;
+		return new RoutingServlet(reactor, merged);
 	}
 
 	@Override
 	public Promise<HttpResponse> serve(HttpRequest request) throws Exception {
 		if (CHECKS) checkInReactorThread(this);
-		Promise<HttpResponse> processed = tryServe(request);
+		Protocol protocol = request.getProtocol();
+		int ordinal = protocol == WS || protocol == WSS ? WS_ORDINAL : request.getMethod().ordinal();
+		Promise<HttpResponse> processed = trie.tryServe(request, request.getUrl(), ordinal);
 		return processed != null ?
 			processed :
 			Promise.ofException(HttpError.notFound404());
 	}
 
-	private @Nullable Promise<HttpResponse> tryServe(HttpRequest request) throws Exception {
-		int introPosition = request.getPos();
-		String urlPart = request.pollUrlPart();
-		if (urlPart == null) {
-			throw HttpError.badRequest400("Path contains bad percent encoding");
-		}
-		Protocol protocol = request.getProtocol();
-		int ordinal = protocol == WS || protocol == WSS ? WS_ORDINAL : request.getMethod().ordinal();
-
-		if (urlPart.isEmpty()) {
-			AsyncServlet servlet = getOrDefault(servlets, ordinal);
-			if (servlet != null) {
-				return servlet.serve(request);
-			}
-		} else {
-			int position = request.getPos();
-			RoutingServlet transit = routes.get(urlPart);
-			if (transit != null) {
-				Promise<HttpResponse> result = transit.tryServe(request);
-				if (result != null) {
-					return result;
-				}
-				request.setPos(position);
-			}
-			for (Entry<String, RoutingServlet> entry : parameters.entrySet()) {
-				String key = entry.getKey();
-				request.putPathParameter(key, urlPart);
-				Promise<HttpResponse> result = entry.getValue().tryServe(request);
-				if (result != null) {
-					return result;
-				}
-				request.removePathParameter(key);
-				request.setPos(position);
-			}
-		}
-
-		AsyncServlet servlet = getOrDefault(fallbackServlets, ordinal);
-		if (servlet != null) {
-			request.setPos(introPosition);
-			return servlet.serve(request);
-		}
-		return null;
-	}
-
+	/**
+	 * Returns a servlet which routes requests by a subtree of this servlet mapped on a given path,
+	 * or {@code null} if nothing is mapped on this path
+	 */
 	public @Nullable RoutingServlet getChild(String path) {
-		return getChildImpl(path, (servlet, name) ->
-			name.startsWith(":") ?
-				servlet.parameters.get(name.substring(1)) :
-				servlet.routes.get(name));
-	}
-
-	private RoutingServlet ensureChild(String path) {
-		return getChildImpl(path, (servlet, name) ->
-			name.startsWith(":") ?
-				servlet.parameters.computeIfAbsent(name.substring(1), $ -> new RoutingServlet(reactor)) :
-				servlet.routes.computeIfAbsent(name, $ -> new RoutingServlet(reactor)));
-	}
-
-	private RoutingServlet getChildImpl(String path, BiFunction<RoutingServlet, String, @Nullable RoutingServlet> childGetter) {
-		if (path.isEmpty() || path.equals(ROOT)) {
-			return this;
-		}
-		RoutingServlet sub = this;
-		int slash = path.indexOf('/', 1);
-		while (true) {
-			String urlPart = path.substring(1, slash == -1 ? path.length() : slash);
-
-			if (!urlPart.startsWith(":")) {
-				urlPart = decodePattern(urlPart);
-			}
-
-			if (urlPart.isEmpty()) {
-				return sub;
-			}
-			sub = childGetter.apply(sub, urlPart);
-
-			if (slash == -1 || sub == null) {
-				return sub;
-			}
-			path = path.substring(slash);
-			slash = path.indexOf('/', 1);
-		}
+		Node child = root.getChild(path);
+		return child != null ? new RoutingServlet(reactor, child) : null;
 	}
 
-	private static void mergeInto(RoutingServlet into, RoutingServlet from) {
+	// copies nodes, so that a built servlet is not changed by merging it into another one
+	private static void mergeInto(Node into, Node from) {
 		for (int i = 0; i < from.servlets.length; i++) {
 			AsyncServlet rootServlet = from.servlets[i];
 			if (rootServlet != null) {
@@ -260,15 +212,9 @@ public final class RoutingServlet extends AbstractReactive
 			}
 		}
 		from.routes.forEach((key, value) ->
-			into.routes.merge(key, value, (s1, s2) -> {
-				mergeInto(s1, s2);
-				return s1;
-			}));
+			mergeInto(into.routes.computeIfAbsent(key, $ -> new Node()), value));
 		from.parameters.forEach((key, value) ->
-			into.parameters.merge(key, value, (s1, s2) -> {
-				mergeInto(s1, s2);
-				return s1;
-			}));
+			mergeInto(into.parameters.computeIfAbsent(key, $ -> new Node()), value));
 	}
 
 	private static void set(AsyncServlet[] servlets, int ordinal, AsyncServlet servlet) {
@@ -276,14 +222,6 @@ public final class RoutingServlet extends AbstractReactive
 		servlets[ordinal] = servlet;
 	}
 
-	private static @Nullable AsyncServlet getOrDefault(AsyncServlet[] servlets, int ordinal) {
-		AsyncServlet maybeResult = servlets[ordinal];
-		if (maybeResult != null || ordinal == WS_ORDINAL) {
-			return maybeResult;
-		}
-		return servlets[ANY_HTTP_ORDINAL];
-	}
-
 	private static String decodePattern(String pattern) {
 		try {
 			return URLDecoder.decode(pattern, UTF_8);
@@ -291,4 +229,63 @@ public final class RoutingServlet extends AbstractReactive
 			throw new IllegalArgumentException("Pattern contains bad percent encoding", e);
 		}
 	}
+
+	private static final class Node {
+		final AsyncServlet[] servlets = new AsyncServlet[ANY_HTTP_ORDINAL + 1];
+		final AsyncServlet[] fallbackServlets = new AsyncServlet[ANY_HTTP_ORDINAL + 1];
+
+		final Map<String, Node> routes = new HashMap<>();
+		final Map<String, Node> parameters = new HashMap<>();
+
+		/**
+		 * Compiles this servlet tree into a trie which is used for routing
+		 */
+		RoutingTrie compile() {
+			Map<String, RoutingTrie> compiledRoutes = new HashMap<>();
+			routes.forEach((urlPart, node) -> compiledRoutes.put(urlPart, node.compile()));
+			Map<String, RoutingTrie> compiledParameters = new LinkedHashMap<>();
+			parameters.forEach((name, node) -> compiledParameters.put(name, node.compile()));
+			return new RoutingTrie(servlets, fallbackServlets, compiledRoutes, compiledParameters);
+		}
+
+		@Nullable Node getChild(String path) {
+			return getChildImpl(path, (node, name) ->
+				name.startsWith(":") ?
+					node.parameters.get(name.substring(1)) :
+					node.routes.get(name));
+		}
+
+		Node ensureChild(String path) {
+			return getChildImpl(path, (node, name) ->
+				name.startsWith(":") ?
+					node.parameters.computeIfAbsent(name.substring(1), $ -> new Node()) :
+					node.routes.computeIfAbsent(name, $ -> new Node()));
+		}
+
+		private Node getChildImpl(String path, BiFunction<Node, String, @Nullable Node> childGetter) {
+			if (path.isEmpty() || path.equals(ROOT)) {
+				return this;
+			}
+			Node sub = this;
+			int slash = path.indexOf('/', 1);
+			while (true) {
+				String urlPart = path.substring(1, slash == -1 ? path.length() : slash);
+
+				if (!urlPart.startsWith(":")) {
+					urlPart = decodePattern(urlPart);
+				}
+
+				if (urlPart.isEmpty()) {
+					return sub;
+				}
+				sub = childGetter.apply(sub, urlPart);
+
+				if (slash == -1 || sub == null) {
+					return sub;
+				}
+				path = path.substring(slash);
+				slash = path.indexOf('/', 1);
+			}
+		}
+	}
 }
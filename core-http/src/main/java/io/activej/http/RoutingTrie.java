@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import io.activej.promise.Promise;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static io.activej.http.RoutingServlet.ANY_HTTP_ORDINAL;
+import static io.activej.http.RoutingServlet.WS_ORDINAL;
+
+/**
+ * A compiled form of a {@link RoutingServlet} tree.
+ * <p>
+ * Static url parts of each node are stored in a radix trie, which is matched directly against
+ * raw bytes of a request path. Path parameters are stored in a request as offsets of raw url parts,
+ * so that routing of a request does not allocate unless a url part is percent-encoded.
+ */
+final class RoutingTrie {
+	private static final char[] EMPTY_CHARS = new char[0];
+	private static final Node[] EMPTY_NODES = new Node[0];
+
+	private final AsyncServlet[] servlets;
+	private final AsyncServlet[] fallbackServlets;
+
+	private final Node root = new Node(EMPTY_CHARS);
+	private final String[] parameterNames;
+	private final RoutingTrie[] parameterTries;
+
+	RoutingTrie(AsyncServlet[] servlets, AsyncServlet[] fallbackServlets,
+		Map<String, RoutingTrie> routes, Map<String, RoutingTrie> parameters) {
+		this.servlets = servlets.clone();
+		this.fallbackServlets = fallbackServlets.clone();
+		routes.forEach((urlPart, trie) -> root.insert(urlPart.toCharArray(), 0, trie));
+		this.parameterNames = parameters.keySet().toArray(new String[0]);
+		this.parameterTries = parameters.values().toArray(new RoutingTrie[0]);
+	}
+
+	@Nullable Promise<HttpResponse> tryServe(HttpRequest request, UrlParser url, int ordinal) throws Exception {
+		int introPosition = url.pos;
+		int start = url.skipUrlPart();
+		int end = start;
+		int keyEnd = start;
+		String decoded = null;
+		if (start != -1) {
+			byte[] raw = url.getRaw();
+			end = keyEnd = url.getUrlPartEnd();
+			for (int i = start; i < end; i++) {
+				byte b = raw[i];
+				if (b == '&' || b == '#') {
+					keyEnd = i;
+					break;
+				}
+				if (b == '%' || b == '+' || b < 0) {
+					decoded = url.decodeUrlPart(start, end);
+					if (decoded == null) {
+						throw HttpError.badRequest400("Path contains bad percent encoding");
+					}
+					break;
+				}
+			}
+		}
+
+		if (decoded != null ? decoded.isEmpty() : keyEnd == start) {
+			AsyncServlet servlet = getOrDefault(servlets, ordinal);
+			if (servlet != null) {
+				return servlet.serve(request);
+			}
+		} else {
+			short position = url.pos;
+			RoutingTrie transit = decoded != null ?
+				root.match(decoded) :
+				root.match(url.getRaw(), start, keyEnd);
+			if (transit != null) {
+				Promise<HttpResponse> result = transit.tryServe(request, url, ordinal);
+				if (result != null) {
+					return result;
+				}
+				url.pos = position;
+			}
+			for (int i = 0; i < parameterNames.length; i++) {
+				request.putPathParameter(parameterNames[i], start, end);
+				Promise<HttpResponse> result = parameterTries[i].tryServe(request, url, ordinal);
+				if (result != null) {
+					return result;
+				}
+				request.removePathParameter();
+				url.pos = position;
+			}
+		}
+
+		AsyncServlet servlet = getOrDefault(fallbackServlets, ordinal);
+		if (servlet != null) {
+			url.pos = (short) introPosition;
+			return servlet.serve(request);
+		}
+		return null;
+	}
+
+	private static @Nullable AsyncServlet getOrDefault(AsyncServlet[] servlets, int ordinal) {
+		AsyncServlet maybeResult = servlets[ordinal];
+		if (maybeResult != null || ordinal == WS_ORDINAL) {
+			return maybeResult;
+		}
+		return servlets[ANY_HTTP_ORDINAL];
+	}
+
+	private static final class Node {
+		private char[] label;
+		private @Nullable RoutingTrie trie;
+
+		// children are sorted by first characters of their labels
+		private char[] firstChars = EMPTY_CHARS;
+		private Node[] children = EMPTY_NODES;
+
+		Node(char[] label) {
+			this.label = label;
+		}
+
+		void insert(char[] key, int from, RoutingTrie trie) {
+			if (from == key.length) {
+				this.trie = trie;
+				return;
+			}
+			int index = Arrays.binarySearch(firstChars, key[from]);
+			if (index < 0) {
+				index = -index - 1;
+				addChild(index, new Node(Arrays.copyOfRange(key, from, key.length)));
+				children[index].trie = trie;
+				return;
+			}
+			Node child = children[index];
+			char[] childLabel = child.label;
+			int common = 1;
+			while (common < childLabel.length && from + common < key.length && childLabel[common] == key[from + common]) {
+				common++;
+			}
+			if (common != childLabel.length) {
+				Node split = new Node(Arrays.copyOf(childLabel, common));
+				child.label = Arrays.copyOfRange(childLabel, common, childLabel.length);
+				split.firstChars = new char[]{child.label[0]};
+				split.children = new Node[]{child};
+				children[index] = split;
+				child = split;
+			}
+			child.insert(key, from + common, trie);
+		}
+
+		private void addChild(int index, Node child) {
+			int size = children.length;
+			char[] newFirstChars = new char[size + 1];
+			Node[] newChildren = new Node[size + 1];
+			System.arraycopy(firstChars, 0, newFirstChars, 0, index);
+			System.arraycopy(children, 0, newChildren, 0, index);
+			newFirstChars[index] = child.label[0];
+			newChildren[index] = child;
+			System.arraycopy(firstChars, index, newFirstChars, index + 1, size - index);
+			System.arraycopy(children, index, newChildren, index + 1, size - index);
+			firstChars = newFirstChars;
+			children = newChildren;
+		}
+
+		// matches ASCII bytes of a url part, which are equal to characters of its decoded form
+		@Nullable RoutingTrie match(byte[] bytes, int from, int to) {
+			Node node = this;
+			int i = from;
+			while (i != to) {
+				int index = Arrays.binarySearch(node.firstChars, (char) bytes[i]);
+				if (index < 0) return null;
+				node = node.children[index];
+				char[] label = node.label;
+				if (to - i < label.length) return null;
+				for (char c : label) {
+					if (bytes[i++] != c) return null;
+				}
+			}
+			return node.trie;
+		}
+
+		@Nullable RoutingTrie match(String key) {
+			Node node = this;
+			int i = 0;
+			int to = key.length();
+			while (i != to) {
+				int index = Arrays.binarySearch(node.firstChars, key.charAt(i));
+				if (index < 0) return null;
+				node = node.children[index];
+				char[] label = node.label;
+				if (to - i < label.length) return null;
+				for (char c : label) {
+					if (key.charAt(i++) != c) return null;
+				}
+			}
+			return node.trie;
+		}
+	}
+}
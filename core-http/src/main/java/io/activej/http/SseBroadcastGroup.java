@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.reactor.AbstractReactive;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.jmx.ReactiveJmxBean;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * A group of server-sent events streams of a single reactor, which receive the same events.
+ * <p>
+ * An event is encoded only once and is shared by all the members of a group.
+ * <p>
+ * A group may keep a history of recent events which have ids. When a stream is added
+ * to a group, events that follow a {@link SseStream#getLastEventId() last event id}
+ * of a stream are replayed to it, so that a reconnecting client does not miss events.
+ * If a last event id is not found in a history, no events are replayed.
+ * <p>
+ * Closed streams are removed from a group automatically.
+ */
+public final class SseBroadcastGroup extends AbstractReactive
+	implements ReactiveJmxBean {
+	private static final boolean CHECKS = Checks.isEnabled(SseBroadcastGroup.class);
+
+	private int historySize;
+
+	private final Set<SseStream> members = new LinkedHashSet<>();
+	private final ArrayDeque<SseEvent> history = new ArrayDeque<>();
+
+	// region stats
+	private long events;
+	private long replayedEvents;
+	// endregion
+
+	private SseBroadcastGroup(Reactor reactor) {
+		super(reactor);
+	}
+
+	public static SseBroadcastGroup create(Reactor reactor) {
+		return builder(reactor).build();
+	}
+
+	public static Builder builder(Reactor reactor) {
+		return new SseBroadcastGroup(reactor).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, SseBroadcastGroup> {
+		private Builder() {}
+
+		/**
+		 * Sets a number of recent events with ids which are kept for resumption of reconnecting clients
+		 */
+		public Builder withHistorySize(int historySize) {
+			checkNotBuilt(this);
+			checkArgument(historySize >= 0, "History size should not be negative");
+			SseBroadcastGroup.this.historySize = historySize;
+			return this;
+		}
+
+		@Override
+		protected SseBroadcastGroup doBuild() {
+			return SseBroadcastGroup.this;
+		}
+	}
+
+	/**
+	 * Adds a stream to this group, replaying events that a stream has missed
+	 */
+	public void add(SseStream stream) {
+		if (CHECKS) checkInReactorThread(this);
+		checkArgument(stream.getReactor() == reactor, "Stream belongs to a different reactor");
+		if (stream.isClosed()) return;
+		String lastEventId = stream.getLastEventId();
+		if (lastEventId != null) {
+			replay(stream, lastEventId);
+		}
+		members.add(stream);
+	}
+
+	public boolean remove(SseStream stream) {
+		if (CHECKS) checkInReactorThread(this);
+		return members.remove(stream);
+	}
+
+	/**
+	 * Sends an event to all the members of this group
+	 */
+	public void broadcast(SseEvent event) {
+		if (CHECKS) checkInReactorThread(this);
+		events++;
+		if (historySize != 0 && event.getId() != null) {
+			if (history.size() == historySize) {
+				history.poll();
+			}
+			history.add(event);
+		}
+		for (Iterator<SseStream> iterator = members.iterator(); iterator.hasNext(); ) {
+			SseStream stream = iterator.next();
+			stream.send(event);
+			if (stream.isClosed()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private void replay(SseStream stream, String lastEventId) {
+		int missed = 0;
+		for (Iterator<SseEvent> iterator = history.descendingIterator(); ; missed++) {
+			if (!iterator.hasNext()) return;
+			if (lastEventId.equals(iterator.next().getId())) break;
+		}
+		int skip = history.size() - missed;
+		for (SseEvent event : history) {
+			if (skip-- > 0) continue;
+			stream.send(event);
+			replayedEvents++;
+		}
+	}
+
+	// region JMX
+	@JmxAttribute
+	public int getMembers() {
+		members.removeIf(SseStream::isClosed);
+		return members.size();
+	}
+
+	@JmxAttribute
+	public int getHistoryEvents() {
+		return history.size();
+	}
+
+	@JmxAttribute
+	public long getEvents() {
+		return events;
+	}
+
+	@JmxAttribute
+	public long getReplayedEvents() {
+		return replayedEvents;
+	}
+
+	@JmxAttribute
+	public int getPendingSize() {
+		int pendingSize = 0;
+		for (SseStream stream : members) {
+			pendingSize += stream.getPendingSize();
+		}
+		return pendingSize;
+	}
+	// endregion
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.common.builder.AbstractBuilder;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+
+import static io.activej.common.Checks.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A server-sent event, as defined by the
+ * <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">HTML Living Standard</a>.
+ * <p>
+ * An event is encoded into its wire format only once, when it is built.
+ * Events are immutable, so the same event may be sent to any number of {@link SseStream}s,
+ * including streams of different reactors.
+ */
+public final class SseEvent {
+	private @Nullable String id;
+	private @Nullable String event;
+	private @Nullable String data;
+	private @Nullable String comment;
+	private long retryMillis = -1;
+
+	private byte[] encoded;
+
+	private SseEvent() {}
+
+	/**
+	 * Creates an unnamed event with given data
+	 */
+	public static SseEvent of(String data) {
+		return builder().withData(data).build();
+	}
+
+	/**
+	 * Creates an event with given id, name and data
+	 */
+	public static SseEvent of(@Nullable String id, @Nullable String event, String data) {
+		return builder().withId(id).withEvent(event).withData(data).build();
+	}
+
+	/**
+	 * Creates a comment, which is ignored by clients, but keeps a connection alive
+	 */
+	public static SseEvent comment(String comment) {
+		return builder().withComment(comment).build();
+	}
+
+	public static Builder builder() {
+		return new SseEvent().new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, SseEvent> {
+		private Builder() {}
+
+		/**
+		 * Sets an id of an event, which is sent back by a client
+		 * in a {@code Last-Event-ID} header when it reconnects
+		 */
+		public Builder withId(@Nullable String id) {
+			checkNotBuilt(this);
+			checkArgument(id == null || isSingleLine(id) && id.indexOf('\0') == -1, "Invalid event id");
+			SseEvent.this.id = id;
+			return this;
+		}
+
+		public Builder withEvent(@Nullable String event) {
+			checkNotBuilt(this);
+			checkArgument(event == null || isSingleLine(event), "Event name should not contain line breaks");
+			SseEvent.this.event = event;
+			return this;
+		}
+
+		/**
+		 * Sets data of an event, a multi-line data is sent as several {@code data} fields
+		 */
+		public Builder withData(@Nullable String data) {
+			checkNotBuilt(this);
+			SseEvent.this.data = data;
+			return this;
+		}
+
+		public Builder withComment(@Nullable String comment) {
+			checkNotBuilt(this);
+			SseEvent.this.comment = comment;
+			return this;
+		}
+
+		/**
+		 * Sets a time a client should wait for before reconnecting
+		 */
+		public Builder withRetry(Duration retry) {
+			checkNotBuilt(this);
+			checkArgument(!retry.isNegative(), "Retry should not be negative");
+			SseEvent.this.retryMillis = retry.toMillis();
+			return this;
+		}
+
+		@Override
+		protected SseEvent doBuild() {
+			encoded = encode();
+			return SseEvent.this;
+		}
+	}
+
+	private byte[] encode() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (comment != null) writeLines(out, ":", comment);
+		if (id != null) writeField(out, "id", id);
+		if (event != null) writeField(out, "event", event);
+		if (retryMillis != -1) writeField(out, "retry", Long.toString(retryMillis));
+		if (data != null) writeLines(out, "data", data);
+		out.write('\n');
+		return out.toByteArray();
+	}
+
+	private static void writeLines(ByteArrayOutputStream out, String field, String value) {
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\r' || c == '\n') {
+				writeField(out, field, value.substring(start, i));
+				if (c == '\r' && i + 1 < value.length() && value.charAt(i + 1) == '\n') i++;
+				start = i + 1;
+			}
+		}
+		writeField(out, field, value.substring(start));
+	}
+
+	private static void writeField(ByteArrayOutputStream out, String field, String value) {
+		out.writeBytes(field.getBytes(UTF_8));
+		if (!field.equals(":")) out.write(':');
+		out.write(' ');
+		out.writeBytes(value.getBytes(UTF_8));
+		out.write('\n');
+	}
+
+	private static boolean isSingleLine(String value) {
+		return value.indexOf('\n') == -1 && value.indexOf('\r') == -1;
+	}
+
+	public @Nullable String getId() {
+		return id;
+	}
+
+	public @Nullable String getEvent() {
+		return event;
+	}
+
+	public @Nullable String getData() {
+		return data;
+	}
+
+	/**
+	 * Returns a size of an encoded event in bytes
+	 */
+	public int getEncodedSize() {
+		return encoded.length;
+	}
+
+	byte[] getEncoded() {
+		return encoded;
+	}
+
+	@Override
+	public String toString() {
+		return new String(encoded, UTF_8);
+	}
+}
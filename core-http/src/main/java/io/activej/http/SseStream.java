@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.common.ApplicationSettings;
+import io.activej.common.Checks;
+import io.activej.common.MemSize;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.csp.supplier.AbstractChannelSupplier;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.schedule.ScheduledRunnable;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.http.ContentTypes.EVENT_STREAM_UTF_8;
+import static io.activej.http.HttpHeaderValue.ofContentType;
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * A stream of server-sent events to a single client, which is used as a body stream of an HTTP response.
+ * <p>
+ * Events sent within a single reactor tick (or within a flush interval, if one is set) are coalesced
+ * into a single buffer, so that a burst of small events is written as a single chunk of a chunked response.
+ * Events which are sent while a previous buffer is still being written are coalesced as well.
+ * <p>
+ * If a heartbeat interval is set, a comment is sent whenever there were no events during an interval,
+ * so that idle connections are not closed by proxies.
+ * <p>
+ * If a client does not keep up with events and pending events exceed a maximum pending size,
+ * a stream is closed. A client is expected to reconnect and resume from its {@code Last-Event-ID},
+ * see {@link SseBroadcastGroup}.
+ */
+public final class SseStream extends AbstractChannelSupplier<ByteBuf> {
+	private static final boolean CHECKS = Checks.isEnabled(SseStream.class);
+
+	public static final Duration FLUSH_INTERVAL = ApplicationSettings.getDuration(SseStream.class, "flushInterval", Duration.ZERO);
+	public static final Duration HEARTBEAT_INTERVAL = ApplicationSettings.getDuration(SseStream.class, "heartbeatInterval", Duration.ZERO);
+	public static final MemSize MAX_PENDING_SIZE = ApplicationSettings.getMemSize(SseStream.class, "maxPendingSize", MemSize.kilobytes(256));
+
+	private static final HttpException SLOW_CONSUMER = new HttpException("Server-sent events stream does not keep up with events");
+	private static final SseEvent HEARTBEAT = SseEvent.comment("");
+
+	private final @Nullable String lastEventId;
+
+	private long flushIntervalMillis = FLUSH_INTERVAL.toMillis();
+	private long heartbeatIntervalMillis = HEARTBEAT_INTERVAL.toMillis();
+	private int maxPendingSize = MAX_PENDING_SIZE.toInt();
+	private @Nullable Duration retry;
+
+	private @Nullable ByteBuf pending;
+	private @Nullable SettablePromise<ByteBuf> waiting;
+	private boolean flushPosted;
+	private boolean endOfStream;
+
+	private boolean sentSinceHeartbeat;
+	private @Nullable ScheduledRunnable heartbeat;
+
+	// region stats
+	private long events;
+	private long heartbeats;
+	private long flushes;
+	// endregion
+
+	private SseStream(@Nullable String lastEventId) {
+		this.lastEventId = lastEventId;
+	}
+
+	public static SseStream create() {
+		return builder().build();
+	}
+
+	public static SseStream create(HttpRequest request) {
+		return builder(request).build();
+	}
+
+	public static Builder builder() {
+		return new SseStream(null).new Builder();
+	}
+
+	/**
+	 * Creates a builder of a stream which is a response to a given request.
+	 * A {@code Last-Event-ID} header of a request is available as {@link #getLastEventId()}
+	 */
+	public static Builder builder(HttpRequest request) {
+		return new SseStream(request.getHeader(LAST_EVENT_ID)).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, SseStream> {
+		private Builder() {}
+
+		/**
+		 * Sets an interval during which sent events are coalesced before being written.
+		 * By default, events are coalesced within a single reactor tick
+		 */
+		public Builder withFlushInterval(Duration flushInterval) {
+			checkNotBuilt(this);
+			checkArgument(!flushInterval.isNegative(), "Flush interval should not be negative");
+			SseStream.this.flushIntervalMillis = flushInterval.toMillis();
+			return this;
+		}
+
+		/**
+		 * Sets an interval of heartbeat comments, zero disables heartbeats
+		 */
+		public Builder withHeartbeatInterval(Duration heartbeatInterval) {
+			checkNotBuilt(this);
+			checkArgument(!heartbeatInterval.isNegative(), "Heartbeat interval should not be negative");
+			SseStream.this.heartbeatIntervalMillis = heartbeatInterval.toMillis();
+			return this;
+		}
+
+		/**
+		 * Sets a maximum size of events that are not yet written to a client
+		 */
+		public Builder withMaxPendingSize(MemSize maxPendingSize) {
+			checkNotBuilt(this);
+			checkArgument(maxPendingSize.toLong() > 0, "Max pending size should be positive");
+			SseStream.this.maxPendingSize = maxPendingSize.toInt();
+			return this;
+		}
+
+		/**
+		 * Sets a reconnection time, which is sent to a client as the first event of a stream
+		 */
+		public Builder withRetry(Duration retry) {
+			checkNotBuilt(this);
+			SseStream.this.retry = retry;
+			return this;
+		}
+
+		@Override
+		protected SseStream doBuild() {
+			if (retry != null) {
+				append(SseEvent.builder().withRetry(retry).build());
+			}
+			if (heartbeatIntervalMillis != 0) {
+				scheduleHeartbeat();
+			}
+			return SseStream.this;
+		}
+	}
+
+	/**
+	 * Returns a {@code Last-Event-ID} header of a request this stream responds to
+	 */
+	public @Nullable String getLastEventId() {
+		return lastEventId;
+	}
+
+	/**
+	 * Creates a response with this stream as a body
+	 */
+	public HttpResponse toResponse() {
+		return HttpResponse.ok200()
+			.withHeader(CONTENT_TYPE, ofContentType(EVENT_STREAM_UTF_8))
+			.withHeader(CACHE_CONTROL, "no-cache")
+			.withBodyStream(this)
+			.build();
+	}
+
+	/**
+	 * Sends an event to a client. Events sent to a closed or ended stream are ignored
+	 */
+	public void send(SseEvent event) {
+		if (CHECKS) checkInReactorThread(this);
+		if (isClosed() || endOfStream) return;
+		events++;
+		sentSinceHeartbeat = true;
+		append(event);
+	}
+
+	/**
+	 * Ends a stream after all pending events are written
+	 */
+	public void end() {
+		if (CHECKS) checkInReactorThread(this);
+		endOfStream = true;
+		if (waiting != null && pending == null) {
+			SettablePromise<ByteBuf> waiting = this.waiting;
+			this.waiting = null;
+			waiting.set(null);
+		}
+	}
+
+	private void append(SseEvent event) {
+		byte[] encoded = event.getEncoded();
+		if (pending == null) {
+			pending = ByteBufPool.allocate(encoded.length);
+		} else {
+			if (pending.readRemaining() + encoded.length > maxPendingSize) {
+				closeEx(SLOW_CONSUMER);
+				return;
+			}
+			pending = ByteBufPool.ensureWriteRemaining(pending, encoded.length);
+		}
+		pending.write(encoded);
+		if (waiting != null && !flushPosted) {
+			postFlush();
+		}
+	}
+
+	private void postFlush() {
+		flushPosted = true;
+		if (flushIntervalMillis == 0) {
+			reactor.postLast(this::flush);
+		} else {
+			reactor.delayBackground(flushIntervalMillis, this::flush);
+		}
+	}
+
+	private void flush() {
+		flushPosted = false;
+		if (waiting == null || pending == null) return;
+		SettablePromise<ByteBuf> waiting = this.waiting;
+		this.waiting = null;
+		waiting.set(takePending());
+	}
+
+	private ByteBuf takePending() {
+		ByteBuf buf = pending;
+		assert buf != null;
+		pending = null;
+		flushes++;
+		return buf;
+	}
+
+	private void scheduleHeartbeat() {
+		heartbeat = reactor.delayBackground(heartbeatIntervalMillis, () -> {
+			if (isClosed() || endOfStream) return;
+			if (!sentSinceHeartbeat) {
+				heartbeats++;
+				append(HEARTBEAT);
+			}
+			sentSinceHeartbeat = false;
+			scheduleHeartbeat();
+		});
+	}
+
+	@Override
+	protected Promise<ByteBuf> doGet() {
+		if (pending != null) {
+			return Promise.of(takePending());
+		}
+		if (endOfStream) {
+			return Promise.of(null);
+		}
+		waiting = new SettablePromise<>();
+		return waiting;
+	}
+
+	@Override
+	protected void onClosed(Exception e) {
+		if (heartbeat != null) {
+			heartbeat.cancel();
+			heartbeat = null;
+		}
+		if (waiting != null) {
+			SettablePromise<ByteBuf> waiting = this.waiting;
+			this.waiting = null;
+			waiting.setException(e);
+		}
+	}
+
+	@Override
+	protected void onCleanup() {
+		if (pending != null) {
+			pending.recycle();
+			pending = null;
+		}
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	public long getHeartbeats() {
+		return heartbeats;
+	}
+
+	/**
+	 * Returns a number of buffers passed to a response body, each buffer is written as a single chunk
+	 */
+	public long getFlushes() {
+		return flushes;
+	}
+
+	public int getPendingSize() {
+		return pending == null ? 0 : pending.readRemaining();
+	}
+}
@@ -18,8 +18,10 @@ package io.activej.http;
 
 import io.activej.async.function.AsyncSupplier;
 import io.activej.bytebuf.ByteBuf;
+import io.activej.common.ApplicationSettings;
 import io.activej.common.Checks;
 import io.activej.common.builder.AbstractBuilder;
+import io.activej.http.loader.CacheStaticLoader;
 import io.activej.http.loader.IStaticLoader;
 import io.activej.http.loader.ResourceIsADirectoryException;
 import io.activej.http.loader.ResourceNotFoundException;
@@ -32,25 +34,41 @@ import org.jetbrains.annotations.Nullable;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static io.activej.bytebuf.ByteBuf.wrapForReading;
+import static io.activej.common.Checks.checkArgument;
 import static io.activej.http.HttpHeaderValue.ofContentType;
-import static io.activej.http.HttpHeaders.CONTENT_TYPE;
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.http.HttpUtils.*;
 import static io.activej.reactor.Reactive.checkInReactorThread;
 
 /**
  * This servlet allows return HTTP responses by HTTP paths from some predefined storage, mainly the filesystem.
+ * <p>
+ * Responses carry a strong {@code ETag}, conditional {@code If-None-Match} requests are answered
+ * with {@code 304 Not Modified}, and a single byte range of a resource may be requested with a {@code Range} header.
+ * <p>
+ * Optionally, the servlet negotiates a content coding via {@code Accept-Encoding}: it may serve precompressed
+ * {@code .br} and {@code .gz} siblings of a resource, and it may gzip compressible resources once,
+ * keeping compressed variants in memory.
+ * <p>
+ * ETags and compressed variants are kept in a bounded cache of recently served resources.
+ * ETags of resources loaded by a {@link IStaticLoader#cached cached} loader are computed once,
+ * other resources are hashed on each request, as their content may change.
  */
 public final class StaticServlet extends AbstractReactive
 	implements AsyncServlet {
 	private static final boolean CHECKS = Checks.isEnabled(StaticServlet.class);
 
 	public static final Charset DEFAULT_TXT_ENCODING = StandardCharsets.UTF_8;
+	public static final int DEFAULT_MAX_CACHED_RESOURCES = ApplicationSettings.getInt(StaticServlet.class, "maxCachedResources", 1024);
+
+	private static final int MIN_COMPRESSION_SIZE = 256;
+	private static final Set<MediaType> COMPRESSIBLE_TYPES = Set.of(MediaTypes.JSON, MediaTypes.JAVASCRIPT, MediaTypes.XML_APP, MediaTypes.SVG);
 
 	private final IStaticLoader resourceLoader;
 	private Function<String, ContentType> contentTypeResolver = StaticServlet::getContentType;
@@ -60,9 +78,22 @@ public final class StaticServlet extends AbstractReactive
 
 	private @Nullable String defaultResource;
 
+	private boolean precompressedVariants;
+	private boolean gzipCompression;
+
+	private final boolean immutableResources;
+	private int maxCachedResources = DEFAULT_MAX_CACHED_RESOURCES;
+	private final Map<String, CachedResource> cachedResources = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest) {
+			return size() > maxCachedResources;
+		}
+	};
+
 	private StaticServlet(Reactor reactor, IStaticLoader resourceLoader) {
 		super(reactor);
 		this.resourceLoader = resourceLoader;
+		this.immutableResources = resourceLoader instanceof CacheStaticLoader;
 	}
 
 	public static StaticServlet create(Reactor reactor, IStaticLoader resourceLoader) {
@@ -139,6 +170,41 @@ public final class StaticServlet extends AbstractReactive
 			return this;
 		}
 
+		/**
+		 * Enables serving of precompressed {@code <path>.br} and {@code <path>.gz} resources
+		 * to clients which accept a corresponding content coding.
+		 * <p>
+		 * Each request may probe the loader for missing precompressed resources,
+		 * so the loader should preferably be {@link IStaticLoader#cached cached}.
+		 */
+		public Builder withPrecompressedVariants() {
+			checkNotBuilt(this);
+			StaticServlet.this.precompressedVariants = true;
+			return this;
+		}
+
+		/**
+		 * Enables gzip compression of textual resources for clients which accept it.
+		 * Each resource is compressed only once, compressed variants are kept in memory
+		 * and are recompressed only if a content of a resource changes.
+		 */
+		public Builder withGzipCompression() {
+			checkNotBuilt(this);
+			StaticServlet.this.gzipCompression = true;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum number of resources whose ETags and compressed variants are cached,
+		 * least recently served resources are evicted first
+		 */
+		public Builder withMaxCachedResources(int maxCachedResources) {
+			checkNotBuilt(this);
+			checkArgument(maxCachedResources > 0, "Max cached resources should be positive");
+			StaticServlet.this.maxCachedResources = maxCachedResources;
+			return this;
+		}
+
 		@Override
 		protected StaticServlet doBuild() {
 			return StaticServlet.this;
@@ -168,10 +234,108 @@ public final class StaticServlet extends AbstractReactive
 		return type;
 	}
 
-	private Promise<HttpResponse> createHttpResponse(ByteBuf buf, ContentType contentType) {
-		return responseBuilderSupplier.get()
-			.withBody(buf)
+	private Promise<HttpResponse> loadResponse(HttpRequest request, String path, ContentType contentType) {
+		String acceptEncoding = (precompressedVariants || gzipCompression) && !request.hasHeader(RANGE) ?
+			request.getHeader(ACCEPT_ENCODING) :
+			null;
+		boolean gzip = acceptEncoding != null && acceptsEncoding(acceptEncoding, "gzip");
+		AsyncSupplier<Resource> loader = () -> loadIdentity(path, gzip && gzipCompression && isCompressible(contentType));
+		if (precompressedVariants && gzip) {
+			loader = precompressedOrElse(path + ".gz", "gzip", loader);
+		}
+		if (precompressedVariants && acceptEncoding != null && acceptsEncoding(acceptEncoding, "br")) {
+			loader = precompressedOrElse(path + ".br", "br", loader);
+		}
+		return loader.get()
+			.then(resource -> createHttpResponse(request, resource, contentType));
+	}
+
+	private AsyncSupplier<Resource> precompressedOrElse(String path, String encoding, AsyncSupplier<Resource> fallback) {
+		return () -> resourceLoader.load(path)
+			.map(buf -> new Resource(buf, encoding, getCachedResource(path, buf).etag()))
+			.then(Promise::of,
+				e -> e instanceof ResourceNotFoundException ?
+					fallback.get() :
+					Promise.ofException(e));
+	}
+
+	private Promise<Resource> loadIdentity(String path, boolean compress) {
+		return resourceLoader.load(path)
+			.map(buf -> {
+				CachedResource cached = getCachedResource(path, buf);
+				if (!compress || buf.readRemaining() < MIN_COMPRESSION_SIZE) {
+					return new Resource(buf, null, cached.etag());
+				}
+				GzippedResource gzipped = cached.gzipped();
+				if (gzipped == null) {
+					gzipped = new GzippedResource(getEncodedEtag(cached.etag(), "gzip"), GzipProcessorUtils.toGzip(buf).asArray());
+					cachedResources.put(path, new CachedResource(cached.array(), cached.offset(), cached.length(), cached.etag(), gzipped));
+				} else {
+					buf.recycle();
+				}
+				return new Resource(wrapForReading(gzipped.bytes()), "gzip", gzipped.etag());
+			});
+	}
+
+	private CachedResource getCachedResource(String path, ByteBuf buf) {
+		CachedResource cached = cachedResources.get(path);
+		if (cached != null && cached.array() == buf.array() && cached.offset() == buf.head() && cached.length() == buf.readRemaining()) {
+			return cached;
+		}
+		String etag = generateEtag(buf.array(), buf.head(), buf.readRemaining());
+		GzippedResource gzipped = cached != null && cached.etag().equals(etag) ? cached.gzipped() : null;
+		// arrays of other loaders may be pooled and reused for a changed content, so they are never compared
+		cached = new CachedResource(immutableResources ? buf.array() : null, buf.head(), buf.readRemaining(), etag, gzipped);
+		cachedResources.put(path, cached);
+		return cached;
+	}
+
+	private Promise<HttpResponse> createHttpResponse(HttpRequest request, Resource resource, ContentType contentType) {
+		ByteBuf buf = resource.buf;
+		HttpResponse.Builder builder = responseBuilderSupplier.get()
 			.withHeader(CONTENT_TYPE, ofContentType(contentType))
+			.withHeader(ETAG, resource.etag);
+		if (precompressedVariants || gzipCompression) {
+			builder.withHeader(VARY, "Accept-Encoding");
+		}
+		if (resource.encoding != null) {
+			builder.withHeader(CONTENT_ENCODING, resource.encoding);
+		} else {
+			builder.withHeader(ACCEPT_RANGES, "bytes");
+		}
+
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if (ifNoneMatch != null && isEtagMatched(ifNoneMatch, resource.etag)) {
+			buf.recycle();
+			return builder.withCode(304).toPromise();
+		}
+
+		String range = resource.encoding == null ? request.getHeader(RANGE) : null;
+		if (range != null) {
+			String ifRange = request.getHeader(IF_RANGE);
+			int length = buf.readRemaining();
+			int[] byteRange = ifRange == null || ifRange.equals(resource.etag) ? parseByteRange(range, length) : null;
+			if (byteRange != null && byteRange.length == 0) {
+				buf.recycle();
+				return builder
+					.withCode(416)
+					.withHeader(CONTENT_RANGE, "bytes */" + length)
+					.toPromise();
+			}
+			if (byteRange != null) {
+				int head = buf.head();
+				buf.tail(head + byteRange[1]);
+				buf.head(head + byteRange[0]);
+				return builder
+					.withCode(206)
+					.withHeader(CONTENT_RANGE, "bytes " + byteRange[0] + '-' + (byteRange[1] - 1) + '/' + length)
+					.withBody(buf)
+					.toPromise();
+			}
+		}
+
+		return builder
+			.withBody(buf)
 			.toPromise();
 	}
 
@@ -183,36 +347,83 @@ public final class StaticServlet extends AbstractReactive
 		ContentType contentType = contentTypeResolver.apply(mappedPath);
 		return Promise.complete()
 			.then(() -> (mappedPath.endsWith("/") || mappedPath.isEmpty()) ?
-				tryLoadIndexResource(mappedPath) :
-				resourceLoader.load(mappedPath)
-					.then(byteBuf -> createHttpResponse(byteBuf, contentType))
+				tryLoadIndexResource(request, mappedPath) :
+				loadResponse(request, mappedPath, contentType)
 					.then((value, e) -> {
 						if (e instanceof ResourceIsADirectoryException) {
-							return tryLoadIndexResource(mappedPath);
+							return tryLoadIndexResource(request, mappedPath);
 						} else {
 							return Promise.of(value, e);
 						}
 					}))
 			.then(Promise::of,
 				e -> e instanceof ResourceNotFoundException ?
-					tryLoadDefaultResource() :
+					tryLoadDefaultResource(request) :
 					Promise.ofException(HttpError.ofCode(400, e)));
 	}
 
-	private Promise<HttpResponse> tryLoadIndexResource(String mappedPath) {
+	private Promise<HttpResponse> tryLoadIndexResource(HttpRequest request, String mappedPath) {
 		String dirPath = mappedPath.endsWith("/") || mappedPath.isEmpty() ? mappedPath : (mappedPath + '/');
 		return Promises.first(
 				indexResources.stream()
 					.map(indexResource -> (AsyncSupplier<HttpResponse>) () ->
-						resourceLoader.load(dirPath + indexResource)
-							.then(byteBuf -> createHttpResponse(byteBuf, contentTypeResolver.apply(indexResource)))))
+						loadResponse(request, dirPath + indexResource, contentTypeResolver.apply(indexResource))))
 			.mapException(e -> new ResourceNotFoundException("Could not find '" + mappedPath + '\'', e));
 	}
 
-	private Promise<HttpResponse> tryLoadDefaultResource() {
+	private Promise<HttpResponse> tryLoadDefaultResource(HttpRequest request) {
 		return defaultResource != null ?
-			resourceLoader.load(defaultResource)
-				.then(buf -> createHttpResponse(buf, contentTypeResolver.apply(defaultResource))) :
+			loadResponse(request, defaultResource, contentTypeResolver.apply(defaultResource)) :
 			Promise.ofException(HttpError.notFound404());
 	}
+
+	private static boolean isCompressible(ContentType contentType) {
+		MediaType mediaType = contentType.getMediaType();
+		return mediaType.isTextType() || COMPRESSIBLE_TYPES.contains(mediaType);
+	}
+
+	private static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+		for (String coding : acceptEncoding.split(",")) {
+			int semicolon = coding.indexOf(';');
+			String name = (semicolon == -1 ? coding : coding.substring(0, semicolon)).trim();
+			if (!name.equalsIgnoreCase(encoding)) continue;
+			if (semicolon == -1) return true;
+			String params = coding.substring(semicolon + 1).replace(" ", "");
+			return !params.matches("(?i)q=0(\\.0{0,3})?");
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a single byte range of a {@code Range} header.
+	 *
+	 * @return {@code null} if a header should be ignored, an empty array if a range is not satisfiable,
+	 * otherwise an array of a first byte position and a position after the last byte
+	 */
+	private static int @Nullable [] parseByteRange(String range, int length) {
+		if (!range.regionMatches(true, 0, "bytes=", 0, 6) || range.indexOf(',') != -1) return null;
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) return null;
+		try {
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1));
+				if (suffix <= 0 || length == 0) return new int[0];
+				return new int[]{(int) Math.max(0, length - suffix), length};
+			}
+			long first = Long.parseLong(spec.substring(0, dash));
+			long last = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+			if (first < 0 || last < first && dash != spec.length() - 1) return null;
+			if (first >= length) return new int[0];
+			return new int[]{(int) first, (int) Math.min(last + 1, length)};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private record Resource(ByteBuf buf, @Nullable String encoding, String etag) {}
+
+	private record CachedResource(byte @Nullable [] array, int offset, int length, String etag, @Nullable GzippedResource gzipped) {}
+
+	private record GzippedResource(String etag, byte[] bytes) {}
 }
@@ -339,6 +339,46 @@ public final class UrlParser {
 		return findParameter(key);
 	}
 
+	/**
+	 * Checks whether a query has a parameter with a given key without decoding its value
+	 */
+	public boolean hasQueryParameter(String key) {
+		if (no(query)) {
+			return false;
+		}
+		if (queryPositions == null) {
+			parseQueryParameters();
+		}
+		return findKeyEnd(key) != -1;
+	}
+
+	/**
+	 * Checks whether a value of a query parameter with a given key is equal to a given value.
+	 * A value is compared with raw bytes of a query, unless it is percent-encoded.
+	 */
+	public boolean isQueryParameterEqualTo(String key, String value) {
+		if (no(query)) {
+			return false;
+		}
+		if (queryPositions == null) {
+			parseQueryParameters();
+		}
+		int keyEnd = findKeyEnd(key);
+		if (keyEnd == -1) {
+			return false;
+		}
+		int start = keyEnd < limit && raw[keyEnd] == '=' ? keyEnd + 1 : keyEnd;
+		int end = start;
+		for (; end < limit; end++) {
+			byte b = raw[end];
+			if (b == '&' || b == '#') break;
+			if (b == '%' || b == '+' || b < 0) {
+				return value.equals(urlParse(raw, start, limit));
+			}
+		}
+		return isEqual(value, start, end);
+	}
+
 	public List<String> getQueryParameters(String key) {
 		if (no(query)) {
 			return List.of();
@@ -434,15 +474,20 @@ public final class UrlParser {
 	}
 
 	@Nullable String findParameter(String key) {
+		int keyEnd = findKeyEnd(key);
+		return keyEnd != -1 ? keyValueDecode(raw, keyEnd, limit) : null;
+	}
+
+	private int findKeyEnd(String key) {
 		for (int record : queryPositions) {
 			if (record == 0) break;
 			int keyStart = record & 0xFFFF;
 			int keyEnd = record >>> 16;
 			if (isEqual(key, keyStart, keyEnd)) {
-				return keyValueDecode(raw, keyEnd, limit);
+				return keyEnd;
 			}
 		}
-		return null;
+		return -1;
 	}
 
 	List<String> findParameters(String key) {
@@ -467,19 +512,38 @@ public final class UrlParser {
 	}
 
 	@Nullable String pollUrlPart() {
+		int start = skipUrlPart();
+		return start != -1 ? urlParse(raw, start, getUrlPartEnd()) : "";
+	}
+
+	/**
+	 * Moves a position past the next url part without decoding it.
+	 *
+	 * @return an offset of the url part in raw bytes or -1 if there are no url parts left
+	 */
+	int skipUrlPart() {
 		if (pos < pathEnd) {
 			int start = pos + 1;
 			int nextSlash = indexOf(SLASH, start);
 			pos = nextSlash > pathEnd ? pathEnd : (short) nextSlash;
 			if (no(pos)) {
 				pos = limit;
-				return urlParse(raw, start, pathEnd);
-			} else {
-				return urlParse(raw, start, pos);
 			}
-		} else {
-			return "";
+			return start;
 		}
+		return -1;
+	}
+
+	int getUrlPartEnd() {
+		return Math.min(pos, pathEnd);
+	}
+
+	byte[] getRaw() {
+		return raw;
+	}
+
+	@Nullable String decodeUrlPart(int start, int end) {
+		return urlParse(raw, start, end);
 	}
 
 	private boolean isEqual(String key, int start, int end) {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.activej.http;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.activej.common.HashUtils.murmur3hash;
+
+/**
+ * A weight-bounded cache with W-TinyLFU eviction policy.
+ * <p>
+ * New entries are admitted into a small LRU window. Entries which overflow the window become
+ * candidates for a main segmented LRU, where each candidate competes with a victim (the least recently
+ * used entry of the probation segment). The entry with a lower access frequency is evicted.
+ * Frequencies are estimated with a count-min sketch, which is periodically halved so that
+ * the cache adapts to changes in popularity.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class WTinyLfuCache<K, V> {
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final long maxWeight;
+	private final long maxWindowWeight;
+	private final long maxProtectedWeight;
+
+	private final Map<K, Node<K, V>> map = new HashMap<>();
+	private final FrequencySketch sketch;
+
+	// circular doubly linked lists with sentinel heads, from the least to the most recently used entries
+	private final Node<K, V> window = new Node<>();
+	private final Node<K, V> probation = new Node<>();
+	private final Node<K, V> protectedSegment = new Node<>();
+
+	private long windowWeight;
+	private long probationWeight;
+	private long protectedWeight;
+
+	private long evictions;
+
+	WTinyLfuCache(long maxWeight, int expectedEntries) {
+		this.maxWeight = maxWeight;
+		this.maxWindowWeight = Math.max(1, maxWeight / 100);
+		this.maxProtectedWeight = (maxWeight - maxWindowWeight) * 4 / 5;
+		this.sketch = new FrequencySketch(expectedEntries);
+	}
+
+	@Nullable V get(K key) {
+		sketch.increment(key.hashCode());
+		Node<K, V> node = map.get(key);
+		if (node == null) return null;
+		onAccess(node);
+		return node.value;
+	}
+
+	/**
+	 * Returns a value of an entry without counting an access to it
+	 */
+	@Nullable V peek(K key) {
+		Node<K, V> node = map.get(key);
+		return node != null ? node.value : null;
+	}
+
+	/**
+	 * Adds or replaces an entry. An entry which is heavier than the whole cache is not added.
+	 */
+	void put(K key, V value, long weight) {
+		remove(key);
+		if (weight > maxWeight) return;
+		Node<K, V> node = new Node<>(key, value, weight);
+		map.put(key, node);
+		linkLast(window, node);
+		windowWeight += weight;
+		evict();
+	}
+
+	@Nullable V remove(K key) {
+		Node<K, V> node = map.remove(key);
+		if (node == null) return null;
+		unlink(node);
+		subtractWeight(node);
+		return node.value;
+	}
+
+	int size() {
+		return map.size();
+	}
+
+	long weight() {
+		return windowWeight + probationWeight + protectedWeight;
+	}
+
+	long getEvictions() {
+		return evictions;
+	}
+
+	private void onAccess(Node<K, V> node) {
+		switch (node.segment) {
+			case WINDOW -> {
+				unlink(node);
+				linkLast(window, node);
+			}
+			case PROBATION -> {
+				unlink(node);
+				probationWeight -= node.weight;
+				node.segment = PROTECTED;
+				linkLast(protectedSegment, node);
+				protectedWeight += node.weight;
+				while (protectedWeight > maxProtectedWeight) {
+					Node<K, V> demoted = protectedSegment.next;
+					unlink(demoted);
+					protectedWeight -= demoted.weight;
+					demoted.segment = PROBATION;
+					linkLast(probation, demoted);
+					probationWeight += demoted.weight;
+				}
+			}
+			case PROTECTED -> {
+				unlink(node);
+				linkLast(protectedSegment, node);
+			}
+		}
+	}
+
+	private void evict() {
+		Node<K, V> candidate = null;
+		while (windowWeight > maxWindowWeight) {
+			Node<K, V> node = window.next;
+			unlink(node);
+			windowWeight -= node.weight;
+			node.segment = PROBATION;
+			linkLast(probation, node);
+			probationWeight += node.weight;
+			if (candidate == null) candidate = node;
+		}
+
+		while (weight() > maxWeight) {
+			Node<K, V> victim = probation.next != probation ? probation.next :
+				protectedSegment.next != protectedSegment ? protectedSegment.next :
+					window.next;
+			if (candidate == null || candidate == victim) {
+				if (candidate == victim) candidate = nextCandidate(candidate);
+				evict(victim);
+			} else if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+				evict(victim);
+			} else {
+				Node<K, V> evicted = candidate;
+				candidate = nextCandidate(candidate);
+				evict(evicted);
+			}
+		}
+	}
+
+	private @Nullable Node<K, V> nextCandidate(Node<K, V> candidate) {
+		return candidate.next != probation ? candidate.next : null;
+	}
+
+	private void evict(Node<K, V> node) {
+		map.remove(node.key);
+		unlink(node);
+		subtractWeight(node);
+		evictions++;
+	}
+
+	private void subtractWeight(Node<K, V> node) {
+		switch (node.segment) {
+			case WINDOW -> windowWeight -= node.weight;
+			case PROBATION -> probationWeight -= node.weight;
+			case PROTECTED -> protectedWeight -= node.weight;
+		}
+	}
+
+	private static <K, V> void linkLast(Node<K, V> head, Node<K, V> node) {
+		Node<K, V> last = head.prev;
+		node.prev = last;
+		node.next = head;
+		last.next = node;
+		head.prev = node;
+	}
+
+	private static <K, V> void unlink(Node<K, V> node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = node.next = null;
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final long weight;
+		int segment = WINDOW;
+
+		Node<K, V> prev = this;
+		Node<K, V> next = this;
+
+		Node() {
+			this(null, null, 0);
+		}
+
+		Node(K key, V value, long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A count-min sketch with 4 rows of counters saturating at 15
+	 */
+	private static final class FrequencySketch {
+		private static final int DEPTH = 4;
+		private static final int MAX_FREQUENCY = 15;
+		private static final int[] SEEDS = {0x97cb3127, 0xb4ef7be9, 0x3d4bfb47, 0xf2a9e3c1};
+
+		private final byte[] counters;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int expectedEntries) {
+			int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1) << 1);
+			this.counters = new byte[DEPTH * width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * width;
+		}
+
+		int frequency(int hashCode) {
+			int frequency = MAX_FREQUENCY;
+			for (int i = 0; i < DEPTH; i++) {
+				frequency = Math.min(frequency, counters[index(hashCode, i)]);
+			}
+			return frequency;
+		}
+
+		void increment(int hashCode) {
+			boolean added = false;
+			for (int i = 0; i < DEPTH; i++) {
+				int index = index(hashCode, i);
+				if (counters[index] < MAX_FREQUENCY) {
+					counters[index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] >>= 1;
+				}
+				additions /= 2;
+			}
+		}
+
+		private int index(int hashCode, int row) {
+			return row * (mask + 1) + (murmur3hash(hashCode ^ SEEDS[row]) & mask);
+		}
+	}
+}
@@ -58,6 +58,7 @@ public final class WebSocket extends AbstractAsyncCloseable implements IWebSocke
 	private final ChannelSupplier<Frame> frameInput;
 	private final ChannelConsumer<Frame> frameOutput;
 	private final int maxMessageSize;
+	private final boolean masked;
 
 	private @Nullable SettablePromise<?> readPromise;
 	private @Nullable SettablePromise<Void> writePromise;
@@ -68,7 +69,8 @@ public final class WebSocket extends AbstractAsyncCloseable implements IWebSocke
 		ChannelSupplier<Frame> frameInput,
 		ChannelConsumer<Frame> frameOutput,
 		Consumer<WebSocketException> onProtocolError,
-		int maxMessageSize
+		int maxMessageSize,
+		boolean masked
 	) {
 		this.request = request;
 		this.response = response;
@@ -76,6 +78,7 @@ public final class WebSocket extends AbstractAsyncCloseable implements IWebSocke
 		this.frameOutput = sanitize(frameOutput);
 		this.onProtocolError = onProtocolError;
 		this.maxMessageSize = maxMessageSize;
+		this.masked = masked;
 	}
 
 	@Override
@@ -154,6 +157,24 @@ public final class WebSocket extends AbstractAsyncCloseable implements IWebSocke
 		return doWrite(() -> frameOutput.accept(frame), frame);
 	}
 
+	/**
+	 * Writes a frame which has already been encoded for the wire, so that the same
+	 * encoded frame may be shared by several web sockets. Only unmasked (server side)
+	 * web sockets accept encoded frames.
+	 */
+	Promise<Void> writeEncodedFrame(ByteBuf encodedFrame) {
+		if (CHECKS) {
+			checkInReactorThread(this);
+			checkState(!masked, "Masked web socket cannot write encoded frames");
+		}
+		Frame frame = Frame.encoded(encodedFrame);
+		return doWrite(() -> frameOutput.accept(frame), frame);
+	}
+
+	boolean isMasked() {
+		return masked;
+	}
+
 	@Override
 	public HttpRequest getRequest() {
 		return request;
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.http.IWebSocket.Message;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.reactor.AbstractReactive;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.jmx.ReactiveJmxBean;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static io.activej.bytebuf.ByteBuf.wrapForReading;
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.http.IWebSocket.Message.MessageType.TEXT;
+import static io.activej.http.WebSocketConstants.OpCode.OP_BINARY;
+import static io.activej.http.WebSocketConstants.OpCode.OP_TEXT;
+import static io.activej.http.WebSocketConstants.SLOW_CONSUMER;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A group of server side web sockets of a single reactor, which receive the same messages.
+ * <p>
+ * A broadcast message is encoded into a frame only once, and the encoded frame is shared
+ * by all the members of a group. Each member writes one message at a time, messages that
+ * are broadcast while a member is still writing are queued up to a given limit. When the
+ * queue of a member is full, a {@link SlowConsumerPolicy} of a member decides what happens.
+ * <p>
+ * Members are written to by a group only, they should not be written to directly.
+ * Closed web sockets are removed from a group automatically.
+ * <p>
+ * To broadcast messages to groups of different reactors (for example, of a worker pool),
+ * use {@link WebSocketBroadcaster}.
+ */
+public final class WebSocketBroadcastGroup extends AbstractReactive
+	implements ReactiveJmxBean {
+	private static final boolean CHECKS = Checks.isEnabled(WebSocketBroadcastGroup.class);
+
+	public static final int DEFAULT_MAX_PENDING_MESSAGES = 16;
+
+	/**
+	 * Defines what happens to a member which has too many pending messages
+	 */
+	public enum SlowConsumerPolicy {
+		/**
+		 * A new message is not sent to a member
+		 */
+		DROP,
+		/**
+		 * A member is closed with a {@code 1008 Policy Violation} close code
+		 */
+		DISCONNECT,
+		/**
+		 * Pending messages of a member are discarded, and only a new message is kept
+		 */
+		COALESCE_LATEST
+	}
+
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP;
+	private int maxPendingMessages = DEFAULT_MAX_PENDING_MESSAGES;
+
+	private final Map<IWebSocket, Member> members = new LinkedHashMap<>();
+	private boolean distributing;
+
+	// region stats
+	private long messages;
+	private long droppedMessages;
+	private long coalescedMessages;
+	private long disconnectedMembers;
+	// endregion
+
+	private WebSocketBroadcastGroup(Reactor reactor) {
+		super(reactor);
+	}
+
+	public static WebSocketBroadcastGroup create(Reactor reactor) {
+		return builder(reactor).build();
+	}
+
+	public static Builder builder(Reactor reactor) {
+		return new WebSocketBroadcastGroup(reactor).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, WebSocketBroadcastGroup> {
+		private Builder() {}
+
+		/**
+		 * Sets a default policy for members which do not keep up with broadcast messages,
+		 * {@link SlowConsumerPolicy#DROP} by default
+		 */
+		public Builder withSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+			checkNotBuilt(this);
+			WebSocketBroadcastGroup.this.slowConsumerPolicy = slowConsumerPolicy;
+			return this;
+		}
+
+		/**
+		 * Sets a maximum number of messages queued for a member while it is writing a previous message
+		 */
+		public Builder withMaxPendingMessages(int maxPendingMessages) {
+			checkNotBuilt(this);
+			checkArgument(maxPendingMessages > 0, "Max pending messages should be positive");
+			WebSocketBroadcastGroup.this.maxPendingMessages = maxPendingMessages;
+			return this;
+		}
+
+		@Override
+		protected WebSocketBroadcastGroup doBuild() {
+			return WebSocketBroadcastGroup.this;
+		}
+	}
+
+	public void add(IWebSocket webSocket) {
+		add(webSocket, slowConsumerPolicy);
+	}
+
+	/**
+	 * Adds a web socket to this group with a given slow consumer policy
+	 *
+	 * @throws IllegalArgumentException if a web socket is not a server side web socket of this reactor
+	 */
+	public void add(IWebSocket webSocket, SlowConsumerPolicy policy) {
+		if (CHECKS) checkInReactorThread(this);
+		if (!(webSocket instanceof WebSocket ws) || ws.isMasked()) {
+			throw new IllegalArgumentException("Only server side web sockets can be added to a broadcast group");
+		}
+		checkArgument(ws.getReactor() == reactor, "Web socket belongs to a different reactor");
+		if (ws.isClosed()) return;
+		members.putIfAbsent(ws, new Member(ws, policy));
+	}
+
+	public boolean remove(IWebSocket webSocket) {
+		if (CHECKS) checkInReactorThread(this);
+		Member member = members.remove(webSocket);
+		if (member == null) return false;
+		member.dispose();
+		return true;
+	}
+
+	public boolean contains(IWebSocket webSocket) {
+		if (CHECKS) checkInReactorThread(this);
+		Member member = members.get(webSocket);
+		return member != null && !member.disposed;
+	}
+
+	/**
+	 * Sends a message to all the members of this group.
+	 * A payload of a binary message is recycled.
+	 */
+	public void broadcast(Message message) {
+		if (CHECKS) checkInReactorThread(this);
+		ByteBuf encoded = message.getType() == TEXT ?
+			WebSocketFramesToBufs.encode(wrapForReading(message.getText().getBytes(UTF_8)), OP_TEXT, true, false, false) :
+			WebSocketFramesToBufs.encode(message.getBuf(), OP_BINARY, true, false, false);
+		messages++;
+
+		distributing = true;
+		try {
+			for (Iterator<Member> iterator = members.values().iterator(); iterator.hasNext(); ) {
+				Member member = iterator.next();
+				if (!member.disposed && !member.webSocket.isClosed()) {
+					member.offer(encoded);
+				}
+				if (member.disposed || member.webSocket.isClosed()) {
+					member.dispose();
+					iterator.remove();
+				}
+			}
+		} finally {
+			distributing = false;
+			encoded.recycle();
+		}
+	}
+
+	private final class Member {
+		final WebSocket webSocket;
+		final SlowConsumerPolicy policy;
+		final ArrayDeque<ByteBuf> pending = new ArrayDeque<>();
+
+		boolean writing;
+		boolean disposed;
+
+		Member(WebSocket webSocket, SlowConsumerPolicy policy) {
+			this.webSocket = webSocket;
+			this.policy = policy;
+		}
+
+		void offer(ByteBuf encoded) {
+			if (!writing) {
+				write(encoded.slice());
+				return;
+			}
+			if (pending.size() < maxPendingMessages) {
+				pending.add(encoded.slice());
+				return;
+			}
+			switch (policy) {
+				case DROP -> droppedMessages++;
+				case DISCONNECT -> {
+					disconnectedMembers++;
+					dispose();
+					webSocket.closeEx(SLOW_CONSUMER);
+				}
+				case COALESCE_LATEST -> {
+					coalescedMessages += pending.size();
+					recyclePending();
+					pending.add(encoded.slice());
+				}
+			}
+		}
+
+		void write(ByteBuf frame) {
+			writing = true;
+			webSocket.writeEncodedFrame(frame)
+				.subscribe(($, e) -> {
+					writing = false;
+					if (disposed) return;
+					if (e != null) {
+						dispose();
+						if (!distributing) members.remove(webSocket, this);
+						return;
+					}
+					ByteBuf next = pending.poll();
+					if (next != null) {
+						write(next);
+					}
+				});
+		}
+
+		void dispose() {
+			disposed = true;
+			recyclePending();
+		}
+
+		void recyclePending() {
+			for (ByteBuf buf; (buf = pending.poll()) != null; ) {
+				buf.recycle();
+			}
+		}
+	}
+
+	// region JMX
+	@JmxAttribute
+	public int getMembers() {
+		return members.size();
+	}
+
+	@JmxAttribute
+	public int getPendingMessages() {
+		int pendingMessages = 0;
+		for (Member member : members.values()) {
+			pendingMessages += member.pending.size();
+		}
+		return pendingMessages;
+	}
+
+	@JmxAttribute
+	public long getMessages() {
+		return messages;
+	}
+
+	@JmxAttribute
+	public long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	@JmxAttribute
+	public long getCoalescedMessages() {
+		return coalescedMessages;
+	}
+
+	@JmxAttribute
+	public long getDisconnectedMembers() {
+		return disconnectedMembers;
+	}
+	// endregion
+}
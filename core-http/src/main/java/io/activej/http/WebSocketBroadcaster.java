@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.http;
+
+import io.activej.http.IWebSocket.Message;
+
+import java.util.List;
+
+import static io.activej.bytebuf.ByteBuf.wrapForReading;
+
+/**
+ * Broadcasts messages to {@link WebSocketBroadcastGroup}s of different reactors,
+ * for example, to groups of worker servers of a worker pool.
+ * <p>
+ * A message is handed over to a reactor of each group, where it is encoded once for all the members
+ * of that group. Methods of this class may be called from any thread.
+ */
+public final class WebSocketBroadcaster {
+	private final List<WebSocketBroadcastGroup> groups;
+
+	private WebSocketBroadcaster(List<WebSocketBroadcastGroup> groups) {
+		this.groups = groups;
+	}
+
+	public static WebSocketBroadcaster create(List<WebSocketBroadcastGroup> groups) {
+		return new WebSocketBroadcaster(List.copyOf(groups));
+	}
+
+	public void broadcastText(String text) {
+		for (WebSocketBroadcastGroup group : groups) {
+			group.getReactor().execute(() -> group.broadcast(Message.text(text)));
+		}
+	}
+
+	/**
+	 * Broadcasts a binary message, a given array should not be modified afterwards
+	 */
+	public void broadcastBinary(byte[] bytes) {
+		for (WebSocketBroadcastGroup group : groups) {
+			group.getReactor().execute(() -> group.broadcast(Message.binary(wrapForReading(bytes))));
+		}
+	}
+
+	public List<WebSocketBroadcastGroup> getGroups() {
+		return groups;
+	}
+}
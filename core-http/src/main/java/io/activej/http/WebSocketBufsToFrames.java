@@ -30,6 +30,7 @@ import io.activej.csp.process.AbstractCommunicatingProcess;
 import io.activej.http.IWebSocket.Frame;
 import io.activej.promise.Promise;
 import io.activej.promise.SettablePromise;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.charset.CharacterCodingException;
 import java.util.function.Consumer;
@@ -55,6 +56,7 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 	private final Consumer<ByteBuf> onPong;
 	private final byte[] mask = new byte[4];
 	private final boolean masked;
+	private final PerMessageDeflate.@Nullable Decompressor decompressor;
 	private final SettablePromise<WebSocketException> closeReceivedPromise = new SettablePromise<>();
 
 	private ByteBufs bufs;
@@ -65,19 +67,32 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 	private boolean isFin;
 	private boolean waitingForFin;
 	private WebSocketConstants.OpCode currentOpCode;
+	private boolean compressedMessage;
+	private long decompressedSize;
 
 	private final ByteBufs frameBufs = new ByteBufs();
 	private final ByteBufs controlMessageBufs = new ByteBufs();
 
-	WebSocketBufsToFrames(long maxMessageSize, Consumer<ByteBuf> onPing, Consumer<ByteBuf> onPong, boolean masked) {
+	WebSocketBufsToFrames(
+		long maxMessageSize, Consumer<ByteBuf> onPing, Consumer<ByteBuf> onPong, boolean masked,
+		PerMessageDeflate.@Nullable Decompressor decompressor
+	) {
 		this.maxMessageSize = maxMessageSize;
 		this.onPing = onPing;
 		this.onPong = onPong;
 		this.masked = masked;
+		this.decompressor = decompressor;
 	}
 
 	public static WebSocketBufsToFrames create(long maxMessageSize, Consumer<ByteBuf> onPing, Consumer<ByteBuf> onPong, boolean maskRequired) {
-		return new WebSocketBufsToFrames(maxMessageSize, onPing, onPong, maskRequired);
+		return new WebSocketBufsToFrames(maxMessageSize, onPing, onPong, maskRequired, null);
+	}
+
+	static WebSocketBufsToFrames create(
+		long maxMessageSize, Consumer<ByteBuf> onPing, Consumer<ByteBuf> onPong, boolean maskRequired,
+		PerMessageDeflate.@Nullable Decompressor decompressor
+	) {
+		return new WebSocketBufsToFrames(maxMessageSize, onPing, onPong, maskRequired, decompressor);
 	}
 
 	@Override
@@ -121,7 +136,8 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 	private void processOpCode() {
 		input.decode(SINGLE_BYTE_DECODER)
 			.whenResult(firstByte -> {
-				if ((firstByte & RSV_MASK) != 0) {
+				int rsv = firstByte & RSV_MASK;
+				if (rsv != 0 && (rsv != RSV1 || decompressor == null)) {
 					onProtocolError(RESERVED_BITS_SET);
 					return;
 				}
@@ -135,7 +151,9 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 
 				isFin = firstByte < 0;
 				if (currentOpCode.isControlCode()) {
-					if (!isFin) {
+					if (rsv != 0) {
+						onProtocolError(RESERVED_BITS_SET);
+					} else if (!isFin) {
 						onProtocolError(FRAGMENTED_CONTROL_MESSAGE);
 					} else {
 						processLength();
@@ -153,7 +171,12 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 						onProtocolError(UNEXPECTED_CONTINUATION);
 						return;
 					}
-
+					compressedMessage = rsv == RSV1;
+					decompressedSize = 0;
+				}
+				if (rsv != 0 && currentOpCode == OP_CONTINUATION) {
+					onProtocolError(RESERVED_BITS_SET);
+					return;
 				}
 				waitingForFin = !isFin;
 
@@ -242,7 +265,18 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 		if (currentOpCode.isControlCode()) {
 			processControlPayload();
 		} else {
-			output.accept(new Frame(opToFrameType(currentOpCode), frameBufs.takeRemaining(), isFin))
+			ByteBuf payload = frameBufs.takeRemaining();
+			if (compressedMessage) {
+				assert decompressor != null;
+				try {
+					payload = decompressor.decompress(payload, isFin, (int) Math.min(Integer.MAX_VALUE, maxMessageSize - decompressedSize));
+				} catch (WebSocketException e) {
+					onProtocolError(e);
+					return;
+				}
+				decompressedSize += payload.readRemaining();
+			}
+			output.accept(new Frame(opToFrameType(currentOpCode), payload, isFin))
 				.whenResult(this::processOpCode);
 		}
 	}
@@ -313,6 +347,13 @@ public final class WebSocketBufsToFrames extends AbstractCommunicatingProcess
 		closeEx(e);
 	}
 
+	@Override
+	protected void afterProcess(@Nullable Exception e) {
+		if (decompressor != null) {
+			decompressor.close();
+		}
+	}
+
 	@Override
 	protected void doClose(Exception e) {
 		if (output != null) {
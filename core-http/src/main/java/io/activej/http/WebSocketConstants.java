@@ -35,6 +35,8 @@ public final class WebSocketConstants {
 	static final WebSocketException STATUS_CODE_MISSING = new WebSocketException(1005, "Status code missing");
 	static final WebSocketException CLOSE_FRAME_MISSING = new WebSocketException(1006, "Peer did not send CLOSE frame");
 	static final WebSocketException NOT_A_VALID_UTF_8 = new WebSocketException(1007, "Received TEXT message is not a valid UTF-8 message");
+	static final WebSocketException INVALID_COMPRESSED_DATA = new WebSocketException(1007, "Received message has invalid compressed data");
+	static final WebSocketException SLOW_CONSUMER = new WebSocketException(1008, "Web socket does not keep up with broadcast messages");
 	static final WebSocketException MESSAGE_TOO_BIG = new WebSocketException(1009, "Received message is too big");
 	static final WebSocketException SERVER_ERROR = new WebSocketException(1011, "Unexpected server error");
 
@@ -44,6 +46,8 @@ public final class WebSocketConstants {
 	static final HttpError NOT_A_WEB_SOCKET_REQUEST = HttpError.ofCode(400, "Not a websocket request");
 	// endregion
 
+	static final byte RSV1 = 0b01000000;
+
 	static final String MAGIC_STRING = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
 
 	public enum OpCode {
@@ -51,6 +51,7 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 	private static final ThreadLocalRandom RANDOM = ThreadLocalRandom.current();
 
 	private final boolean masked;
+	private final PerMessageDeflate.@Nullable Compressor compressor;
 	private final SettablePromise<Void> closeSentPromise = new SettablePromise<>();
 
 	private ChannelSupplier<Frame> input;
@@ -59,13 +60,19 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 	private @Nullable Promise<Void> pendingPromise;
 	private boolean closing;
 	private boolean waitingForFin;
+	private boolean compressingMessage;
 
-	private WebSocketFramesToBufs(boolean masked) {
+	private WebSocketFramesToBufs(boolean masked, PerMessageDeflate.@Nullable Compressor compressor) {
 		this.masked = masked;
+		this.compressor = compressor;
 	}
 
 	public static WebSocketFramesToBufs create(boolean masked) {
-		return new WebSocketFramesToBufs(masked);
+		return new WebSocketFramesToBufs(masked, null);
+	}
+
+	static WebSocketFramesToBufs create(boolean masked, PerMessageDeflate.@Nullable Compressor compressor) {
+		return new WebSocketFramesToBufs(masked, compressor);
 	}
 
 	@SuppressWarnings("ConstantConditions") //check input for clarity
@@ -103,18 +110,23 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 				frame -> {
 					if (CHECKS) checkFrameOrder(frame);
 
-					return doAccept(encodeData(frame));
+					return doAccept(frame.isEncoded() ? frame.getPayload() : encodeData(frame));
 				}))
 			.then(() -> sendCloseFrame(REGULAR_CLOSE))
 			.whenResult(this::completeProcess);
 	}
 
-	private ByteBuf doEncode(ByteBuf payload, OpCode opCode, boolean isLastFrame) {
+	private ByteBuf doEncode(ByteBuf payload, OpCode opCode, boolean isLastFrame, boolean compressed) {
+		return encode(payload, opCode, isLastFrame, compressed, masked);
+	}
+
+	static ByteBuf encode(ByteBuf payload, OpCode opCode, boolean isLastFrame, boolean compressed, boolean masked) {
 		int bufSize = payload.readRemaining();
 		int lenSize = bufSize < 126 ? 1 : bufSize < 65536 ? 3 : 9;
 
 		ByteBuf framedBuf = ByteBufPool.allocate(1 + lenSize + (masked ? 4 : 0) + bufSize);
-		framedBuf.writeByte(isLastFrame ? (byte) (opCode.getCode() | 0x80) : opCode.getCode());
+		byte firstByte = isLastFrame ? (byte) (opCode.getCode() | 0x80) : opCode.getCode();
+		framedBuf.writeByte(compressed ? (byte) (firstByte | RSV1) : firstByte);
 		if (lenSize == 1) {
 			framedBuf.writeByte((byte) bufSize);
 		} else if (lenSize == 3) {
@@ -140,11 +152,22 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 	}
 
 	private ByteBuf encodeData(Frame frame) {
-		return doEncode(frame.getPayload(), frameToOpType(frame.getType()), frame.isLastFrame());
+		ByteBuf payload = frame.getPayload();
+		boolean firstFrame = frame.getType() != CONTINUATION;
+		if (compressor != null) {
+			if (firstFrame) {
+				compressingMessage = compressor.shouldCompress(payload.readRemaining(), frame.isLastFrame());
+			}
+			if (compressingMessage) {
+				payload = compressor.compress(payload, frame.isLastFrame());
+			}
+		}
+		// RSV1 bit marks only the first frame of a compressed message
+		return doEncode(payload, frameToOpType(frame.getType()), frame.isLastFrame(), compressingMessage && firstFrame);
 	}
 
 	private ByteBuf encodePong(ByteBuf buf) {
-		return doEncode(buf, OP_PONG, true);
+		return doEncode(buf, OP_PONG, true, false);
 	}
 
 	private ByteBuf encodeClose(WebSocketException e) {
@@ -159,7 +182,7 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 			closePayload.put(reasonBuf);
 			reasonBuf.recycle();
 		}
-		return doEncode(closePayload, OP_CLOSE, true);
+		return doEncode(closePayload, OP_CLOSE, true, false);
 	}
 
 	public Promise<Void> getCloseSentPromise() {
@@ -196,6 +219,10 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 
 	private void checkFrameOrder(Frame frame) {
 		FrameType type = frame.getType();
+		if (frame.isEncoded()) {
+			checkState(!masked && !waitingForFin);
+			return;
+		}
 		if (!waitingForFin) {
 			checkState(type == TEXT || type == BINARY);
 			if (!frame.isLastFrame()) waitingForFin = true;
@@ -205,6 +232,13 @@ public final class WebSocketFramesToBufs extends AbstractCommunicatingProcess
 		}
 	}
 
+	@Override
+	protected void afterProcess(@Nullable Exception e) {
+		if (compressor != null) {
+			compressor.close();
+		}
+	}
+
 	@Override
 	protected void doClose(Exception e) {
 		if (output == null || input == null) return;
@@ -25,6 +25,7 @@ import io.activej.promise.Promise;
 import io.activej.promise.SettableCallback;
 import io.activej.reactor.AbstractReactive;
 import io.activej.reactor.Reactor;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 
@@ -48,14 +49,24 @@ import static io.activej.reactor.Reactive.checkInReactorThread;
  * <p>
  * If a response has code different from {@code 101}, it will be sent as is and the resulted promise will be completed
  * exceptionally.
+ * <p>
+ * If {@link PerMessageDeflate} settings are given, a 'permessage-deflate' extension offered by a client
+ * is accepted and messages are compressed.
  */
 public abstract class WebSocketServlet extends AbstractReactive
 	implements AsyncServlet {
 	private static final boolean CHECKS = Checks.isEnabled(WebSocketServlet.class);
 
+	private final @Nullable PerMessageDeflate perMessageDeflate;
+
 	protected WebSocketServlet(Reactor reactor) {
+		this(reactor, null);
+	}
+
+	protected WebSocketServlet(Reactor reactor, @Nullable PerMessageDeflate perMessageDeflate) {
 		super(reactor);
 		checkState(IWebSocket.ENABLED, "Web sockets are disabled by application settings");
+		this.perMessageDeflate = perMessageDeflate;
 	}
 
 	protected Promise<HttpResponse> onRequest(HttpRequest request) {
@@ -90,12 +101,21 @@ public abstract class WebSocketServlet extends AbstractReactive
 						response.headers.add(CONNECTION, UPGRADE_HEADER);
 						response.headers.add(SEC_WEBSOCKET_ACCEPT, HttpHeaderValue.of(answer));
 
-						WebSocketFramesToBufs encoder = WebSocketFramesToBufs.create(false);
+						PerMessageDeflate.Negotiated negotiated = perMessageDeflate != null ?
+							perMessageDeflate.acceptOffer(request.getHeader(SEC_WEBSOCKET_EXTENSIONS)) :
+							null;
+						if (negotiated != null) {
+							response.headers.add(SEC_WEBSOCKET_EXTENSIONS, HttpHeaderValue.of(negotiated.extension()));
+						}
+
+						WebSocketFramesToBufs encoder = WebSocketFramesToBufs.create(false,
+							negotiated != null ? perMessageDeflate.createCompressor(negotiated) : null);
 						WebSocketBufsToFrames decoder = WebSocketBufsToFrames.create(
 							request.maxBodySize,
 							encoder::sendPong,
 							ByteBuf::recycle,
-							true);
+							true,
+							negotiated != null ? perMessageDeflate.createDecompressor(negotiated) : null);
 
 						bindWebSocketTransformers(rawStream, encoder, decoder);
 
@@ -105,7 +125,8 @@ public abstract class WebSocketServlet extends AbstractReactive
 							rawStream.transformWith(decoder),
 							buffer.getConsumer().transformWith(encoder),
 							decoder::onProtocolError,
-							request.maxBodySize
+							request.maxBodySize,
+							false
 						));
 
 						return response;
@@ -28,6 +28,12 @@ import java.util.function.Function;
 import static io.activej.bytebuf.ByteBuf.wrapForReading;
 import static io.activej.reactor.Reactive.checkInReactorThread;
 
+/**
+ * A loader which caches contents of resources of another loader.
+ * <p>
+ * Loaded buffers always wrap cached arrays, which are never modified,
+ * so the same array means the same content of a resource.
+ */
 public class CacheStaticLoader extends AbstractReactive
 	implements IStaticLoader {
 	private static final boolean CHECKS = Checks.isEnabled(CacheStaticLoader.class);
@@ -60,7 +66,11 @@ public class CacheStaticLoader extends AbstractReactive
 
 	private Promise<ByteBuf> doLoad(String path) {
 		return resourceLoader.load(path)
-			.whenResult(buf -> put.accept(path, buf.getArray()))
+			.map(buf -> {
+				byte[] bytes = buf.asArray();
+				put.accept(path, bytes);
+				return wrapForReading(bytes);
+			})
 			.whenException(ResourceNotFoundException.class, e -> put.accept(path, NOT_FOUND));
 	}
 }
@@ -0,0 +1,130 @@
+package io.activej.dns;
+
+import io.activej.common.time.CurrentTimeProvider;
+import io.activej.dns.DnsCache.DnsQueryCacheResult;
+import io.activej.dns.protocol.DnsQuery;
+import io.activej.dns.protocol.DnsResponse;
+import io.activej.eventloop.Eventloop;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ActivePromisesRule;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.promise.TestUtils.await;
+import static org.junit.Assert.*;
+
+public final class DnsCacheTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final ActivePromisesRule activePromisesRule = new ActivePromisesRule();
+
+	private static final InetAddress IP = inetAddress("10.0.0.1");
+
+	private DnsStandIn upstream;
+	private long currentTime;
+
+	@Before
+	public void setUp() throws IOException {
+		upstream = new DnsStandIn(10, IP);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		upstream.close();
+	}
+
+	@Test
+	public void testPrefetchOfPopularEntries() {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		DnsCache cache = DnsCache.builder(reactor)
+			.withCurrentTimeProvider(() -> currentTime)
+			.withPrefetch(0.2, 2)
+			.build();
+		CachedDnsClient client = CachedDnsClient.create(reactor, DnsClient.create(reactor, upstream.getAddress()), cache);
+
+		await(client.resolve4("popular.example.com"));
+		await(client.resolve4("unpopular.example.com"));
+		await(client.resolve4("popular.example.com"));
+		assertEquals(2, upstream.udpQueries.get());
+
+		currentTime = 8_500;
+		DnsResponse response = await(client.resolve4("popular.example.com"));
+		assertArrayEquals(new InetAddress[]{IP}, response.getRecord().getIps());
+		assertEquals(3, upstream.udpQueries.get());
+
+		await(client.resolve4("unpopular.example.com"));
+		assertEquals(3, upstream.udpQueries.get());
+
+		currentTime = 10_000;
+		DnsQueryCacheResult popular = cache.tryToResolve(DnsQuery.ipv4("popular.example.com"));
+		assertNotNull(popular);
+		assertFalse(popular.doesNeedRefreshing());
+		DnsQueryCacheResult unpopular = cache.tryToResolve(DnsQuery.ipv4("unpopular.example.com"));
+		assertNotNull(unpopular);
+		assertTrue(unpopular.doesNeedRefreshing());
+	}
+
+	@Test
+	public void testCacheSharedAcrossReactors() throws Exception {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		DnsCache cache = DnsCache.builder(reactor)
+			.withCurrentTimeProvider(CurrentTimeProvider.ofSystem())
+			.build();
+
+		Eventloop eventloop2 = Eventloop.create();
+		eventloop2.keepAlive(true);
+		Thread thread = new Thread(eventloop2);
+		thread.start();
+		CachedDnsClient client2 = CachedDnsClient.create(eventloop2, DnsClient.create(eventloop2, upstream.getAddress()), cache);
+
+		DnsResponse response2 = eventloop2.submit(() -> client2.resolve4("www.example.com")).get();
+		eventloop2.keepAlive(false);
+		thread.join();
+		assertArrayEquals(new InetAddress[]{IP}, response2.getRecord().getIps());
+		assertEquals(1, upstream.udpQueries.get());
+
+		CachedDnsClient client = CachedDnsClient.create(reactor, DnsClient.create(reactor, upstream.getAddress()), cache);
+		DnsResponse response = await(client.resolve4("www.example.com"));
+
+		assertArrayEquals(new InetAddress[]{IP}, response.getRecord().getIps());
+		assertEquals(1, upstream.udpQueries.get());
+		assertEquals(1, cache.getDomainsCount());
+	}
+
+	@Test
+	public void testRefreshedEntryIsNotCleanedUp() {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		DnsCache cache = DnsCache.builder(reactor)
+			.withCurrentTimeProvider(() -> currentTime)
+			.build();
+		CachedDnsClient client = CachedDnsClient.create(reactor, DnsClient.create(reactor, upstream.getAddress()), cache);
+
+		DnsResponse response = await(client.resolve4("www.example.com"));
+		currentTime = 5_000;
+		cache.add(DnsQuery.ipv4("www.example.com"), response);
+
+		currentTime = 12_000;
+		cache.performCleanup();
+		DnsQueryCacheResult result = cache.tryToResolve(DnsQuery.ipv4("www.example.com"));
+		assertNotNull(result);
+		assertFalse(result.doesNeedRefreshing());
+		assertEquals(1, cache.getDomainsCount());
+		assertEquals(0, cache.getFailedDomainsCount());
+
+		currentTime = 15_000;
+		cache.performCleanup();
+		assertNull(cache.tryToResolve(DnsQuery.ipv4("www.example.com")));
+		assertEquals(0, cache.getDomainsCount());
+	}
+}
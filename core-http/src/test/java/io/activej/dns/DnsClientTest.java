@@ -0,0 +1,128 @@
+package io.activej.dns;
+
+import io.activej.dns.protocol.DnsQueryException;
+import io.activej.dns.protocol.DnsResponse;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ActivePromisesRule;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+
+import static io.activej.dns.protocol.DnsProtocol.ResponseErrorCode.TIMED_OUT;
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static org.junit.Assert.*;
+
+public final class DnsClientTest {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final ActivePromisesRule activePromisesRule = new ActivePromisesRule();
+
+	private static final InetAddress IP_1 = inetAddress("10.0.0.1");
+	private static final InetAddress IP_2 = inetAddress("10.0.0.2");
+	private static final InetAddress IP_3 = inetAddress("10.0.0.3");
+
+	private DnsStandIn upstream1;
+	private DnsStandIn upstream2;
+
+	@Before
+	public void setUp() throws IOException {
+		upstream1 = new DnsStandIn(60, IP_1);
+		upstream2 = new DnsStandIn(60, IP_2);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		upstream1.close();
+		upstream2.close();
+	}
+
+	@Test
+	public void testSingleUpstream() {
+		DnsClient client = DnsClient.create(Reactor.getCurrentReactor(), upstream1.getAddress());
+
+		DnsResponse response = await(client.resolve4("www.example.com"));
+
+		assertNotNull(response.getRecord());
+		assertArrayEquals(new InetAddress[]{IP_1}, response.getRecord().getIps());
+		assertEquals(60, response.getRecord().getMinTtl());
+	}
+
+	@Test
+	public void testFastestUpstreamIsSelected() {
+		upstream1.delayMillis = 50;
+		NioReactor reactor = Reactor.getCurrentReactor();
+		DnsClient client = DnsClient.create(reactor, List.of(upstream1.getAddress(), upstream2.getAddress()));
+
+		int queries = 10;
+		for (int i = 0; i < queries; i++) {
+			await(client.resolve4("host" + i + ".example.com"));
+		}
+
+		assertEquals(1, upstream1.udpQueries.get());
+		assertEquals(queries - 1, upstream2.udpQueries.get());
+	}
+
+	@Test
+	public void testTimedOutUpstreamIsAvoided() {
+		upstream1.silent = true;
+		NioReactor reactor = Reactor.getCurrentReactor();
+		DnsClient client = DnsClient.builder(reactor, List.of(upstream1.getAddress(), upstream2.getAddress()))
+			.withTimeout(Duration.ofMillis(100))
+			.build();
+
+		DnsQueryException e = awaitException(client.resolve4("www.example.com"));
+		assertEquals(TIMED_OUT, e.getResult().getErrorCode());
+
+		DnsResponse response = await(client.resolve4("www.example.com"));
+		assertNotNull(response.getRecord());
+		assertArrayEquals(new InetAddress[]{IP_2}, response.getRecord().getIps());
+	}
+
+	@Test
+	public void testTruncatedResponseIsRepeatedOverTcp() throws IOException {
+		try (DnsStandIn upstream = new DnsStandIn(60, IP_1, IP_2, IP_3)) {
+			upstream.truncated = true;
+			DnsClient client = DnsClient.create(Reactor.getCurrentReactor(), upstream.getAddress());
+
+			DnsResponse response = await(client.resolve4("www.example.com"));
+
+			assertNotNull(response.getRecord());
+			assertArrayEquals(new InetAddress[]{IP_1, IP_2, IP_3}, response.getRecord().getIps());
+			assertEquals(1, upstream.udpQueries.get());
+			assertEquals(1, upstream.tcpQueries.get());
+		}
+	}
+
+	@Test
+	public void testStalledTcpExchangeIsClosed() throws IOException, InterruptedException {
+		try (DnsStandIn upstream = new DnsStandIn(60, IP_1)) {
+			upstream.truncated = true;
+			upstream.tcpSilent = true;
+			DnsClient client = DnsClient.builder(Reactor.getCurrentReactor(), upstream.getAddress())
+				.withTimeout(Duration.ofMillis(100))
+				.build();
+
+			DnsQueryException e = awaitException(client.resolve4("www.example.com"));
+			assertEquals(TIMED_OUT, e.getResult().getErrorCode());
+			assertEquals(1, upstream.tcpQueries.get());
+
+			for (int i = 0; i < 100 && upstream.tcpClosedByClient.get() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, upstream.tcpClosedByClient.get());
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package io.activej.dns;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal in-process DNS server which answers every A query with given addresses,
+ * over both UDP and TCP on the same port
+ */
+final class DnsStandIn implements AutoCloseable {
+	private static final int FLAGS = 0x8180;           // response, recursion desired and available
+	private static final int TRUNCATED_FLAGS = 0x8380; // same, with TC flag set
+
+	private final InetAddress[] ips;
+	private final int ttl;
+	private DatagramSocket udpSocket;
+	private ServerSocket tcpSocket;
+
+	final AtomicInteger udpQueries = new AtomicInteger();
+	final AtomicInteger tcpQueries = new AtomicInteger();
+	final AtomicInteger tcpClosedByClient = new AtomicInteger();
+
+	volatile long delayMillis;
+	volatile boolean silent;
+	volatile boolean truncated;
+	volatile boolean tcpSilent;
+
+	DnsStandIn(int ttl, InetAddress... ips) throws IOException {
+		this.ips = ips;
+		this.ttl = ttl;
+		bind();
+		startThread(this::serveUdp);
+		startThread(this::serveTcp);
+	}
+
+	private void bind() throws IOException {
+		for (int attempt = 0; ; attempt++) {
+			udpSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+			try {
+				tcpSocket = new ServerSocket();
+				tcpSocket.setReuseAddress(true);
+				tcpSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), udpSocket.getLocalPort()));
+				return;
+			} catch (BindException e) {
+				// a free UDP port may be taken by TCP, try another one
+				udpSocket.close();
+				tcpSocket.close();
+				if (attempt == 10) throw e;
+			}
+		}
+	}
+
+	InetSocketAddress getAddress() {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), udpSocket.getLocalPort());
+	}
+
+	private static void startThread(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void serveUdp() {
+		byte[] buf = new byte[512];
+		try {
+			while (true) {
+				DatagramPacket packet = new DatagramPacket(buf, buf.length);
+				udpSocket.receive(packet);
+				udpQueries.incrementAndGet();
+				if (silent) continue;
+				if (delayMillis != 0) Thread.sleep(delayMillis);
+				byte[] response = truncated ?
+					response(buf, packet.getLength(), TRUNCATED_FLAGS, new InetAddress[0]) :
+					response(buf, packet.getLength(), FLAGS, ips);
+				udpSocket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+			}
+		} catch (IOException | InterruptedException ignored) {
+			// closed
+		}
+	}
+
+	private void serveTcp() {
+		try {
+			while (true) {
+				try (Socket socket = tcpSocket.accept()) {
+					DataInputStream input = new DataInputStream(socket.getInputStream());
+					byte[] query = new byte[input.readUnsignedShort()];
+					input.readFully(query);
+					tcpQueries.incrementAndGet();
+					if (tcpSilent) {
+						awaitClose(input);
+						tcpClosedByClient.incrementAndGet();
+						continue;
+					}
+					byte[] response = response(query, query.length, FLAGS, ips);
+					DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+					output.writeShort(response.length);
+					output.write(response);
+					output.flush();
+				}
+			}
+		} catch (IOException ignored) {
+			// closed
+		}
+	}
+
+	private static void awaitClose(DataInputStream input) {
+		try {
+			while (input.read() != -1) {
+				// keep the connection open until a client gives up
+			}
+		} catch (IOException ignored) {
+			// reset by a client
+		}
+	}
+
+	private byte[] response(byte[] query, int queryLength, int flags, InetAddress[] ips) {
+		ByteBuffer buffer = ByteBuffer.allocate(queryLength + ips.length * 16);
+		buffer.put(query, 0, 2); // transaction id
+		buffer.putShort((short) flags);
+		buffer.putShort((short) 1); // questions
+		buffer.putShort((short) ips.length); // answers
+		buffer.putShort((short) 0); // authority RRs
+		buffer.putShort((short) 0); // additional RRs
+		buffer.put(query, 12, queryLength - 12); // question, as is
+		for (InetAddress ip : ips) {
+			buffer.putShort((short) 0xC00C); // pointer to a domain name of a question
+			buffer.putShort((short) 1); // A
+			buffer.putShort((short) 1); // IN
+			buffer.putInt(ttl);
+			buffer.putShort((short) 4);
+			buffer.put(ip.getAddress());
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	@Override
+	public void close() throws IOException {
+		udpSocket.close();
+		tcpSocket.close();
+	}
+}
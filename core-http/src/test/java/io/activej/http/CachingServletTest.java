@@ -0,0 +1,254 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.common.MemSize;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.reactor.Reactor.getCurrentReactor;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public final class CachingServletTest {
+	private static final String URL = "http://example.com/resource";
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	private int calls;
+
+	@Before
+	public void setUp() {
+		calls = 0;
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		CachingServlet servlet = CachingServlet.create(getCurrentReactor(), request -> {
+			calls++;
+			return HttpResponse.ok200()
+				.withHeader(CACHE_CONTROL, "public, max-age=60")
+				.withBody("Hello".getBytes(UTF_8))
+				.toPromise();
+		});
+
+		HttpResponse first = await(servlet.serve(HttpRequest.get(URL).build()));
+		HttpResponse second = await(servlet.serve(HttpRequest.get(URL).build()));
+		HttpResponse other = await(servlet.serve(HttpRequest.get(URL + "?a=b").build()));
+
+		assertEquals("Hello", first.getBody().asString(UTF_8));
+		assertEquals("Hello", second.getBody().asString(UTF_8));
+		assertEquals("Hello", other.getBody().asString(UTF_8));
+		assertEquals(first.getHeader(ETAG), second.getHeader(ETAG));
+		assertNotNull(second.getHeader(LAST_MODIFIED));
+		assertEquals(2, calls);
+		assertEquals(1, servlet.getHits());
+		assertEquals(2, servlet.getMisses());
+		assertEquals(2, servlet.getCachedKeys());
+
+		HttpResponse head = await(servlet.serve(HttpRequest.builder(HttpMethod.HEAD, URL).build()));
+		assertEquals("5", head.getHeader(CONTENT_LENGTH));
+		assertEquals(2, calls);
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		CachingServlet servlet = CachingServlet.builder(getCurrentReactor(), request -> {
+				calls++;
+				return HttpResponse.ok200()
+					.withBody("Hello".getBytes(UTF_8))
+					.toPromise();
+			})
+			.withDefaultTtl(Duration.ofMinutes(1))
+			.build();
+
+		String etag = await(servlet.serve(HttpRequest.get(URL).build())).getHeader(ETAG);
+		assertNotNull(etag);
+
+		HttpResponse notModified = await(servlet.serve(HttpRequest.get(URL)
+			.withHeader(IF_NONE_MATCH, "\"other\", W/" + etag)
+			.build()));
+		assertEquals(304, notModified.getCode());
+		assertEquals(etag, notModified.getHeader(ETAG));
+
+		HttpResponse modified = await(servlet.serve(HttpRequest.get(URL)
+			.withHeader(IF_NONE_MATCH, "\"other\"")
+			.build()));
+		assertEquals(200, modified.getCode());
+		assertEquals("Hello", modified.getBody().asString(UTF_8));
+
+		String lastModified = notModified.getHeader(LAST_MODIFIED);
+		HttpResponse notModifiedSince = await(servlet.serve(HttpRequest.get(URL)
+			.withHeader(IF_MODIFIED_SINCE, lastModified)
+			.build()));
+		assertEquals(304, notModifiedSince.getCode());
+
+		assertEquals(1, calls);
+		assertEquals(2, servlet.getNotModified());
+	}
+
+	@Test
+	public void testVary() throws Exception {
+		CachingServlet servlet = CachingServlet.create(getCurrentReactor(), request -> {
+			calls++;
+			return HttpResponse.ok200()
+				.withHeader(CACHE_CONTROL, "max-age=60")
+				.withHeader(VARY, "Accept-Language")
+				.withBody(request.getHeader(ACCEPT_LANGUAGE).getBytes(UTF_8))
+				.toPromise();
+		});
+
+		for (int i = 0; i < 2; i++) {
+			for (String language : List.of("en", "de")) {
+				HttpResponse response = await(servlet.serve(HttpRequest.get(URL)
+					.withHeader(ACCEPT_LANGUAGE, language)
+					.build()));
+				assertEquals(language, response.getBody().asString(UTF_8));
+			}
+		}
+		assertEquals(2, calls);
+		assertEquals(2, servlet.getHits());
+	}
+
+	@Test
+	public void testNotCacheable() throws Exception {
+		List<String> cacheControls = List.of("no-store", "private, max-age=60", "max-age=0");
+		CachingServlet servlet = CachingServlet.builder(getCurrentReactor(), request -> {
+				calls++;
+				return HttpResponse.ok200()
+					.withHeader(CACHE_CONTROL, request.getQueryParameter("cc"))
+					.withBody("Hello".getBytes(UTF_8))
+					.toPromise();
+			})
+			.withDefaultTtl(Duration.ofMinutes(1))
+			.build();
+
+		for (String cacheControl : cacheControls) {
+			String url = URL + "?cc=" + URLEncoder.encode(cacheControl, UTF_8);
+			await(servlet.serve(HttpRequest.get(url).build()));
+			await(servlet.serve(HttpRequest.get(url).build()));
+		}
+		assertEquals(6, calls);
+		assertEquals(6, servlet.getUncacheable());
+
+		String url = URL + "?cc=max-age=60";
+		await(servlet.serve(HttpRequest.get(url).build()));
+		await(servlet.serve(HttpRequest.get(url).withHeader(CACHE_CONTROL, "no-cache").build()));
+		assertEquals(8, calls);
+		await(servlet.serve(HttpRequest.get(url).build()));
+		assertEquals(8, calls);
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		List<SettablePromise<HttpResponse>> pending = new ArrayList<>();
+		CachingServlet servlet = CachingServlet.create(getCurrentReactor(), request -> {
+			SettablePromise<HttpResponse> promise = new SettablePromise<>();
+			pending.add(promise);
+			return promise;
+		});
+
+		List<Promise<HttpResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			responses.add(servlet.serve(HttpRequest.get(URL).build()));
+		}
+		assertEquals(1, pending.size());
+		assertEquals(4, servlet.getCoalescedMisses());
+
+		pending.get(0).set(HttpResponse.ok200()
+			.withHeader(CACHE_CONTROL, "max-age=60")
+			.withBody("Hello".getBytes(UTF_8))
+			.build());
+		for (Promise<HttpResponse> response : responses) {
+			assertEquals("Hello", await(response).getBody().asString(UTF_8));
+		}
+		assertEquals(1, pending.size());
+	}
+
+	@Test
+	public void testGzipVariant() throws Exception {
+		String body = "Hello, World! ".repeat(100);
+		CachingServlet servlet = CachingServlet.create(getCurrentReactor(), request -> {
+			calls++;
+			return HttpResponse.ok200()
+				.withHeader(CACHE_CONTROL, "max-age=60")
+				.withBody(body.getBytes(UTF_8))
+				.withBodyGzipCompression()
+				.toPromise();
+		});
+
+		HttpResponse plain = await(servlet.serve(HttpRequest.get(URL).build()));
+		assertEquals(body, plain.getBody().asString(UTF_8));
+		assertNull(plain.getHeader(CONTENT_ENCODING));
+
+		HttpResponse gzipped = await(servlet.serve(HttpRequest.get(URL)
+			.withHeader(ACCEPT_ENCODING, "deflate, GZIP")
+			.build()));
+		assertEquals("gzip", gzipped.getHeader(CONTENT_ENCODING));
+		assertEquals("Accept-Encoding", gzipped.getHeader(VARY));
+		assertNotEquals(plain.getHeader(ETAG), gzipped.getHeader(ETAG));
+		ByteBuf decoded = GzipProcessorUtils.fromGzip(gzipped.getBody(), 1 << 20);
+		assertEquals(body, decoded.asString(UTF_8));
+
+		assertEquals(1, calls);
+	}
+
+	@Test
+	public void testGzipVariantMergesVary() throws Exception {
+		CachingServlet servlet = CachingServlet.create(getCurrentReactor(), request -> HttpResponse.ok200()
+			.withHeader(CACHE_CONTROL, "max-age=60")
+			.withHeader(VARY, "Origin")
+			.withBody(("Hello, " + request.getHeader(ORIGIN)).getBytes(UTF_8))
+			.withBodyGzipCompression()
+			.toPromise());
+
+		for (String acceptEncoding : List.of("identity", "gzip", "gzip")) {
+			HttpResponse response = await(servlet.serve(HttpRequest.get(URL)
+				.withHeader(ORIGIN, "http://example.com")
+				.withHeader(ACCEPT_ENCODING, acceptEncoding)
+				.build()));
+			List<String> vary = response.getHeaders().stream()
+				.filter(entry -> entry.getKey().equals(VARY))
+				.map(entry -> entry.getValue().toString())
+				.toList();
+			assertEquals(List.of("Origin, Accept-Encoding"), vary);
+		}
+		assertEquals(2, servlet.getHits());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		CachingServlet servlet = CachingServlet.builder(getCurrentReactor(), request -> {
+				calls++;
+				return HttpResponse.ok200()
+					.withHeader(CACHE_CONTROL, "max-age=60")
+					.withBody(new byte[1000])
+					.toPromise();
+			})
+			.withMaxSize(MemSize.kilobytes(20))
+			.withMaxEntrySize(MemSize.kilobytes(10))
+			.build();
+
+		for (int i = 0; i < 100; i++) {
+			await(servlet.serve(HttpRequest.get(URL + "?id=" + i).build()));
+		}
+		assertEquals(100, calls);
+		assertTrue(servlet.getEvictions() > 0);
+		assertTrue(servlet.getCachedSize().toLong() <= MemSize.kilobytes(20).toLong());
+	}
+}
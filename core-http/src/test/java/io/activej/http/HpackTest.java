@@ -0,0 +1,93 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufPool;
+import io.activej.test.rules.ByteBufRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static io.activej.bytebuf.ByteBufStrings.encodeAscii;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public final class HpackTest {
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	// RFC 7541, Appendix C.4
+	private static final String[][][] REQUESTS = {
+		{{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"}},
+		{{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"}, {"cache-control", "no-cache"}},
+		{{":method", "GET"}, {":scheme", "https"}, {":path", "/index.html"}, {":authority", "www.example.com"}, {"custom-key", "custom-value"}},
+	};
+
+	private static final String[] ENCODED_REQUESTS = {
+		"828684418cf1e3c2e5f23a6ba0ab90f4ff",
+		"828684be5886a8eb10649cbf",
+		"828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+	};
+
+	@Test
+	public void testEncoder() {
+		HpackEncoder encoder = new HpackEncoder();
+		for (int i = 0; i < REQUESTS.length; i++) {
+			ByteBuf block = encoder.beginBlock(ByteBufPool.allocate(16));
+			for (String[] field : REQUESTS[i]) {
+				byte[] value = encodeAscii(field[1]);
+				block = encoder.encode(block, encodeAscii(field[0]), value, 0, value.length, true, false);
+			}
+			assertEquals(ENCODED_REQUESTS[i], HexFormat.of().formatHex(block.asArray()));
+		}
+	}
+
+	@Test
+	public void testDecoder() throws MalformedHttpException {
+		HpackDecoder decoder = new HpackDecoder(4096, 65536);
+		for (int i = 0; i < REQUESTS.length; i++) {
+			List<String> fields = new ArrayList<>();
+			decoder.decode(ByteBuf.wrapForReading(HexFormat.of().parseHex(ENCODED_REQUESTS[i])), (name, value) -> {
+				fields.add(new String(name, ISO_8859_1));
+				fields.add(new String(value, ISO_8859_1));
+			});
+			List<String> expected = new ArrayList<>();
+			for (String[] field : REQUESTS[i]) {
+				expected.add(field[0]);
+				expected.add(field[1]);
+			}
+			assertEquals(expected, fields);
+		}
+	}
+
+	@Test
+	public void testRoundTripWithEviction() throws MalformedHttpException {
+		HpackEncoder encoder = new HpackEncoder();
+		HpackDecoder decoder = new HpackDecoder(4096, 1 << 20);
+		for (int i = 0; i < 200; i++) {
+			byte[] name = encodeAscii("x-header-" + i % 17);
+			byte[] value = encodeAscii("value-" + i % 23 + "-".repeat(i % 50));
+			boolean sensitive = i % 7 == 0;
+			ByteBuf block = encoder.beginBlock(ByteBufPool.allocate(16));
+			block = encoder.encode(block, name, value, 0, value.length, true, sensitive);
+			List<byte[]> fields = new ArrayList<>();
+			decoder.decode(block, (n, v) -> {
+				fields.add(n);
+				fields.add(v);
+			});
+			block.recycle();
+			assertEquals(new String(name, ISO_8859_1), new String(fields.get(0), ISO_8859_1));
+			assertEquals(new String(value, ISO_8859_1), new String(fields.get(1), ISO_8859_1));
+		}
+	}
+
+	@Test
+	public void testInvalidIndex() {
+		HpackDecoder decoder = new HpackDecoder(4096, 65536);
+		assertThrows(MalformedHttpException.class, () ->
+			decoder.decode(ByteBuf.wrapForReading(new byte[]{(byte) 0xBE}), (name, value) -> {}));
+	}
+}
@@ -0,0 +1,254 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufs;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.dns.DnsClient;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static io.activej.bytebuf.ByteBufStrings.wrapUtf8;
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.https.SslUtils.createTestSslContext;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.test.TestUtils.getFreePort;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class Http2Test {
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	private int port;
+	private NioReactor reactor;
+
+	@Before
+	public void setUp() {
+		port = getFreePort();
+		reactor = Reactor.getCurrentReactor();
+	}
+
+	@Test
+	public void testConcurrentRequests() throws IOException {
+		HttpServer.JmxInspector serverInspector = new HttpServer.JmxInspector();
+		HttpServer server = HttpServer.builder(reactor,
+				request -> Promise.of(HttpResponse.ok200()
+					.withHeader(HttpHeaders.of("X-Path"), request.getPath())
+					.withBody(wrapUtf8("Hello, " + request.getQueryParameter("name")))
+					.build()))
+			.withListenPort(port)
+			.withHttp2Enabled(true)
+			.withInspector(serverInspector)
+			.withAcceptOnce()
+			.build();
+		server.listen();
+
+		HttpClient client = createClient(HttpClient.builder(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8"))));
+
+		List<Promise<String>> responses = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			responses.add(client.request(HttpRequest.get("http://127.0.0.1:" + port + "/path/" + i + "?name=" + i).build())
+				.then(response -> {
+					assertEquals(HttpVersion.HTTP_2_0, response.getVersion());
+					String path = response.getHeader(HttpHeaders.of("X-Path"));
+					return response.loadBody()
+						.map(body -> path + ' ' + body.getString(UTF_8));
+				}));
+		}
+		List<String> result = await(Promises.toList(responses)
+			.whenComplete(() -> client.stop()));
+
+		assertEquals(IntStream.range(0, 100).mapToObj(i -> "/path/" + i + " Hello, " + i).toList(), result);
+		assertEquals(1, serverInspector.getTotalConnections().getTotalCount());
+	}
+
+	@Test
+	public void testStreamingBeyondFlowControlWindow() throws IOException {
+		byte[] data = new byte[1 << 20];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31 + i / 1000);
+		}
+		HttpServer.builder(reactor,
+				request -> Promise.of(HttpResponse.ok200()
+					.withBodyStream(request.takeBodyStream())
+					.build()))
+			.withListenPort(port)
+			.withHttp2Enabled(true)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		HttpClient client = createClient(HttpClient.builder(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8"))));
+
+		List<ByteBuf> chunks = new ArrayList<>();
+		for (int i = 0; i < data.length; i += 10_000) {
+			chunks.add(ByteBuf.wrap(data, i, Math.min(data.length, i + 10_000)).slice());
+		}
+		ByteBuf body = await(client.request(HttpRequest.post("http://127.0.0.1:" + port)
+					.withBodyStream(ChannelSuppliers.ofList(chunks))
+					.build())
+				.then(response -> response.takeBodyStream().toCollector(ByteBufs.collector()))
+				.whenComplete(() -> client.stop()));
+
+		assertArrayEquals(data, body.asArray());
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		String text = "Lorem ipsum dolor sit amet. ".repeat(1000);
+		HttpServer.builder(reactor,
+				request -> request.loadBody()
+					.map(body -> HttpResponse.ok200()
+						.withBodyGzipCompression()
+						.withBody(wrapUtf8(body.getString(UTF_8).toUpperCase()))
+						.build()))
+			.withListenPort(port)
+			.withHttp2Enabled(true)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		HttpClient client = createClient(HttpClient.builder(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8"))));
+
+		String result = await(client.request(HttpRequest.post("http://127.0.0.1:" + port)
+					.withBodyGzipCompression()
+					.withBody(wrapUtf8(text))
+					.build())
+				.then(response -> {
+					assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+					return response.loadBody();
+				})
+				.map(body -> body.getString(UTF_8))
+				.whenComplete(() -> client.stop()));
+
+		assertEquals(text.toUpperCase(), result);
+	}
+
+	@Test
+	public void testAlpn() throws IOException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		HttpServer.builder(reactor, request -> Promise.of(HttpResponse.ok200().withBody(wrapUtf8("secure")).build()))
+			.withSslListenPort(createTestSslContext(), executor, port)
+			.withHttp2Enabled(true)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		HttpClient client = createClient(HttpClient.builder(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8")))
+			.withSslEnabled(createTestSslContext(), executor));
+
+		String result = await(client.request(HttpRequest.get("https://127.0.0.1:" + port).build())
+			.then(response -> {
+				assertEquals(HttpVersion.HTTP_2_0, response.getVersion());
+				return response.loadBody();
+			})
+			.map(body -> body.getString(UTF_8))
+			.whenComplete(() -> client.stop()));
+		executor.shutdown();
+
+		assertEquals("secure", result);
+	}
+
+	@Test
+	public void testJdkHttpClient() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		HttpServer server = HttpServer.builder(reactor,
+				request -> request.loadBody()
+					.map(body -> HttpResponse.ok200()
+						.withBody(wrapUtf8(request.getMethod() + " " + request.getPath() + " " + body.getString(UTF_8)))
+						.build()))
+			.withSslListenPort(createTestSslContext(), executor, port)
+			.withHttp2Enabled(true)
+			.build();
+		server.listen();
+
+		SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+		sslContext.init(null, new TrustManager[]{new TrustAllManager()}, null);
+		java.net.http.HttpClient jdkClient = java.net.http.HttpClient.newBuilder()
+			.version(java.net.http.HttpClient.Version.HTTP_2)
+			.sslContext(sslContext)
+			.build();
+
+		List<Promise<String>> responses = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder(URI.create("https://127.0.0.1:" + port + "/" + i))
+				.POST(java.net.http.HttpRequest.BodyPublishers.ofString("body " + i))
+				.timeout(Duration.ofSeconds(10))
+				.build();
+			responses.add(Promise.ofFuture(jdkClient.sendAsync(request, java.net.http.HttpResponse.BodyHandlers.ofString()))
+				.map(response -> {
+					assertEquals(java.net.http.HttpClient.Version.HTTP_2, response.version());
+					return response.body();
+				}));
+		}
+		List<String> result = await(Promises.toList(responses)
+			.whenComplete(server::close));
+		executor.shutdown();
+
+		assertEquals(IntStream.range(0, 10).mapToObj(i -> "POST /" + i + " body " + i).toList(), result);
+	}
+
+	private static HttpClient createClient(HttpClient.Builder builder) {
+		return builder
+			.withHttp2Enabled(true)
+			.withKeepAliveTimeout(Duration.ofSeconds(30))
+			.build();
+	}
+
+	private static final class TrustAllManager extends X509ExtendedTrustManager {
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+}
@@ -5,6 +5,7 @@ import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
 import io.activej.bytebuf.ByteBufStrings;
 import io.activej.common.ref.Ref;
+import io.activej.common.ref.RefInt;
 import io.activej.csp.binary.BinaryChannelSupplier;
 import io.activej.csp.binary.decoder.ByteBufsDecoder;
 import io.activej.csp.supplier.ChannelSuppliers;
@@ -424,6 +425,245 @@ public final class HttpClientTest {
 		assertEquals(0, httpErrors.getTotal());
 	}
 
+	@Test
+	public void testMaxConnectionsPerHost() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		RefInt activeRequests = new RefInt(0);
+		RefInt maxActiveRequests = new RefInt(0);
+		HttpServer server = HttpServer.builder(reactor,
+				request -> {
+					maxActiveRequests.set(Math.max(maxActiveRequests.get(), activeRequests.inc()));
+					return Promises.delay(Duration.ofMillis(5), HttpResponse.ok200().build())
+						.whenComplete(activeRequests::dec);
+				})
+			.withListenPort(port)
+			.build();
+		server.listen();
+
+		HttpClient client = HttpClient.builder(reactor, dnsClient)
+			.withKeepAliveTimeout(Duration.ofSeconds(10))
+			.withMaxConnectionsPerHost(2)
+			.build();
+
+		List<Promise<HttpResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			responses.add(client.request(HttpRequest.get("http://127.0.0.1:" + port).build()));
+		}
+		assertEquals(8, client.getWaitingRequests());
+
+		List<HttpResponse> result = await(Promises.toList(responses)
+			.whenComplete(() -> {
+				assertTrue(client.getConnectionsCount() <= 2);
+				assertEquals(0, client.getWaitingRequests());
+				server.close();
+				client.stop();
+			}));
+
+		assertEquals(10, result.size());
+		assertEquals(2, maxActiveRequests.get());
+	}
+
+	@Test
+	public void testConnectionWaitTimeout() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		HttpServer.builder(reactor, request -> Promises.delay(Duration.ofMillis(100), HttpResponse.ok200().build()))
+			.withListenPort(port)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		HttpClient client = HttpClient.builder(reactor, dnsClient)
+			.withMaxConnectionsPerHost(1)
+			.withConnectionWaitTimeout(Duration.ofMillis(20))
+			.build();
+
+		Promise<HttpResponse> first = client.request(HttpRequest.get("http://127.0.0.1:" + port).build());
+		Exception e = awaitException(client.request(HttpRequest.get("http://127.0.0.1:" + port).build()));
+
+		assertThat(e, instanceOf(HttpException.class));
+		assertThat(e.getMessage(), containsString("Timed out waiting for a connection"));
+		assertEquals(200, await(first).getCode());
+		assertEquals(1, client.getConnectionWaitTimeouts());
+		assertEquals(0, client.getWaitingRequests());
+	}
+
+	@Test
+	public void testPrewarm() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		HttpServer server = HttpServer.builder(reactor, request -> HttpResponse.ok200().toPromise())
+			.withListenPort(port)
+			.build();
+		server.listen();
+
+		HttpClient client = HttpClient.builder(reactor, dnsClient)
+			.withKeepAliveTimeout(Duration.ofSeconds(10))
+			.withMinIdleConnectionsPerHost(3)
+			.build();
+
+		String url = "http://127.0.0.1:" + port;
+		HttpResponse response = await(client.prewarm(url)
+			.whenResult(() -> {
+				assertEquals(3, client.getConnectionsKeepAliveCount());
+				assertEquals(3, client.getPrewarmedConnections());
+			})
+			.then(() -> client.request(HttpRequest.get(url).build()))
+			.then(res -> Promises.delay(Duration.ofMillis(10), res))
+			.whenResult(() -> {
+				// a taken idle connection has been replaced with a new one, and then returned to the pool
+				assertEquals(4, client.getConnectionsKeepAliveCount());
+				assertEquals(4, client.getPrewarmedConnections());
+			})
+			.whenComplete(server::close)
+			.then(res -> client.stop().map($ -> res)));
+
+		assertEquals(200, response.getCode());
+		assertEquals(0, client.getConnectionsCount());
+	}
+
+	@Test
+	public void testFifoIdleConnectionReuse() throws IOException {
+		assertEquals(List.of(1, 1), getIdleConnectionsReuse(HttpClient.IdleConnectionReuse.LIFO));
+		assertEquals(List.of(0, 1), getIdleConnectionsReuse(HttpClient.IdleConnectionReuse.FIFO));
+	}
+
+	private List<Integer> getIdleConnectionsReuse(HttpClient.IdleConnectionReuse idleConnectionReuse) throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		HttpServer server = HttpServer.builder(reactor, request -> HttpResponse.ok200().toPromise())
+			.withListenPort(port)
+			.build();
+		server.listen();
+
+		List<HttpClientConnection> connections = new ArrayList<>();
+		HttpClient client = HttpClient.builder(reactor, dnsClient)
+			.withKeepAliveTimeout(Duration.ofSeconds(10))
+			.withIdleConnectionReuse(idleConnectionReuse)
+			.withInspector(new JmxInspector() {
+				@Override
+				public void onRequestComplete(HttpResponse response, HttpClientConnection connection) {
+					super.onRequestComplete(response, connection);
+					connections.add(connection);
+				}
+			})
+			.build();
+
+		String url = "http://127.0.0.1:" + port;
+		await(Promises.all(
+				client.request(HttpRequest.get(url).build()),
+				client.request(HttpRequest.get(url).build()))
+			// connections are returned to the pool after responses are completed
+			.then(() -> Promises.delay(Duration.ofMillis(10)))
+			.then(() -> client.request(HttpRequest.get(url).build()))
+			.then(() -> Promises.delay(Duration.ofMillis(10)))
+			.then(() -> client.request(HttpRequest.get(url).build()))
+			.whenComplete(() -> {
+				server.close();
+				client.stop();
+			}));
+
+		assertEquals(4, connections.size());
+		return List.of(connections.indexOf(connections.get(2)), connections.indexOf(connections.get(3)));
+	}
+
+	@Test
+	public void testPipelining() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		HttpServer server = HttpServer.builder(reactor,
+				request -> Promises.delay(Duration.ofMillis(20), HttpResponse.ok200().withPlainText(request.getPath()).build()))
+			.withListenPort(port)
+			.build();
+		server.listen();
+
+		JmxInspector inspector = new JmxInspector();
+		HttpClient client = HttpClient.builder(reactor, dnsClient)
+			.withKeepAliveTimeout(Duration.ofSeconds(10))
+			.withPipeliningDepth(3)
+			.withInspector(inspector)
+			.build();
+
+		String url = "http://127.0.0.1:" + port;
+		List<String> bodies = await(loadBody(client, url + "/0")
+			// only connections which have already been kept alive are used for pipelining
+			.then(() -> Promises.delay(Duration.ofMillis(10)))
+			.then(() -> Promises.toList(IntStream.range(1, 5).mapToObj(i -> loadBody(client, url + "/" + i))))
+			.whenComplete(server::close)
+			.then(list -> client.stop().map($ -> list)));
+
+		assertEquals(List.of("/1", "/2", "/3", "/4"), bodies);
+		assertEquals(2, client.getPipelinedRequests());
+		assertEquals(2, inspector.getConnected().getTotalCount());
+		assertEquals(0, client.getPipelineResends());
+	}
+
+	@Test
+	public void testPipeliningFallbackOnServerClose() throws IOException {
+		RefInt connections = new RefInt(0);
+		SimpleServer server = SimpleServer.builder(Reactor.getCurrentReactor(), socket -> {
+				BinaryChannelSupplier supplier = BinaryChannelSupplier.of(ChannelSuppliers.ofSocket(socket));
+				if (connections.inc() == 1) {
+					// responds to a pipelined request, and then closes a connection with another pipelined request
+					supplier.decode(PATH_DECODER)
+						.then(path -> socket.write(pathResponse(path)))
+						.then(() -> supplier.decode(PATH_DECODER))
+						.then(path -> supplier.decode(PATH_DECODER).map($ -> path))
+						.then(path -> socket.write(pathResponse(path)))
+						.whenComplete(socket::close);
+				} else {
+					Promises.repeat(() -> supplier.decode(PATH_DECODER)
+							.then(path -> socket.write(pathResponse(path)))
+							.map($ -> true))
+						.whenException(socket::closeEx);
+				}
+			})
+			.withListenAddress(new InetSocketAddress(port))
+			.build();
+		server.listen();
+
+		HttpClient client = HttpClient.builder(Reactor.getCurrentReactor(), dnsClient)
+			.withKeepAliveTimeout(Duration.ofSeconds(10))
+			.withPipeliningDepth(2)
+			.build();
+
+		String url = "http://127.0.0.1:" + port;
+		List<String> bodies = await(loadBody(client, url + "/1")
+			.then(first -> Promises.delay(Duration.ofMillis(10), first))
+			.then(first -> Promises.toList(
+				Promise.of(first),
+				loadBody(client, url + "/2"),
+				loadBody(client, url + "/3")))
+			.whenComplete(server::close)
+			.then(list -> client.stop().map($ -> list)));
+
+		assertEquals(List.of("/1", "/2", "/3"), bodies);
+		assertEquals(2, connections.get());
+		assertEquals(1, client.getPipelinedRequests());
+		assertEquals(1, client.getPipelineResends());
+		assertEquals(1, client.getNonPipelinedAddresses());
+	}
+
+	private static Promise<String> loadBody(IHttpClient client, String url) {
+		return client.request(HttpRequest.get(url).build())
+			.then(response -> response.loadBody())
+			.map(body -> body.getString(UTF_8));
+	}
+
+	private static final ByteBufsDecoder<String> PATH_DECODER = bufs -> {
+		for (int i = 0; i < bufs.remainingBytes() - 3; i++) {
+			if (bufs.peekByte(i) == CR &&
+				bufs.peekByte(i + 1) == LF &&
+				bufs.peekByte(i + 2) == CR &&
+				bufs.peekByte(i + 3) == LF) {
+				ByteBuf buf = bufs.takeExactSize(i + 4);
+				String request = buf.asString(UTF_8);
+				return request.substring(request.indexOf(' ') + 1, request.indexOf(" HTTP/"));
+			}
+		}
+		return null;
+	};
+
+	private static ByteBuf pathResponse(String path) {
+		return wrapAscii("HTTP/1.1 200 OK\r\nContent-Length: " + path.length() + "\r\n\r\n" + path);
+	}
+
 	private static final ByteBufsDecoder<ByteBuf> REQUEST_DECODER = bufs -> {
 		for (int i = 0; i < bufs.remainingBytes() - 3; i++) {
 			if (bufs.peekByte(i) == CR &&
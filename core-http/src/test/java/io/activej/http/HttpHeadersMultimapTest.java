@@ -6,6 +6,7 @@ import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.*;
 
 @RunWith(Theories.class)
@@ -36,6 +37,32 @@ public class HttpHeadersMultimapTest {
 		}
 	}
 
+	@Theory
+	public void testAddRawAndGet(@FromDataPoints("initialSizes") int initialSize) {
+		HttpHeadersMultimap multimap = new HttpHeadersMultimap();
+		int totalHeaders = initialSize * 10;
+
+		StringBuilder head = new StringBuilder();
+		for (int i = 0; i < totalHeaders; i++) {
+			head.append("value").append(i).append(';');
+		}
+		byte[] raw = head.toString().getBytes(UTF_8);
+
+		int offset = 0;
+		for (int i = 0; i < totalHeaders; i++) {
+			int size = ("value" + i).length();
+			multimap.addRaw(HttpHeaders.of(String.valueOf(i)), raw, offset, size);
+			offset += size + 1;
+		}
+
+		for (int i = 0; i < totalHeaders; i++) {
+			HttpHeaderValue value = multimap.get(HttpHeaders.of(String.valueOf(i)));
+			assertNotNull(value);
+			assertHttpHeaderValue(HttpHeaderValue.ofBytes(("value" + i).getBytes(UTF_8)), value);
+			assertSame(value, multimap.get(HttpHeaders.of(String.valueOf(i))));
+		}
+	}
+
 	private static void assertHttpHeaderValue(HttpHeaderValue expected, HttpHeaderValue actual) {
 		assertSame(expected.getClass(), actual.getClass());
 		assertArrayEquals(expected.getBuf().asArray(), actual.getBuf().asArray());
@@ -14,7 +14,7 @@ import static io.activej.http.HttpHeaders.*;
 import static io.activej.http.MediaTypes.ANY_IMAGE;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public final class HttpHeadersTest {
 
@@ -61,4 +61,30 @@ public final class HttpHeadersTest {
 		assertEquals("image/*; q=0.5, text/html", headersMap.get(ACCEPT).toString());
 		assertEquals("utf-8, iso-8859-1", headersMap.get(ACCEPT_CHARSET).toString());
 	}
+
+	@Test
+	public void testValueComparators() {
+		byte[] bytes = "xx gzip;q=0.8, BR ,deflate xx".getBytes(ISO_8859_1);
+		HttpHeaderValue value = ofBytes(bytes, 3, bytes.length - 6);
+
+		assertTrue(value.equalsAscii("gzip;q=0.8, BR ,deflate"));
+		assertFalse(value.equalsAscii("GZIP;q=0.8, BR ,deflate"));
+		assertTrue(value.equalsIgnoreCaseAscii("GZIP;Q=0.8, br ,DEFLATE"));
+		assertTrue(value.containsTokenIgnoreCase("gzip"));
+		assertTrue(value.containsTokenIgnoreCase("br"));
+		assertTrue(value.containsTokenIgnoreCase("Deflate"));
+		assertFalse(value.containsTokenIgnoreCase("q=0.8"));
+		assertFalse(value.containsTokenIgnoreCase("zip"));
+
+		HttpHeaderValue stringValue = HttpHeaderValue.of("keep-alive, Upgrade");
+		assertTrue(stringValue.containsTokenIgnoreCase("upgrade"));
+		assertFalse(stringValue.equalsAscii("keep-alive"));
+		assertTrue(stringValue.equalsIgnoreCaseAscii("Keep-Alive, upgrade"));
+
+		HttpRequest request = HttpRequest.get("http://example.com")
+			.withHeader(ACCEPT_ENCODING, value)
+			.build();
+		assertTrue(request.getHeaderValue(ACCEPT_ENCODING).containsTokenIgnoreCase("br"));
+		assertNull(request.getHeaderValue(CONTENT_TYPE));
+	}
 }
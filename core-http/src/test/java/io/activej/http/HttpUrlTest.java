@@ -316,6 +316,23 @@ public final class HttpUrlTest {
 		assertThrows(NoSuchElementException.class, paramsIterator::next);
 	}
 
+	@Test
+	public void testQueryComparators() {
+		UrlParser url = UrlParser.of("http://abc.com/?format=json&q=a+b&empty&path=%2Fx#format=xml");
+
+		assertTrue(url.hasQueryParameter("format"));
+		assertTrue(url.hasQueryParameter("empty"));
+		assertFalse(url.hasQueryParameter("missing"));
+
+		assertTrue(url.isQueryParameterEqualTo("format", "json"));
+		assertFalse(url.isQueryParameterEqualTo("format", "jso"));
+		assertFalse(url.isQueryParameterEqualTo("format", "xml"));
+		assertTrue(url.isQueryParameterEqualTo("q", "a b"));
+		assertTrue(url.isQueryParameterEqualTo("empty", ""));
+		assertTrue(url.isQueryParameterEqualTo("path", "/x"));
+		assertFalse(url.isQueryParameterEqualTo("missing", ""));
+	}
+
 	@Test
 	public void testQueryWithNoPathBefore() {
 		UrlParser url = UrlParser.of("http://google.com?query=one:two/something");
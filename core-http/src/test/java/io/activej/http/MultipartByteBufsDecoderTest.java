@@ -2,6 +2,8 @@ package io.activej.http;
 
 import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufStrings;
+import io.activej.common.MemSize;
+import io.activej.common.exception.InvalidSizeException;
 import io.activej.csp.binary.BinaryChannelSupplier;
 import io.activej.csp.consumer.ChannelConsumer;
 import io.activej.csp.supplier.ChannelSuppliers;
@@ -10,18 +12,26 @@ import io.activej.test.ExpectedException;
 import io.activej.test.rules.ByteBufRule;
 import io.activej.test.rules.EventloopRule;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.mapping;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.*;
 
 public final class MultipartByteBufsDecoderTest {
 	private static final String BOUNDARY = "--test-boundary-123";
@@ -56,6 +66,9 @@ public final class MultipartByteBufsDecoderTest {
 	@ClassRule
 	public static final ByteBufRule byteBufRule = new ByteBufRule();
 
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
 	@Test
 	public void test() {
 		doTest(DATA);
@@ -125,4 +138,99 @@ public final class MultipartByteBufsDecoderTest {
 			}
 		}));
 	}
+
+	@Test
+	public void testFilesToTempFiles() throws IOException {
+		byte[] file = randomFile();
+		Map<String, String> fields = new HashMap<>();
+		Map<String, Path> files = new HashMap<>();
+		Path directory = tmpFolder.newFolder().toPath();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		await(MultipartByteBufsDecoder.builder(BOUNDARY.substring(2))
+			.withMaxFieldSize(MemSize.kilobytes(1))
+			.withMaxFileSize(MemSize.of(file.length))
+			.build()
+			.split(ChannelSuppliers.ofList(splitRandomly(multipartBody(file))),
+				MultipartByteBufsDecoder.AsyncMultipartDataHandler.tempFiles(fields, files, executor, directory)));
+		executor.shutdown();
+
+		assertEquals(Map.of("title", "Some title"), fields);
+		assertEquals(Set.of("upload"), files.keySet());
+		assertEquals(directory, files.get("upload").getParent());
+		assertArrayEquals(file, Files.readAllBytes(files.get("upload")));
+	}
+
+	@Test
+	public void testMaxFileSize() throws IOException {
+		byte[] file = randomFile();
+		Map<String, Path> files = new HashMap<>();
+		Path directory = tmpFolder.newFolder().toPath();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		Exception e = awaitException(MultipartByteBufsDecoder.builder(BOUNDARY.substring(2))
+			.withMaxFileSize(MemSize.of(file.length - 1))
+			.build()
+			.split(ChannelSuppliers.ofList(splitRandomly(multipartBody(file))),
+				MultipartByteBufsDecoder.AsyncMultipartDataHandler.tempFiles(new HashMap<>(), files, executor, directory)));
+		executor.shutdown();
+
+		assertThat(e, instanceOf(MalformedHttpException.class));
+		assertThat(e.getCause(), instanceOf(InvalidSizeException.class));
+		assertTrue(files.isEmpty());
+		try (var paths = Files.list(directory)) {
+			assertEquals(0, paths.count());
+		}
+	}
+
+	@Test
+	public void testMaxFieldSize() {
+		Exception e = awaitException(MultipartByteBufsDecoder.builder(BOUNDARY.substring(2))
+			.withMaxFieldSize(MemSize.of(5))
+			.build()
+			.split(ChannelSuppliers.ofList(splitRandomly(multipartBody(new byte[0]))),
+				MultipartByteBufsDecoder.AsyncMultipartDataHandler.fieldsToMap(new HashMap<>())));
+
+		assertThat(e, instanceOf(MalformedHttpException.class));
+		assertThat(e.getCause(), instanceOf(InvalidSizeException.class));
+	}
+
+	private static byte[] randomFile() {
+		Random random = new Random(0);
+		byte[] file = new byte[1 << 20];
+		random.nextBytes(file);
+		// plenty of CR and CRLF sequences which are not followed by a boundary
+		for (int i = 0; i < 1000; i++) {
+			int index = random.nextInt(file.length - 1);
+			file[index] = '\r';
+			if (i % 2 == 0) file[index + 1] = '\n';
+		}
+		return file;
+	}
+
+	private static byte[] multipartBody(byte[] file) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes((BOUNDARY + CRLF +
+			"Content-Disposition: form-data; name=\"title\"" + CRLF +
+			CRLF +
+			"Some title" + CRLF +
+			BOUNDARY + CRLF +
+			"Content-Disposition: form-data; name=\"upload\"; filename=\"data.bin\"" + CRLF +
+			"Content-Type: application/octet-stream" + CRLF +
+			CRLF).getBytes(UTF_8));
+		out.writeBytes(file);
+		out.writeBytes((CRLF + BOUNDARY + "--" + CRLF).getBytes(UTF_8));
+		return out.toByteArray();
+	}
+
+	private static List<ByteBuf> splitRandomly(byte[] body) {
+		Random random = new Random(1);
+		List<ByteBuf> bufs = new ArrayList<>();
+		for (int i = 0; i < body.length; ) {
+			int size = Math.min(body.length - i, 1 + random.nextInt(16 * 1024));
+			bufs.add(ByteBuf.wrapForReading(Arrays.copyOfRange(body, i, i + size)));
+			i += size;
+		}
+		return bufs;
+	}
 }
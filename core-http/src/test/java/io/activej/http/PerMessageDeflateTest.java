@@ -0,0 +1,149 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.test.rules.ByteBufRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static io.activej.bytebuf.ByteBuf.wrapForReading;
+import static io.activej.http.WebSocketConstants.INVALID_COMPRESSED_DATA;
+import static io.activej.http.WebSocketConstants.MESSAGE_TOO_BIG;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public final class PerMessageDeflateTest {
+	// rfc 7692 section 7.2.3.1
+	private static final byte[] HELLO_COMPRESSED = {(byte) 0xf2, 0x48, (byte) 0xcd, (byte) 0xc9, (byte) 0xc9, 0x07, 0x00};
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Test
+	public void testAcceptOffer() {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+
+		assertNull(deflate.acceptOffer(null));
+		assertNull(deflate.acceptOffer("x-webkit-deflate-frame"));
+		assertEquals("permessage-deflate", deflate.acceptOffer("permessage-deflate").extension());
+		assertEquals("permessage-deflate",
+			deflate.acceptOffer("permessage-deflate; client_max_window_bits").extension());
+
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptOffer(
+			"permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+		assertNotNull(negotiated);
+		assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover", negotiated.extension());
+		assertTrue(negotiated.noContextTakeover());
+		assertTrue(negotiated.peerNoContextTakeover());
+
+		// a local window cannot be limited, so a next offer is accepted
+		assertEquals("permessage-deflate; server_max_window_bits=15",
+			deflate.acceptOffer("permessage-deflate; server_max_window_bits=10, permessage-deflate; server_max_window_bits=\"15\"").extension());
+
+		assertNull(deflate.acceptOffer("permessage-deflate; server_no_context_takeover; server_no_context_takeover"));
+		assertNull(deflate.acceptOffer("permessage-deflate; client_max_window_bits=16"));
+		assertNull(deflate.acceptOffer("permessage-deflate; unknown"));
+	}
+
+	@Test
+	public void testAcceptOfferWithSettings() {
+		PerMessageDeflate deflate = PerMessageDeflate.builder()
+			.withNoContextTakeover()
+			.withPeerNoContextTakeover()
+			.withPeerMaxWindowBits(10)
+			.build();
+
+		assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover",
+			deflate.acceptOffer("permessage-deflate").extension());
+		assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover; client_max_window_bits=10",
+			deflate.acceptOffer("permessage-deflate; client_max_window_bits").extension());
+		assertEquals("permessage-deflate; client_no_context_takeover; server_no_context_takeover; server_max_window_bits=10",
+			deflate.getOffer());
+	}
+
+	@Test
+	public void testAcceptResponse() throws MalformedHttpException {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+
+		assertNull(deflate.acceptResponse(null));
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptResponse("permessage-deflate; server_no_context_takeover");
+		assertNotNull(negotiated);
+		assertFalse(negotiated.noContextTakeover());
+		assertTrue(negotiated.peerNoContextTakeover());
+
+		assertThrows(MalformedHttpException.class, () -> deflate.acceptResponse("permessage-deflate; client_max_window_bits=10"));
+		assertThrows(MalformedHttpException.class, () -> deflate.acceptResponse("permessage-deflate, permessage-deflate"));
+		assertThrows(MalformedHttpException.class, () -> deflate.acceptResponse("x-webkit-deflate-frame"));
+	}
+
+	@Test
+	public void testCompressHello() {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptOffer("permessage-deflate");
+		PerMessageDeflate.Compressor compressor = deflate.createCompressor(negotiated);
+
+		assertArrayEquals(HELLO_COMPRESSED, compressor.compress(wrapForReading("Hello".getBytes(UTF_8)), true).asArray());
+		compressor.close();
+	}
+
+	@Test
+	public void testDecompressHello() throws WebSocketException {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptOffer("permessage-deflate");
+		PerMessageDeflate.Decompressor decompressor = deflate.createDecompressor(negotiated);
+
+		assertEquals("Hello", decompressor.decompress(wrapForReading(HELLO_COMPRESSED), true, 100).asString(UTF_8));
+		// rfc 7692 section 7.2.3.2, a same message compressed with a context takeover
+		byte[] secondHello = {(byte) 0xf2, 0x00, 0x11, 0x00, 0x00};
+		assertEquals("Hello", decompressor.decompress(wrapForReading(secondHello), true, 100).asString(UTF_8));
+
+		// rfc 7692 section 7.2.3.1, a fragmented message
+		String first = decompressor.decompress(wrapForReading(new byte[]{(byte) 0xf2, 0x48, (byte) 0xcd}), false, 100).asString(UTF_8);
+		String second = decompressor.decompress(wrapForReading(new byte[]{(byte) 0xc9, (byte) 0xc9, 0x07, 0x00}), true, 100).asString(UTF_8);
+		assertEquals("Hello", first + second);
+		decompressor.close();
+	}
+
+	@Test
+	public void testFragmentedRoundTrip() throws WebSocketException {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptOffer("permessage-deflate");
+		PerMessageDeflate.Compressor compressor = deflate.createCompressor(negotiated);
+		PerMessageDeflate.Decompressor decompressor = deflate.createDecompressor(negotiated);
+
+		for (int i = 0; i < 3; i++) {
+			StringBuilder result = new StringBuilder();
+			for (int j = 0; j < 10; j++) {
+				String fragment = "Fragment " + j + " of message " + i + "; ".repeat(j * 100);
+				ByteBuf compressed = compressor.compress(wrapForReading(fragment.getBytes(UTF_8)), j == 9);
+				result.append(decompressor.decompress(compressed, j == 9, 1 << 20).asString(UTF_8));
+			}
+			StringBuilder expected = new StringBuilder();
+			for (int j = 0; j < 10; j++) {
+				expected.append("Fragment ").append(j).append(" of message ").append(i).append("; ".repeat(j * 100));
+			}
+			assertEquals(expected.toString(), result.toString());
+		}
+		compressor.close();
+		decompressor.close();
+		assertTrue(deflate.getDecompressionRatio() < 0.5);
+	}
+
+	@Test
+	public void testInvalidData() {
+		PerMessageDeflate deflate = PerMessageDeflate.create();
+		PerMessageDeflate.Negotiated negotiated = deflate.acceptOffer("permessage-deflate");
+
+		PerMessageDeflate.Compressor compressor = deflate.createCompressor(negotiated);
+		ByteBuf compressed = compressor.compress(wrapForReading(new byte[10_000]), true);
+		compressor.close();
+		PerMessageDeflate.Decompressor decompressor = deflate.createDecompressor(negotiated);
+		WebSocketException e = assertThrows(WebSocketException.class, () -> decompressor.decompress(compressed, true, 1000));
+		assertSame(MESSAGE_TOO_BIG, e);
+		decompressor.close();
+
+		PerMessageDeflate.Decompressor decompressor2 = deflate.createDecompressor(negotiated);
+		e = assertThrows(WebSocketException.class, () -> decompressor2.decompress(wrapForReading(new byte[]{(byte) 0xff, (byte) 0xff}), true, 1000));
+		assertSame(INVALID_COMPRESSED_DATA, e);
+		decompressor2.close();
+	}
+}
@@ -0,0 +1,251 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.dns.DnsClient;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ActivePromisesRule;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.activej.http.HttpHeaders.*;
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.test.TestUtils.getFreePort;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public final class ProxyServletTest {
+	private static final HttpHeader X_CUSTOM = HttpHeaders.of("X-Custom");
+	private static final HttpHeader X_SECRET = HttpHeaders.of("X-Secret");
+	private static final HttpHeader X_INTERNAL = HttpHeaders.of("X-Internal");
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final ActivePromisesRule activePromisesRule = new ActivePromisesRule();
+
+	private final List<HttpServer> servers = new ArrayList<>();
+	private int proxyPort;
+	private HttpClient client;
+
+	@Before
+	public void setUp() {
+		proxyPort = getFreePort();
+		NioReactor reactor = Reactor.getCurrentReactor();
+		client = HttpClient.create(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8")));
+	}
+
+	@Test
+	public void testBodiesAreStreamedAndHopByHopHeadersAreRemoved() throws IOException {
+		Map<HttpHeader, String> upstreamHeaders = new HashMap<>();
+		String upstream = startUpstream(request -> {
+			for (HttpHeader header : List.of(HOST, X_CUSTOM, X_SECRET, KEEP_ALIVE, X_FORWARDED_FOR, X_FORWARDED_HOST)) {
+				upstreamHeaders.put(header, request.getHeader(header));
+			}
+			return HttpResponse.ok200()
+				.withHeader(X_CUSTOM, "from upstream")
+				.withHeader(CONNECTION, "keep-alive, X-Internal")
+				.withHeader(X_INTERNAL, "secret")
+				.withBodyStream(request.takeBodyStream())
+				.toPromise();
+		});
+		startProxy(ProxyServlet.create(Reactor.getCurrentReactor(), client, List.of(upstream)));
+
+		List<ByteBuf> chunks = new ArrayList<>();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			String chunk = "chunk " + i + ";".repeat(1000);
+			chunks.add(ByteBuf.wrapForReading(chunk.getBytes(UTF_8)));
+			expected.append(chunk);
+		}
+
+		String body = await(client.request(HttpRequest.post("http://127.0.0.1:" + proxyPort + "/echo")
+				.withHeader(X_CUSTOM, "from client")
+				.withHeader(CONNECTION, "close, X-Secret")
+				.withHeader(X_SECRET, "secret")
+				.withHeader(KEEP_ALIVE, "timeout=5")
+				.withHeader(X_FORWARDED_FOR, "10.1.1.1")
+				.withBodyStream(ChannelSuppliers.ofList(chunks))
+				.build())
+			.whenResult(response -> {
+				assertEquals(200, response.getCode());
+				assertEquals("from upstream", response.getHeader(X_CUSTOM));
+				assertNull(response.getHeader(X_INTERNAL));
+			})
+			.then(response -> response.loadBody())
+			.map(buf -> buf.getString(UTF_8))
+			.whenComplete(this::closeServers));
+
+		assertEquals(expected.toString(), body);
+
+		assertEquals(upstream.substring("http://".length()), upstreamHeaders.get(HOST));
+		assertEquals("from client", upstreamHeaders.get(X_CUSTOM));
+		assertNull(upstreamHeaders.get(X_SECRET));
+		assertNull(upstreamHeaders.get(KEEP_ALIVE));
+		assertEquals("10.1.1.1, 127.0.0.1", upstreamHeaders.get(X_FORWARDED_FOR));
+		assertEquals("127.0.0.1:" + proxyPort, upstreamHeaders.get(X_FORWARDED_HOST));
+	}
+
+	@Test
+	public void testLeastPendingBalancing() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		AtomicInteger requests1 = new AtomicInteger();
+		AtomicInteger requests2 = new AtomicInteger();
+		String upstream1 = startUpstream(request -> {
+			requests1.incrementAndGet();
+			return Promises.delay(Duration.ofMillis(100), HttpResponse.ok200().withBody("1").build());
+		});
+		String upstream2 = startUpstream(request -> {
+			requests2.incrementAndGet();
+			return Promises.delay(Duration.ofMillis(100), HttpResponse.ok200().withBody("2").build());
+		});
+		ProxyServlet proxy = ProxyServlet.create(reactor, client, List.of(upstream1, upstream2));
+		startProxy(proxy);
+
+		List<Promise<String>> responses = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			responses.add(client.request(HttpRequest.get("http://127.0.0.1:" + proxyPort).build())
+				.then(response -> response.loadBody())
+				.map(body -> body.getString(UTF_8)));
+		}
+		List<String> bodies = await(Promises.toList(responses)
+			.whenComplete(this::closeServers));
+
+		assertEquals(2, requests1.get());
+		assertEquals(2, requests2.get());
+		assertEquals(2, bodies.stream().filter("1"::equals).count());
+		assertEquals(0, proxy.getPending());
+		assertEquals(4, proxy.getStats().getDuration().getCount());
+	}
+
+	@Test
+	public void testIdempotentRequestIsRetriedAndFailedUpstreamIsEjected() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		AtomicInteger requests = new AtomicInteger();
+		String deadUpstream = "http://127.0.0.1:" + getFreePort();
+		String liveUpstream = startUpstream(request -> {
+			requests.incrementAndGet();
+			return HttpResponse.ok200().withBody("live").toPromise();
+		});
+		ProxyServlet proxy = ProxyServlet.builder(reactor, client, List.of(deadUpstream, liveUpstream))
+			.withEjection(1, Duration.ofMinutes(1))
+			.withRouteFunction(request -> "/" + request.getPath().split("/")[1])
+			.build();
+		startProxy(proxy);
+
+		List<String> bodies = await(get("/a/1")
+			.then(body1 -> get("/a/2")
+				.then(body2 -> get("/b")
+					.map(body3 -> List.of(body1, body2, body3))))
+			.whenComplete(this::closeServers));
+
+		assertEquals(List.of("live", "live", "live"), bodies);
+
+		assertEquals(3, requests.get());
+		assertEquals(1, proxy.getRetries());
+		assertEquals(1, proxy.getEjections());
+		assertEquals(Set.of("/a", "/b"), proxy.getRouteStats().keySet());
+		assertEquals(2, proxy.getRouteStats().get("/a").getDuration().getCount());
+		assertEquals(1, proxy.getRouteStats().get("/b").getDuration().getCount());
+	}
+
+	@Test
+	public void testNonIdempotentRequestIsNotRetried() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		AtomicInteger requests = new AtomicInteger();
+		String deadUpstream = "http://127.0.0.1:" + getFreePort();
+		String liveUpstream = startUpstream(request -> {
+			requests.incrementAndGet();
+			return HttpResponse.ok200().toPromise();
+		});
+		ProxyServlet proxy = ProxyServlet.create(reactor, client, List.of(deadUpstream, liveUpstream));
+		startProxy(proxy);
+
+		int code = await(client.request(HttpRequest.post("http://127.0.0.1:" + proxyPort)
+				.withBody("payload")
+				.build())
+			.map(HttpResponse::getCode)
+			.whenComplete(this::closeServers));
+
+		assertEquals(502, code);
+		assertEquals(0, requests.get());
+		assertEquals(0, proxy.getRetries());
+		assertEquals(1, proxy.getStats().getExceptions().getTotal());
+	}
+
+	@Test
+	public void testHeadRequest() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		List<HttpMethod> methods = new ArrayList<>();
+		String upstream = startUpstream(request -> {
+			methods.add(request.getMethod());
+			if (request.getMethod() == HttpMethod.HEAD) {
+				return HttpResponse.ok200().withHeader(CONTENT_LENGTH, "4").toPromise();
+			}
+			return HttpResponse.ok200().withBody("body").toPromise();
+		});
+		HttpClient upstreamClient = HttpClient.builder(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8")))
+			.withReadWriteTimeout(Duration.ofSeconds(1))
+			.build();
+		ProxyServlet proxy = ProxyServlet.create(reactor, upstreamClient, List.of(upstream));
+		startProxy(proxy);
+
+		String body = await(client.request(HttpRequest.builder(HttpMethod.HEAD, "http://127.0.0.1:" + proxyPort).build())
+			.whenResult(response -> {
+				assertEquals(200, response.getCode());
+				assertEquals("4", response.getHeader(CONTENT_LENGTH));
+			})
+			.then(response -> response.loadBody())
+			.whenResult(headBody -> assertFalse(headBody.canRead()))
+			.then(() -> get("/"))
+			.whenComplete(this::closeServers));
+
+		assertEquals("body", body);
+		assertEquals(List.of(HttpMethod.HEAD, HttpMethod.GET), methods);
+		assertEquals(0, proxy.getRetries());
+		assertEquals(0, proxy.getEjections());
+		assertEquals(0, proxy.getStats().getExceptions().getTotal());
+	}
+
+	private Promise<String> get(String path) {
+		return client.request(HttpRequest.get("http://127.0.0.1:" + proxyPort + path).build())
+			.then(response -> response.loadBody())
+			.map(body -> body.getString(UTF_8));
+	}
+
+	private String startUpstream(AsyncServlet servlet) throws IOException {
+		int port = getFreePort();
+		startServer(servlet, port);
+		return "http://127.0.0.1:" + port;
+	}
+
+	private void startProxy(ProxyServlet proxy) throws IOException {
+		startServer(proxy, proxyPort);
+	}
+
+	private void startServer(AsyncServlet servlet, int port) throws IOException {
+		HttpServer server = HttpServer.builder(Reactor.getCurrentReactor(), servlet)
+			.withListenPort(port)
+			.build();
+		server.listen();
+		servers.add(server);
+	}
+
+	private void closeServers() {
+		servers.forEach(HttpServer::close);
+	}
+}
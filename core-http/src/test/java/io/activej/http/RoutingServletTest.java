@@ -500,4 +500,75 @@ public final class RoutingServletTest {
 		HttpError e = assertThrows(HttpError.class, () -> router.serve(HttpRequest.get("http://example.com/a%2").build()));
 		assertEquals("HTTP code 400: Path contains bad percent encoding", e.getMessage());
 	}
+
+	@Test
+	public void testCommonPrefixes() throws Exception {
+		RoutingServlet.Builder builder = RoutingServlet.builder(getCurrentReactor());
+		for (int i = 0; i < 500; i++) {
+			int route = i;
+			builder.with(GET, "/api/user" + i + "/item", request -> HttpResponse.ok200()
+				.withBody(wrapUtf8("item " + route))
+				.toPromise());
+		}
+		RoutingServlet router = builder
+			.with(GET, "/api/user", request -> HttpResponse.ok200().withBody(wrapUtf8("users")).toPromise())
+			.with(GET, "/api/users/:id", request -> HttpResponse.ok200()
+				.withBody(wrapUtf8("user " + request.getPathParameter("id")))
+				.toPromise())
+			.build();
+
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user0/item").build()), "item 0", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user42/item").build()), "item 42", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user499/item").build()), "item 499", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user").build()), "users", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/users/7").build()), "user 7", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user%34%32/item").build()), "item 42", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user500/item").build()), "", 404);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/use").build()), "", 404);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/api/user4").build()), "", 404);
+	}
+
+	@Test
+	public void testParameterBacktracking() throws Exception {
+		AsyncServlet printParameters = request -> {
+			String body = new TreeMap<>(request.getPathParameters()).toString();
+			return HttpResponse.ok200().withBody(wrapUtf8(body)).toPromise();
+		};
+
+		RoutingServlet router = RoutingServlet.builder(getCurrentReactor())
+			.with(GET, "/a/:x/b", printParameters)
+			.with(GET, "/a/:y/c/:z", printParameters)
+			.with(GET, "/a/static/b/:w", printParameters)
+			.build();
+
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/1/b").build()), "{x=1}", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/1/c/2").build()), "{y=1, z=2}", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/static/b").build()), "{x=static}", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/static/b/3").build()), "{w=3}", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/static/c/%2F").build()), "{y=static, z=/}", 200);
+	}
+
+	@Test
+	public void testBuiltServletIsNotChangedByMerge() throws Exception {
+		AsyncServlet servlet = request -> HttpResponse.ok200().withBody(wrapUtf8(request.getPath())).toPromise();
+		RoutingServlet.Builder builder = RoutingServlet.builder(getCurrentReactor())
+			.with(GET, "/a/b", servlet);
+		RoutingServlet router = builder.build();
+		assertThrows(IllegalStateException.class, () -> builder.with(GET, "/a/c", servlet));
+
+		RoutingServlet merged = RoutingServlet.builder(getCurrentReactor())
+			.merge(router)
+			.with(GET, "/a/c", servlet)
+			.build();
+
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/b").build()), "/a/b", 200);
+		check(router.serve(HttpRequest.get(TEMPLATE + "/a/c").build()), "", 404);
+		check(merged.serve(HttpRequest.get(TEMPLATE + "/a/b").build()), "/a/b", 200);
+		check(merged.serve(HttpRequest.get(TEMPLATE + "/a/c").build()), "/a/c", 200);
+
+		RoutingServlet child = merged.getChild("/a");
+		assertNotNull(child);
+		check(child.serve(HttpRequest.get(TEMPLATE + "/c").build()), "/c", 200);
+		assertNull(merged.getChild("/d"));
+	}
 }
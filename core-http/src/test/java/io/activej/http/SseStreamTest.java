@@ -0,0 +1,227 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.common.MemSize;
+import io.activej.csp.supplier.ChannelSupplier;
+import io.activej.dns.DnsClient;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ActivePromisesRule;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static io.activej.http.HttpHeaders.CONTENT_TYPE;
+import static io.activej.http.HttpHeaders.LAST_EVENT_ID;
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static io.activej.test.TestUtils.getFreePort;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public final class SseStreamTest {
+	private static final String END = "data: end\n\n";
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final ActivePromisesRule activePromisesRule = new ActivePromisesRule();
+
+	private int port;
+	private HttpClient client;
+
+	@Before
+	public void setUp() {
+		port = getFreePort();
+		NioReactor reactor = Reactor.getCurrentReactor();
+		client = HttpClient.create(reactor, DnsClient.create(reactor, inetAddress("8.8.8.8")));
+	}
+
+	@Test
+	public void testEventEncoding() {
+		SseEvent event = SseEvent.builder()
+			.withId("7")
+			.withEvent("update")
+			.withData("line1\nline2\r\nline3")
+			.build();
+		assertEquals("id: 7\nevent: update\ndata: line1\ndata: line2\ndata: line3\n\n", event.toString());
+
+		assertEquals("data: hello\n\n", SseEvent.of("hello").toString());
+		assertEquals(": keep-alive\n\n", SseEvent.comment("keep-alive").toString());
+		assertEquals("retry: 3000\n\n", SseEvent.builder().withRetry(Duration.ofSeconds(3)).build().toString());
+
+		assertThrows(IllegalArgumentException.class, () -> SseEvent.builder().withId("1\n2"));
+	}
+
+	@Test
+	public void testEventsAreCoalesced() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		SseBroadcastGroup group = SseBroadcastGroup.create(reactor);
+		List<SseStream> streams = new ArrayList<>();
+		HttpServer server = startServer(stream -> {
+			streams.add(stream);
+			group.add(stream);
+		});
+
+		int events = 100;
+		whenJoined(group, () -> {
+			server.close();
+			for (int i = 0; i < events; i++) {
+				group.broadcast(SseEvent.of(String.valueOf(i), null, "event " + i));
+			}
+			group.broadcast(SseEvent.of("end"));
+			streams.forEach(SseStream::end);
+		});
+
+		String received = await(client.request(HttpRequest.get("http://127.0.0.1:" + port).build())
+			.whenResult(response -> assertEquals("text/event-stream; charset=utf-8", response.getHeader(CONTENT_TYPE)))
+			.then(SseStreamTest::readUntilEnd));
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < events; i++) {
+			expected.append("id: ").append(i).append("\ndata: event ").append(i).append("\n\n");
+		}
+		expected.append(END);
+		assertEquals(expected.toString(), received);
+
+		SseStream stream = streams.get(0);
+		assertEquals(events + 1, stream.getEvents());
+		assertEquals(1, stream.getFlushes());
+	}
+
+	@Test
+	public void testLastEventIdResumption() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		SseBroadcastGroup group = SseBroadcastGroup.builder(reactor)
+			.withHistorySize(4)
+			.build();
+		for (int i = 1; i <= 5; i++) {
+			group.broadcast(SseEvent.of(String.valueOf(i), null, "event " + i));
+		}
+		List<SseStream> streams = new ArrayList<>();
+		HttpServer server = startServer(stream -> {
+			streams.add(stream);
+			group.add(stream);
+		});
+
+		whenJoined(group, () -> {
+			server.close();
+			group.broadcast(SseEvent.of("6", null, "event 6"));
+			group.broadcast(SseEvent.of("end"));
+			streams.forEach(SseStream::end);
+		});
+
+		String received = await(client.request(HttpRequest.get("http://127.0.0.1:" + port)
+				.withHeader(LAST_EVENT_ID, "3")
+				.build())
+			.then(SseStreamTest::readUntilEnd));
+
+		assertEquals("""
+			id: 4
+			data: event 4
+
+			id: 5
+			data: event 5
+
+			id: 6
+			data: event 6
+
+			""" + END, received);
+		assertEquals(2, group.getReplayedEvents());
+		assertEquals(4, group.getHistoryEvents());
+	}
+
+	@Test
+	public void testHeartbeats() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		List<SseStream> streams = new ArrayList<>();
+		HttpServer.builder(reactor, request -> {
+				SseStream stream = SseStream.builder(request)
+					.withHeartbeatInterval(Duration.ofMillis(10))
+					.withRetry(Duration.ofSeconds(1))
+					.build();
+				streams.add(stream);
+				return stream.toResponse().toPromise();
+			})
+			.withListenPort(port)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		String received = await(client.request(HttpRequest.get("http://127.0.0.1:" + port).build())
+			.then(response -> readUntil(response, "retry: 1000\n\n: \n\n: \n\n")));
+
+		assertEquals("retry: 1000\n\n: \n\n: \n\n", received);
+		assertTrue(streams.get(0).getHeartbeats() >= 2);
+	}
+
+	@Test
+	public void testSlowConsumerIsClosed() {
+		SseBroadcastGroup group = SseBroadcastGroup.create(Reactor.getCurrentReactor());
+		SseStream stream = SseStream.builder()
+			.withMaxPendingSize(MemSize.of(100))
+			.build();
+		group.add(stream);
+
+		for (int i = 0; i < 20; i++) {
+			group.broadcast(SseEvent.of("event " + i));
+		}
+
+		HttpException e = awaitException(stream.get());
+		assertEquals("Server-sent events stream does not keep up with events", e.getMessage());
+		assertTrue(stream.isClosed());
+		assertEquals(0, group.getMembers());
+	}
+
+	private HttpServer startServer(Consumer<SseStream> streamConsumer) throws IOException {
+		HttpServer server = HttpServer.builder(Reactor.getCurrentReactor(), request -> {
+				SseStream stream = SseStream.create(request);
+				streamConsumer.accept(stream);
+				return stream.toResponse().toPromise();
+			})
+			.withListenPort(port)
+			.build();
+		server.listen();
+		return server;
+	}
+
+	private static void whenJoined(SseBroadcastGroup group, Runnable action) {
+		group.getReactor().delay(10, () -> {
+			if (group.getMembers() == 1) {
+				action.run();
+			} else {
+				whenJoined(group, action);
+			}
+		});
+	}
+
+	private static Promise<String> readUntilEnd(HttpResponse response) {
+		return readUntil(response, END);
+	}
+
+	private static Promise<String> readUntil(HttpResponse response, String suffix) {
+		ChannelSupplier<ByteBuf> bodyStream = response.takeBodyStream();
+		StringBuilder received = new StringBuilder();
+		return Promises.repeat(() -> bodyStream.get()
+				.map(buf -> {
+					if (buf == null) return false;
+					received.append(buf.asString(UTF_8));
+					return !received.toString().endsWith(suffix);
+				}))
+			.whenComplete(bodyStream::close)
+			.map($ -> received.toString());
+	}
+}
@@ -2,6 +2,8 @@ package io.activej.http;
 
 import io.activej.bytebuf.ByteBuf;
 import io.activej.http.loader.IStaticLoader;
+import io.activej.http.loader.ResourceNotFoundException;
+import io.activej.promise.Promise;
 import io.activej.reactor.Reactor;
 import io.activej.test.rules.ByteBufRule;
 import io.activej.test.rules.EventloopRule;
@@ -13,8 +15,11 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 
+import static io.activej.bytebuf.ByteBuf.wrapForReading;
 import static io.activej.bytebuf.ByteBufStrings.encodeAscii;
+import static io.activej.http.HttpHeaders.*;
 import static io.activej.http.loader.IStaticLoader.ofClassPath;
 import static io.activej.http.loader.IStaticLoader.ofPath;
 import static io.activej.promise.TestUtils.await;
@@ -22,7 +27,7 @@ import static io.activej.promise.TestUtils.awaitException;
 import static io.activej.reactor.Reactor.getCurrentReactor;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.Executors.newCachedThreadPool;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public final class StaticServletTest {
 	public static final String EXPECTED_CONTENT = "Test";
@@ -137,4 +142,172 @@ public final class StaticServletTest {
 		assertEquals(customContent, body.asString(UTF_8));
 		assertEquals(customType, response.getHeader(HttpHeaders.CONTENT_TYPE));
 	}
+
+	@Test
+	public void testEtagAndConditionalRequest() {
+		StaticServlet staticServlet = StaticServlet.create(getCurrentReactor(), ofMap(Map.of("file.txt", "Hello, World")));
+		HttpResponse response = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+		String etag = response.getHeader(ETAG);
+		assertNotNull(etag);
+		assertTrue(etag.startsWith("\""));
+		assertEquals("bytes", response.getHeader(ACCEPT_RANGES));
+		assertEquals("Hello, World", response.getBody().asString(UTF_8));
+
+		HttpResponse notModified = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(IF_NONE_MATCH, etag)
+			.build()));
+		assertEquals(304, notModified.getCode());
+		assertEquals(etag, notModified.getHeader(ETAG));
+
+		HttpResponse modified = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(IF_NONE_MATCH, "\"other\"")
+			.build()));
+		assertEquals(200, modified.getCode());
+		assertEquals("Hello, World", modified.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testRange() {
+		StaticServlet staticServlet = StaticServlet.create(getCurrentReactor(), ofMap(Map.of("file.txt", "0123456789")));
+
+		assertRange(staticServlet, "bytes=2-4", 206, "234", "bytes 2-4/10");
+		assertRange(staticServlet, "bytes=7-", 206, "789", "bytes 7-9/10");
+		assertRange(staticServlet, "bytes=-3", 206, "789", "bytes 7-9/10");
+		assertRange(staticServlet, "bytes=5-100", 206, "56789", "bytes 5-9/10");
+		assertRange(staticServlet, "bytes=10-", 416, "", "bytes */10");
+		assertRange(staticServlet, "bytes=5-2", 200, "0123456789", null);
+		assertRange(staticServlet, "bytes=0-1,3-4", 200, "0123456789", null);
+		assertRange(staticServlet, "items=0-1", 200, "0123456789", null);
+
+		HttpResponse response = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(RANGE, "bytes=0-1")
+			.withHeader(IF_RANGE, "\"outdated\"")
+			.build()));
+		assertEquals(200, response.getCode());
+		assertEquals("0123456789", response.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testPrecompressedVariants() throws Exception {
+		String content = "Hello, World";
+		byte[] gzipped = GzipProcessorUtils.toGzip(wrapForReading(content.getBytes(UTF_8))).asArray();
+		IStaticLoader loader = path -> switch (path) {
+			case "file.txt" -> Promise.of(wrapForReading(content.getBytes(UTF_8)));
+			case "file.txt.gz" -> Promise.of(wrapForReading(gzipped));
+			case "file.txt.br" -> Promise.of(wrapForReading(encodeAscii("brotli")));
+			default -> Promise.ofException(new ResourceNotFoundException("Could not find '" + path + '\''));
+		};
+		StaticServlet staticServlet = StaticServlet.builder(getCurrentReactor(), loader)
+			.withPrecompressedVariants()
+			.build();
+
+		HttpResponse brotli = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(ACCEPT_ENCODING, "gzip, deflate, br")
+			.build()));
+		assertEquals("br", brotli.getHeader(CONTENT_ENCODING));
+		assertEquals("Accept-Encoding", brotli.getHeader(VARY));
+		assertEquals("text/plain; charset=utf-8", brotli.getHeader(CONTENT_TYPE));
+		assertEquals("brotli", brotli.getBody().asString(UTF_8));
+
+		HttpResponse gzip = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(ACCEPT_ENCODING, "gzip, br;q=0")
+			.build()));
+		assertEquals("gzip", gzip.getHeader(CONTENT_ENCODING));
+		assertEquals(content, GzipProcessorUtils.fromGzip(gzip.getBody(), 1 << 10).asString(UTF_8));
+
+		HttpResponse identity = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+		assertNull(identity.getHeader(CONTENT_ENCODING));
+		assertEquals(content, identity.getBody().asString(UTF_8));
+		assertNotEquals(identity.getHeader(ETAG), gzip.getHeader(ETAG));
+	}
+
+	@Test
+	public void testGzipCompression() throws Exception {
+		String content = "Hello, World! ".repeat(100);
+		StaticServlet staticServlet = StaticServlet.builder(getCurrentReactor(), ofMap(Map.of("file.txt", content, "file.png", content)))
+			.withGzipCompression()
+			.build();
+
+		HttpResponse first = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(ACCEPT_ENCODING, "gzip")
+			.build()));
+		HttpResponse second = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(ACCEPT_ENCODING, "gzip")
+			.build()));
+		assertEquals("gzip", first.getHeader(CONTENT_ENCODING));
+		assertEquals(first.getHeader(ETAG), second.getHeader(ETAG));
+		assertSame(first.getBody().array(), second.getBody().array());
+		assertEquals(content, GzipProcessorUtils.fromGzip(first.getBody(), 1 << 20).asString(UTF_8));
+
+		HttpResponse image = await(staticServlet.serve(HttpRequest.get("http://test.com/file.png")
+			.withHeader(ACCEPT_ENCODING, "gzip")
+			.build()));
+		assertNull(image.getHeader(CONTENT_ENCODING));
+		assertEquals(content, image.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testEtagOfChangedArray() {
+		// a loader may reuse the same array for a changed content, as pooled buffers do
+		byte[] content = "Hello, World".getBytes(UTF_8);
+		IStaticLoader loader = path -> Promise.of(wrapForReading(content));
+		StaticServlet staticServlet = StaticServlet.create(getCurrentReactor(), loader);
+
+		HttpResponse first = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+		content[0] = 'J';
+		HttpResponse second = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+
+		assertNotEquals(first.getHeader(ETAG), second.getHeader(ETAG));
+		assertEquals("Jello, World", second.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testCachedLoader() {
+		Reactor reactor = getCurrentReactor();
+		StaticServlet staticServlet = StaticServlet.create(reactor, ofMap(Map.of("file.txt", "Hello, World")).cached(reactor));
+
+		HttpResponse first = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+		HttpResponse second = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt").build()));
+
+		assertEquals(first.getHeader(ETAG), second.getHeader(ETAG));
+		assertSame(first.getBody().array(), second.getBody().array());
+		assertEquals("Hello, World", second.getBody().asString(UTF_8));
+	}
+
+	@Test
+	public void testCachedResourcesAreBounded() {
+		String content = "Hello, World! ".repeat(100);
+		StaticServlet staticServlet = StaticServlet.builder(getCurrentReactor(), ofMap(Map.of("a.txt", content, "b.txt", content)))
+			.withGzipCompression()
+			.withMaxCachedResources(1)
+			.build();
+
+		byte[] first = getGzipped(staticServlet, "a.txt");
+		assertSame(first, getGzipped(staticServlet, "a.txt"));
+		getGzipped(staticServlet, "b.txt");
+		assertNotSame(first, getGzipped(staticServlet, "a.txt"));
+	}
+
+	private static byte[] getGzipped(StaticServlet staticServlet, String path) {
+		HttpResponse response = await(staticServlet.serve(HttpRequest.get("http://test.com/" + path)
+			.withHeader(ACCEPT_ENCODING, "gzip")
+			.build()));
+		assertEquals("gzip", response.getHeader(CONTENT_ENCODING));
+		return response.getBody().array();
+	}
+
+	private static void assertRange(StaticServlet staticServlet, String range, int expectedCode, String expectedBody, String expectedContentRange) {
+		HttpResponse response = await(staticServlet.serve(HttpRequest.get("http://test.com/file.txt")
+			.withHeader(RANGE, range)
+			.build()));
+		assertEquals(expectedCode, response.getCode());
+		assertEquals(expectedContentRange, response.getHeader(CONTENT_RANGE));
+		assertEquals(expectedBody, response.hasBody() ? response.getBody().asString(UTF_8) : "");
+	}
+
+	private static IStaticLoader ofMap(Map<String, String> resources) {
+		return path -> resources.containsKey(path) ?
+			Promise.of(wrapForReading(resources.get(path).getBytes(UTF_8))) :
+			Promise.ofException(new ResourceNotFoundException("Could not find '" + path + '\''));
+	}
 }
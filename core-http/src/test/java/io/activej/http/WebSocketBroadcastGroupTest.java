@@ -0,0 +1,290 @@
+package io.activej.http;
+
+import io.activej.bytebuf.ByteBufStrings;
+import io.activej.csp.consumer.ChannelConsumers;
+import io.activej.csp.consumer.ChannelConsumers;
+import io.activej.dns.DnsClient;
+import io.activej.eventloop.Eventloop;
+import io.activej.http.IWebSocket.Message;
+import io.activej.http.WebSocketBroadcastGroup.SlowConsumerPolicy;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.nio.NioReactor;
+import io.activej.test.rules.ActivePromisesRule;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static io.activej.http.HttpUtils.inetAddress;
+import static io.activej.promise.TestUtils.await;
+import static io.activej.promise.TestUtils.awaitException;
+import static io.activej.test.TestUtils.getFreePort;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.*;
+
+public final class WebSocketBroadcastGroupTest {
+	private static final int MESSAGES = 20;
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final ActivePromisesRule activePromisesRule = new ActivePromisesRule();
+
+	private int port;
+	private DnsClient dnsClient;
+
+	@Before
+	public void setUp() {
+		port = getFreePort();
+		dnsClient = DnsClient.create(Reactor.getCurrentReactor(), inetAddress("8.8.8.8"));
+	}
+
+	@Test
+	public void testBroadcastToManySockets() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		int clients = 10;
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.builder(reactor)
+			.withMaxPendingMessages(MESSAGES + 1)
+			.build();
+		HttpServer server = startServer(port, group::add);
+
+		HttpClient client = HttpClient.create(reactor, dnsClient);
+		List<Promise<List<String>>> results = new ArrayList<>();
+		for (int i = 0; i < clients; i++) {
+			results.add(client.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+				.then(WebSocketBroadcastGroupTest::readUntilEnd));
+		}
+
+		whenJoined(group, clients, () -> {
+			server.close();
+			for (int i = 0; i < MESSAGES; i++) {
+				String text = String.valueOf(i);
+				if (i % 2 == 0) {
+					group.broadcast(Message.text(text));
+				} else {
+					group.broadcast(Message.binary(ByteBufStrings.wrapUtf8(text)));
+				}
+			}
+			group.broadcast(Message.text("end"));
+		});
+
+		List<List<String>> received = await(Promises.toList(results));
+
+		List<String> expected = IntStream.range(0, MESSAGES).mapToObj(String::valueOf).toList();
+		assertEquals(clients, received.size());
+		for (List<String> messages : received) {
+			assertEquals(expected, messages);
+		}
+		assertEquals(MESSAGES + 1, group.getMessages());
+		assertEquals(0, group.getDroppedMessages());
+	}
+
+	@Test
+	public void testDropPolicy() throws IOException {
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.builder(Reactor.getCurrentReactor())
+			.withMaxPendingMessages(2)
+			.build();
+
+		List<String> received = burstToSingleClient(group);
+
+		assertTrue(group.getDroppedMessages() > 0);
+		assertEquals(MESSAGES - group.getDroppedMessages(), received.size());
+		assertEquals("0", received.get(0));
+		assertSorted(received);
+	}
+
+	@Test
+	public void testCoalesceLatestPolicy() throws IOException {
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.builder(Reactor.getCurrentReactor())
+			.withSlowConsumerPolicy(SlowConsumerPolicy.COALESCE_LATEST)
+			.withMaxPendingMessages(2)
+			.build();
+
+		List<String> received = burstToSingleClient(group);
+
+		assertTrue(group.getCoalescedMessages() > 0);
+		assertEquals(MESSAGES - group.getCoalescedMessages(), received.size());
+		assertEquals("0", received.get(0));
+		assertEquals(String.valueOf(MESSAGES - 1), received.get(received.size() - 1));
+		assertSorted(received);
+	}
+
+	@Test
+	public void testDisconnectPolicy() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.builder(reactor)
+			.withMaxPendingMessages(2)
+			.build();
+		startServerOnce(port, ws -> {
+			group.add(ws, SlowConsumerPolicy.DISCONNECT);
+			for (int i = 0; i < MESSAGES; i++) {
+				group.broadcast(Message.text(String.valueOf(i)));
+			}
+		});
+
+		Exception e = awaitException(HttpClient.create(reactor, dnsClient)
+			.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+			.then(WebSocketBroadcastGroupTest::readUntilEnd));
+
+		assertThat(e, instanceOf(WebSocketException.class));
+		assertEquals(Integer.valueOf(1008), ((WebSocketException) e).getCode());
+		assertEquals(1, group.getDisconnectedMembers());
+		assertEquals(0, group.getMembers());
+	}
+
+	@Test
+	public void testClientWebSocketIsRejected() throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.create(reactor);
+		startServerOnce(port, ws -> {});
+
+		IWebSocket clientWebSocket = await(HttpClient.create(reactor, dnsClient)
+			.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+			.whenResult(ws -> assertThrows(IllegalArgumentException.class, () -> group.add(ws)))
+			.whenResult(IWebSocket::close));
+
+		assertTrue(clientWebSocket.isClosed());
+		assertEquals(0, group.getMembers());
+	}
+
+	@Test
+	public void testBroadcasterAcrossReactors() throws Exception {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		WebSocketBroadcastGroup group = WebSocketBroadcastGroup.create(reactor);
+		HttpServer server = startServer(port, group::add);
+
+		int port2 = getFreePort();
+		Eventloop eventloop2 = Eventloop.create();
+		eventloop2.keepAlive(true);
+		Thread thread = new Thread(eventloop2);
+		thread.start();
+		SettablePromise<Void> joined2 = new SettablePromise<>();
+		WebSocketBroadcastGroup group2 = WebSocketBroadcastGroup.create(eventloop2);
+		HttpServer server2 = createServer(eventloop2, port2, ws -> {
+			group2.add(ws);
+			reactor.execute(() -> joined2.set(null));
+		}).build();
+		eventloop2.submit(server2::listen).get();
+
+		WebSocketBroadcaster broadcaster = WebSocketBroadcaster.create(List.of(group, group2));
+
+		HttpClient client = HttpClient.create(reactor, dnsClient);
+		Promise<List<String>> result1 = client.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+			.then(WebSocketBroadcastGroupTest::readUntilEnd);
+		Promise<List<String>> result2 = client.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port2).build())
+			.then(WebSocketBroadcastGroupTest::readUntilEnd);
+
+		whenJoined(group, 1, () -> joined2.whenResult(() -> {
+			server.close();
+			eventloop2.execute(server2::close);
+			broadcaster.broadcastText("hello");
+			broadcaster.broadcastBinary("world".getBytes(UTF_8));
+			broadcaster.broadcastText("end");
+		}));
+
+		List<List<String>> received = await(Promises.toList(result1, result2));
+		eventloop2.keepAlive(false);
+		thread.join();
+
+		assertEquals(List.of("hello", "world"), received.get(0));
+		assertEquals(List.of("hello", "world"), received.get(1));
+		assertEquals(3, group2.getMessages());
+	}
+
+	private List<String> burstToSingleClient(WebSocketBroadcastGroup group) throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		startServerOnce(port, ws -> {
+			group.add(ws);
+			for (int i = 0; i < MESSAGES; i++) {
+				group.broadcast(Message.text(String.valueOf(i)));
+			}
+			whenDrained(group, () -> group.broadcast(Message.text("end")));
+		});
+
+		return await(HttpClient.create(reactor, dnsClient)
+			.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+			.then(WebSocketBroadcastGroupTest::readUntilEnd));
+	}
+
+	private static void whenJoined(WebSocketBroadcastGroup group, int members, Runnable action) {
+		Reactor reactor = group.getReactor();
+		reactor.delay(10, () -> {
+			if (group.getMembers() == members) {
+				action.run();
+			} else {
+				whenJoined(group, members, action);
+			}
+		});
+	}
+
+	private static void whenDrained(WebSocketBroadcastGroup group, Runnable action) {
+		group.getReactor().delay(10, () -> {
+			if (group.getPendingMessages() == 0) {
+				action.run();
+			} else {
+				whenDrained(group, action);
+			}
+		});
+	}
+
+	private static Promise<List<String>> readUntilEnd(IWebSocket ws) {
+		List<String> received = new ArrayList<>();
+		return Promises.repeat(() -> ws.readMessage()
+				.map(message -> {
+					String text;
+					if (message.getType() == Message.MessageType.TEXT) {
+						text = message.getText();
+					} else {
+						text = message.getBuf().asString(UTF_8);
+					}
+					if (text.equals("end")) return false;
+					received.add(text);
+					return true;
+				}))
+			.whenComplete(ws::close)
+			.map($ -> received);
+	}
+
+	private static void assertSorted(List<String> received) {
+		for (int i = 1; i < received.size(); i++) {
+			assertTrue(Integer.parseInt(received.get(i - 1)) < Integer.parseInt(received.get(i)));
+		}
+	}
+
+	private static HttpServer startServer(int port, Consumer<IWebSocket> webSocketConsumer) throws IOException {
+		HttpServer server = createServer(Reactor.getCurrentReactor(), port, webSocketConsumer).build();
+		server.listen();
+		return server;
+	}
+
+	private static void startServerOnce(int port, Consumer<IWebSocket> webSocketConsumer) throws IOException {
+		createServer(Reactor.getCurrentReactor(), port, webSocketConsumer)
+			.withAcceptOnce()
+			.build()
+			.listen();
+	}
+
+	private static HttpServer.Builder createServer(NioReactor reactor, int port, Consumer<IWebSocket> webSocketConsumer) {
+		return HttpServer.builder(reactor, RoutingServlet.builder(reactor)
+				.withWebSocket("/", ws -> {
+					ws.messageReadChannel().streamTo(ChannelConsumers.recycling());
+					webSocketConsumer.accept(ws);
+				})
+				.build())
+			.withListenPort(port);
+	}
+}
@@ -392,6 +392,71 @@ public final class WebSocketClientServerTest {
 		assertEquals(404, responseCode);
 	}
 
+	@Test
+	public void testPerMessageDeflate() throws IOException {
+		doTestPerMessageDeflate(PerMessageDeflate.create(), PerMessageDeflate.create());
+	}
+
+	@Test
+	public void testPerMessageDeflateNoContextTakeover() throws IOException {
+		doTestPerMessageDeflate(
+			PerMessageDeflate.builder()
+				.withNoContextTakeover()
+				.build(),
+			PerMessageDeflate.builder()
+				.withNoContextTakeover()
+				.withPeerNoContextTakeover()
+				.build());
+	}
+
+	private void doTestPerMessageDeflate(PerMessageDeflate serverDeflate, PerMessageDeflate clientDeflate) throws IOException {
+		NioReactor reactor = Reactor.getCurrentReactor();
+		HttpServer.builder(reactor, RoutingServlet.builder(reactor)
+				.withWebSocket("/", serverDeflate, ws -> ws.messageReadChannel().streamTo(ws.messageWriteChannel()))
+				.build())
+			.withListenPort(port)
+			.withAcceptOnce()
+			.build()
+			.listen();
+
+		List<String> messages = IntStream.range(0, 100)
+			.mapToObj(i -> "{\"id\":" + i + ",\"payload\":\"" + "x".repeat(i * 10) + "\"}")
+			.toList();
+
+		Ref<String> extensionsRef = new Ref<>();
+		List<String> result = await(HttpClient.builder(reactor, dnsClient)
+			.withPerMessageDeflate(clientDeflate)
+			.build()
+			.webSocketRequest(HttpRequest.get("ws://127.0.0.1:" + port).build())
+			.then(ws -> {
+				extensionsRef.set(ws.getResponse().getHeader(HttpHeaders.SEC_WEBSOCKET_EXTENSIONS));
+				// the close frame is sent only after every message has been echoed back,
+				// otherwise the server may answer the close frame before echoing the last messages
+				SettablePromise<Void> echoed = new SettablePromise<>();
+				ChannelSuppliers.concat(
+						ChannelSuppliers.ofList(messages).map(Message::text),
+						ChannelSuppliers.ofPromise(echoed.map($ -> ChannelSuppliers.<Message>empty())))
+					.streamTo(ws.messageWriteChannel());
+				RefInt received = new RefInt(0);
+				return ws.messageReadChannel()
+					.map(Message::getText)
+					.peek($ -> {
+						if (received.inc() == messages.size()) echoed.set(null);
+					})
+					.toList();
+			}));
+
+		assertEquals(messages, result);
+		assertNotNull(extensionsRef.get());
+		for (PerMessageDeflate deflate : List.of(serverDeflate, clientDeflate)) {
+			assertTrue(deflate.getCompressedMessages() > 0);
+			assertTrue(deflate.getUncompressedMessages() > 0);
+			assertEquals(100, deflate.getCompressedMessages() + deflate.getUncompressedMessages());
+			assertTrue(deflate.getCompressionRatio() < 0.5);
+			assertEquals(deflate.getBytesAfterCompression(), (serverDeflate == deflate ? clientDeflate : serverDeflate).getBytesBeforeDecompression());
+		}
+	}
+
 	private void startTestServer(Consumer<IWebSocket> webSocketConsumer) throws IOException {
 		NioReactor reactor = Reactor.getCurrentReactor();
 		HttpServer.builder(reactor, RoutingServlet.builder(reactor)
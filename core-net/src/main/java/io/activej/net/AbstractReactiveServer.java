@@ -206,6 +206,13 @@ public abstract class AbstractReactiveServer extends AbstractNioReactive
 
 	protected abstract void serve(ITcpSocket socket, InetAddress remoteAddress);
 
+	/**
+	 * Wraps an accepted socket into an SSL socket, may be overridden to configure an {@link javax.net.ssl.SSLEngine}
+	 */
+	protected ITcpSocket wrapSslSocket(ITcpSocket socket, SSLContext sslContext, Executor sslExecutor) {
+		return wrapServerSocket(reactor, socket, sslContext, sslExecutor);
+	}
+
 	protected void onListen() {
 	}
 
@@ -369,7 +376,7 @@ public abstract class AbstractReactiveServer extends AbstractNioReactive
 			reactor.closeChannel(socketChannel, null);
 			return;
 		}
-		socket = ssl ? wrapServerSocket(reactor, socket, sslContext, sslExecutor) : socket;
+		socket = ssl ? wrapSslSocket(socket, sslContext, sslExecutor) : socket;
 		serve(socket, remoteAddress);
 	}
 
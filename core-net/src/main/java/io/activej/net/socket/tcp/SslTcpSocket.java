@@ -65,6 +65,8 @@ public final class SslTcpSocket extends AbstractNioReactive implements ITcpSocke
 	private @Nullable SettablePromise<Void> write;
 	private @Nullable Promise<Void> pendingUpstreamWrite;
 
+	private final SettablePromise<Void> handshake = new SettablePromise<>();
+
 	private SslTcpSocket(
 		NioReactor reactor, ITcpSocket socket, SSLEngine engine, Executor executor
 	) {
@@ -105,6 +107,23 @@ public final class SslTcpSocket extends AbstractNioReactive implements ITcpSocke
 		return new SslTcpSocket(reactor, socket, engine, executor);
 	}
 
+	/**
+	 * Returns a promise which is completed once an initial handshake is finished
+	 * or completed exceptionally if a socket is closed before that
+	 */
+	public Promise<Void> getHandshakeCompletion() {
+		return handshake;
+	}
+
+	/**
+	 * Returns an application protocol negotiated during a handshake with ALPN,
+	 * an empty string if a protocol has not been negotiated,
+	 * or {@code null} if a handshake has not been finished yet
+	 */
+	public @Nullable String getApplicationProtocol() {
+		return handshake.isResult() ? engine.getApplicationProtocol() : null;
+	}
+
 	@Override
 	public Promise<ByteBuf> read() {
 		if (CHECKS) checkInReactorThread(this);
@@ -329,6 +348,10 @@ public final class SslTcpSocket extends AbstractNioReactive implements ITcpSocke
 			doHandshake();
 			return;
 		}
+		if (!handshake.isComplete()) {
+			handshake.set(null);
+			if (isClosed()) return;
+		}
 
 		// write data to net
 		if (app2engine.canRead()) {
@@ -432,6 +455,7 @@ public final class SslTcpSocket extends AbstractNioReactive implements ITcpSocke
 			write.setException(e);
 			write = null;
 		}
+		handshake.trySetException(e);
 	}
 
 	@Override
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.async.process;
+
+import io.activej.common.Checks;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.jmx.api.attribute.JmxAttribute;
+import io.activej.promise.Promise;
+import io.activej.promise.SettablePromise;
+import io.activej.reactor.AbstractReactive;
+import io.activej.reactor.Reactor;
+import io.activej.reactor.jmx.ReactiveJmxBean;
+import io.activej.reactor.schedule.ScheduledRunnable;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import static io.activej.common.Checks.checkArgument;
+import static io.activej.common.Checks.checkState;
+import static io.activej.reactor.Reactive.checkInReactorThread;
+
+/**
+ * A hierarchical token bucket which may be shared by any number of streams or channels of a single reactor.
+ * <p>
+ * Each bucket is refilled with a given rate up to its capacity. A bucket may have a parent bucket,
+ * so that tokens are acquired from every bucket on a path to the root. This allows to build
+ * hierarchies like per-reactor, per-tenant and per-stream limits.
+ * <p>
+ * When there are not enough tokens, requests are queued. Requests coming from child buckets
+ * are served according to the weights of those child buckets (start-time fair queueing),
+ * so that a child with twice the weight gets twice the share of the parent's bandwidth.
+ * <p>
+ * A bucket without a refill rate is unlimited on its own level and only participates in sharing
+ * of the parent's tokens.
+ */
+public final class TokenBucket extends AbstractReactive implements ReactiveJmxBean {
+	private static final boolean CHECKS = Checks.isEnabled(TokenBucket.class);
+
+	private static final Duration MILLIS_DURATION = ChronoUnit.MILLIS.getDuration();
+
+	private final @Nullable TokenBucket parent;
+
+	private double refillRatePerMillis = Double.POSITIVE_INFINITY;
+	private double capacity = Double.POSITIVE_INFINITY;
+	private double weight = 1.0;
+
+	private double tokens;
+	private long lastRefillTimestamp;
+
+	private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+		Comparator.comparingDouble(Waiter::finishTag).thenComparingLong(Waiter::sequence));
+	private double waitingTokens;
+	private double virtualTime;
+	private long sequence;
+
+	// used by a parent bucket to order requests of this bucket
+	private double lastFinishTag;
+
+	private @Nullable ScheduledRunnable scheduledDrain;
+
+	// region JMX
+	private double acquiredTokens;
+	private long acquiredRequests;
+	private long throttledRequests;
+	// endregion
+
+	private record Waiter(double tokens, double finishTag, long sequence, SettablePromise<Void> promise) {}
+
+	private TokenBucket(Reactor reactor, @Nullable TokenBucket parent) {
+		super(reactor);
+		this.parent = parent;
+		this.lastRefillTimestamp = reactor.currentTimeMillis();
+	}
+
+	public static TokenBucket create(Reactor reactor, double refillRate, ChronoUnit perUnit) {
+		return builder(reactor).withRefillRate(refillRate, perUnit).build();
+	}
+
+	public static Builder builder(Reactor reactor) {
+		return new TokenBucket(reactor, null).new Builder();
+	}
+
+	/**
+	 * Creates a builder of a child bucket that acquires tokens from this bucket
+	 */
+	public Builder childBuilder() {
+		return new TokenBucket(reactor, this).new Builder();
+	}
+
+	/**
+	 * Creates an unlimited child bucket with a given weight
+	 */
+	public TokenBucket createChild(double weight) {
+		return childBuilder().withWeight(weight).build();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, TokenBucket> {
+		private Builder() {}
+
+		public Builder withRefillRate(double refillRate, ChronoUnit perUnit) {
+			checkNotBuilt(this);
+			TokenBucket.this.refillRatePerMillis = toRatePerMillis(refillRate, perUnit);
+			return this;
+		}
+
+		/**
+		 * Sets a maximum number of tokens a bucket can accumulate (a maximum burst).
+		 * By default, a bucket accumulates tokens for one second.
+		 */
+		public Builder withCapacity(double capacity) {
+			checkNotBuilt(this);
+			checkArgument(capacity > 0, "Capacity should be positive");
+			TokenBucket.this.capacity = capacity;
+			return this;
+		}
+
+		public Builder withInitialTokens(double initialTokens) {
+			checkNotBuilt(this);
+			TokenBucket.this.tokens = initialTokens;
+			return this;
+		}
+
+		/**
+		 * Sets a weight of this bucket, which defines its share of parent's tokens
+		 * when several child buckets compete for them
+		 */
+		public Builder withWeight(double weight) {
+			checkNotBuilt(this);
+			checkArgument(weight > 0, "Weight should be positive");
+			TokenBucket.this.weight = weight;
+			return this;
+		}
+
+		@Override
+		protected TokenBucket doBuild() {
+			if (capacity == Double.POSITIVE_INFINITY && refillRatePerMillis != Double.POSITIVE_INFINITY) {
+				capacity = Math.max(refillRatePerMillis * 1000, 1);
+			}
+			tokens = Math.min(tokens, capacity);
+			return TokenBucket.this;
+		}
+	}
+
+	/**
+	 * Tries to acquire given amount of tokens without waiting
+	 *
+	 * @return {@code true} if tokens were acquired from this bucket and all of its parents
+	 */
+	public boolean tryAcquire(double tokens) {
+		if (CHECKS) checkInReactorThread(this);
+		checkArgument(tokens >= 0, "Negative number of tokens");
+		if (!canAcquireNow(tokens)) return false;
+		take(tokens);
+		return true;
+	}
+
+	/**
+	 * Acquires given amount of tokens from this bucket and all of its parents.
+	 * A request that is bigger than the capacity of a bucket is served once the bucket is full,
+	 * leaving the bucket in debt.
+	 *
+	 * @return a promise that is completed once all tokens are acquired
+	 */
+	public Promise<Void> acquire(double tokens) {
+		if (CHECKS) checkInReactorThread(this);
+		checkArgument(tokens >= 0, "Negative number of tokens");
+		return doAcquire(tokens, null);
+	}
+
+	private Promise<Void> doAcquire(double tokens, @Nullable TokenBucket child) {
+		refill();
+		if (waiters.isEmpty() && hasTokens(tokens)) {
+			consume(tokens);
+			return parent == null ? Promise.complete() : parent.doAcquire(tokens, this);
+		}
+
+		throttledRequests++;
+		double startTag = child == null ? virtualTime : Math.max(virtualTime, child.lastFinishTag);
+		double finishTag = startTag + tokens / (child == null ? 1.0 : child.weight);
+		if (child != null) {
+			child.lastFinishTag = finishTag;
+		}
+
+		SettablePromise<Void> promise = new SettablePromise<>();
+		waiters.add(new Waiter(tokens, finishTag, sequence++, promise));
+		waitingTokens += tokens;
+		scheduleDrain();
+		return promise;
+	}
+
+	private boolean canAcquireNow(double tokens) {
+		refill();
+		return waiters.isEmpty() && hasTokens(tokens) && (parent == null || parent.canAcquireNow(tokens));
+	}
+
+	private void take(double tokens) {
+		consume(tokens);
+		if (parent != null) {
+			parent.take(tokens);
+		}
+	}
+
+	private void consume(double tokens) {
+		if (refillRatePerMillis != Double.POSITIVE_INFINITY) {
+			this.tokens -= tokens;
+		}
+		acquiredTokens += tokens;
+		acquiredRequests++;
+	}
+
+	private boolean hasTokens(double tokens) {
+		return refillRatePerMillis == Double.POSITIVE_INFINITY || this.tokens >= Math.min(tokens, capacity);
+	}
+
+	private void drain() {
+		scheduledDrain = null;
+		refill();
+		while (!waiters.isEmpty()) {
+			Waiter waiter = waiters.peek();
+			if (!hasTokens(waiter.tokens)) break;
+			waiters.poll();
+			waitingTokens -= waiter.tokens;
+			virtualTime = waiter.finishTag;
+			consume(waiter.tokens);
+			if (parent == null) {
+				waiter.promise.set(null);
+			} else {
+				parent.doAcquire(waiter.tokens, this)
+					.subscribe(waiter.promise::set);
+			}
+		}
+		if (!waiters.isEmpty()) {
+			scheduleDrain();
+		}
+	}
+
+	private void scheduleDrain() {
+		if (scheduledDrain != null) return;
+		Waiter waiter = waiters.peek();
+		assert waiter != null;
+		long delay = refillRatePerMillis == Double.POSITIVE_INFINITY ?
+			0 :
+			(long) Math.ceil((Math.min(waiter.tokens, capacity) - tokens) / refillRatePerMillis);
+		scheduledDrain = reactor.delay(Math.max(delay, 0), this::drain);
+	}
+
+	private void refill() {
+		long timestamp = reactor.currentTimeMillis();
+		if (refillRatePerMillis != Double.POSITIVE_INFINITY) {
+			double passedMillis = timestamp - lastRefillTimestamp;
+			tokens = Math.min(capacity, tokens + passedMillis * refillRatePerMillis);
+		}
+		lastRefillTimestamp = timestamp;
+	}
+
+	private static double toRatePerMillis(double refillRate, ChronoUnit perUnit) {
+		checkArgument(refillRate > 0, "Refill rate should be positive");
+		Duration perUnitDuration = perUnit.getDuration();
+		if (perUnit.ordinal() > ChronoUnit.MILLIS.ordinal()) {
+			return refillRate / perUnitDuration.dividedBy(MILLIS_DURATION);
+		} else {
+			return refillRate * MILLIS_DURATION.dividedBy(perUnitDuration);
+		}
+	}
+
+	public @Nullable TokenBucket getParent() {
+		return parent;
+	}
+
+	// region JMX
+	@JmxAttribute
+	public double getTokens() {
+		refill();
+		return tokens;
+	}
+
+	@JmxAttribute
+	public double getCapacity() {
+		return capacity;
+	}
+
+	@JmxAttribute
+	public double getRefillRatePerSecond() {
+		return refillRatePerMillis * 1000;
+	}
+
+	@JmxAttribute
+	public void setRefillRatePerSecond(double refillRatePerSecond) {
+		checkState(refillRatePerMillis != Double.POSITIVE_INFINITY, "Cannot change refill rate of an unlimited bucket");
+		refill();
+		this.refillRatePerMillis = toRatePerMillis(refillRatePerSecond, ChronoUnit.SECONDS);
+	}
+
+	@JmxAttribute
+	public double getWeight() {
+		return weight;
+	}
+
+	@JmxAttribute
+	public int getWaitingRequests() {
+		return waiters.size();
+	}
+
+	@JmxAttribute
+	public double getWaitingTokens() {
+		return waitingTokens;
+	}
+
+	@JmxAttribute
+	public double getAcquiredTokens() {
+		return acquiredTokens;
+	}
+
+	@JmxAttribute
+	public long getAcquiredRequests() {
+		return acquiredRequests;
+	}
+
+	@JmxAttribute
+	public long getThrottledRequests() {
+		return throttledRequests;
+	}
+	// endregion
+
+	@Override
+	public String toString() {
+		return "TokenBucket{" +
+			"tokens=" + tokens +
+			", capacity=" + capacity +
+			", refillRatePerSecond=" + getRefillRatePerSecond() +
+			", weight=" + weight +
+			", waiting=" + waiters.size() +
+			'}';
+	}
+}
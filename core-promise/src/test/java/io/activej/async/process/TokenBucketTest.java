@@ -0,0 +1,124 @@
+package io.activej.async.process;
+
+import io.activej.eventloop.Eventloop;
+import io.activej.promise.Promise;
+import io.activej.promise.Promises;
+import io.activej.test.rules.EventloopRule;
+import io.activej.test.time.TestCurrentTimeProvider;
+import io.activej.test.time.TestCurrentTimeProvider.TimeSequenceCurrentTimeProvider;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.activej.common.exception.FatalErrorHandlers.rethrow;
+import static io.activej.promise.TestUtils.await;
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	private TimeSequenceCurrentTimeProvider timeSequence;
+	private Eventloop eventloop;
+
+	@Before
+	public void setUp() {
+		timeSequence = TestCurrentTimeProvider.ofTimeSequence(0, 10);
+		eventloop = Eventloop.builder()
+			.withTimeProvider(timeSequence)
+			.withCurrentThread()
+			.withFatalErrorHandler(rethrow())
+			.build();
+	}
+
+	@Test
+	public void testTryAcquire() {
+		TokenBucket bucket = TokenBucket.builder(eventloop)
+			.withRefillRate(1, ChronoUnit.SECONDS)
+			.withInitialTokens(10)
+			.withCapacity(10)
+			.build();
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(bucket.tryAcquire(1));
+		}
+		assertFalse(bucket.tryAcquire(1));
+		assertEquals(10, bucket.getAcquiredRequests());
+	}
+
+	@Test
+	public void testAcquireWaitsForRefill() {
+		TokenBucket bucket = TokenBucket.create(eventloop, 100, ChronoUnit.SECONDS);
+
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			promises.add(bucket.acquire(1));
+		}
+		await(Promises.all(promises));
+
+		assertTrue(timeSequence.getTime() > 2_000);
+		assertEquals(0, bucket.getWaitingRequests());
+	}
+
+	@Test
+	public void testParentLimitsChildren() {
+		TokenBucket root = TokenBucket.create(eventloop, 100, ChronoUnit.SECONDS);
+		TokenBucket first = root.createChild(1);
+		TokenBucket second = root.createChild(1);
+
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			promises.add(first.acquire(1));
+			promises.add(second.acquire(1));
+		}
+		await(Promises.all(promises));
+
+		assertTrue(timeSequence.getTime() > 2_000);
+		assertEquals(100, first.getAcquiredTokens(), 0);
+		assertEquals(100, second.getAcquiredTokens(), 0);
+		assertEquals(200, root.getAcquiredTokens(), 0);
+	}
+
+	@Test
+	public void testWeightedFairSharing() {
+		TokenBucket root = TokenBucket.builder(eventloop)
+			.withRefillRate(1000, ChronoUnit.SECONDS)
+			.withCapacity(10)
+			.build();
+		TokenBucket light = root.createChild(1);
+		TokenBucket heavy = root.createChild(3);
+
+		List<String> order = new ArrayList<>();
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			promises.add(light.acquire(1).whenResult(() -> order.add("light")));
+			promises.add(heavy.acquire(1).whenResult(() -> order.add("heavy")));
+		}
+		await(Promises.all(promises));
+
+		List<String> firstHundred = order.subList(0, 100);
+		long heavyCount = firstHundred.stream().filter("heavy"::equals).count();
+		assertTrue(heavyCount >= 70 && heavyCount <= 80);
+	}
+
+	@Test
+	public void testChildOwnLimit() {
+		TokenBucket root = TokenBucket.create(eventloop, 1_000_000, ChronoUnit.SECONDS);
+		TokenBucket child = root.childBuilder()
+			.withRefillRate(100, ChronoUnit.SECONDS)
+			.build();
+
+		List<Promise<Void>> promises = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			promises.add(child.acquire(1));
+		}
+		await(Promises.all(promises));
+
+		assertTrue(timeSequence.getTime() > 2_000);
+	}
+}
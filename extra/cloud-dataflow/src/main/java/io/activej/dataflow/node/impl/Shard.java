@@ -41,6 +41,8 @@ import static io.activej.common.HashUtils.murmur3hash;
  */
 @ExposedInternals
 public final class Shard<K, T> extends AbstractNode {
+	private static final int OUTPUT_BUFFER_SIZE = 256;
+
 	public final Function<T, K> keyFunction;
 
 	public final int nonce;
@@ -91,7 +93,9 @@ public final class Shard<K, T> extends AbstractNode {
 				acceptors[hashAbs % partitions].accept(item);
 			};
 
-		StreamSplitter<T, T> streamSharder = StreamSplitter.create(splitter);
+		StreamSplitter<T, T> streamSharder = StreamSplitter.builder(splitter)
+			.withOutputBufferSize(OUTPUT_BUFFER_SIZE)
+			.build();
 
 		task.bindChannel(input, streamSharder.getInput());
 		for (StreamId streamId : outputs) {
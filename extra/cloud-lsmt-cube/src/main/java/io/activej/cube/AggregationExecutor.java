@@ -17,6 +17,7 @@
 package io.activej.cube;
 
 import io.activej.codegen.DefiningClassLoader;
+import io.activej.common.MemSize;
 import io.activej.common.collection.CollectionUtils;
 import io.activej.common.collection.CollectorUtils;
 import io.activej.csp.process.frame.FrameFormat;
@@ -79,6 +80,8 @@ public final class AggregationExecutor extends AbstractReactive
 	public static final int DEFAULT_REDUCER_BUFFER_SIZE = StreamReducer.DEFAULT_BUFFER_SIZE;
 	public static final int DEFAULT_SORTER_ITEMS_IN_MEMORY = 1_000_000;
 	public static final int DEFAULT_MAX_CHUNKS_TO_CONSOLIDATE = 1000;
+	public static final MemSize DEFAULT_SORTER_READ_AHEAD_SIZE = StreamSorterStorage.DEFAULT_SORTER_BLOCK_SIZE;
+	public static final int DEFAULT_SORTER_PREFETCH_BUFFERS = 1;
 
 	private final Executor executor;
 	private final DefiningClassLoader classLoader;
@@ -226,9 +229,13 @@ public final class AggregationExecutor extends AbstractReactive
 				return StreamSuppliers.closingWithError(e);
 			}
 		}
-		StreamSorter<T, T> sorter = StreamSorter.create(
-			StreamSorterStorage.create(reactor, executor, binarySerializer, frameFormat, sortDir),
-			Function.identity(), keyComparator, false, sorterItemsInMemory);
+		StreamSorterStorage<T> storage = StreamSorterStorage.builder(reactor, executor, binarySerializer, frameFormat, sortDir)
+			.withReadAheadSize(DEFAULT_SORTER_READ_AHEAD_SIZE)
+			.withPrefetchBuffers(DEFAULT_SORTER_PREFETCH_BUFFERS)
+			.build();
+		StreamSorter<T, T> sorter = StreamSorter.builder(storage, Function.identity(), keyComparator, false, sorterItemsInMemory)
+			.withStats(stats.getSorter())
+			.build();
 		sorter.getInput().getAcknowledgement()
 			.whenComplete(() -> {
 				if (temporarySortDir == null) {
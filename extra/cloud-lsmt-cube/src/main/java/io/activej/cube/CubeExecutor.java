@@ -51,6 +51,7 @@ import io.activej.datastream.processor.StreamSplitter;
 import io.activej.datastream.processor.reducer.Reducer;
 import io.activej.datastream.processor.reducer.StreamReducer;
 import io.activej.datastream.processor.transformer.StreamTransformers;
+import io.activej.datastream.processor.transformer.sort.BoundedHeap;
 import io.activej.datastream.supplier.StreamDataAcceptor;
 import io.activej.datastream.supplier.StreamSupplier;
 import io.activej.etl.ILogDataConsumer;
@@ -806,6 +807,9 @@ public final class CubeExecutor extends AbstractReactive
 			}
 
 			if (comparator != null) {
+				if (end < results.size()) {
+					return selectFirst(results, end).subList(start, end);
+				}
 				return results.stream()
 					.sorted(comparator)
 					.skip(offset)
@@ -816,6 +820,15 @@ public final class CubeExecutor extends AbstractReactive
 			return results.subList(start, end);
 		}
 
+		// selects first n results with a bounded heap, ties are resolved by the original order as in a stable sort
+		private List<R> selectFirst(List<R> results, int n) {
+			BoundedHeap<R> heap = BoundedHeap.create(comparator, n);
+			for (R result : results) {
+				heap.offer(result);
+			}
+			return heap.drainSorted();
+		}
+
 		TotalsFunction<R, R> createTotalsFunction() {
 			return queryClassLoader.ensureClassAndCreateInstance(
 				ClassKey.of(TotalsFunction.class, resultClass, query.resultStoredMeasures(), query.resultComputedMeasures()),
@@ -16,6 +16,7 @@
 
 package io.activej.cube.aggregation;
 
+import io.activej.datastream.processor.transformer.sort.StreamSorterStats;
 import io.activej.datastream.stats.BasicStreamStats;
 import io.activej.datastream.stats.StreamStats;
 import io.activej.jmx.api.attribute.JmxAttribute;
@@ -26,6 +27,7 @@ public class AggregationStats {
 	final BasicStreamStats<?> mergeMapOutput = StreamStats.basic();
 	final BasicStreamStats<?> mergeReducerInput = StreamStats.basic();
 	final BasicStreamStats<?> mergeReducerOutput = StreamStats.basic();
+	final StreamSorterStats sorter = StreamSorterStats.create();
 
 	@JmxAttribute
 	public BasicStreamStats getMergeReducerInput() {
@@ -46,4 +48,9 @@ public class AggregationStats {
 	public BasicStreamStats getMergeMapOutput() {
 		return mergeMapOutput;
 	}
+
+	@JmxAttribute
+	public StreamSorterStats getSorter() {
+		return sorter;
+	}
 }
@@ -8,6 +8,7 @@ import io.activej.cube.aggregation.IAggregationChunkStorage;
 import io.activej.cube.aggregation.predicate.AggregationPredicate;
 import io.activej.cube.aggregation.predicate.AggregationPredicates;
 import io.activej.cube.bean.*;
+import io.activej.cube.exception.QueryException;
 import io.activej.cube.ot.CubeDiff;
 import io.activej.datastream.supplier.StreamSuppliers;
 import io.activej.etl.LogDiff;
@@ -19,6 +20,7 @@ import io.activej.ot.StateManager;
 import io.activej.promise.Promise;
 import io.activej.promise.Promises;
 import io.activej.reactor.nio.NioReactor;
+import io.activej.record.Record;
 import io.activej.test.rules.ByteBufRule;
 import io.activej.test.rules.ClassBuilderConstantsRule;
 import io.activej.test.rules.EventloopRule;
@@ -31,8 +33,11 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static io.activej.common.collection.CollectorUtils.toLinkedHashMap;
@@ -47,6 +52,7 @@ import static io.activej.cube.aggregation.util.Utils.materializeProtoDiff;
 import static io.activej.promise.TestUtils.await;
 import static io.activej.reactor.Reactor.getCurrentReactor;
 import static io.activej.test.TestUtils.getFreePort;
+import static java.lang.Math.min;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toSet;
@@ -234,6 +240,39 @@ public final class CubeTest {
 		assertEquals(expected, list);
 	}
 
+	@Test
+	public void testOrderingWithLimitAndOffset() throws QueryException {
+		// metric1 has many equal values, so that ties are resolved by the order of results
+		DataItem1[] items = IntStream.range(0, 30)
+			.mapToObj(i -> new DataItem1(i % 3, i, (i * 7) % 4, i))
+			.toArray(DataItem1[]::new);
+		await(consume(cubeReporting, chunkStorage, items[0], Arrays.copyOfRange(items, 1, items.length)));
+
+		List<Map<String, Object>> sorted = queryOrdered(null, null);
+		assertEquals(30, sorted.size());
+
+		for (Integer offset : Arrays.asList(null, 0, 1, 7, 29, 30, 45)) {
+			for (Integer limit : Arrays.asList(null, 0, 1, 5, 23, 30, 100)) {
+				int from = min(offset == null ? 0 : offset, sorted.size());
+				int to = limit == null ? sorted.size() : min(from + limit, sorted.size());
+				assertEquals("offset " + offset + ", limit " + limit, sorted.subList(from, to), queryOrdered(offset, limit));
+			}
+		}
+	}
+
+	private List<Map<String, Object>> queryOrdered(Integer offset, Integer limit) throws QueryException {
+		QueryResult queryResult = await(cubeReporting.query(CubeQuery.builder()
+			.withAttributes("key1", "key2")
+			.withMeasures("metric1")
+			.withOrderingAsc("metric1")
+			.withOffset(offset)
+			.withLimit(limit)
+			.build()));
+		return queryResult.getRecords().stream()
+			.map(Record::toMap)
+			.toList();
+	}
+
 	@Test
 	public void testBetweenPredicate() {
 		List<DataItemResult> expected = List.of(
@@ -46,11 +46,14 @@ public class ConfigConverters {
 				Duration timedOutExceptionTtl = config.get(ofDuration(), "timedOutExpiration", DEFAULT_TIMED_OUT_EXPIRATION);
 				Duration hardExpirationDelta = config.get(ofDuration(), "hardExpirationDelta", DEFAULT_HARD_EXPIRATION_DELTA);
 				Duration maxTtl = config.get(ofDuration(), "maxTtl", DEFAULT_MAX_TTL);
+				double prefetchThreshold = config.get(ofDouble(), "prefetchThreshold", DEFAULT_PREFETCH_THRESHOLD);
+				int prefetchMinHits = config.get(ofInteger(), "prefetchMinHits", DEFAULT_PREFETCH_MIN_HITS);
 				return DnsCache.builder(reactor)
 					.withErrorCacheExpiration(errorCacheExpiration)
 					.withTimedOutExpiration(timedOutExceptionTtl)
 					.withHardExpirationDelta(hardExpirationDelta)
 					.withMaxTtl(maxTtl)
+					.withPrefetch(prefetchThreshold, prefetchMinHits)
 					.build();
 			}
 
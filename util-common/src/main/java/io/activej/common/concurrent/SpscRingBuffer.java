@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.common.concurrent;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.activej.common.Checks.checkArgument;
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * A bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * <p>
+ * Indices are published with ordered (release) stores, and each side caches
+ * the last seen index of the other side, so that a shared index is only read
+ * when the queue looks full to a producer or empty to a consumer.
+ *
+ * @param <T> type of elements
+ */
+public final class SpscRingBuffer<T> {
+	private final Object[] buffer;
+	private final int mask;
+
+	// written by a producer
+	private final AtomicLong tail = new AtomicLong();
+	private long cachedHead;
+
+	// written by a consumer
+	private final AtomicLong head = new AtomicLong();
+	private long cachedTail;
+
+	public SpscRingBuffer(int capacity) {
+		checkArgument(capacity > 0 && capacity == 1 << 32 - numberOfLeadingZeros(capacity - 1),
+			"Capacity must be a power of 2");
+		this.buffer = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Adds an element to the queue, may only be called by a producer thread
+	 *
+	 * @return {@code false} if the queue is full
+	 */
+	public boolean offer(T item) {
+		long t = tail.get();
+		if (t - cachedHead == buffer.length) {
+			cachedHead = head.get();
+			if (t - cachedHead == buffer.length) return false;
+		}
+		buffer[(int) t & mask] = item;
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes an element from the queue, may only be called by a consumer thread
+	 *
+	 * @return an element, or {@code null} if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public @Nullable T poll() {
+		long h = head.get();
+		if (h == cachedTail) {
+			cachedTail = tail.get();
+			if (h == cachedTail) return null;
+		}
+		int index = (int) h & mask;
+		T item = (T) buffer[index];
+		buffer[index] = null;
+		head.lazySet(h + 1);
+		return item;
+	}
+
+	/**
+	 * Returns an approximate number of elements in the queue, may be called by any thread
+	 */
+	public int size() {
+		long h = head.get();
+		return (int) (tail.get() - h);
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 ActiveJ LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.activej.state.checkpoint;
+
+import io.activej.bytebuf.ByteBuf;
+import io.activej.bytebuf.ByteBufs;
+import io.activej.common.builder.AbstractBuilder;
+import io.activej.csp.supplier.ChannelSuppliers;
+import io.activej.datastream.processor.checkpoint.Checkpoint;
+import io.activej.datastream.processor.checkpoint.ICheckpointStorage;
+import io.activej.fs.IFileSystem;
+import io.activej.promise.Promise;
+import io.activej.serializer.stream.StreamCodec;
+import io.activej.serializer.stream.StreamCodecs;
+import io.activej.serializer.stream.StreamInput;
+import io.activej.serializer.stream.StreamOutput;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static io.activej.common.Checks.checkArgument;
+
+/**
+ * A storage of datastream checkpoints in {@link IFileSystem}.
+ * <p>
+ * Each checkpoint is stored in a single file named by a prefix and an id of a checkpoint.
+ * A file is uploaded to a temporary directory first and then moved in place,
+ * so a partially uploaded checkpoint is never loaded.
+ * Only a given number of the latest checkpoints is retained.
+ */
+public final class FileSystemCheckpointStorage implements ICheckpointStorage {
+	public static final String DEFAULT_PREFIX = "checkpoint-";
+	public static final String DEFAULT_TEMP_DIR = ".temp/";
+	public static final int DEFAULT_MAX_CHECKPOINTS = 2;
+
+	private static final StreamCodec<byte[]> STATE_CODEC = StreamCodecs.ofByteArray();
+
+	private final IFileSystem fileSystem;
+
+	private String prefix = DEFAULT_PREFIX;
+	private String tempDir = DEFAULT_TEMP_DIR;
+	private int maxCheckpoints = DEFAULT_MAX_CHECKPOINTS;
+
+	private FileSystemCheckpointStorage(IFileSystem fileSystem) {
+		this.fileSystem = fileSystem;
+	}
+
+	public static FileSystemCheckpointStorage create(IFileSystem fileSystem) {
+		return builder(fileSystem).build();
+	}
+
+	public static FileSystemCheckpointStorage.Builder builder(IFileSystem fileSystem) {
+		return new FileSystemCheckpointStorage(fileSystem).new Builder();
+	}
+
+	public final class Builder extends AbstractBuilder<Builder, FileSystemCheckpointStorage> {
+		private Builder() {}
+
+		public Builder withPrefix(String prefix) {
+			checkNotBuilt(this);
+			FileSystemCheckpointStorage.this.prefix = prefix;
+			return this;
+		}
+
+		public Builder withTempDir(String tempDir) {
+			checkNotBuilt(this);
+			checkArgument(!tempDir.isEmpty() && !tempDir.equals("/"), "Temporary directory cannot be same as main directory");
+			FileSystemCheckpointStorage.this.tempDir = tempDir.endsWith("/") ? tempDir : tempDir + '/';
+			return this;
+		}
+
+		public Builder withMaxCheckpoints(int maxCheckpoints) {
+			checkNotBuilt(this);
+			checkArgument(maxCheckpoints > 0, "Number of retained checkpoints should be positive");
+			FileSystemCheckpointStorage.this.maxCheckpoints = maxCheckpoints;
+			return this;
+		}
+
+		@Override
+		protected FileSystemCheckpointStorage doBuild() {
+			return FileSystemCheckpointStorage.this;
+		}
+	}
+
+	@Override
+	public Promise<Void> save(Checkpoint checkpoint) {
+		byte[] bytes;
+		try {
+			bytes = encode(checkpoint);
+		} catch (IOException e) {
+			return Promise.ofException(e);
+		}
+		String tempFilename = tempDir + UUID.randomUUID();
+		return fileSystem.upload(tempFilename, bytes.length)
+			.then(consumer -> ChannelSuppliers.ofValue(ByteBuf.wrapForReading(bytes)).streamTo(consumer))
+			.then(() -> fileSystem.move(tempFilename, prefix + checkpoint.id()))
+			.then(this::cleanup);
+	}
+
+	@Override
+	public Promise<@Nullable Checkpoint> loadLast() {
+		return listCheckpoints()
+			.then(ids -> {
+				if (ids.isEmpty()) return Promise.of(null);
+				return fileSystem.download(prefix + ids.last())
+					.then(supplier -> supplier.toCollector(ByteBufs.collector()))
+					.map(buf -> decode(buf.asArray()));
+			});
+	}
+
+	private Promise<Void> cleanup() {
+		return listCheckpoints()
+			.then(ids -> {
+				Set<String> toDelete = new HashSet<>();
+				Iterator<Long> iterator = ids.iterator();
+				for (int i = ids.size() - maxCheckpoints; i > 0; i--) {
+					toDelete.add(prefix + iterator.next());
+				}
+				return fileSystem.deleteAll(toDelete);
+			});
+	}
+
+	private Promise<SortedSet<Long>> listCheckpoints() {
+		return fileSystem.list(prefix + "*")
+			.map(files -> {
+				SortedSet<Long> ids = new TreeSet<>();
+				for (String filename : files.keySet()) {
+					try {
+						ids.add(Long.parseLong(filename.substring(prefix.length())));
+					} catch (NumberFormatException ignored) {
+					}
+				}
+				return ids;
+			});
+	}
+
+	private static byte[] encode(Checkpoint checkpoint) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (StreamOutput output = StreamOutput.create(baos)) {
+			output.writeVarLong(checkpoint.id());
+			output.writeVarLong(checkpoint.position());
+			output.writeVarInt(checkpoint.states().size());
+			for (Map.Entry<String, byte[]> entry : checkpoint.states().entrySet()) {
+				output.writeUTF8(entry.getKey());
+				STATE_CODEC.encode(output, entry.getValue());
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	private static Checkpoint decode(byte[] bytes) throws IOException {
+		try (StreamInput input = StreamInput.create(new ByteArrayInputStream(bytes))) {
+			long id = input.readVarLong();
+			long position = input.readVarLong();
+			Map<String, byte[]> states = new LinkedHashMap<>();
+			for (int count = input.readVarInt(); count > 0; count--) {
+				states.put(input.readUTF8(), STATE_CODEC.decode(input));
+			}
+			return new Checkpoint(id, position, states);
+		}
+	}
+}
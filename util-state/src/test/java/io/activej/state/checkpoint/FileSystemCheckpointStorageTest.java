@@ -0,0 +1,75 @@
+package io.activej.state.checkpoint;
+
+import io.activej.datastream.processor.checkpoint.Checkpoint;
+import io.activej.fs.FileSystem;
+import io.activej.reactor.Reactor;
+import io.activej.test.rules.ByteBufRule;
+import io.activej.test.rules.EventloopRule;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static io.activej.promise.TestUtils.await;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.junit.Assert.*;
+
+public class FileSystemCheckpointStorageTest {
+
+	@ClassRule
+	public static final EventloopRule eventloopRule = new EventloopRule();
+
+	@ClassRule
+	public static final ByteBufRule byteBufRule = new ByteBufRule();
+
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	private FileSystem fileSystem;
+	private FileSystemCheckpointStorage storage;
+
+	@Before
+	public void setUp() throws Exception {
+		Path path = tmpFolder.newFolder().toPath();
+		fileSystem = FileSystem.create(Reactor.getCurrentReactor(), newCachedThreadPool(), path);
+		await(fileSystem.start());
+		storage = FileSystemCheckpointStorage.builder(fileSystem)
+			.withPrefix("checkpoints/")
+			.withMaxCheckpoints(2)
+			.build();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertNull(await(storage.loadLast()));
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		await(storage.save(new Checkpoint(1, 100, Map.of("a", new byte[]{1, 2, 3}))));
+		await(storage.save(new Checkpoint(2, 200, Map.of("a", new byte[]{4}, "b", new byte[0]))));
+
+		Checkpoint checkpoint = await(storage.loadLast());
+		assertNotNull(checkpoint);
+		assertEquals(2, checkpoint.id());
+		assertEquals(200, checkpoint.position());
+		assertEquals(Set.of("a", "b"), checkpoint.states().keySet());
+		assertArrayEquals(new byte[]{4}, checkpoint.states().get("a"));
+		assertArrayEquals(new byte[0], checkpoint.states().get("b"));
+	}
+
+	@Test
+	public void testOldCheckpointsAreDeleted() {
+		for (int id = 1; id <= 10; id++) {
+			await(storage.save(new Checkpoint(id, id * 10L, Map.of())));
+		}
+
+		assertEquals(Set.of("checkpoints/9", "checkpoints/10"), await(fileSystem.list("checkpoints/*")).keySet());
+		assertEquals(10, await(storage.loadLast()).id());
+	}
+}